@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.benchmarks;
+
+import com.rethinkdb.net.Connection;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.User;
+import net.dv8tion.jda.api.entities.channel.middleman.MessageChannel;
+import net.kodehawa.mantarobot.core.command.pipeline.CommandDisableLevel;
+import net.kodehawa.mantarobot.core.command.pipeline.CommandInvocation;
+import net.kodehawa.mantarobot.core.command.pipeline.CommandPipeline;
+import net.kodehawa.mantarobot.core.command.processor.CommandTimer;
+import net.kodehawa.mantarobot.core.modules.commands.base.CommandCategory;
+import net.kodehawa.mantarobot.core.modules.commands.base.CommandPermission;
+import net.kodehawa.mantarobot.core.modules.commands.i18n.I18nContext;
+import net.kodehawa.mantarobot.data.Config;
+import net.kodehawa.mantarobot.db.ManagedDatabase;
+import net.kodehawa.mantarobot.db.entities.DBGuild;
+import net.kodehawa.mantarobot.db.entities.DBUser;
+import net.kodehawa.mantarobot.db.entities.MantaroObj;
+import net.kodehawa.mantarobot.utils.commands.ratelimit.RateLimiter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.slf4j.Logger;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end run of the {@link CommandPipeline} (every stage, timing included) with in-memory entities, so only
+ * the cost of the shared dispatch code is measured.
+ * <br>Run with {@code ./gradlew jmh -Pjmh.includes=CommandPipelineBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CommandPipelineBenchmark {
+    private static final Member MEMBER = stub(Member.class);
+    private static final User USER = stub(User.class);
+    private static final Guild GUILD = stub(Guild.class);
+    private static final MessageChannel CHANNEL = stub(MessageChannel.class);
+
+    /**
+     * default: fresh guild settings. configured: guild with disabled commands, channels and role settings.
+     */
+    @Param({"default", "configured"})
+    public String settings;
+
+    private CommandPipeline pipeline;
+    private DBGuild dbGuild;
+    private DBUser dbUser;
+    private MantaroObj mantaroObj;
+
+    @Setup
+    public void setup() {
+        pipeline = CommandPipeline.defaultPipeline(new Config(), new RateLimiter(TimeUnit.HOURS, 1));
+        dbGuild = DBGuild.of("1");
+        dbUser = DBUser.of("1");
+        mantaroObj = MantaroObj.create();
+
+        if (settings.equals("configured")) {
+            var data = dbGuild.getData();
+            for (int i = 0; i < 20; i++) {
+                data.getDisabledCommands().add("disabled-" + i);
+                data.getDisabledChannels().add(String.valueOf(1000 + i));
+                data.getRoleSpecificDisabledCommands().put(String.valueOf(2000 + i), List.of("disabled-" + i));
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean pipeline() {
+        var timer = CommandTimer.start();
+        try {
+            return pipeline.run(new FakeInvocation());
+        } finally {
+            timer.finish();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+            var returnType = method.getReturnType();
+            if (returnType == String.class) return "1";
+            if (returnType == long.class) return 1L;
+            if (returnType == int.class) return 1;
+            if (returnType == boolean.class) return false;
+            if (returnType == List.class) return List.of();
+            if (returnType == User.class) return USER;
+            return null;
+        });
+    }
+
+    private class FakeInvocation extends CommandInvocation {
+        FakeInvocation() {
+            // getPremiumKey(null) returns before touching the connection.
+            super(new ManagedDatabase((Connection) null), dbGuild);
+        }
+
+        @Override public Guild getGuild() { return GUILD; }
+        @Override public Member getMember() { return MEMBER; }
+        @Override public User getAuthor() { return USER; }
+        @Override public MessageChannel getChannel() { return CHANNEL; }
+        @Override public String getName() { return "benchmark"; }
+        @Override public String getMetricName() { return "benchmark"; }
+        @Override public CommandCategory getCategory() { return CommandCategory.UTILS; }
+        @Override public String getMetricCategory() { return "utils"; }
+        @Override public CommandPermission getPermission() { return CommandPermission.USER; }
+        @Override public void reply(String message) { }
+        @Override public void sendDisabledNotice(CommandDisableLevel level) { }
+        @Override public void onBlacklistedGuild() { }
+        @Override protected void execute(I18nContext i18n) { }
+        @Override protected void log(Logger commandLog) { }
+        @Override public DBUser getDBUser() { return dbUser; }
+        @Override public MantaroObj getMantaroData() { return mantaroObj; }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+package net.kodehawa.mantarobot.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.kodehawa.mantarobot.db.DocumentDiff;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What saving a player costs on our side, sending the whole document against sending only what a typical command changes
+ * (money, one inventory item and experience). bytesPerOp is the size of the JSON that ends up in the query.
+ * <br>Write latency needs a live RethinkDB, so it isn't measured here:
+ * compare command_phase_seconds{phase="database"} before and after instead.
+ * <br>Run with {@code ./gradlew jmh -Pjmh.includes=EntitySaveBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EntitySaveBenchmark {
+    private static final Set<String> COUNTERS = Set.of("money", "inventory.*", "data.newMoney", "data.experience");
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private Map<String, Object> before;
+    private Map<String, Object> after;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Bytes {
+        public long bytesPerOp;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytesPerOp = 0;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        before = player();
+        after = player();
+        @SuppressWarnings("unchecked")
+        var data = (Map<String, Object>) after.get("data");
+        data.put("newMoney", 15_250L);
+        data.put("experience", 9_120L);
+        @SuppressWarnings("unchecked")
+        var inventory = (Map<String, Object>) after.get("inventory");
+        inventory.put("12", 31);
+    }
+
+    @Benchmark
+    public byte[] fullDocument(Bytes bytes) throws JsonProcessingException {
+        var json = mapper.writeValueAsBytes(after);
+        bytes.bytesPerOp = json.length;
+        return json;
+    }
+
+    @Benchmark
+    public byte[] changedFields(Bytes bytes) throws JsonProcessingException {
+        var changes = DocumentDiff.diff(before, after, COUNTERS);
+        // Roughly what the update term looks like: the changed fields nested like the document, increments as an add.
+        var patch = new LinkedHashMap<String, Object>();
+        for (var change : changes) {
+            var node = patch;
+            var path = change.path();
+            for (var key : path.subList(0, path.size() - 1)) {
+                @SuppressWarnings("unchecked")
+                var child = (LinkedHashMap<String, Object>) node.computeIfAbsent(key, k -> new LinkedHashMap<String, Object>());
+                node = child;
+            }
+
+            Object value;
+            if (change instanceof DocumentDiff.Increment increment) {
+                value = List.of(24, List.of(List.of(31, List.of(List.of(10, List.of(1)), path.get(path.size() - 1))), increment.delta()));
+            } else if (change instanceof DocumentDiff.Put put) {
+                value = put.value();
+            } else {
+                value = List.of(137, List.of());
+            }
+
+            node.put(path.get(path.size() - 1), value);
+        }
+
+        var json = mapper.writeValueAsBytes(patch);
+        bytes.bytesPerOp = json.length;
+        return json;
+    }
+
+    // About the size of an active player: a full inventory, some badges, pets and quests.
+    private static Map<String, Object> player() {
+        var inventory = new HashMap<String, Object>();
+        for (var i = 1; i <= 80; i++) {
+            inventory.put(String.valueOf(i), i % 7 + 1);
+        }
+
+        var badges = new ArrayList<String>();
+        for (var i = 0; i < 25; i++) {
+            badges.add("BADGE_" + i);
+        }
+
+        var pets = new HashMap<String, Object>();
+        for (var i = 0; i < 4; i++) {
+            pets.put("pet" + i, new HashMap<>(Map.of("name", "pet" + i, "level", 12L, "experience", 5_000L, "hunger", 80, "thirst", 90)));
+        }
+
+        var quests = new ArrayList<Map<String, Object>>();
+        for (var i = 0; i < 3; i++) {
+            quests.add(Map.of("type", "MINE", "amount", 10, "progress", i * 3, "started", 1_600_000_000_000L));
+        }
+
+        var data = new HashMap<String, Object>();
+        data.put("newMoney", 12_500L);
+        data.put("experience", 9_000L);
+        data.put("gamesWon", 42L);
+        data.put("badges", badges);
+        data.put("pets", pets);
+        data.put("quests", Map.of("currentActiveQuests", quests));
+        data.put("description", "A player description that's about as long as most of them are, give or take.");
+        data.put("dailyStreak", 31L);
+        data.put("lastDailyAt", 1_650_000_000_000L);
+        data.put("profileComponents", List.of("HEADER", "CREDITS", "LEVEL", "REPUTATION", "BADGES", "MARRIAGE", "INVENTORY"));
+
+        var player = new HashMap<String, Object>();
+        player.put("id", "155867458203287552:g");
+        player.put("level", 30L);
+        player.put("money", 0L);
+        player.put("reputation", 12L);
+        player.put("inventory", inventory);
+        player.put("data", data);
+        return player;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.benchmarks;
+
+import net.kodehawa.mantarobot.core.cache.BufferedEvictionStrategy;
+import net.kodehawa.mantarobot.core.cache.EvictionStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Member cache decisions under contention: the old synchronized block around the strategy against
+ * {@link BufferedEvictionStrategy}, with 2, 8 and 32 threads caching members on the same shard.
+ * <br>Run with {@code ./gradlew jmh -Pjmh.includes=EvictionBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EvictionBenchmark {
+    private static final int CACHE_SIZE = 10_000;
+    private static final int MEMBERS = 50_000;
+
+    private EvictionStrategy locked;
+    private BufferedEvictionStrategy buffered;
+
+    @Setup
+    public void setup() {
+        locked = EvictionStrategy.leastRecentlyUsed(CACHE_SIZE);
+        buffered = new BufferedEvictionStrategy(EvictionStrategy.leastRecentlyUsed(CACHE_SIZE));
+    }
+
+    @Benchmark
+    @Threads(2)
+    public void synchronized2(Blackhole bh) {
+        lockedCache(bh);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void synchronized8(Blackhole bh) {
+        lockedCache(bh);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public void synchronized32(Blackhole bh) {
+        lockedCache(bh);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public void buffered2(Blackhole bh) {
+        bufferedCache(bh);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void buffered8(Blackhole bh) {
+        bufferedCache(bh);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public void buffered32(Blackhole bh) {
+        bufferedCache(bh);
+    }
+
+    private void lockedCache(Blackhole bh) {
+        var id = nextMember();
+        long evict;
+        synchronized (locked) {
+            evict = locked.cache(id);
+        }
+
+        bh.consume(evict);
+    }
+
+    private void bufferedCache(Blackhole bh) {
+        buffered.cache(nextMember(), bh::consume);
+    }
+
+    private static long nextMember() {
+        return ThreadLocalRandom.current().nextLong(1, MEMBERS);
+    }
+}
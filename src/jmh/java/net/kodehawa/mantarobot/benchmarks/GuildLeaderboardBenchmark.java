@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+package net.kodehawa.mantarobot.benchmarks;
+
+import net.kodehawa.mantarobot.commands.utils.leaderboards.GuildLeaderboards;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import redis.clients.jedis.JedisPool;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-guild leaderboards for a guild of 1k and 100k members: looking every member up on the global set against
+ * the guild's own set, both when it has to be built and when it's already there.
+ * <br>Needs a Redis server to talk to, localhost:6379 by default (-Dredis.host and -Dredis.port to change it).
+ * Run with {@code ./gradlew jmh -Pjmh.includes=GuildLeaderboardBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class GuildLeaderboardBenchmark {
+    private static final String GLOBAL = "benchmark-leaderboard";
+    private static final String GUILD = GLOBAL + "-guild";
+    private static final int USERS = 500_000;
+    private static final int TOP = 10;
+
+    @Param({"1000", "100000"})
+    public int members;
+
+    private JedisPool pool;
+    private List<String> guildMembers;
+    private String user;
+
+    @Setup
+    public void setup() {
+        pool = new JedisPool(System.getProperty("redis.host", "localhost"), Integer.getInteger("redis.port", 6379));
+        var random = ThreadLocalRandom.current();
+        try (var jedis = pool.getResource()) {
+            jedis.del(GLOBAL);
+            var scores = new HashMap<String, Double>();
+            for (var i = 0; i < USERS; i++) {
+                // Like the real ones, not everyone has a score.
+                if (random.nextInt(4) != 0) {
+                    scores.put(String.valueOf(100_000_000_000_000_000L + i), (double) random.nextLong(1, 10_000_000));
+                }
+
+                if (scores.size() == 10_000) {
+                    jedis.zadd(GLOBAL, scores);
+                    scores.clear();
+                }
+            }
+
+            if (!scores.isEmpty()) {
+                jedis.zadd(GLOBAL, scores);
+            }
+        }
+
+        guildMembers = new ArrayList<>(members);
+        for (var i = 0; i < members; i++) {
+            guildMembers.add(String.valueOf(100_000_000_000_000_000L + random.nextInt(USERS)));
+        }
+
+        user = guildMembers.get(random.nextInt(members));
+    }
+
+    @Setup(Level.Invocation)
+    public void dropGuildSet() {
+        try (var jedis = pool.getResource()) {
+            jedis.del(GUILD + "-cold");
+        }
+    }
+
+    @TearDown
+    public void teardown() {
+        try (var jedis = pool.getResource()) {
+            jedis.del(GLOBAL, GUILD + "-cold", GUILD + "-warm");
+        }
+
+        pool.close();
+    }
+
+    @Benchmark
+    public void intersect(Blackhole bh) {
+        bh.consume(GuildLeaderboards.intersect(pool, GLOBAL, guildMembers, user, TOP));
+    }
+
+    @Benchmark
+    public void materializeCold(Blackhole bh) {
+        bh.consume(GuildLeaderboards.materialize(pool, GLOBAL, GUILD + "-cold", guildMembers, user, TOP));
+    }
+
+    @Benchmark
+    public void materializeWarm(Blackhole bh) {
+        bh.consume(GuildLeaderboards.materialize(pool, GLOBAL, GUILD + "-warm", guildMembers, user, TOP));
+    }
+}
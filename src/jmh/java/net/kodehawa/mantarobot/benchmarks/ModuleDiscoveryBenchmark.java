@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+package net.kodehawa.mantarobot.benchmarks;
+
+import net.kodehawa.mantarobot.core.modules.Module;
+import net.kodehawa.mantarobot.core.modules.ModuleIndex;
+import net.kodehawa.mantarobot.core.modules.ModuleLoader;
+import net.kodehawa.mantarobot.options.annotations.Option;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long finding the modules and options takes on boot: scanning the classpath with ClassGraph
+ * against reading the generated {@link ModuleIndex}. Every fork measures a single cold call, as that's what a boot pays.
+ * <br>Run with {@code ./gradlew jmh -Pjmh.includes=ModuleDiscoveryBenchmark}.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class ModuleDiscoveryBenchmark {
+    private static final String COMMANDS = "net.kodehawa.mantarobot.commands";
+    private static final String OPTIONS = "net.kodehawa.mantarobot.options";
+
+    @Benchmark
+    public void classGraph(Blackhole bh) {
+        bh.consume(ModuleLoader.scan(COMMANDS, Module.class));
+        bh.consume(ModuleLoader.scan(OPTIONS, Option.class));
+    }
+
+    @Benchmark
+    public void index(Blackhole bh) {
+        var index = ModuleLoader.index();
+        if (index == null) {
+            throw new IllegalStateException("The module index wasn't generated, is the processor on the annotation processor path?");
+        }
+
+        bh.consume(ModuleLoader.fromIndex(index, COMMANDS, Module.class));
+        bh.consume(ModuleLoader.fromIndex(index, OPTIONS, Option.class));
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.benchmarks;
+
+import net.kodehawa.mantarobot.core.command.argument.split.ArgumentTokenizer;
+import net.kodehawa.mantarobot.core.command.argument.split.SplitString;
+import net.kodehawa.mantarobot.core.command.argument.split.StringSplitter;
+import net.kodehawa.mantarobot.core.command.argument.split.TokenizedString;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Compares the regex based splitting (the one StringSplitter did before, kept here as the baseline)
+ * against {@link ArgumentTokenizer}, for a short command and a 2000 character one.
+ * <br>Run with {@code ./gradlew jmh -Pjmh.includes=TokenizerBenchmark} (add {@code -prof gc} through jmh args for allocation rates).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TokenizerBenchmark {
+    private static final Pattern PATTERN = Pattern.compile("\\s+");
+    private static final StringSplitter SPLITTER = new StringSplitter();
+
+    @Param({"short", "long"})
+    public String size;
+
+    private String input;
+
+    @Setup
+    public void setup() {
+        if (size.equals("short")) {
+            input = "transfer @Kodehawa 500 -f";
+            return;
+        }
+
+        var words = new String[] { "mantaro", "\"quoted", "block\"", "-flag", "```java", "code```", "\\escaped", "123" };
+        var builder = new StringBuilder(2048);
+        var random = ThreadLocalRandom.current();
+        while (builder.length() < 2000) {
+            builder.append(words[random.nextInt(words.length)]).append(random.nextBoolean() ? " " : "  \n");
+        }
+
+        builder.setLength(2000);
+        input = builder.toString();
+    }
+
+    @Benchmark
+    public void legacySplit(Blackhole bh) {
+        // What StringSplitter#split did before: split, then indexOf + substring for every part.
+        String[] values = PATTERN.split(input);
+        int remove = values.length > 0 && values[0].isEmpty() ? 1 : 0;
+        String lookup = input;
+        for (int i = remove; i < values.length; i++) {
+            String value = values[i];
+            int startIdx = lookup.indexOf(value);
+            bh.consume(lookup.substring(0, startIdx));
+            lookup = lookup.substring(startIdx + value.length());
+        }
+    }
+
+    @Benchmark
+    public void splitterMaterialized(Blackhole bh) {
+        for (SplitString string : SPLITTER.split(input)) {
+            bh.consume(string.getValue());
+        }
+    }
+
+    @Benchmark
+    public void tokenizeOnly(Blackhole bh) {
+        bh.consume(ArgumentTokenizer.local().tokenize(input));
+    }
+
+    @Benchmark
+    public void tokenizeFirstTwo(Blackhole bh) {
+        // Common case: a command only reads the first couple of arguments.
+        TokenizedString tokens = ArgumentTokenizer.local().tokenize(input);
+        for (int i = 0; i < Math.min(2, tokens.size()); i++) {
+            bh.consume(tokens.get(i).getValue());
+        }
+    }
+}
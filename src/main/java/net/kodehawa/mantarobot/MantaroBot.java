@@ -33,11 +33,16 @@ import net.kodehawa.mantarobot.commands.currency.item.ItemHelper;
 import net.kodehawa.mantarobot.commands.music.MantaroAudioManager;
 import net.kodehawa.mantarobot.commands.utils.birthday.BirthdayCacher;
 import net.kodehawa.mantarobot.commands.utils.birthday.BirthdayTask;
+import net.kodehawa.mantarobot.commands.utils.leaderboards.Leaderboards;
 import net.kodehawa.mantarobot.commands.utils.reminders.ReminderTask;
 import net.kodehawa.mantarobot.core.MantaroCore;
-import net.kodehawa.mantarobot.core.MantaroEventManager;
+import net.kodehawa.mantarobot.core.listeners.entities.LoggingGuilds;
+import net.kodehawa.mantarobot.core.shard.stats.ClusterStatsService;
+import net.kodehawa.mantarobot.core.shard.stats.ShardStatsPublisher;
 import net.kodehawa.mantarobot.data.Config;
 import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.GuildSettingsCache;
+import net.kodehawa.mantarobot.db.PlayerLanes;
 import net.kodehawa.mantarobot.utils.log.LogFilter;
 import net.kodehawa.mantarobot.utils.log.LogUtils;
 import net.kodehawa.mantarobot.utils.Prometheus;
@@ -47,7 +52,6 @@ import net.kodehawa.mantarobot.utils.commands.ratelimit.RatelimitUtils;
 import net.kodehawa.mantarobot.utils.exporters.Metrics;
 import okhttp3.Request;
 import okhttp3.Response;
-import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -58,6 +62,7 @@ import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -99,6 +104,8 @@ public class MantaroBot {
     private final MantaroCore core;
     private final JdaLavalink lavaLink;
     private final Config config = MantaroData.config().get();
+    private final ShardStatsPublisher shardStatsPublisher = new ShardStatsPublisher(config.getClientId(), getNodeNumber());
+    private final ClusterStatsService clusterStats = new ClusterStatsService(config.getClientId());
 
     private final BirthdayCacher birthdayCacher;
     private final ScheduledExecutorService executorService = Executors.newScheduledThreadPool(
@@ -177,6 +184,12 @@ public class MantaroBot {
         // Work around it by just killing/destroying all players before shutdown ends.
         var thread = new ThreadFactoryBuilder().setNameFormat("Mantaro Shutdown Hook").build();
         Runtime.getRuntime().addShutdownHook(thread.newThread(() -> {
+            var playerLanes = MantaroData.db().getPlayerLanes();
+            if (playerLanes != null) {
+                log.info("Saving players still in memory...");
+                playerLanes.flushAll();
+            }
+
             log.info("Destroying all active players...");
             for (var players : audioManager.getMusicManagers().entrySet()) {
                 players.getValue().getLavaLink().destroy();
@@ -272,12 +285,38 @@ public class MantaroBot {
 
     private void startExecutors() {
         log.info("Starting executors...");
+        // Needed to know which messages are worth caching for edit/delete logs.
+        CompletableFuture.runAsync(LoggingGuilds::load);
+
         // Handle the delivery of reminders, assuming this is the master node (Node 0).
         if (isMasterNode()) {
             ScheduledExecutorService reminderExecutor = Executors.newSingleThreadScheduledExecutor(
                     new ThreadFactoryBuilder().setNameFormat("Mantaro Reminder Handler").build()
             );
             reminderExecutor.scheduleAtFixedRate(ReminderTask::handle, 0, 30, TimeUnit.SECONDS);
+
+            // Only creates the ones that are missing.
+            CompletableFuture.runAsync(() -> MantaroData.db().createIndexes());
+
+            // Leaderboards are kept up to date as things get saved, this catches anything that got missed.
+            // Missing ones (first boot, or Redis lost them) get built here too, commands only ever read them.
+            ScheduledExecutorService leaderboardExecutor = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("Mantaro Leaderboard Rebuild").build()
+            );
+            leaderboardExecutor.scheduleWithFixedDelay(Leaderboards::buildMissing, 0, 5, TimeUnit.MINUTES);
+            leaderboardExecutor.scheduleAtFixedRate(Leaderboards::rebuildAll, 6, 6, TimeUnit.HOURS);
+
+            // Finishes transfers whose node died halfway through them. Only the master node runs it, for every node's transfers.
+            ScheduledExecutorService transferExecutor = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("Mantaro Transfer Recovery").build()
+            );
+            transferExecutor.scheduleAtFixedRate(() -> {
+                try {
+                    MantaroData.db().transfers().recover();
+                } catch (Exception e) {
+                    log.error("Error recovering transfers", e);
+                }
+            }, 1, 5, TimeUnit.MINUTES);
         }
 
         // Yes, this is needed.
@@ -291,6 +330,25 @@ public class MantaroBot {
                 new ThreadFactoryBuilder().setNameFormat("Mantaro Statistics Posting").build()
         );
         postExecutor.scheduleAtFixedRate(() -> postStats(getShardManager()), 10, 10, TimeUnit.MINUTES);
+
+        // Keep the cluster-wide stats commands read from up to date.
+        clusterStats.start(executorService, 30, TimeUnit.SECONDS);
+
+        // Economy commands of the same user run one at a time, sharing their player in memory.
+        MantaroData.db().setPlayerLanes(new PlayerLanes(MantaroData.db()::save, config.getPlayerLaneIdle(), config.getPlayerLaneMaxWait()));
+
+        // Guild settings from memory, for the guilds on our shards.
+        if (config.isGuildSettingsCache()) {
+            var total = getShardManager().getShardsTotal();
+            var source = ExtraRuntimeOptions.SHARD_SUBSET ?
+                    GuildSettingsCache.Source.rethink(MantaroData.pool(), total,
+                            ExtraRuntimeOptions.FROM_SHARD.getAsInt(), ExtraRuntimeOptions.TO_SHARD.getAsInt()) :
+                    GuildSettingsCache.Source.rethink(MantaroData.pool(), total, 0, total - 1);
+
+            var guildCache = new GuildSettingsCache(source, config.getGuildSettingsMaxAge(), System::currentTimeMillis);
+            guildCache.start();
+            MantaroData.db().setGuildCache(guildCache);
+        }
     }
 
     public void startCheckingBirthdays() {
@@ -330,32 +388,8 @@ public class MantaroBot {
     }
 
     private void postStats(ShardManager manager) {
-        for(var jda : manager.getShardCache()) {
-            if (jda.getStatus() == JDA.Status.INITIALIZED || jda.getStatus() == JDA.Status.SHUTDOWN) {
-                return;
-            }
-
-            try(var jedis = MantaroData.getDefaultJedisPool().getResource()) {
-                var json = new JSONObject()
-                        .put("guild_count", jda.getGuildCache().size())
-                        .put("cached_users", jda.getUserCache().size())
-                        .put("gateway_ping", jda.getGatewayPing())
-                        .put("shard_status", jda.getStatus())
-                        .put("last_ping_diff",
-                                ((MantaroEventManager) jda.getEventManager()).lastJDAEventDiff()
-                        )
-                        .put("node_number", MantaroBot.getInstance().getNodeNumber())
-                        .toString();
-
-                jedis.hset("shardstats-" + config.getClientId(),
-                        String.valueOf(jda.getShardInfo().getShardId()), json
-                );
-
-                log.debug("Sent process shard stats to Redis (Global) [Running Shards: {}] -> {}",
-                        manager.getShardsRunning(), json
-                );
-            }
-        }
+        shardStatsPublisher.publish(manager.getShardCache());
+        log.debug("Sent process shard stats to Redis (Global) [Running Shards: {}]", manager.getShardsRunning());
     }
 
     public MantaroAudioManager getAudioManager() {
@@ -366,6 +400,14 @@ public class MantaroBot {
         return this.core;
     }
 
+    public ShardStatsPublisher getShardStatsPublisher() {
+        return this.shardStatsPublisher;
+    }
+
+    public ClusterStatsService getClusterStats() {
+        return this.clusterStats;
+    }
+
     public BirthdayCacher getBirthdayCacher() {
         return this.birthdayCacher;
     }
@@ -492,7 +492,7 @@ public class CustomCmds {
                             custom.getValues().addAll(values);
                         } else {
                             // Are the first two checks redundant?
-                            if (!ctx.getConfig().isPremiumBot() && !ctx.getDBGuild().isPremium() && ctx.db().getCustomCommands(ctx.getGuild()).size() > 100) {
+                            if (!ctx.getConfig().isPremiumBot() && !ctx.getDBGuild().isPremium() && ctx.db().countCustomCommands(ctx.getGuild().getId()) > 100) {
                                 event.reply(lang.get("commands.custom.add.too_many_commands").formatted(EmoteReference.ERROR2))
                                         .setEphemeral(true)
                                         .queue();
@@ -1015,10 +1015,7 @@ public class CustomCmds {
             return;
         }
 
-        var commands = ctx.db().getCustomCommands(ctx.getGuild())
-                .stream()
-                .map(CustomCommand::getName)
-                .toList();
+        var commands = ctx.db().getCustomCommandNames(ctx.getGuild().getId());
 
         var description = ctx.getLanguageContext().get("general.dust");
         if (!commands.isEmpty()) {
@@ -1375,7 +1372,7 @@ public class CustomCmds {
             custom.getValues().addAll(values);
         } else {
             // Are the first two checks redundant?
-            if (!ctx.getConfig().isPremiumBot() && !ctx.getDBGuild().isPremium() && ctx.db().getCustomCommands(ctx.getGuild()).size() > 100) {
+            if (!ctx.getConfig().isPremiumBot() && !ctx.getDBGuild().isPremium() && ctx.db().countCustomCommands(ctx.getGuild().getId()) > 100) {
                 ctx.sendLocalized("commands.custom.add.too_many_commands", EmoteReference.ERROR);
                 return;
             }
@@ -44,9 +44,9 @@ import net.kodehawa.mantarobot.utils.commands.ratelimit.IncreasingRateLimiter;
 import net.kodehawa.mantarobot.utils.commands.ratelimit.RatelimitUtils;
 import org.json.JSONException;
 import org.json.JSONObject;
-import redis.clients.jedis.Jedis;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -71,44 +71,14 @@ public class DebugCmds {
     public static class Stats extends SlashCommand {
         @Override
         protected void process(SlashContext ctx) {
-            var config = ctx.getConfig();
             var bot = ctx.getBot();
-            var guilds = 0L;
-            var users = 0L;
-            var clusterTotal = 0L;
+            var clusterStats = bot.getClusterStats();
+            var stats = clusterStats.snapshot();
+            var queueSize = stats.queueSize();
             var players = 0L;
-            var totalMemory = 0L;
-            var queueSize = 0L;
-            var totalThreadCount = 0L;
-            var totalCommandCount = 0L;
-
-            String nodeData;
-            try (Jedis jedis = ctx.getJedisPool().getResource()) {
-                nodeData = jedis.hget("node-stats-" + config.getClientId(), "node-" + bot.getNodeNumber());
-            }
-
-            try(Jedis jedis = ctx.getJedisPool().getResource()) {
-                var stats = jedis.hgetAll("shardstats-" + config.getClientId());
-                for (var shards : stats.entrySet()) {
-                    var json = new JSONObject(shards.getValue());
-                    guilds += json.getLong("guild_count");
-                    users += json.getLong("cached_users");
-                }
-
-                var clusters = jedis.hgetAll("node-stats-" + config.getClientId());
-                for (var cluster : clusters.entrySet()) {
-                    var json = new JSONObject(cluster.getValue());
-                    totalMemory += json.getLong("used_memory");
-                    queueSize += json.getLong("queue_size");
-                    totalThreadCount += json.getLong("thread_count");
-                    totalCommandCount += json.getLong("commands_ran");
-                }
-
-                clusterTotal = clusters.size();
-            }
 
             // We don't need to account for node stats delay here
-            if (config.isPremiumBot()) {
+            if (ctx.getConfig().isPremiumBot()) {
                 queueSize = ctx.getBot().getAudioManager().getTotalQueueSize();
             }
 
@@ -129,14 +99,12 @@ public class DebugCmds {
                 mApiRequests = new JSONObject(APIUtils.getFrom("/mantaroapi/ping")).getInt("requests_served");
             } catch (IOException | JSONException ignored) { }
 
-            // Get the master node.
-            var node = new JSONObject(nodeData);
             var jda = ctx.getJDA();
             var shardManager = jda.getShardManager();
 
             ctx.reply("```prolog\n"
                     + " --------- Technical Information --------- \n\n"
-                    + "Uptime: " + Utils.formatDuration(ctx.getI18nContext(), node.getLong("uptime")) + "\n"
+                    + "Uptime: " + Utils.formatDuration(ctx.getI18nContext(), ManagementFactory.getRuntimeMXBean().getUptime()) + "\n"
                     + "Version: " + MantaroInfo.VERSION + " (Git: " + MantaroInfo.GIT_REVISION + ")\n"
                     + "Libraries: " + "[ JDA: %s, LP: %s ]".formatted(JDAInfo.VERSION, PlayerLibrary.VERSION) + "\n"
                     + "Commands: [ Common: " +
@@ -150,16 +118,17 @@ public class DebugCmds {
                             .count() + " ]"
                     + "\n\n --------- Debug Information --------- \n\n"
                     + "Replies: " + "[ Discord: %,d, MAPI: %,d ]".formatted(responseTotal, mApiRequests) + "\n"
-                    + "Nodes: " + "%,d (Current: %,d)".formatted(clusterTotal, ctx.getBot().getNodeNumber()) + "\n"
+                    + "Nodes: " + "%,d (Current: %,d)".formatted(stats.nodes().size(), ctx.getBot().getNodeNumber()) + "\n"
+                    + "Unhealthy Shards: " + "%,d (Stats Age: %,ds)".formatted(stats.unhealthyShards().size(), clusterStats.staleness() / 1000) + "\n"
                     + "CPU: " + "%.2f%% (Cores: %,d)".formatted(getInstanceCPUUsage() * 100, getAvailableProcessors()) + "\n"
-                    + "Memory: " +  Utils.formatMemoryAmount(totalMemory) +
+                    + "Memory: " +  Utils.formatMemoryAmount(stats.usedMemory()) +
                     " [Node: " + Utils.formatMemoryAmount(getTotalMemory() - getFreeMemory())  + "]"
                     + "\n\n --------- Mantaro Information --------- \n\n"
-                    + "Guilds: " + "%,d (Node: %,d)".formatted(guilds, shardManager.getGuildCache().size()) + "\n"
-                    + "User Cache: " + "%,d (Node: %,d)".formatted(users, shardManager.getUserCache().size()) + "\n"
+                    + "Guilds: " + "%,d (Node: %,d)".formatted(stats.guilds(), shardManager.getGuildCache().size()) + "\n"
+                    + "User Cache: " + "%,d (Node: %,d)".formatted(stats.users(), shardManager.getUserCache().size()) + "\n"
                     + "Shards: " + bot.getShardManager().getShardsTotal() + " (This: " + jda.getShardInfo().getShardId() + ")" + "\n"
-                    + "Threads: " + "%,d (Node: %,d)".formatted(totalThreadCount, Thread.activeCount()) + "\n"
-                    + "Commands Used: " + "%,d (Node: %,d)".formatted(totalCommandCount, CommandListener.getCommandTotal()) + "\n"
+                    + "Threads: " + "%,d (Node: %,d)".formatted(stats.threadCount(), Thread.activeCount()) + "\n"
+                    + "Commands Used: " + "%,d (Node: %,d)".formatted(stats.commandsRan(), CommandListener.getCommandTotal()) + "\n"
                     + (ctx.getConfig().musicEnable() ? "Overall: " + "[ Players: %,d, Queue: %,d ]".formatted(players, queueSize) + "\n" : "")
                     + "```"
             );
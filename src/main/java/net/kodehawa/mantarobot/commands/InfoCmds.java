@@ -39,19 +39,14 @@ import net.kodehawa.mantarobot.core.command.slash.SlashContext;
 import net.kodehawa.mantarobot.core.modules.Module;
 import net.kodehawa.mantarobot.core.modules.commands.base.CommandCategory;
 import net.kodehawa.mantarobot.data.I18n;
-import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.utils.StringUtils;
 import net.kodehawa.mantarobot.utils.Utils;
 import net.kodehawa.mantarobot.utils.commands.DiscordUtils;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
-import org.json.JSONObject;
-import redis.clients.jedis.Jedis;
 
 import java.awt.*;
-import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -191,26 +186,18 @@ public class InfoCmds {
             @Override
             protected void process(SlashContext ctx) {
                 StringBuilder builder = new StringBuilder();
-                Map<String, String> stats;
-
-                try(Jedis jedis = ctx.getJedisPool().getResource()) {
-                    stats = jedis.hgetAll("shardstats-" + ctx.getConfig().getClientId());
-                }
 
                 //id, shard_status, cached_users, guild_count, last_ping_diff, gateway_ping
-                stats.entrySet().stream().sorted(
-                        Comparator.comparingInt(e -> Integer.parseInt(e.getKey()))
-                ).forEach(shard -> {
-                    var jsonData = new JSONObject(shard.getValue());
-                    var shardId = Integer.parseInt(shard.getKey());
+                ctx.getBot().getClusterStats().snapshot().shards().values().forEach(shard -> {
+                    var shardId = shard.shardId();
 
                     builder.append("%-7s | %-9s | U: %-6d | G: %-4d | EV: %-8s | P: %-6s".formatted(
                             shardId + " / " + ctx.getBot().getShardManager().getShardsTotal(),
-                            jsonData.getString("shard_status"),
-                            jsonData.getLong("cached_users"),
-                            jsonData.getLong("guild_count"),
-                            jsonData.getLong("last_ping_diff") + " ms",
-                            jsonData.getLong("gateway_ping")
+                            shard.status(),
+                            shard.cachedUsers(),
+                            shard.guildCount(),
+                            shard.lastEventDiff() + " ms",
+                            shard.gatewayPing()
                     ));
 
                     if (shardId == ctx.getJDA().getShardInfo().getShardId()) {
@@ -239,10 +226,7 @@ public class InfoCmds {
         public static class Shard extends SlashCommand {
             @Override
             protected void process(SlashContext ctx) {
-                long nodeAmount;
-                try(Jedis jedis = MantaroData.getDefaultJedisPool().getResource()) {
-                    nodeAmount = jedis.hlen("node-stats-" + ctx.getConfig().getClientId());
-                }
+                var nodeAmount = ctx.getBot().getClusterStats().snapshot().nodes().size();
 
                 final var jda = ctx.getJDA();
                 final var guildCache = jda.getGuildCache();
@@ -20,9 +20,9 @@ package net.kodehawa.mantarobot.commands;
 import com.google.common.eventbus.Subscribe;
 import net.dv8tion.jda.api.entities.User;
 import net.dv8tion.jda.api.interactions.commands.OptionType;
+import net.kodehawa.mantarobot.commands.currency.item.Item;
 import net.kodehawa.mantarobot.commands.currency.item.ItemHelper;
 import net.kodehawa.mantarobot.commands.currency.item.ItemReference;
-import net.kodehawa.mantarobot.commands.currency.item.ItemStack;
 import net.kodehawa.mantarobot.core.CommandRegistry;
 import net.kodehawa.mantarobot.core.command.meta.Category;
 import net.kodehawa.mantarobot.core.command.meta.Description;
@@ -33,6 +33,8 @@ import net.kodehawa.mantarobot.core.command.slash.SlashContext;
 import net.kodehawa.mantarobot.core.modules.Module;
 import net.kodehawa.mantarobot.core.modules.commands.base.CommandCategory;
 import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.Transfers;
+import net.kodehawa.mantarobot.db.entities.Player;
 import net.kodehawa.mantarobot.utils.Utils;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
 import net.kodehawa.mantarobot.utils.commands.ratelimit.IncreasingRateLimiter;
@@ -40,6 +42,7 @@ import net.kodehawa.mantarobot.utils.commands.ratelimit.RatelimitUtils;
 
 import java.time.OffsetDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
@@ -183,15 +186,20 @@ public class TransferCmds {
             }
 
             var amountTransfer = Math.round(toSend * 0.92);
-            if (toTransfer.addMoney(amountTransfer)) {
-                transferPlayer.removeMoney(toSend);
-                transferPlayer.saveUpdating();
-
-                toTransfer.saveUpdating();
-                transferRatelimiter.limit(toTransfer.getUserId());
-                ctx.reply("commands.transfer.success", EmoteReference.CORRECT, toSend, amountTransfer, giveTo.getAsMention());
-            } else {
-                ctx.reply("commands.transfer.receipt_overflow_notice", EmoteReference.ERROR);
+            // The checks above were on what we read, this moves the money only if the sender still has it.
+            var result = MantaroData.db().transfers().transfer(new Transfers.Transfer(
+                    "transfer:" + ctx.getEvent().getId(), ctx.getAuthor().getId(), giveTo.getId(),
+                    Player.moneyPath(), toSend, amountTransfer, Long.MAX_VALUE
+            ));
+
+            switch (result) {
+                case SUCCESS -> {
+                    transferRatelimiter.limit(toTransfer.getUserId());
+                    ctx.reply("commands.transfer.success", EmoteReference.CORRECT, toSend, amountTransfer, giveTo.getAsMention());
+                }
+                case NOT_ENOUGH -> ctx.reply("commands.transfer.no_money_notice", EmoteReference.ERROR);
+                case OVER_LIMIT -> ctx.reply("commands.transfer.receipt_overflow_notice", EmoteReference.ERROR);
+                default -> ctx.reply("commands.transfer.in_progress", EmoteReference.ERROR);
             }
         }
     }
@@ -292,16 +300,7 @@ public class TransferCmds {
                     return;
                 }
 
-                player.getInventory().process(new ItemStack(item, -1));
-                giveToPlayer.getInventory().process(new ItemStack(item, 1));
-
-                player.save();
-                giveToPlayer.save();
-                ctx.reply("commands.itemtransfer.success",
-                        EmoteReference.OK, ctx.getMember().getEffectiveName(), 1,
-                        item.getName(), giveTo.getAsMention()
-                );
-
+                transferItems(ctx, giveTo, item, 1);
                 return;
             }
 
@@ -316,16 +315,25 @@ public class TransferCmds {
                     return;
                 }
 
-                player.getInventory().process(new ItemStack(item, amount * -1));
-                giveToPlayer.getInventory().process(new ItemStack(item, amount));
+                transferItems(ctx, giveTo, item, amount);
+            } else {
+                ctx.reply("commands.itemtransfer.error", EmoteReference.ERROR);
+            }
+        }
 
-                player.save();
-                giveToPlayer.save();
-                ctx.reply("commands.itemtransfer.success", EmoteReference.OK,
+        private void transferItems(SlashContext ctx, User giveTo, Item item, int amount) {
+            var result = MantaroData.db().transfers().transfer(new Transfers.Transfer(
+                    "itemtransfer:" + ctx.getEvent().getId(), ctx.getAuthor().getId(), giveTo.getId(),
+                    List.of("inventory", String.valueOf(ItemHelper.idOf(item))), amount, amount, 5000
+            ));
+
+            switch (result) {
+                case SUCCESS -> ctx.reply("commands.itemtransfer.success", EmoteReference.OK,
                         ctx.getMember().getEffectiveName(), amount, item.getName(), giveTo.getAsMention()
                 );
-            } else {
-                ctx.reply("commands.itemtransfer.error", EmoteReference.ERROR);
+                case NOT_ENOUGH -> ctx.reply("commands.itemtransfer.error", EmoteReference.ERROR);
+                case OVER_LIMIT -> ctx.reply("commands.itemtransfer.overflow_after", EmoteReference.ERROR);
+                default -> ctx.reply("commands.transfer.in_progress", EmoteReference.ERROR);
             }
         }
     }
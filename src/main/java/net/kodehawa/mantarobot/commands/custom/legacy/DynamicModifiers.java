@@ -25,6 +25,7 @@ import net.dv8tion.jda.api.entities.channel.middleman.MessageChannel;
 import net.dv8tion.jda.api.events.guild.GenericGuildEvent;
 import net.dv8tion.jda.api.events.guild.member.GenericGuildMemberEvent;
 import net.dv8tion.jda.api.events.message.GenericMessageEvent;
+import net.kodehawa.mantarobot.core.listeners.entities.CachedMessage;
 import net.kodehawa.mantarobot.core.modules.commands.base.Context;
 import net.kodehawa.mantarobot.utils.Utils;
 
@@ -91,6 +92,18 @@ public class DynamicModifiers extends LinkedHashMap<String, String> {
                 .set(prefix, "id", member.getId());
     }
 
+    // Same keys as mapUser, but from a cached snapshot, so it never has to retrieve the author.
+    public DynamicModifiers mapUser(String prefix, CachedMessage message) {
+        return this.set(prefix, message.getAuthorMention())
+                .set(prefix, "tag", message.getAuthorTag())
+                .set(prefix, "username", message.getAuthorName())
+                .set(prefix, "discriminator", message.getAuthorDiscriminator())
+                .set(prefix, "name", message.getAuthorName())
+                .set(prefix, "mention", message.getAuthorMention())
+                .set(prefix, "avatar", message.getAuthorAvatarUrl())
+                .set(prefix, "id", message.getAuthorId());
+    }
+
     public DynamicModifiers mapMember(String prefix, Member member) {
         return this.mapUser(prefix, member.getUser())
                 .set(prefix, "name", member.getEffectiveName())
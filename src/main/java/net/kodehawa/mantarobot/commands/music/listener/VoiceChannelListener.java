@@ -24,12 +24,14 @@ import net.dv8tion.jda.api.events.guild.voice.GuildVoiceMuteEvent;
 import net.dv8tion.jda.api.events.guild.voice.GuildVoiceUpdateEvent;
 import net.dv8tion.jda.api.hooks.EventListener;
 import net.kodehawa.mantarobot.MantaroBot;
+import net.kodehawa.mantarobot.core.listeners.HandlesEvents;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
 import net.kodehawa.mantarobot.utils.commands.ratelimit.RateLimiter;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.concurrent.TimeUnit;
 
+@HandlesEvents({GuildVoiceUpdateEvent.class, GuildVoiceMuteEvent.class})
 public class VoiceChannelListener implements EventListener {
     private final RateLimiter vcRatelimiter = new RateLimiter(TimeUnit.SECONDS, 5);
 
@@ -18,15 +18,14 @@
 package net.kodehawa.mantarobot.commands.utils.birthday;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
-import com.rethinkdb.model.OptArgs;
-import com.rethinkdb.utils.Types;
 import net.kodehawa.mantarobot.commands.BirthdayCmd;
 import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.ManagedDatabase;
 import net.kodehawa.mantarobot.utils.exporters.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.List;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
@@ -54,30 +53,31 @@ public class BirthdayCacher {
     public void cache() {
         executorService.submit(() -> {
             try {
-                List<Map<Object, Object>> m = r.table("users")
-                        .run(MantaroData.conn(), OptArgs.of("read_mode", "outdated"), Types.mapOf(Object.class, Object.class))
-                        .toList();
-                cachedBirthdays.clear();
-
-                for (Map<Object, Object> r : m) {
-                    try {
-                        var id = Long.parseUnsignedLong(String.valueOf(r.get("id")));
-                        // Why?
-                        if (cachedBirthdays.containsKey(id))
-                            continue;
-
-                        //Blame rethinkdb for the casting hell thx
-                        @SuppressWarnings("unchecked")
-                        var birthday = ((Map<String, String>) r.get("data")).get("birthday");
-                        if (birthday != null && !birthday.isEmpty()) {
-                            log.debug("-> PROCESS: {}", r);
-                            var bd = birthday.split("-");
-                            cachedBirthdays.put(id, new BirthdayData(birthday, Long.parseLong(bd[0]), Long.parseLong(bd[1])));
+                // Only users with a birthday set, and only the part we need. Read as it comes instead of loading the whole table.
+                var birthdays = new HashMap<Long, BirthdayData>();
+                MantaroData.db().stream("users",
+                        table -> table.hasFields(r.hashMap("data", "birthday"))
+                                .pluck("id", r.hashMap("data", "birthday")),
+                        Map.class, ManagedDatabase.STREAM_BATCH_SIZE, user -> {
+                            try {
+                                var id = Long.parseUnsignedLong(String.valueOf(user.get("id")));
+                                //Blame rethinkdb for the casting hell thx
+                                @SuppressWarnings("unchecked")
+                                var birthday = ((Map<String, String>) user.get("data")).get("birthday");
+                                if (birthday != null && !birthday.isEmpty()) {
+                                    log.debug("-> PROCESS: {}", user);
+                                    var bd = birthday.split("-");
+                                    birthdays.put(id, new BirthdayData(birthday, Long.parseLong(bd[0]), Long.parseLong(bd[1])));
+                                }
+                            } catch (Exception e) {
+                                log.error("Error inserting user to birthday cache?", e);
+                            }
                         }
-                    } catch (Exception e) {
-                        log.error("Error inserting user to birthday cache?", e);
-                    }
-                }
+                );
+
+                // Swapped in once it's done, so the birthday task never sees a half-filled cache.
+                cachedBirthdays.keySet().retainAll(birthdays.keySet());
+                cachedBirthdays.putAll(birthdays);
 
                 log.debug("-> [CACHE] Birthdays: {}", cachedBirthdays);
                 // Else we just don't have anything to clear (first startup)
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+package net.kodehawa.mantarobot.commands.utils.leaderboards;
+
+import net.dv8tion.jda.api.entities.Guild;
+import net.kodehawa.mantarobot.MantaroBot;
+import net.kodehawa.mantarobot.data.MantaroData;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.params.ZAddParams;
+import redis.clients.jedis.params.ZParams;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Leaderboards for a single guild, ranked from the global sets in {@link Leaderboards} using the guild's cached members.
+ * <br>Small guilds look up every member's score on the global set (ZMSCORE) and get sorted here. Bigger guilds get their own
+ * sorted set ("leaderboard-&lt;client id&gt;-&lt;type&gt;-&lt;guild id&gt;"), intersected from the global one (ZINTERSTORE)
+ * and kept for {@link #TTL_SECONDS}. While it's around, saves of its members update it in place.
+ */
+public class GuildLeaderboards {
+    // Up to this many members, looking every score up is cheaper than building (and keeping) a set for the guild.
+    public static final int INTERSECT_THRESHOLD = 5_000;
+    public static final int TTL_SECONDS = 600;
+    private static final int CHUNK = 1_000;
+
+    // Guilds that have their own set on this node -> when it expires, so saves know which ones to update.
+    private static final Map<Long, Long> materialized = new ConcurrentHashMap<>();
+
+    public static String keyOf(LeaderboardType type, long guildId) {
+        return Leaderboards.keyOf(type) + "-" + guildId;
+    }
+
+    /**
+     * Gets the top {@link Leaderboards#TOP} of a leaderboard between the cached members of the guild,
+     * along with where the given user is on it.
+     *
+     * @return The leaderboard, or null if the global one hasn't been built yet.
+     */
+    public static Leaderboards.Board top(LeaderboardType type, Guild guild, String userId) {
+        if (!Leaderboards.isBuilt(type)) {
+            return null;
+        }
+
+        var members = new ArrayList<String>((int) guild.getMemberCache().size());
+        guild.getMemberCache().forEach(member -> {
+            if (!member.getUser().isBot()) {
+                members.add(member.getId());
+            }
+        });
+
+        var pool = MantaroData.getDefaultJedisPool();
+        if (members.size() <= INTERSECT_THRESHOLD) {
+            return intersect(pool, Leaderboards.keyOf(type), members, userId, Leaderboards.TOP);
+        }
+
+        var board = materialize(pool, Leaderboards.keyOf(type), keyOf(type, guild.getIdLong()), members, userId, Leaderboards.TOP);
+        materialized.put(guild.getIdLong(), System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TTL_SECONDS));
+        return board;
+    }
+
+    /**
+     * Ranks the given members by looking their scores up on the global set, a chunk of ids per command, in a single round trip.
+     */
+    public static Leaderboards.Board intersect(JedisPool pool, String globalKey, Collection<String> members, String userId, int top) {
+        var ids = List.copyOf(members);
+        var responses = new ArrayList<Response<List<Double>>>();
+        try (var jedis = pool.getResource(); var pipeline = jedis.pipelined()) {
+            for (var i = 0; i < ids.size(); i += CHUNK) {
+                responses.add(pipeline.zmscore(globalKey, ids.subList(i, Math.min(ids.size(), i + CHUNK)).toArray(String[]::new)));
+            }
+
+            pipeline.sync();
+        }
+
+        var entries = new ArrayList<Leaderboards.Entry>();
+        var index = 0;
+        for (var response : responses) {
+            for (var score : response.get()) {
+                var id = ids.get(index++);
+                if (score != null) {
+                    entries.add(new Leaderboards.Entry(id, score.longValue()));
+                }
+            }
+        }
+
+        // Same order Redis would give (score, then member, both descending), so both ways rank ties the same.
+        entries.sort(Comparator.comparingLong(Leaderboards.Entry::score)
+                .thenComparing(Leaderboards.Entry::userId)
+                .reversed()
+        );
+
+        var rank = -1;
+        var userScore = 0L;
+        for (var i = 0; i < entries.size(); i++) {
+            if (entries.get(i).userId().equals(userId)) {
+                rank = i;
+                userScore = entries.get(i).score();
+                break;
+            }
+        }
+
+        return new Leaderboards.Board(List.copyOf(entries.subList(0, Math.min(top, entries.size()))), rank, userScore);
+    }
+
+    /**
+     * Ranks the given members from the guild's own set, building it from the global one if it doesn't exist.
+     */
+    public static Leaderboards.Board materialize(JedisPool pool, String globalKey, String guildKey,
+                                                 Collection<String> members, String userId, int top) {
+        try (var jedis = pool.getResource()) {
+            var board = Leaderboards.read(jedis, guildKey, userId);
+            if (board != null) {
+                return board;
+            }
+
+            var membersKey = guildKey + "-members";
+            // All at once, so two people asking for it at the same time don't mix their member lists.
+            try (var transaction = jedis.multi()) {
+                transaction.del(membersKey);
+                var chunk = new ArrayList<String>(CHUNK);
+                for (var member : members) {
+                    chunk.add(member);
+                    if (chunk.size() == CHUNK) {
+                        transaction.sadd(membersKey, chunk.toArray(String[]::new));
+                        chunk.clear();
+                    }
+                }
+
+                if (!chunk.isEmpty()) {
+                    transaction.sadd(membersKey, chunk.toArray(String[]::new));
+                }
+
+                // Plain sets count as a score of 1, weighted to 0 so only the global score is left.
+                transaction.zinterstore(guildKey, new ZParams().weights(0, 1), membersKey, globalKey);
+                transaction.expire(guildKey, TTL_SECONDS);
+                transaction.del(membersKey);
+                transaction.exec();
+            }
+
+            board = Leaderboards.read(jedis, guildKey, userId);
+            return board == null ? new Leaderboards.Board(List.of(), -1, 0) : board;
+        }
+    }
+
+    /**
+     * Updates the sets of the guilds on this node that have one and that the user is in. Called when sending a leaderboard update.
+     * <br>Only people already on the set get updated (XX), anyone else shows up when it gets built again.
+     */
+    static void update(Pipeline pipeline, LeaderboardType type, String member, long score) {
+        if (materialized.isEmpty()) {
+            return;
+        }
+
+        var bot = MantaroBot.getInstance();
+        var now = System.currentTimeMillis();
+        materialized.entrySet().removeIf(entry -> entry.getValue() < now);
+        for (var guildId : materialized.keySet()) {
+            var guild = bot.getShardManager().getGuildById(guildId);
+            if (guild == null || guild.getMemberById(member) == null) {
+                continue;
+            }
+
+            var key = keyOf(type, guildId);
+            if (score > 0) {
+                pipeline.zadd(key, score, member, ZAddParams.zAddParams().xx());
+            } else {
+                pipeline.zrem(key, member);
+            }
+        }
+    }
+}
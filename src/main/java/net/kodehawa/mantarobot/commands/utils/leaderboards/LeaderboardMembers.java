@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+package net.kodehawa.mantarobot.commands.utils.leaderboards;
+
+import net.dv8tion.jda.api.entities.User;
+import net.dv8tion.jda.api.exceptions.ErrorResponseException;
+import net.dv8tion.jda.api.requests.ErrorResponse;
+import net.dv8tion.jda.api.sharding.ShardManager;
+import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.utils.data.JsonDataManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Resolves the names of everyone on a leaderboard at once.
+ * <p>
+ * Names are cached in Redis ("cachedlbuser:&lt;id&gt;", for 48 hours), so they can be used cross-node and we don't call
+ * Discord every single time a leaderboard is shown, which might create hundreds of API requests in a few seconds,
+ * causing some nice 429s. Users Discord doesn't know about are remembered for 12 hours ("lbmiss:&lt;id&gt;").
+ * <p>
+ * All cached entries come from a single MGET. Whoever is missing gets looked up on Discord, a few at a time,
+ * and everything learned is written back in a single pipeline.
+ */
+public class LeaderboardMembers {
+    private static final Logger log = LoggerFactory.getLogger(LeaderboardMembers.class);
+    // How many users we ask Discord for at the same time.
+    private static final int MAX_CONCURRENT_LOOKUPS = 4;
+    private static final long LOOKUP_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+    private static final long CACHED_TTL = TimeUnit.HOURS.toSeconds(48);
+    private static final long MISSED_TTL = TimeUnit.HOURS.toSeconds(12);
+
+    /**
+     * @return The members that could be resolved, by id. Anyone Discord doesn't know about is left out.
+     */
+    public static Map<String, CachedLeaderboardMember> resolve(ShardManager shardManager, List<String> ids) {
+        var resolved = new HashMap<String, CachedLeaderboardMember>();
+        if (ids.isEmpty()) {
+            return resolved;
+        }
+
+        var keys = new String[ids.size() * 2];
+        for (var i = 0; i < ids.size(); i++) {
+            keys[i * 2] = "cachedlbuser:" + ids.get(i);
+            keys[i * 2 + 1] = "lbmiss:" + ids.get(i);
+        }
+
+        List<String> values;
+        try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
+            values = jedis.mget(keys);
+        }
+
+        var missing = new ArrayList<String>();
+        for (var i = 0; i < ids.size(); i++) {
+            var json = values.get(i * 2);
+            if (json != null) {
+                try {
+                    resolved.put(ids.get(i), JsonDataManager.fromJson(json, CachedLeaderboardMember.class));
+                    continue;
+                } catch (Exception e) {
+                    log.warn("Invalid cached leaderboard member {}, looking it up again", ids.get(i));
+                }
+            }
+
+            // No need to keep trying missed entries for a while.
+            if (values.get(i * 2 + 1) == null) {
+                missing.add(ids.get(i));
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            lookup(shardManager, missing, resolved);
+        }
+
+        return resolved;
+    }
+
+    private static void lookup(ShardManager shardManager, List<String> ids, Map<String, CachedLeaderboardMember> resolved) {
+        var permits = new Semaphore(MAX_CONCURRENT_LOOKUPS);
+        var lookups = new HashMap<String, CompletableFuture<User>>();
+        for (var id : ids) {
+            permits.acquireUninterruptibly();
+            var future = shardManager.retrieveUserById(id).submit();
+            future.whenComplete((user, error) -> permits.release());
+            lookups.put(id, future);
+        }
+
+        var found = new HashMap<String, String>();
+        var missed = new ArrayList<String>();
+        var deadline = System.currentTimeMillis() + LOOKUP_TIMEOUT;
+        for (var lookup : lookups.entrySet()) {
+            try {
+                var user = lookup.getValue().get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                var member = new CachedLeaderboardMember(
+                        user.getIdLong(), user.getName(), user.getDiscriminator(), System.currentTimeMillis()
+                );
+
+                resolved.put(lookup.getKey(), member);
+                found.put(lookup.getKey(), JsonDataManager.toJson(member));
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof ErrorResponseException error && error.getErrorResponse() == ErrorResponse.UNKNOWN_USER) {
+                    missed.add(lookup.getKey());
+                } else {
+                    log.warn("Unable to look up leaderboard member {}", lookup.getKey(), e.getCause());
+                }
+            } catch (TimeoutException e) {
+                // Whatever didn't make it in time gets skipped, and looked up again next time.
+                log.debug("Timed out looking up leaderboard member {}", lookup.getKey());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.warn("Unable to cache leaderboard member {}", lookup.getKey(), e);
+            }
+        }
+
+        if (found.isEmpty() && missed.isEmpty()) {
+            return;
+        }
+
+        try (var jedis = MantaroData.getDefaultJedisPool().getResource(); var pipeline = jedis.pipelined()) {
+            for (var entry : found.entrySet()) {
+                pipeline.setex("cachedlbuser:" + entry.getKey(), CACHED_TTL, entry.getValue());
+            }
+
+            for (var id : missed) {
+                pipeline.setex("lbmiss:" + id, MISSED_TTL, "1");
+            }
+
+            pipeline.sync();
+        }
+    }
+}
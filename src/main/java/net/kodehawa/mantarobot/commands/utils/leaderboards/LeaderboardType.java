@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+package net.kodehawa.mantarobot.commands.utils.leaderboards;
+
+import com.rethinkdb.gen.ast.ReqlExpr;
+import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.ManagedObject;
+import net.kodehawa.mantarobot.db.entities.DBUser;
+import net.kodehawa.mantarobot.db.entities.Player;
+import net.kodehawa.mantarobot.db.entities.PlayerStats;
+
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Every leaderboard we keep a sorted set for (see {@link Leaderboards}), along with where its score comes from:
+ * the object that holds it, and the table/index/field to rebuild it from RethinkDB.
+ */
+public enum LeaderboardType {
+    // Premium and self-hosted bots never had their money reset, so they still use the old field.
+    MONEY(Player.class, "players", oldMoney() ? "money" : "newMoney",
+            row -> oldMoney() ? row.g("money") : row.g("data").g("newMoney"),
+            object -> ((Player) object).getCurrentMoney()),
+    REPUTATION(Player.class, "players", "reputation",
+            row -> row.g("reputation"),
+            object -> ((Player) object).getReputation()),
+    DAILY_STREAK(Player.class, "players", "userDailyStreak",
+            row -> row.g("data").g("dailyStrike"),
+            object -> ((Player) object).getData().getDailyStreak()),
+    GAME_WINS(Player.class, "players", "gameWins",
+            row -> row.g("data").g("gamesWon"),
+            object -> ((Player) object).getData().getGamesWon()),
+    GAMBLE_WINS(PlayerStats.class, "playerstats", "gambleWins",
+            row -> row.g("gambleWins"),
+            object -> ((PlayerStats) object).getGambleWins()),
+    SLOTS_WINS(PlayerStats.class, "playerstats", "slotsWins",
+            row -> row.g("slotsWins"),
+            object -> ((PlayerStats) object).getSlotsWins()),
+    TIMES_CLAIMED(DBUser.class, "users", "timesClaimed",
+            row -> row.g("data").g("timesClaimed"),
+            object -> ((DBUser) object).getData().getTimesClaimed());
+
+    private final Class<? extends ManagedObject> holder;
+    private final String table;
+    private final String index;
+    private final Function<ReqlExpr, ReqlExpr> field;
+    private final ToLongFunction<ManagedObject> score;
+
+    LeaderboardType(Class<? extends ManagedObject> holder, String table, String index,
+                    Function<ReqlExpr, ReqlExpr> field, ToLongFunction<ManagedObject> score) {
+        this.holder = holder;
+        this.table = table;
+        this.index = index;
+        this.field = field;
+        this.score = score;
+    }
+
+    public Class<? extends ManagedObject> getHolder() {
+        return holder;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public String getIndex() {
+        return index;
+    }
+
+    public ReqlExpr field(ReqlExpr row) {
+        return field.apply(row);
+    }
+
+    public long scoreOf(ManagedObject object) {
+        return score.applyAsLong(object);
+    }
+
+    private static boolean oldMoney() {
+        var config = MantaroData.config().get();
+        return config.isPremiumBot() || config.isSelfHost();
+    }
+}
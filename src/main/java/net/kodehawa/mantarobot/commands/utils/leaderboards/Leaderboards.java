@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+package net.kodehawa.mantarobot.commands.utils.leaderboards;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.ManagedDatabase;
+import net.kodehawa.mantarobot.db.ManagedObject;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.resps.Tuple;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.rethinkdb.RethinkDB.r;
+
+/**
+ * Keeps every {@link LeaderboardType} as a Redis sorted set ("leaderboard-&lt;client id&gt;-&lt;type&gt;", user id -> score),
+ * so showing a leaderboard is a single round trip to Redis instead of an index scan on RethinkDB.
+ * <br>Sets are updated every time a player, player stats or user is saved, and rebuilt from RethinkDB every once in a while
+ * by the master node (see {@link #buildMissing()} and {@link #rebuildAll()}), which takes care of anything the updates missed.
+ * Until a set has been built once, asking for it gives back null instead of building it on the spot.
+ * <br>Everyone with a score is kept (not just the top), since {@link GuildLeaderboards} ranks each guild from these.
+ */
+public class Leaderboards {
+    private static final Logger log = LoggerFactory.getLogger(Leaderboards.class);
+    public static final int TOP = 10;
+    private static final int REBUILD_BATCH = 5_000;
+
+    // Updates are sent from here so saving doesn't wait on Redis. One thread, so updates to the same user stay in order.
+    // If it can't keep up, updates get dropped: the next rebuild puts them back.
+    private static final ThreadPoolExecutor updates = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(10_000),
+            new ThreadFactoryBuilder().setNameFormat("Mantaro Leaderboard Updater").setDaemon(true).build()
+    );
+
+    // Leaderboards being rebuilt -> the latest score sent for every member while it was, so the rebuild can replay them.
+    private static final Map<LeaderboardType, Map<String, Long>> rebuilding = new ConcurrentHashMap<>();
+    // Held while sending updates and while swapping a rebuilt leaderboard in, so no update lands in between.
+    private static final Object swapLock = new Object();
+
+    static {
+        Metrics.THREAD_POOL_COLLECTOR.add("leaderboard-updates", updates);
+    }
+
+    public static String keyOf(LeaderboardType type) {
+        return "leaderboard-" + MantaroData.config().get().getClientId() + "-" + type.name().toLowerCase();
+    }
+
+    /**
+     * Updates the score of the saved object on every leaderboard it's part of. Called from the save path.
+     */
+    public static void update(ManagedObject object) {
+        update(object, false);
+    }
+
+    /**
+     * Takes a deleted object off every leaderboard it was on.
+     */
+    public static void remove(ManagedObject object) {
+        update(object, true);
+    }
+
+    private static void update(ManagedObject object, boolean removed) {
+        Map<LeaderboardType, Long> scores = null;
+        for (var type : LeaderboardType.values()) {
+            if (type.getHolder().isInstance(object)) {
+                if (scores == null) {
+                    scores = new EnumMap<>(LeaderboardType.class);
+                }
+
+                // Take the values now, the object might keep changing after it's saved.
+                scores.put(type, removed ? 0 : type.scoreOf(object));
+            }
+        }
+
+        if (scores == null) {
+            return;
+        }
+
+        var member = object.getDatabaseId();
+        var toSend = scores;
+        try {
+            updates.execute(() -> send(member, toSend));
+        } catch (RejectedExecutionException e) {
+            log.debug("Dropped leaderboard update for {}", member);
+        }
+    }
+
+    private static void send(String member, Map<LeaderboardType, Long> scores) {
+        synchronized (swapLock) {
+            sendLocked(member, scores);
+        }
+    }
+
+    private static void sendLocked(String member, Map<LeaderboardType, Long> scores) {
+        try (var jedis = MantaroData.getDefaultJedisPool().getResource(); var pipeline = jedis.pipelined()) {
+            for (var entry : scores.entrySet()) {
+                var journal = rebuilding.get(entry.getKey());
+                if (journal != null) {
+                    journal.put(member, entry.getValue());
+                }
+
+                var key = keyOf(entry.getKey());
+                if (entry.getValue() > 0) {
+                    pipeline.zadd(key, entry.getValue(), member);
+                } else {
+                    pipeline.zrem(key, member);
+                }
+
+                GuildLeaderboards.update(pipeline, entry.getKey(), member, entry.getValue());
+            }
+
+            pipeline.sync();
+        } catch (Exception e) {
+            log.error("Unable to update leaderboards for {}", member, e);
+        }
+    }
+
+    /**
+     * Gets the top {@link #TOP} of a leaderboard along with where the given user is on it, in a single round trip.
+     *
+     * @return The leaderboard, or null if it hasn't been built yet.
+     */
+    public static Board top(LeaderboardType type, String userId) {
+        var board = read(keyOf(type), userId);
+        if (board == null) {
+            // Empty leaderboards don't have a set at all, tell them apart from the ones that were never built.
+            return isBuilt(type) ? new Board(List.of(), -1, 0) : null;
+        }
+
+        return board;
+    }
+
+    /**
+     * @return Whether the leaderboard was built at least once.
+     */
+    static boolean isBuilt(LeaderboardType type) {
+        try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
+            return jedis.exists(builtKeyOf(type));
+        }
+    }
+
+    private static String builtKeyOf(LeaderboardType type) {
+        return keyOf(type) + "-built";
+    }
+
+    static Board read(String key, String userId) {
+        try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
+            return read(jedis, key, userId);
+        }
+    }
+
+    /**
+     * @return The top {@link #TOP} of the given sorted set, or null if it's empty or doesn't exist.
+     */
+    static Board read(Jedis jedis, String key, String userId) {
+        try (var pipeline = jedis.pipelined()) {
+            var top = pipeline.zrevrangeWithScores(key, 0, TOP - 1);
+            var rank = pipeline.zrevrank(key, userId);
+            var score = pipeline.zscore(key, userId);
+            pipeline.sync();
+
+            if (top.get().isEmpty()) {
+                return null;
+            }
+
+            var entries = new ArrayList<Entry>(top.get().size());
+            for (Tuple tuple : top.get()) {
+                entries.add(new Entry(tuple.getElement(), (long) tuple.getScore()));
+            }
+
+            return new Board(entries, rank.get() == null ? -1 : rank.get(), score.get() == null ? 0 : score.get().longValue());
+        }
+    }
+
+    /**
+     * Builds the leaderboards that were never built (or that Redis lost). Run by the master node.
+     */
+    public static void buildMissing() {
+        for (var type : LeaderboardType.values()) {
+            try {
+                if (!isBuilt(type)) {
+                    rebuild(type);
+                }
+            } catch (Exception e) {
+                log.error("Unable to build the {} leaderboard", type, e);
+            }
+        }
+    }
+
+    public static void rebuildAll() {
+        for (var type : LeaderboardType.values()) {
+            try {
+                rebuild(type);
+            } catch (Exception e) {
+                log.error("Unable to rebuild the {} leaderboard", type, e);
+            }
+        }
+    }
+
+    /**
+     * Replaces a leaderboard with everyone that has a score on RethinkDB.
+     * Rows are streamed (see {@link ManagedDatabase#stream}) into Redis in batches, so this doesn't hold the whole table in memory.
+     * Updates sent while the table is being read are replayed on top before the new set is swapped in, as the read
+     * might have seen an older score than the one they set.
+     */
+    public static synchronized void rebuild(LeaderboardType type) {
+        var start = System.currentTimeMillis();
+        var key = keyOf(type);
+        var temporary = key + "-rebuild";
+        var count = new AtomicInteger();
+        // Everything saved before this point is already on the database, and anything after gets journaled.
+        var journal = new ConcurrentHashMap<String, Long>();
+        rebuilding.put(type, journal);
+        try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
+            jedis.del(temporary);
+            var scores = new HashMap<String, Double>();
+            MantaroData.db().stream(type.getTable(),
+                    table -> table.between(1, r.maxval())
+                            .optArg("index", type.getIndex())
+                            .map(row -> r.hashMap("id", row.g("id")).with("score", type.field(row))),
+                    Map.class, REBUILD_BATCH, row -> {
+                        if (row.get("score") instanceof Number score && score.longValue() > 0) {
+                            // Player ids are <user id>:g.
+                            scores.put(row.get("id").toString().split(":")[0], score.doubleValue());
+                        }
+
+                        if (scores.size() == REBUILD_BATCH) {
+                            count.addAndGet(scores.size());
+                            jedis.zadd(temporary, scores);
+                            scores.clear();
+                        }
+                    }
+            );
+
+            if (!scores.isEmpty()) {
+                count.addAndGet(scores.size());
+                jedis.zadd(temporary, scores);
+            }
+
+            synchronized (swapLock) {
+                for (var entry : journal.entrySet()) {
+                    if (entry.getValue() > 0) {
+                        jedis.zadd(temporary, entry.getValue(), entry.getKey());
+                    } else {
+                        jedis.zrem(temporary, entry.getKey());
+                    }
+                }
+
+                if (jedis.exists(temporary)) {
+                    // Swaps it in at once, so nobody sees a half-built leaderboard.
+                    jedis.rename(temporary, key);
+                } else {
+                    jedis.del(key);
+                }
+
+                jedis.set(builtKeyOf(type), String.valueOf(System.currentTimeMillis()));
+            }
+        } finally {
+            rebuilding.remove(type);
+        }
+
+        log.info("Rebuilt the {} leaderboard with {} entries in {}ms", type, count.get(), System.currentTimeMillis() - start);
+    }
+
+    public record Entry(String userId, long score) { }
+
+    /**
+     * @param rank Zero-based position of the user that asked, or -1 if they aren't on it.
+     * @param score Their score, 0 if they aren't on it.
+     */
+    public record Board(List<Entry> top, long rank, long score) { }
+}
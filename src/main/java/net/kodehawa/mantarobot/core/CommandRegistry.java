@@ -18,7 +18,6 @@
 package net.kodehawa.mantarobot.core;
 
 import com.google.common.base.Preconditions;
-import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.User;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
 import net.dv8tion.jda.api.events.interaction.command.UserContextInteractionEvent;
@@ -26,12 +25,13 @@ import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 import net.kodehawa.mantarobot.commands.CustomCmds;
 import net.kodehawa.mantarobot.core.command.CommandManager;
 import net.kodehawa.mantarobot.core.command.NewCommand;
-import net.kodehawa.mantarobot.core.command.NewContext;
-import net.kodehawa.mantarobot.core.command.argument.ArgumentParseError;
+import net.kodehawa.mantarobot.core.command.pipeline.CommandPipeline;
+import net.kodehawa.mantarobot.core.command.pipeline.ContextInvocation;
+import net.kodehawa.mantarobot.core.command.pipeline.SlashInvocation;
+import net.kodehawa.mantarobot.core.command.pipeline.TextInvocation;
+import net.kodehawa.mantarobot.core.command.processor.CommandTimer;
 import net.kodehawa.mantarobot.core.command.slash.ContextCommand;
-import net.kodehawa.mantarobot.core.command.slash.InteractionContext;
 import net.kodehawa.mantarobot.core.command.slash.SlashCommand;
-import net.kodehawa.mantarobot.core.command.slash.SlashContext;
 import net.kodehawa.mantarobot.core.modules.commands.AliasCommand;
 import net.kodehawa.mantarobot.core.modules.commands.base.Command;
 import net.kodehawa.mantarobot.core.modules.commands.base.CommandCategory;
@@ -41,19 +41,12 @@ import net.kodehawa.mantarobot.core.modules.commands.help.HelpContent;
 import net.kodehawa.mantarobot.core.modules.commands.i18n.I18nContext;
 import net.kodehawa.mantarobot.data.Config;
 import net.kodehawa.mantarobot.data.MantaroData;
-import net.kodehawa.mantarobot.db.ManagedDatabase;
 import net.kodehawa.mantarobot.db.entities.DBGuild;
-import net.kodehawa.mantarobot.db.entities.DBUser;
-import net.kodehawa.mantarobot.db.entities.helpers.GuildData;
 import net.kodehawa.mantarobot.options.core.Option;
-import net.kodehawa.mantarobot.utils.Utils;
-import net.kodehawa.mantarobot.utils.commands.EmoteReference;
 import net.kodehawa.mantarobot.utils.commands.ratelimit.RateLimiter;
-import net.kodehawa.mantarobot.utils.exporters.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -61,13 +54,12 @@ import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 public class CommandRegistry {
-    private static final Logger commandLog = LoggerFactory.getLogger("command-log");
     private static final Logger log = LoggerFactory.getLogger(CommandRegistry.class);
 
     private final Map<String, Command> commands;
     private final Config config = MantaroData.config().get();
     private final CommandManager newCommands = new CommandManager();
-    private final RateLimiter rl = new RateLimiter(TimeUnit.HOURS, 1);
+    private final CommandPipeline pipeline = CommandPipeline.defaultPipeline(config, new RateLimiter(TimeUnit.HOURS, 1));
 
     public CommandRegistry(Map<String, Command> commands) {
         this.commands = Preconditions.checkNotNull(commands);
@@ -100,166 +92,17 @@ public class CommandRegistry {
             return;
         }
 
-        final var managedDatabase = MantaroData.db();
-        final var start = System.currentTimeMillis();
         var command = commands.get(cmdName.toLowerCase());
-        var guildData = dbGuild.getData();
-
         if (command == null) {
+            CommandTimer.label("custom", "custom");
             // We will create a proper I18nContext once the custom command goes through, if it does. We don't need it otherwise.
-            CustomCmds.handle(prefix, cmdName, new Context(event, new I18nContext(), content, isMention), guildData, content);
-            return;
-        }
-
-        final var author = event.getAuthor();
-        final var channel = event.getChannel();
-        // Variable used in lambda expression should be final or effectively final...
-        final var cmd = command;
-        final var guild = event.getGuild();
-        final var mantaroData = managedDatabase.getMantaroData();
-
-        if (mantaroData.getBlackListedGuilds().contains(guild.getId())) {
-            log.debug("Got command from blacklisted guild {}, dropping", guild.getId());
-            return;
-        }
-
-        // !! Permission check start
-        if (guildData.getDisabledCommands().contains(name(cmd, cmdName))) {
-            sendDisabledNotice(event, guildData, CommandDisableLevel.COMMAND);
-            return;
-        }
-
-        final var member = event.getMember();
-        if (member == null) { // Shouldn't be possible at this stage?
-            return;
-        }
-
-        final var roles = member.getRoles();
-        final var channelDisabledCommands = guildData.getChannelSpecificDisabledCommands().get(channel.getId());
-        if (channelDisabledCommands != null && channelDisabledCommands.contains(name(cmd, cmdName))) {
-            sendDisabledNotice(event, guildData, CommandDisableLevel.COMMAND_SPECIFIC);
-            return;
-        }
-
-        if (guildData.getDisabledUsers().contains(author.getId()) && isNotAdmin(member)) {
-            sendDisabledNotice(event, guildData, CommandDisableLevel.USER);
-            return;
-        }
-
-        var isOptions = cmdName.equalsIgnoreCase("opts");
-        if (guildData.getDisabledChannels().contains(channel.getId()) && !isOptions) {
-            sendDisabledNotice(event, guildData, CommandDisableLevel.CHANNEL);
-            return;
-        }
-
-        if (guildData.getDisabledCategories().contains(root(cmd).category()) && !isOptions) {
-            sendDisabledNotice(event, guildData, CommandDisableLevel.CATEGORY);
-            return;
-        }
-
-        if (guildData.getChannelSpecificDisabledCategories().computeIfAbsent(
-                channel.getId(), c -> new ArrayList<>()).contains(root(cmd).category()) && !isOptions) {
-            sendDisabledNotice(event, guildData, CommandDisableLevel.SPECIFIC_CATEGORY);
-            return;
-        }
-
-        if (guildData.getWhitelistedRole() != null && isNotAdmin(member)) {
-            var whitelistedRole = guild.getRoleById(guildData.getWhitelistedRole());
-            if (whitelistedRole != null && roles.stream().noneMatch(r -> whitelistedRole.getId().equals(r.getId()))) {
-                return;
-            }
-            // else continue.
-        }
-
-        if (!guildData.getDisabledRoles().isEmpty() && roles.stream().anyMatch(
-                r -> guildData.getDisabledRoles().contains(r.getId())) && isNotAdmin(member)) {
-            sendDisabledNotice(event, guildData, CommandDisableLevel.ROLE);
-            return;
-        }
-
-        final var roleSpecificDisabledCommands = guildData.getRoleSpecificDisabledCommands();
-        if (roles.stream().anyMatch(r -> roleSpecificDisabledCommands.computeIfAbsent(
-                r.getId(), s -> new ArrayList<>()).contains(name(cmd, cmdName))) && isNotAdmin(member)) {
-            sendDisabledNotice(event, guildData, CommandDisableLevel.SPECIFIC_ROLE);
-            return;
-        }
-
-        final var roleSpecificDisabledCategories = guildData.getRoleSpecificDisabledCategories();
-        if (roles.stream().anyMatch(r -> roleSpecificDisabledCategories.computeIfAbsent(
-                r.getId(), s -> new ArrayList<>()).contains(root(cmd).category())) && isNotAdmin(member)) {
-            sendDisabledNotice(event, guildData, CommandDisableLevel.SPECIFIC_ROLE_CATEGORY);
-            return;
-        }
-
-        if (mantaroData.getBlackListedUsers().contains(author.getId())) {
-            if (!rl.process(author)) {
-                return;
-            }
-
-            channel.sendMessage("""
-                    :x: You have been blocked from using all of Mantaro's functions, likely for botting or hitting the spam filter.
-                    If you wish to get more details on why or appeal the ban, send an email to `contact@mantaro.site`. Make sure to be sincere.
-                    """
-            ).queue();
-            return;
-        }
-
-        // If we are in the patreon bot, deny all requests from unknown guilds.
-        if (config.isPremiumBot() && !config.isOwner(author) && !dbGuild.isPremium()) {
-            channel.sendMessage("""
-                            :x: Seems like you're trying to use the Patreon bot when this guild is **not** marked as premium.
-                            **If you think this is an error please contact Kodehawa#3457 or poke me on #donators in the support guild**
-                            If you didn't contact Kodehawa prior to adding this bot to this server, please do so so we can link it to your pledge.
-                            """
-            ).queue();
+            CustomCmds.handle(prefix, cmdName, new Context(event, new I18nContext(), content, isMention), dbGuild.getData(), content);
             return;
         }
 
-        if (!cmd.permission().test(member)) {
-            channel.sendMessage(EmoteReference.STOP + "You have no permissions to trigger this command :(").queue();
-            return;
-        }
-        // !! Permission check end
-
-        final var dbUser = managedDatabase.getUser(author);
-        final var userData = dbUser.getData();
-        renewPremiumKey(managedDatabase, author, dbUser, guildData);
-
-        // Used a command on the new system?
-        // sort-of-fix: remove if statement when we port all commands
-        boolean executedNew;
-        try {
-            executedNew = newCommands.execute(new NewContext(event.getMessage(),
-                    new I18nContext(guildData, userData),
-                    event.getMessage().getContentRaw().substring(prefix.length()))
-            );
-        } catch (ArgumentParseError e) {
-            if (e.getMessage() != null) {
-                channel.sendMessage(EmoteReference.ERROR + e.getMessage()).queue();
-            } else {
-                e.printStackTrace();
-                channel.sendMessage(
-                        EmoteReference.ERROR + "There was an error parsing the arguments for this command. Please report this to the developers"
-                ).queue();
-            }
-
-            return;
-        }
-
-        if (!executedNew) {
-            cmd.run(new Context(event, new I18nContext(guildData, userData), cmdName, content, isMention), cmdName, content);
-        }
-
-        commandLog.debug("Command: {}, User: {} ({}), Guild: {}, Channel: {}, Message: {}" ,
-                cmdName, author.getAsTag(), author.getId(), guild.getId(), channel.getId(), event.getMessage().getId()
+        pipeline.run(new TextInvocation(MantaroData.db(), dbGuild, event, newCommands,
+                command, name(command, cmdName), root(command).category(), cmdName, content, prefix, isMention)
         );
-
-        final var end = System.currentTimeMillis();
-        final var category = root(cmd).category() == null ? "custom" : root(cmd).category().name().toLowerCase();
-
-        Metrics.CATEGORY_COUNTER.labels(category).inc();
-        Metrics.COMMAND_COUNTER.labels(name(cmd, cmdName)).inc();
-        Metrics.COMMAND_LATENCY.observe(end - start);
     }
 
     // Process (user) context interaction.
@@ -271,56 +114,12 @@ public class CommandRegistry {
             return;
         }
 
-        var start = System.currentTimeMillis();
         var cmd = getCommandManager().contextUserCommands().get(event.getCommandPath());
         if (cmd == null) {
             return;
         }
 
-        final var managedDatabase = MantaroData.db();
-        final var mantaroData = managedDatabase.getMantaroData();
-        final var guild = event.getGuild();
-
-        if (mantaroData.getBlackListedGuilds().contains(guild.getId())) {
-            log.debug("Got command from blacklisted guild {}, dropping", guild.getId());
-            event.reply("Not accepting commands from this server.")
-                    .setEphemeral(true)
-                    .queue();
-            return;
-        }
-
-        if (!cmd.getPermission().test(event.getMember())) {
-            event.reply(EmoteReference.STOP + "You have no permissions to trigger this command :(")
-                    .setEphemeral(true)
-                    .queue();
-            return;
-        }
-
-        final var author = event.getUser();
-        final var dbGuild = managedDatabase.getGuild(event.getGuild());
-        // If we are in the patreon bot, deny all requests from unknown guilds.
-        if (config.isPremiumBot() && !config.isOwner(author) && !dbGuild.isPremium()) {
-            event.reply("""
-                            :x: Seems like you're trying to use the Patreon bot when this guild is **not** marked as premium.
-                            **If you think this is an error please contact Kodehawa#3457 or poke me on #donators in the support guild**
-                            If you didn't contact Kodehawa prior to adding this bot to this server, please do so so we can link it to your pledge.
-                            """
-            ).setEphemeral(true).queue();
-            return;
-        }
-
-        final var guildData = dbGuild.getData();
-        final var dbUser = managedDatabase.getUser(author);
-        final var userData = dbUser.getData();
-
-        cmd.execute(new InteractionContext<>(event, new I18nContext(guildData, userData)));
-        commandLog.debug("Context (user) command: {}, User: {} ({}), Guild: {}" ,
-                cmd.getName(), author.getAsTag(), author.getId(), guild.getId()
-        );
-
-        final var end = System.currentTimeMillis();
-        Metrics.COMMAND_COUNTER.labels(cmd.getName() + "-context").inc();
-        Metrics.COMMAND_LATENCY.observe(end - start);
+        pipeline.run(new ContextInvocation(MantaroData.db(), event, cmd));
     }
 
     // Process slash commands.
@@ -332,182 +131,13 @@ public class CommandRegistry {
             return;
         }
 
-        final var start = System.currentTimeMillis();
         var command = getCommandManager().slashCommands().get(event.getName().toLowerCase());
-
         // Only process custom commands outside slash.
         if (command == null) {
             return;
         }
 
-        final var managedDatabase = MantaroData.db();
-        final var mantaroData = managedDatabase.getMantaroData();
-        final var guild = event.getGuild();
-
-        if (mantaroData.getBlackListedGuilds().contains(guild.getId())) {
-            log.debug("Got command from blacklisted guild {}, dropping", guild.getId());
-            event.reply("Not accepting commands from this server.")
-                    .setEphemeral(true)
-                    .queue();
-            return;
-        }
-
-        final var author = event.getUser();
-        final var channel = event.getChannel();
-        // Variable used in lambda expression should be final or effectively final...
-        final var cmd = command;
-        final var name = cmd.getName();
-        final var dbGuild = managedDatabase.getGuild(event.getGuild());
-        final var guildData = dbGuild.getData();
-
-        // !! Permission check start
-        if (guildData.getDisabledCommands().contains(name)) {
-            sendDisabledNotice(event, CommandDisableLevel.COMMAND);
-            return;
-        }
-
-        final var member = event.getMember();
-        if (member == null) {
-            return;
-        }
-
-        final var roles = member.getRoles();
-        final var channelDisabledCommands = guildData.getChannelSpecificDisabledCommands().get(channel.getId());
-        if (channelDisabledCommands != null && channelDisabledCommands.contains(name)) {
-            sendDisabledNotice(event, CommandDisableLevel.COMMAND_SPECIFIC);
-            return;
-        }
-
-        if (guildData.getDisabledUsers().contains(author.getId()) && isNotAdmin(member)) {
-            sendDisabledNotice(event, CommandDisableLevel.USER);
-            return;
-        }
-        if (guildData.getDisabledChannels().contains(channel.getId())) {
-            sendDisabledNotice(event, CommandDisableLevel.CHANNEL);
-            return;
-        }
-
-        if (guildData.getDisabledCategories().contains(cmd.getCategory())) {
-            sendDisabledNotice(event, CommandDisableLevel.CATEGORY);
-            return;
-        }
-
-        if (guildData.getChannelSpecificDisabledCategories().computeIfAbsent(
-                channel.getId(), c -> new ArrayList<>()).contains(cmd.getCategory())) {
-            sendDisabledNotice(event, CommandDisableLevel.SPECIFIC_CATEGORY);
-            return;
-        }
-
-        if (guildData.getWhitelistedRole() != null && isNotAdmin(member)) {
-            var whitelistedRole = guild.getRoleById(guildData.getWhitelistedRole());
-            if (whitelistedRole != null && roles.stream().noneMatch(r -> whitelistedRole.getId().equals(r.getId()))) {
-                return;
-            }
-            // else continue.
-        }
-
-        if (!guildData.getDisabledRoles().isEmpty() && roles.stream().anyMatch(
-                r -> guildData.getDisabledRoles().contains(r.getId())) && isNotAdmin(member)) {
-            sendDisabledNotice(event, CommandDisableLevel.ROLE);
-            return;
-        }
-
-        final var roleSpecificDisabledCommands = guildData.getRoleSpecificDisabledCommands();
-        if (roles.stream().anyMatch(r -> roleSpecificDisabledCommands.computeIfAbsent(
-                r.getId(), s -> new ArrayList<>()).contains(name)) && isNotAdmin(member)) {
-            sendDisabledNotice(event, CommandDisableLevel.SPECIFIC_ROLE);
-            return;
-        }
-
-        final var roleSpecificDisabledCategories = guildData.getRoleSpecificDisabledCategories();
-        if (roles.stream().anyMatch(r -> roleSpecificDisabledCategories.computeIfAbsent(
-                r.getId(), s -> new ArrayList<>()).contains(cmd.getCategory())) && isNotAdmin(member)) {
-            sendDisabledNotice(event, CommandDisableLevel.SPECIFIC_ROLE_CATEGORY);
-            return;
-        }
-
-        if (mantaroData.getBlackListedUsers().contains(author.getId())) {
-            if (!rl.process(author)) {
-                return;
-            }
-
-            event.reply("""
-                    :x: You have been blocked from using all of Mantaro's functions, likely for botting or hitting the spam filter.
-                    If you wish to get more details on why or appeal the ban, send an email to `contact@mantaro.site`. Make sure to be sincere.
-                    """
-            ).setEphemeral(true).queue();
-            return;
-        }
-
-        // If we are in the patreon bot, deny all requests from unknown guilds.
-        if (config.isPremiumBot() && !config.isOwner(author) && !dbGuild.isPremium()) {
-            event.reply("""
-                            :x: Seems like you're trying to use the Patreon bot when this guild is **not** marked as premium.
-                            **If you think this is an error please contact Kodehawa#3457 or poke me on #donators in the support guild**
-                            If you didn't contact Kodehawa prior to adding this bot to this server, please do so so we can link it to your pledge.
-                            """
-            ).setEphemeral(true).queue();
-            return;
-        }
-
-        if (!cmd.getPermission().test(member)) {
-            event.reply(EmoteReference.STOP + "You have no permissions to trigger this command :(").setEphemeral(true).queue();
-            return;
-        }
-        // !! Permission check end
-
-        final var dbUser = managedDatabase.getUser(author);
-        final var userData = dbUser.getData();
-        renewPremiumKey(managedDatabase, author, dbUser, guildData);
-
-        cmd.execute(new SlashContext(event, new I18nContext(guildData, userData)));
-        commandLog.debug("Slash command: {}, User: {} ({}), Guild: {}, Channel: {}, Options: {}" ,
-                cmd.getName(), author.getAsTag(), author.getId(), guild.getId(), channel.getId(), event.getOptions()
-        );
-
-        final var end = System.currentTimeMillis();
-        final var category = cmd.getCategory().name().toLowerCase();
-
-        Metrics.CATEGORY_COUNTER.labels(category).inc();
-        Metrics.COMMAND_COUNTER.labels(name + "-slash").inc();
-        Metrics.COMMAND_LATENCY.observe(end - start);
-    }
-
-    public void renewPremiumKey(ManagedDatabase managedDatabase, User author, DBUser dbUser, GuildData guildData) {
-        final var userData = dbUser.getData();
-        final var currentKey = managedDatabase.getPremiumKey(userData.getPremiumKey());
-        final var guildKey = managedDatabase.getPremiumKey(guildData.getPremiumKey());
-        if (currentKey != null) {
-            // 10 days before expiration or best fit.
-            if (currentKey.validFor() <= 10 && currentKey.validFor() > 1) {
-                // Handling is done inside the PremiumKey#renew method. This only gets fired if the key has less than 10 days left.
-                if (!currentKey.renew() && !userData.hasReceivedExpirationWarning()) {
-                    author.openPrivateChannel().queue(privateChannel ->
-                            privateChannel.sendMessage(
-                                    """
-                                    %1$sYour premium key is about to expire in **%2$,d** days**!
-                                    :heart: *If you're still pledging to Mantaro* you can ask Kodehawa#3457 for a key renewal in the #donators channel.*
-                                    In the case that you're not longer a patron, you cannot renew, but I sincerely hope you had a good time with the bot and its features!
-                                    **If you ever want to pledge again you can check the patreon link at <https://patreon.com/mantaro>**
-                                    
-                                    Thanks you so much for your support to keep Mantaro alive! It wouldn't be possible without the help of all of you.
-                                    With love, Kodehawa and the Mantaro team :heart:
-                                    
-                                    This will only be sent once (hopefully). Thanks again!
-                                    """.formatted(EmoteReference.WARNING, Math.max(1, currentKey.validFor()))
-                            ).queue()
-                    );
-                }
-
-                userData.setReceivedExpirationWarning(true);
-                dbUser.saveUpdating();
-            }
-        }
-
-        // Handling is done inside the PremiumKey#renew method. This only gets fired if the key has less than 10 days left.
-        if (guildKey != null && guildKey.validFor() <= 10 && guildKey.validFor() > 1) {
-            guildKey.renew();
-        }
+        pipeline.run(new SlashInvocation(MantaroData.db(), event, command));
     }
 
     public void register(Class<? extends NewCommand> clazz) {
@@ -561,29 +191,10 @@ public class CommandRegistry {
         }
     }
 
-    private boolean isNotAdmin(Member member) {
-        return !CommandPermission.ADMIN.test(member);
-    }
-
     public CommandManager getCommandManager() {
         return newCommands;
     }
 
-
-    public void sendDisabledNotice(MessageReceivedEvent event, GuildData data, CommandDisableLevel level) {
-        if (data.isCommandWarningDisplay() && level != CommandDisableLevel.NONE) {
-            event.getChannel().sendMessageFormat("%sThis command is disabled on this server. Reason: %s",
-                    EmoteReference.ERROR, Utils.capitalize(level.getName())
-            ).queue();
-        } // else don't
-    }
-
-    public void sendDisabledNotice(SlashCommandInteractionEvent event, CommandDisableLevel level) {
-        event.reply("%sThis command is disabled on this server. Reason: %s"
-                .formatted(EmoteReference.ERROR, Utils.capitalize(level.getName()))
-        ).setEphemeral(true).queue();
-    }
-
     private static String name(Command c, String userInput) {
         if (c instanceof AliasCommand) {
             // Return the original command name here for all intents and purposes.
@@ -661,29 +272,4 @@ public class CommandRegistry {
             return null;
         }
     }
-
-    enum CommandDisableLevel {
-        NONE("None"),
-        CATEGORY("Disabled category on server"),
-        SPECIFIC_CATEGORY("Disabled category on specific channel"),
-        COMMAND("Disabled command"),
-        COMMAND_SPECIFIC("Disabled command on specific channel"),
-        GUILD("Disabled command on this server"),
-        ROLE("Disabled role on this server"),
-        ROLE_CATEGORY("Disabled role for this category in this server"),
-        SPECIFIC_ROLE("Disabled role for this command in this server"),
-        SPECIFIC_ROLE_CATEGORY("Disabled role for this category in this server"),
-        CHANNEL("Disabled channel"),
-        USER("Disabled user");
-
-        final String name;
-
-        CommandDisableLevel(String name) {
-            this.name = name;
-        }
-
-        public String getName() {
-            return this.name;
-        }
-    }
 }
@@ -19,9 +19,6 @@ package net.kodehawa.mantarobot.core;
 
 import com.google.common.eventbus.EventBus;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
-import io.github.classgraph.ClassGraph;
-import io.github.classgraph.ClassInfo;
-import io.github.classgraph.ScanResult;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.entities.Activity;
 import net.dv8tion.jda.api.entities.Message;
@@ -34,14 +31,16 @@ import net.dv8tion.jda.api.requests.GatewayIntent;
 import net.dv8tion.jda.api.sharding.DefaultShardManagerBuilder;
 import net.dv8tion.jda.api.sharding.ShardManager;
 import net.dv8tion.jda.api.utils.ChunkingFilter;
-import net.dv8tion.jda.api.utils.SessionController;
 import net.dv8tion.jda.api.utils.cache.CacheFlag;
 import net.dv8tion.jda.api.utils.messages.MessageRequest;
 import net.kodehawa.mantarobot.ExtraRuntimeOptions;
 import net.kodehawa.mantarobot.MantaroBot;
 import net.kodehawa.mantarobot.commands.music.listener.VoiceChannelListener;
 import net.kodehawa.mantarobot.core.cache.EvictingCachePolicy;
+import net.kodehawa.mantarobot.core.command.processor.CommandExecutor;
 import net.kodehawa.mantarobot.core.command.processor.CommandProcessor;
+import net.kodehawa.mantarobot.core.command.slash.SlashCommandSync;
+import net.kodehawa.mantarobot.core.listeners.HandlesEvents;
 import net.kodehawa.mantarobot.core.listeners.MantaroListener;
 import net.kodehawa.mantarobot.core.listeners.command.CommandListener;
 import net.kodehawa.mantarobot.core.listeners.events.PostLoadEvent;
@@ -51,11 +50,13 @@ import net.kodehawa.mantarobot.core.listeners.operations.InteractiveOperations;
 import net.kodehawa.mantarobot.core.listeners.operations.ModalOperations;
 import net.kodehawa.mantarobot.core.listeners.operations.ReactionOperations;
 import net.kodehawa.mantarobot.core.modules.Module;
+import net.kodehawa.mantarobot.core.modules.ModuleLoader;
+import net.kodehawa.mantarobot.core.shard.AdaptivePoolSizer;
 import net.kodehawa.mantarobot.core.shard.Shard;
 import net.kodehawa.mantarobot.core.shard.discord.BotGateway;
 import net.kodehawa.mantarobot.core.shard.jda.BucketedController;
+import net.kodehawa.mantarobot.core.shard.jda.StartupPlanner;
 import net.kodehawa.mantarobot.data.Config;
-import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.utils.log.LogUtils;
 import net.kodehawa.mantarobot.options.annotations.Option;
 import net.kodehawa.mantarobot.options.event.OptionRegistryEvent;
@@ -72,18 +73,18 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import java.io.IOException;
-import java.lang.annotation.Annotation;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -98,6 +99,7 @@ import static net.kodehawa.mantarobot.utils.ShutdownCodes.SHARD_FETCH_FAILURE;
 public class MantaroCore {
     private static final Logger log = LoggerFactory.getLogger(MantaroCore.class);
     private static final VoiceChannelListener VOICE_CHANNEL_LISTENER = new VoiceChannelListener();
+    private static final long HOME_GUILD_ID = 213468583252983809L;
 
     private static LoadState loadState = PRELOAD;
     private final Map<Integer, Shard> shards = new ConcurrentHashMap<>();
@@ -105,10 +107,12 @@ public class MantaroCore {
             new ThreadFactoryBuilder().setNameFormat("Mantaro Thread-%d").build()
     );
     private final Config config;
+    private final CommandExecutor commandExecutor;
     private final boolean isDebug;
     private String commandsPackage;
     private String optsPackage;
     private final CommandProcessor commandProcessor = new CommandProcessor();
+    private final AdaptivePoolSizer poolSizer = new AdaptivePoolSizer();
     private EventBus shardEventBus;
     private ShardManager shardManager;
     private int restPing;
@@ -116,7 +120,9 @@ public class MantaroCore {
     public MantaroCore(Config config, boolean isDebug) {
         this.config = config;
         this.isDebug = isDebug;
+        this.commandExecutor = new CommandExecutor(config);
         Metrics.THREAD_POOL_COLLECTOR.add("mantaro-executor", threadPool);
+        Metrics.THREAD_POOL_COLLECTOR.add("mantaro-commands", commandExecutor);
     }
 
     public static boolean hasLoadedCompletely() {
@@ -165,6 +171,29 @@ public class MantaroCore {
         return 1;
     }
 
+    private static int getMaxConcurrency(String token) {
+        try {
+            var gateway = new Request.Builder()
+                    .url("https://discordapp.com/api/gateway/bot")
+                    .header("Authorization", "Bot " + token)
+                    .header("Content-Type", "application/json")
+                    .build();
+
+            try (var response = Utils.httpClient.newCall(gateway).execute()) {
+                var body = response.body();
+                if (body == null) {
+                    throw new IllegalStateException("Error requesting gateway: " + response.code() + " " + response.message());
+                }
+
+                var session = JsonDataManager.fromJson(body.string(), BotGateway.class).getSession();
+                return session == null ? 1 : Math.max(1, session.getMaxConcurrency());
+            }
+        } catch (Exception e) {
+            log.error("Unable to fetch max_concurrency, using a single bucket", e);
+            return 1;
+        }
+    }
+
     public MantaroCore setOptionsPackage(String optionsPackage) {
         this.optsPackage = optionsPackage;
         return this;
@@ -178,19 +207,21 @@ public class MantaroCore {
     private void startShardedInstance() {
         loadState = LOADING;
 
-        SessionController controller;
-        if (isDebug) {
-            // Bucketed controller still prioritizes home guild and reconnecting shards.
-            // Only really useful in the node that actually contains the guild, but worth keeping.
-            controller = new BucketedController(1, 213468583252983809L);
-        } else {
-            var bucketFactor = config.getBucketFactor();
+        // Debug instances still get a bucketed controller, which prioritizes the home guild and reconnecting shards.
+        // Only really useful in the node that actually contains the guild, but worth keeping.
+        var bucketFactor = 1;
+        if (!isDebug) {
+            bucketFactor = config.getBucketFactor();
+            if (bucketFactor < 1) {
+                // Auto: as many buckets as Discord lets us identify on at the same time.
+                bucketFactor = getMaxConcurrency(config.token);
+                log.info("Using max_concurrency from the gateway ({}) as the bucket factor", bucketFactor);
+            }
+
             if (bucketFactor > 1) {
                 log.info("Using buckets of {} shards to start the bot! Assuming we're on big bot sharding." , bucketFactor);
                 log.info("If you're self-hosting, set bucketFactor in config.json to 1 and isSelfHost to true.");
             }
-
-            controller = new BucketedController(bucketFactor, 213468583252983809L);
         }
 
         var gatewayThreadFactory = new ThreadFactoryBuilder()
@@ -260,10 +291,9 @@ public class MantaroCore {
             var shardManager = DefaultShardManagerBuilder.create(config.token, enabled)
                     // Can't do chunking with Gateway Intents enabled, fun, but don't need it anymore.
                     .setChunkingFilter(ChunkingFilter.NONE)
-                    .setSessionController(controller)
                     .addEventListeners(eventListeners)
                     .addEventListenerProviders(List.of(
-                            id -> new CommandListener(commandProcessor, threadPool, getShard(id).getMessageCache()),
+                            id -> new CommandListener(commandProcessor, commandExecutor, getShard(id).getMessageCache()),
                             id -> new MantaroListener(threadPool, getShard(id).getMessageCache()),
                             id -> getShard(id).getListener()
                     ))
@@ -280,9 +310,10 @@ public class MantaroCore {
             /* only create eviction strategies that will get used */
             List<Integer> shardIds;
             int latchCount;
+            int shardCount;
 
             if (isDebug) {
-                var shardCount = 2;
+                shardCount = 2;
                 shardIds = List.of(0, 1);
                 latchCount = shardCount;
                 shardManager.setShardsTotal(shardCount)
@@ -290,7 +321,6 @@ public class MantaroCore {
                         .setRateLimitPool(Executors.newScheduledThreadPool(2, requesterThreadFactory), true);
                 log.info("Debug instance, using {} shards", shardCount);
             } else {
-                int shardCount;
                 // Count specified in config.
                 if (config.totalShards != 0) {
                     shardCount = config.totalShards;
@@ -326,22 +356,38 @@ public class MantaroCore {
                     latchCount = shardCount;
                 }
     
+                // Start from the old static sizes, and let them grow up to twice that if the shards keep them busy.
                 var gatewayThreads = Math.max(1, latchCount / 16);
                 var rateLimitThreads = Math.max(2, latchCount * 5 / 4);
 
-                log.info("Gateway pool: {} threads", gatewayThreads);
-                log.info("Rate limit pool: {} threads", rateLimitThreads);
+                log.info("Gateway pool: {} threads (up to {})", gatewayThreads, gatewayThreads * 2);
+                log.info("Rate limit pool: {} threads (up to {})", rateLimitThreads, rateLimitThreads * 2);
+
+                var gatewayPool = (ScheduledThreadPoolExecutor) Executors.newScheduledThreadPool(gatewayThreads, gatewayThreadFactory);
+                var rateLimitPool = (ScheduledThreadPoolExecutor) Executors.newScheduledThreadPool(rateLimitThreads, requesterThreadFactory);
+                Metrics.THREAD_POOL_COLLECTOR.add("gateway", gatewayPool);
+                Metrics.THREAD_POOL_COLLECTOR.add("rate-limit", rateLimitPool);
+                poolSizer.add("gateway", gatewayPool, gatewayThreads * 2);
+                poolSizer.add("rate-limit", rateLimitPool, rateLimitThreads * 2);
 
-                shardManager.setGatewayPool(Executors.newScheduledThreadPool(gatewayThreads, gatewayThreadFactory), true)
-                        .setRateLimitPool(Executors.newScheduledThreadPool(rateLimitThreads, requesterThreadFactory), true);
+                shardManager.setGatewayPool(gatewayPool, true)
+                        .setRateLimitPool(rateLimitPool, true);
             }
 
+
             // If this isn't true we have a big problem
             if (shardIds.size() != latchCount) {
                 throw new IllegalStateException("Shard ids list must have the same size as latch count");
             }
 
-            // Use a LRU cache policy.
+            // Decides which shard identifies when: the controller goes through each bucket in the order the plan has it.
+            var plan = StartupPlanner.plan(shardIds, shardCount, bucketFactor, HOME_GUILD_ID, StartupPlanner.IDENTIFY_INTERVAL);
+            shardManager.setSessionController(new BucketedController(plan));
+            log.info("Identifying {} shards in {} parallel buckets, should take around {} seconds",
+                    latchCount, bucketFactor, TimeUnit.MILLISECONDS.toSeconds(plan.duration())
+            );
+
+            // Use a (segmented) LRU cache policy.
             shardManager.setMemberCachePolicy(new EvictingCachePolicy(shardIds, () -> leastRecentlyUsed(config.memberCacheSize)));
             MantaroCore.setLoadState(LoadState.LOADING_SHARDS);
 
@@ -349,6 +395,7 @@ public class MantaroCore {
             var start = System.currentTimeMillis();
             shardStartListener.setLatch(new CountDownLatch(latchCount));
             this.shardManager = shardManager.build();
+            poolSizer.start();
 
             //This is so it doesn't block command registering, lol.
             threadPool.submit(() -> {
@@ -385,28 +432,17 @@ public class MantaroCore {
             throw new IllegalArgumentException("Cannot look for options if you don't specify where!");
         }
 
-        var commands = lookForAnnotatedOn(commandsPackage, Module.class);
-        var options = lookForAnnotatedOn(optsPackage, Option.class);
-
         shardEventBus = new EventBus();
 
         // Start the actual bot now.
         startShardedInstance();
 
-        for (var commandClass : commands) {
-            try {
-                shardEventBus.register(commandClass.getDeclaredConstructor().newInstance());
-            } catch (Exception e) {
-                log.error("Invalid module: no zero arg public constructor found for " + commandClass);
-            }
+        for (var command : ModuleLoader.load(commandsPackage, Module.class)) {
+            shardEventBus.register(command);
         }
 
-        for (var optionClass : options) {
-            try {
-                shardEventBus.register(optionClass.getDeclaredConstructor().newInstance());
-            } catch (Exception e) {
-                log.error("Invalid module: no zero arg public constructor found for " + optionClass);
-            }
+        for (var option : ModuleLoader.load(optsPackage, Option.class)) {
+            shardEventBus.register(option);
         }
 
         new Thread(() -> {
@@ -450,20 +486,16 @@ public class MantaroCore {
         if (MantaroBot.getInstance().isMasterNode()) {
             log.info("[Controller] Attempted to register Slash/Context commands (@Module). List size: {}", data.size());
             var jda = getShard(0).getJDA();
-            jda.updateCommands().addCommands(data).queue();
-        }
-    }
-
-    private Set<Class<?>> lookForAnnotatedOn(String packageName, Class<? extends Annotation> annotation) {
-        var classGraph = new ClassGraph()
-                .acceptPackages(packageName)
-                .enableAnnotationInfo();
+            var sync = new SlashCommandSync(
+                    SlashCommandSync.Upstream.of(jda),
+                    SlashCommandSync.State.redis(config.getClientId()),
+                    !"full".equalsIgnoreCase(config.getSlashCommandSync())
+            );
 
-        try (ScanResult result = classGraph.scan(2)) {
-            return result.getAllClasses()
-                    .stream()
-                    .filter(classInfo -> classInfo.hasAnnotation(annotation.getName())).map(ClassInfo::loadClass)
-                    .collect(Collectors.toSet());
+            CompletableFuture.runAsync(() -> sync.sync(data)).exceptionally(e -> {
+                log.error("Unable to sync slash commands", e);
+                return null;
+            });
         }
     }
 
@@ -497,11 +529,7 @@ public class MantaroCore {
         bot.getCore().markAsReady();
 
         // Get the amount of clusters
-        int clusterTotal;
-        try(var jedis = MantaroData.getDefaultJedisPool().getResource()) {
-            var clusters = jedis.hgetAll("node-stats-" + config.getClientId());
-            clusterTotal = clusters.size();
-        }
+        var clusterTotal = bot.getClusterStats().refresh().nodes().size();
 
         log.info("Not aware of anything holding off boot now, considering bot as started up");
         LogUtils.shard(
@@ -546,17 +574,16 @@ public class MantaroCore {
         log.info("Starting bot list count executor...");
         Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "Mantaro Server Count Updater")).scheduleAtFixedRate(() -> {
             try {
-                var serverCount = 0L;
                 //Fetch actual guild count.
-                try(var jedis = MantaroData.getDefaultJedisPool().getResource()) {
-                    var stats = jedis.hgetAll("shardstats-" + config.getClientId());
-
-                    for (var shards : stats.entrySet()) {
-                        var json = new JSONObject(shards.getValue());
-                        serverCount += json.getLong("guild_count");
-                    }
+                var clusterStats = MantaroBot.getInstance().getClusterStats();
+                var stats = clusterStats.snapshot();
+                if (stats.takenAt() == 0) {
+                    // We got here before the first refresh, don't post a zero.
+                    stats = clusterStats.refresh();
                 }
 
+                var serverCount = stats.guilds();
+
                 // This will NOP if the token is null.
                 for(var listSites : BotListPost.values()) {
                     listSites.createRequest(serverCount, config.clientId);
@@ -589,6 +616,7 @@ public class MantaroCore {
         }, 0, 30, TimeUnit.SECONDS);
     }
 
+    @HandlesEvents({ReadyEvent.class})
     private static class ShardStartListener implements EventListener {
         private CountDownLatch latch;
 
@@ -17,24 +17,90 @@
 
 package net.kodehawa.mantarobot.core;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.prometheus.client.Histogram;
 import net.dv8tion.jda.api.events.GenericEvent;
-import net.dv8tion.jda.api.hooks.InterfacedEventManager;
+import net.dv8tion.jda.api.hooks.EventListener;
+import net.dv8tion.jda.api.hooks.IEventManager;
+import net.kodehawa.mantarobot.core.listeners.HandlesEvents;
+import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class MantaroEventManager extends InterfacedEventManager {
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatches JDA events to the listeners registered on a shard.
+ * <br>Instead of calling every listener for every event, it keeps a table of event class -> listeners that handle it
+ * (see {@link HandlesEvents}), built the first time an event class is seen. Every dispatch is timed per listener and
+ * event type, and listeners named in {@code offloadedEventListeners} get their events through one bounded executor
+ * shared between them instead of on the gateway thread.
+ */
+public class MantaroEventManager implements IEventManager {
     private static final Logger log = LoggerFactory.getLogger(MantaroEventManager.class);
+    // Shared by all shards and all offloaded listeners, created the first time one of them is registered.
+    private static volatile ThreadPoolExecutor offloadExecutor;
+
+    private final List<Object> listeners = new CopyOnWriteArrayList<>();
+    private volatile ClassValue<Target[]> dispatchTable = newDispatchTable();
     private long lastJdaEvent;
 
     public static Logger getLog() {
         return log;
     }
 
+    @Override
+    public void register(@NotNull Object listener) {
+        if (!(listener instanceof EventListener)) {
+            throw new IllegalArgumentException("Listener must implement EventListener");
+        }
+
+        listeners.add(listener);
+        dispatchTable = newDispatchTable();
+    }
+
+    @Override
+    public void unregister(@NotNull Object listener) {
+        listeners.remove(listener);
+        dispatchTable = newDispatchTable();
+    }
+
+    @NotNull
+    @Override
+    public List<Object> getRegisteredListeners() {
+        return Collections.unmodifiableList(new ArrayList<>(listeners));
+    }
+
     @Override
     public void handle(@NotNull GenericEvent event) {
         lastJdaEvent = System.currentTimeMillis();
-        super.handle(event);
+        for (var target : dispatchTable.get(event.getClass())) {
+            if (target.offload == null) {
+                target.dispatch(event);
+                continue;
+            }
+
+            var queued = System.nanoTime();
+            try {
+                target.offload.execute(() -> {
+                    Metrics.EVENT_OFFLOAD_WAIT.labels(target.name).observe((System.nanoTime() - queued) / 1e9);
+                    target.dispatch(event);
+                });
+            } catch (RejectedExecutionException e) {
+                // Queue is full: count it and run it here, which slows the gateway down instead of dropping the event.
+                Metrics.EVENT_OFFLOAD_REJECTED.labels(target.name).inc();
+                target.dispatch(event);
+            }
+        }
     }
 
     public long lastJDAEvent() {
@@ -44,4 +110,100 @@ public class MantaroEventManager extends InterfacedEventManager {
     public long lastJDAEventDiff() {
         return System.currentTimeMillis() - lastJDAEvent();
     }
+
+    private ClassValue<Target[]> newDispatchTable() {
+        return new ClassValue<>() {
+            @Override
+            protected Target[] computeValue(Class<?> type) {
+                var targets = new ArrayList<Target>();
+                for (var listener : listeners) {
+                    if (handles(listener, type)) {
+                        targets.add(new Target((EventListener) listener, type));
+                    }
+                }
+
+                return targets.toArray(new Target[0]);
+            }
+        };
+    }
+
+    private static boolean handles(Object listener, Class<?> type) {
+        var handled = listener.getClass().getAnnotation(HandlesEvents.class);
+        if (handled == null) {
+            return true;
+        }
+
+        for (var handledType : handled.value()) {
+            if (handledType.isAssignableFrom(type)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static String listenerName(Object listener) {
+        // Lambdas are named Outer$$Lambda$..., nested classes Outer$Inner.
+        var name = listener.getClass().getName();
+        var lambda = name.indexOf("$$");
+        if (lambda != -1) {
+            name = name.substring(0, lambda);
+        }
+
+        return name.substring(name.lastIndexOf('.') + 1);
+    }
+
+    private static ThreadPoolExecutor offloadExecutor(String name) {
+        var config = MantaroData.config().get();
+        if (!config.getOffloadedEventListeners().contains(name)) {
+            return null;
+        }
+
+        var executor = offloadExecutor;
+        if (executor != null) {
+            return executor;
+        }
+
+        synchronized (MantaroEventManager.class) {
+            if (offloadExecutor == null) {
+                var threads = config.getEventOffloadThreads();
+                offloadExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<>(config.getEventOffloadQueueSize()),
+                        new ThreadFactoryBuilder().setNameFormat("Mantaro Event Offload Thread-%d").build()
+                );
+
+                Metrics.THREAD_POOL_COLLECTOR.add("event-offload", offloadExecutor);
+            }
+
+            return offloadExecutor;
+        }
+    }
+
+    private static class Target {
+        private final EventListener listener;
+        private final String name;
+        private final Histogram.Child timer;
+        private final ThreadPoolExecutor offload;
+
+        private Target(EventListener listener, Class<?> type) {
+            this.listener = listener;
+            this.name = listenerName(listener);
+            this.timer = Metrics.EVENT_DISPATCH_TIME.labels(name, type.getSimpleName());
+            this.offload = offloadExecutor(name);
+        }
+
+        private void dispatch(GenericEvent event) {
+            var start = System.nanoTime();
+            try {
+                listener.onEvent(event);
+            } catch (Throwable t) {
+                log.error("One of the EventListeners had an uncaught exception", t);
+                if (t instanceof Error) {
+                    throw (Error) t;
+                }
+            } finally {
+                timer.observe((System.nanoTime() - start) / 1e9);
+            }
+        }
+    }
 }
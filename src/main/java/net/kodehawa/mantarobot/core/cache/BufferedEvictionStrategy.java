@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.core.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
+
+/**
+ * Lets any amount of threads feed ids into a (not thread safe) {@link EvictionStrategy} without all of them
+ * serializing on it.
+ * <br>Ids are written to one of a few striped, bounded MPSC ring buffers (picked by thread, so threads rarely
+ * contend on the same one), and whichever thread manages to grab the lock replays all the buffers into the strategy.
+ * Threads that don't get the lock just leave: their ids are applied by the next drain.
+ *
+ * <p>The eviction contract stays the same: every id goes through {@link EvictionStrategy#cache(long)} exactly once,
+ * in the order it was buffered per stripe, and every id it returns is handed to the eviction callback.
+ * If a buffer is full, the caller waits for the lock and drains it, so ids are never dropped.
+ */
+public class BufferedEvictionStrategy {
+    private static final int BUFFER_SIZE = 128;
+    private static final int MASK = BUFFER_SIZE - 1;
+
+    private final EvictionStrategy strategy;
+    private final Stripe[] stripes;
+    private final int stripeMask;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public BufferedEvictionStrategy(EvictionStrategy strategy) {
+        this.strategy = strategy;
+
+        var count = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+        this.stripes = new Stripe[count];
+        for (var i = 0; i < count; i++) {
+            stripes[i] = new Stripe();
+        }
+
+        this.stripeMask = count - 1;
+    }
+
+    /**
+     * Records an id. Might or might not apply it (and others) to the strategy right away.
+     *
+     * @param id      The id to cache.
+     * @param onEvict Called with every id the strategy wants removed, while holding the drain lock.
+     */
+    public void cache(long id, LongConsumer onEvict) {
+        if (id == EvictionStrategy.NO_REMOVAL_NEEDED) {
+            return;
+        }
+
+        var stripe = stripes[stripeFor(Thread.currentThread().getId())];
+        if (stripe.offer(id)) {
+            if (lock.tryLock()) {
+                try {
+                    drain(onEvict);
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            return;
+        }
+
+        // Buffer is full: wait our turn, make room and queue it behind what's there, so it keeps its place in line.
+        lock.lock();
+        try {
+            drain(onEvict);
+            // Draining stops at a slot someone claimed but hasn't written yet, which only takes them a moment.
+            while (!stripe.offer(id)) {
+                Thread.onSpinWait();
+                drain(onEvict);
+            }
+
+            drain(onEvict);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Must hold the lock.
+    private void drain(LongConsumer onEvict) {
+        for (var stripe : stripes) {
+            stripe.drain(this, onEvict);
+        }
+    }
+
+    private void apply(long id, LongConsumer onEvict) {
+        var evict = strategy.cache(id);
+        if (evict != EvictionStrategy.NO_REMOVAL_NEEDED) {
+            onEvict.accept(evict);
+        }
+    }
+
+    private int stripeFor(long threadId) {
+        var h = threadId * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & stripeMask;
+    }
+
+    private static class Stripe {
+        // Slots hold 0 until the producer that claimed them has written its id.
+        private final AtomicLongArray buffer = new AtomicLongArray(BUFFER_SIZE);
+        private final AtomicLong tail = new AtomicLong();
+        private final AtomicLong head = new AtomicLong();
+
+        boolean offer(long id) {
+            while (true) {
+                var t = tail.get();
+                if (t - head.get() >= BUFFER_SIZE) {
+                    return false;
+                }
+
+                if (tail.compareAndSet(t, t + 1)) {
+                    buffer.set((int) t & MASK, id);
+                    return true;
+                }
+            }
+        }
+
+        // Single consumer: only called with the lock held.
+        void drain(BufferedEvictionStrategy owner, LongConsumer onEvict) {
+            var h = head.get();
+            var t = tail.get();
+            for (; h < t; h++) {
+                var idx = (int) h & MASK;
+                var id = buffer.get(idx);
+                if (id == 0) {
+                    // Claimed but not written yet, pick it up next time.
+                    break;
+                }
+
+                buffer.lazySet(idx, 0);
+                owner.apply(id, onEvict);
+            }
+
+            head.set(h);
+        }
+    }
+}
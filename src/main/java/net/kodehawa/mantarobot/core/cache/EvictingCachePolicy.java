@@ -30,16 +30,20 @@ import java.util.function.Supplier;
 public class EvictingCachePolicy implements MemberCachePolicy {
     private static final Logger log = LoggerFactory.getLogger(EvictingCachePolicy.class);
     
-    private final EvictionStrategy[] strategies;
+    private final BufferedEvictionStrategy[] strategies;
+    private final MemberGuildIndex[] indexes;
     
     public EvictingCachePolicy(List<Integer> shardIds, Supplier<EvictionStrategy> strategySupplier) {
-        var strategy = new EvictionStrategy[Collections.max(shardIds) + 1];
+        var strategy = new BufferedEvictionStrategy[Collections.max(shardIds) + 1];
+        var index = new MemberGuildIndex[strategy.length];
 
         for (var id : shardIds) {
-            strategy[id] = strategySupplier.get();
+            strategy[id] = new BufferedEvictionStrategy(strategySupplier.get());
+            index[id] = new MemberGuildIndex();
         }
 
         this.strategies = strategy;
+        this.indexes = index;
     }
     
     @Override
@@ -49,9 +53,9 @@ public class EvictingCachePolicy implements MemberCachePolicy {
             return true;
         }
 
-        long evict;
         // This can be called from ws threads or requester threads
-        var shard = member.getJDA().getShardInfo().getShardId();
+        var jda = member.getJDA();
+        var shard = jda.getShardInfo().getShardId();
         var strategy = strategies[shard];
 
         if (strategy == null) {
@@ -59,31 +63,34 @@ public class EvictingCachePolicy implements MemberCachePolicy {
             return true;
         }
 
-        //noinspection SynchronizationOnLocalVariableOrMethodParameter
-        synchronized(strategy) {
-            evict = strategy.cache(member.getIdLong());
-        }
+        var index = indexes[shard];
+        index.add(member.getIdLong(), member.getGuild().getIdLong());
 
+        // Doesn't block: evictions are applied by whichever thread drains the buffered ids, which might be this one.
         // The strategy contains only members that were added to this shard
-        // So removing shouldn't fail
-        if (evict != EvictionStrategy.NO_REMOVAL_NEEDED) {
-            member.getJDA().getGuildCache().forEach(g -> {
+        // So removing shouldn't fail. The index tells us which guilds we cached them in, so only look at those.
+        strategy.cache(member.getIdLong(), evict -> {
+            for (var guildId : index.remove(evict)) {
+                var g = jda.getGuildById(guildId);
+                if (g == null) {
+                    continue;
+                }
+
                 var evicted = g.getMemberById(evict);
                 if (evicted == null) {
-                    return;
+                    continue;
                 }
 
-                // Don't remove.
-                if (member.isPending()) {
-                    return;
+                // Don't remove if pending, or if the voice state has a channel. They stay cached in this guild, so they go
+                // back in the index: a later eviction has to find them there.
+                if (evicted.isPending() || (evicted.getVoiceState() != null && evicted.getVoiceState().getChannel() != null)) {
+                    index.add(evict, guildId);
+                    continue;
                 }
 
-                // Only remove if voice state is null, or channel in the voice state is null, or the member is not pending.
-                if (evicted.getVoiceState() == null || evicted.getVoiceState().getChannel() == null) {
-                    g.unloadMember(evict);
-                }
-            });
-        }
+                g.unloadMember(evict);
+            }
+        });
 
         return true;
     }
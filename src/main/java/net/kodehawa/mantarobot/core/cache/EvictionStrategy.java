@@ -35,12 +35,35 @@ public interface EvictionStrategy {
     @CheckReturnValue
     long cache(long id);
     
+    /**
+     * Segmented LRU: ids seen more than once are protected from being evicted by a flood of new ones.
+     *
+     * @param size Max amount of ids to keep.
+     *
+     * @return The strategy. Not thread safe.
+     */
     @Nonnull
     @CheckReturnValue
     static EvictionStrategy leastRecentlyUsed(@Nonnegative int size) {
         if (size < 1)
             throw new IllegalArgumentException("Size must be at least 1");
 
+        return new SegmentedLruStrategy(size);
+    }
+
+    /**
+     * Plain ring buffer, evicts in insertion order no matter how often an id is seen (and an id seen twice takes two slots).
+     *
+     * @param size Amount of slots.
+     *
+     * @return The strategy. Not thread safe.
+     */
+    @Nonnull
+    @CheckReturnValue
+    static EvictionStrategy fifo(@Nonnegative int size) {
+        if (size < 1)
+            throw new IllegalArgumentException("Size must be at least 1");
+
         return new EvictionStrategy() {
             private final long[] ids = new long[size];
             private int index;
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.core.cache;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Member id -> ids of the guilds we've cached that member for, so evicting a member only has to look at the guilds
+ * that actually have them instead of every guild on the shard.
+ * <br>Most members are in a single guild, so the guild ids are kept in small copy-on-write arrays.
+ */
+public final class MemberGuildIndex {
+    private static final long[] NONE = new long[0];
+    private final ConcurrentHashMap<Long, long[]> guilds = new ConcurrentHashMap<>();
+
+    public void add(long memberId, long guildId) {
+        var current = guilds.get(memberId);
+        if (current != null && contains(current, guildId)) {
+            return;
+        }
+
+        guilds.compute(memberId, (__, ids) -> {
+            if (ids == null) {
+                return new long[] { guildId };
+            }
+
+            if (contains(ids, guildId)) {
+                return ids;
+            }
+
+            var copy = Arrays.copyOf(ids, ids.length + 1);
+            copy[ids.length] = guildId;
+            return copy;
+        });
+    }
+
+    /**
+     * Removes a member from the index.
+     *
+     * @return The guilds the member was cached in, possibly empty.
+     */
+    public long[] remove(long memberId) {
+        var ids = guilds.remove(memberId);
+        return ids == null ? NONE : ids;
+    }
+
+    public int size() {
+        return guilds.size();
+    }
+
+    private static boolean contains(long[] ids, long id) {
+        for (var i : ids) {
+            if (i == id) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
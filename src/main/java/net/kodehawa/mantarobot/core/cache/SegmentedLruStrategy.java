@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.core.cache;
+
+/**
+ * Segmented LRU over member ids.
+ * <br>New ids go into a probationary segment, and get promoted into a protected segment when seen again.
+ * Eviction always picks the least recently used probationary id first, so members that are only seen once
+ * (big guild joins, chunking) can't push out the ones that are actually active.
+ *
+ * <p>Everything is kept in primitive arrays: a doubly linked list over node indexes, plus an open addressing
+ * id -> node table. Not thread safe, callers must synchronize.
+ */
+final class SegmentedLruStrategy implements EvictionStrategy {
+    private static final int NIL = -1;
+    private static final byte PROBATION = 0;
+    private static final byte PROTECTED = 1;
+
+    private final int maxSize;
+    private final int maxProtected;
+
+    // Nodes.
+    private final long[] ids;
+    private final int[] prev;
+    private final int[] next;
+    private final byte[] segment;
+    private int used;
+
+    // Per segment list heads (most recent) and tails (least recent).
+    private final int[] heads = { NIL, NIL };
+    private final int[] tails = { NIL, NIL };
+    private final int[] sizes = new int[2];
+
+    // id -> node, linear probing. 0 is never a valid id, so it marks empty slots.
+    private final long[] keys;
+    private final int[] values;
+    private final int mask;
+
+    SegmentedLruStrategy(int size) {
+        this.maxSize = size;
+        this.maxProtected = (int) (size * 0.8);
+        this.ids = new long[size];
+        this.prev = new int[size];
+        this.next = new int[size];
+        this.segment = new byte[size];
+
+        var capacity = Integer.highestOneBit(Math.max(2, size) * 2 - 1) << 1;
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+        this.mask = capacity - 1;
+    }
+
+    @Override
+    public long cache(long id) {
+        if (id == NO_REMOVAL_NEEDED) {
+            return NO_REMOVAL_NEEDED;
+        }
+
+        var node = find(id);
+        if (node != NIL) {
+            unlink(node);
+            linkFirst(node, PROTECTED);
+            if (sizes[PROTECTED] > maxProtected) {
+                var demoted = tails[PROTECTED];
+                unlink(demoted);
+                linkFirst(demoted, PROBATION);
+            }
+
+            return NO_REMOVAL_NEEDED;
+        }
+
+        var evicted = NO_REMOVAL_NEEDED;
+        if (used < maxSize) {
+            node = used++;
+        } else {
+            node = tails[PROBATION] != NIL ? tails[PROBATION] : tails[PROTECTED];
+            unlink(node);
+            evicted = ids[node];
+            remove(evicted);
+        }
+
+        ids[node] = id;
+        linkFirst(node, PROBATION);
+        put(id, node);
+        return evicted;
+    }
+
+    int size() {
+        return sizes[PROBATION] + sizes[PROTECTED];
+    }
+
+    private void linkFirst(int node, byte seg) {
+        var head = heads[seg];
+        segment[node] = seg;
+        prev[node] = NIL;
+        next[node] = head;
+        if (head == NIL) {
+            tails[seg] = node;
+        } else {
+            prev[head] = node;
+        }
+
+        heads[seg] = node;
+        sizes[seg]++;
+    }
+
+    private void unlink(int node) {
+        var seg = segment[node];
+        var p = prev[node];
+        var n = next[node];
+        if (p == NIL) {
+            heads[seg] = n;
+        } else {
+            next[p] = n;
+        }
+
+        if (n == NIL) {
+            tails[seg] = p;
+        } else {
+            prev[n] = p;
+        }
+
+        sizes[seg]--;
+    }
+
+    private int slot(long id) {
+        var h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private int find(long id) {
+        for (var i = slot(id); keys[i] != 0; i = (i + 1) & mask) {
+            if (keys[i] == id) {
+                return values[i];
+            }
+        }
+
+        return NIL;
+    }
+
+    private void put(long id, int node) {
+        var i = slot(id);
+        while (keys[i] != 0 && keys[i] != id) {
+            i = (i + 1) & mask;
+        }
+
+        keys[i] = id;
+        values[i] = node;
+    }
+
+    private void remove(long id) {
+        var i = slot(id);
+        while (keys[i] != id) {
+            if (keys[i] == 0) {
+                return;
+            }
+
+            i = (i + 1) & mask;
+        }
+
+        // Backward shift deletion, so lookups never need tombstones.
+        keys[i] = 0;
+        for (var j = (i + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+            var home = slot(keys[j]);
+            var movable = i <= j ? (home <= i || home > j) : (home <= i && home > j);
+            if (movable) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                keys[j] = 0;
+                i = j;
+            }
+        }
+    }
+}
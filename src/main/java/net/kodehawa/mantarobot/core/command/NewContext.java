@@ -33,7 +33,7 @@ import net.kodehawa.mantarobot.core.command.argument.ArgumentParseError;
 import net.kodehawa.mantarobot.core.command.argument.Arguments;
 import net.kodehawa.mantarobot.core.command.argument.MarkedBlock;
 import net.kodehawa.mantarobot.core.command.argument.Parser;
-import net.kodehawa.mantarobot.core.command.argument.split.StringSplitter;
+import net.kodehawa.mantarobot.core.command.argument.split.TokenizedString;
 import net.kodehawa.mantarobot.core.modules.commands.i18n.I18nContext;
 import net.kodehawa.mantarobot.data.Config;
 import net.kodehawa.mantarobot.data.MantaroData;
@@ -53,7 +53,6 @@ import java.util.Optional;
 public class NewContext {
     private final ManagedDatabase managedDatabase = MantaroData.db();
     private final Config config = MantaroData.config().get();
-    private static final StringSplitter SPLITTER = new StringSplitter();
 
     private final Message message;
     private final I18nContext i18n;
@@ -66,7 +65,7 @@ public class NewContext {
     }
 
     public NewContext(@Nonnull Message message, @Nonnull I18nContext i18n, @Nonnull String contentAfterPrefix) {
-        this(message, i18n, new Arguments(SPLITTER.split(contentAfterPrefix), 0));
+        this(message, i18n, new Arguments(TokenizedString.of(contentAfterPrefix), 0));
     }
 
     public Arguments arguments() {
@@ -18,23 +18,24 @@
 package net.kodehawa.mantarobot.core.command.argument;
 
 import net.kodehawa.mantarobot.core.command.argument.split.SplitString;
+import net.kodehawa.mantarobot.core.command.argument.split.TokenizedString;
 
 import javax.annotation.CheckReturnValue;
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
-import java.util.Arrays;
 import java.util.Iterator;
 
 /**
  * Helper for reading arguments in order, without having to explicitly keep track of indexes.
+ * <br>Arguments are backed by a {@link TokenizedString}, so their values are only created once a parser reads them.
  */
 public class Arguments implements Iterator<SplitString> {
-    private final SplitString[] array;
+    private final TokenizedString tokens;
     private final ArgumentValues strings;
     private int offset;
 
-    public Arguments(@Nonnull SplitString[] array, @Nonnegative int offset) {
-        this.array = array;
+    public Arguments(@Nonnull TokenizedString tokens, @Nonnegative int offset) {
+        this.tokens = tokens;
         this.offset = offset;
         this.strings = new ArgumentValues(this);
     }
@@ -80,7 +81,7 @@ public class Arguments implements Iterator<SplitString> {
      * @apiNote This method should be avoided by parsers. Use the {@link #marked() marker} API instead.
      */
     public void setOffset(@Nonnegative int offset) {
-        if (offset > array.length) {
+        if (offset > tokens.size()) {
             throw new IllegalArgumentException("Offset > length");
         }
         this.offset = offset;
@@ -99,7 +100,16 @@ public class Arguments implements Iterator<SplitString> {
     @Nonnull
     @CheckReturnValue
     public SplitString[] absoluteRange(int from, int to) {
-        return Arrays.copyOfRange(array, from, to);
+        if (from > to) {
+            throw new IllegalArgumentException(from + " > " + to);
+        }
+
+        SplitString[] range = new SplitString[to - from];
+        for (int i = from; i < to; i++) {
+            range[i - from] = tokens.get(i);
+        }
+
+        return range;
     }
 
     /**
@@ -132,10 +142,10 @@ public class Arguments implements Iterator<SplitString> {
         if (i < 0) {
             throw new IllegalArgumentException("Negative index");
         }
-        if (i + offset >= array.length) {
-            throw new IllegalArgumentException("Out of bounds! Remaining values = " + (array.length - offset) + ", requested = " + i);
+        if (i + offset >= tokens.size()) {
+            throw new IllegalArgumentException("Out of bounds! Remaining values = " + (tokens.size() - offset) + ", requested = " + i);
         }
-        return array[offset + i];
+        return tokens.get(offset + i);
     }
 
     /**
@@ -154,7 +164,7 @@ public class Arguments implements Iterator<SplitString> {
         if (offset == 0) {
             throw new IllegalStateException("Already at the beginning");
         }
-        return array[--offset];
+        return tokens.get(--offset);
     }
 
     /**
@@ -193,10 +203,10 @@ public class Arguments implements Iterator<SplitString> {
     @Nonnull
     @CheckReturnValue
     public SplitString next() {
-        if (offset == array.length) {
+        if (offset == tokens.size()) {
             throw new IllegalStateException("No more arguments to read");
         }
-        return array[offset++];
+        return tokens.get(offset++);
     }
 
     /**
@@ -207,7 +217,20 @@ public class Arguments implements Iterator<SplitString> {
     @Override
     @CheckReturnValue
     public boolean hasNext() {
-        return offset < array.length;
+        return offset < tokens.size();
+    }
+
+    /**
+     * Consumes all remaining arguments, returning them exactly as they appear on the input (whitespace included).
+     * <br>Unlike joining {@link SplitString#getRawValue() raw values}, this creates a single string.
+     *
+     * @return The remaining content, or an empty string if there are no more arguments.
+     */
+    @Nonnull
+    public String remainingContent() {
+        var content = tokens.rawRange(offset, tokens.size());
+        offset = tokens.size();
+        return content;
     }
 
     /**
@@ -229,6 +252,6 @@ public class Arguments implements Iterator<SplitString> {
     @Nonnull
     @CheckReturnValue
     public Arguments snapshot() {
-        return new Arguments(array, offset);
+        return new Arguments(tokens, offset);
     }
 }
@@ -313,11 +313,7 @@ public class Parsers {
     public static Parser<String> remainingContent() {
         return (__, arguments) -> {
             if (!arguments.hasNext()) return Optional.empty();
-            StringJoiner sj = new StringJoiner("");
-            while(arguments.hasNext()) {
-                sj.add(arguments.next().getRawValue());
-            }
-            return Optional.of(sj.toString());
+            return Optional.of(arguments.remainingContent());
         };
     }
 
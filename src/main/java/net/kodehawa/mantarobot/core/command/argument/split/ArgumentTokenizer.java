@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.core.command.argument.split;
+
+import javax.annotation.CheckReturnValue;
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+
+/**
+ * Single-pass whitespace tokenizer, equivalent to splitting with {@code \s+}, that records
+ * offsets into the original input instead of creating substrings.
+ * <br>Each token is stored as four ints (whitespace start, value start, value end and {@link #FLAG kind bits})
+ * in a scratch buffer that's reused between calls, so instances are <b>not</b> thread safe. Use {@link #local()}
+ * to get the tokenizer confined to the current thread.
+ */
+public final class ArgumentTokenizer {
+    /**
+     * Token starts with {@code -}, eg {@code -flag} or {@code --flag}.
+     */
+    public static final int FLAG = 1;
+    /**
+     * Token starts with a quote, {@code "} or {@code “}.
+     */
+    public static final int QUOTED = 1 << 1;
+    /**
+     * Token contains a backslash, so it may contain escaped characters.
+     */
+    public static final int ESCAPED = 1 << 2;
+    /**
+     * Token starts a code block ({@code ```}).
+     */
+    public static final int CODE_BLOCK = 1 << 3;
+
+    static final int SPAN_SIZE = 4;
+    static final int WHITESPACE_START = 0;
+    static final int VALUE_START = 1;
+    static final int VALUE_END = 2;
+    static final int KIND = 3;
+
+    private static final ThreadLocal<ArgumentTokenizer> LOCAL = ThreadLocal.withInitial(ArgumentTokenizer::new);
+
+    private int[] buffer = new int[16 * SPAN_SIZE];
+
+    /**
+     * Returns the tokenizer confined to the calling thread.
+     *
+     * @return The tokenizer confined to the calling thread.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public static ArgumentTokenizer local() {
+        return LOCAL.get();
+    }
+
+    /**
+     * Tokenizes the given input. The returned object only copies the offsets of the tokens found,
+     * values are only turned into strings when they're requested.
+     *
+     * @param input Input to tokenize.
+     *
+     * @return The tokens found on the input.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public TokenizedString tokenize(@Nonnull CharSequence input) {
+        int[] spans = buffer;
+        int length = input.length();
+        int count = 0;
+        int i = 0;
+
+        while (i < length) {
+            int whitespaceStart = i;
+            while (i < length && isWhitespace(input.charAt(i))) {
+                i++;
+            }
+
+            // Trailing whitespace doesn't form a token.
+            if (i == length) {
+                break;
+            }
+
+            int start = i;
+            int kind = 0;
+            char first = input.charAt(i);
+            if (first == '-') {
+                kind |= FLAG;
+            } else if (first == '"' || first == '“') {
+                kind |= QUOTED;
+            } else if (first == '`' && i + 2 < length && input.charAt(i + 1) == '`' && input.charAt(i + 2) == '`') {
+                kind |= CODE_BLOCK;
+            }
+
+            char c;
+            while (i < length && !isWhitespace(c = input.charAt(i))) {
+                if (c == '\\') {
+                    kind |= ESCAPED;
+                }
+
+                i++;
+            }
+
+            int base = count * SPAN_SIZE;
+            if (base + SPAN_SIZE > spans.length) {
+                spans = buffer = Arrays.copyOf(spans, spans.length * 2);
+            }
+
+            spans[base + WHITESPACE_START] = whitespaceStart;
+            spans[base + VALUE_START] = start;
+            spans[base + VALUE_END] = i;
+            spans[base + KIND] = kind;
+            count++;
+        }
+
+        return new TokenizedString(input, Arrays.copyOf(spans, count * SPAN_SIZE), count);
+    }
+
+    // Same set of characters as \s (without UNICODE_CHARACTER_CLASS), so this splits exactly like StringSplitter used to.
+    static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
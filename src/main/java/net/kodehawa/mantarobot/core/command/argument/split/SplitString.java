@@ -23,14 +23,21 @@ import javax.annotation.Nonnull;
 /**
  * Represents a part of the result of splitting a string.
  * <br>Stores both the value and the previous whitespace, useful to rebuild the original string.
+ * <br>Only offsets into the original string are kept, the values are created lazily.
  */
 public final class SplitString {
-    private final String value;
-    private final String previousWhitespace;
+    private final CharSequence source;
+    private final int whitespaceStart;
+    private final int start;
+    private final int end;
+    private String value;
+    private String previousWhitespace;
 
-    SplitString(String value, String previousWhitespace) {
-        this.value = value;
-        this.previousWhitespace = previousWhitespace;
+    SplitString(CharSequence source, int whitespaceStart, int start, int end) {
+        this.source = source;
+        this.whitespaceStart = whitespaceStart;
+        this.start = start;
+        this.end = end;
     }
 
     /**
@@ -42,7 +49,12 @@ public final class SplitString {
     @Nonnull
     @CheckReturnValue
     public String getValue() {
-        return value;
+        var v = value;
+        if (v == null) {
+            v = value = source.subSequence(start, end).toString();
+        }
+
+        return v;
     }
 
     /**
@@ -53,7 +65,12 @@ public final class SplitString {
     @Nonnull
     @CheckReturnValue
     public String getPreviousWhitespace() {
-        return previousWhitespace;
+        var v = previousWhitespace;
+        if (v == null) {
+            v = previousWhitespace = source.subSequence(whitespaceStart, start).toString();
+        }
+
+        return v;
     }
 
     /**
@@ -64,17 +81,27 @@ public final class SplitString {
     @Nonnull
     @CheckReturnValue
     public String getRawValue() {
-        return previousWhitespace + value;
+        return source.subSequence(whitespaceStart, end).toString();
+    }
+
+    /**
+     * The length of the value of this string, without creating it.
+     *
+     * @return The length of the value of this string.
+     */
+    @CheckReturnValue
+    public int length() {
+        return end - start;
     }
 
     @Override
     public int hashCode() {
-        return value.hashCode();
+        return getValue().hashCode();
     }
 
     @Override
     public boolean equals(Object obj) {
-        return obj instanceof SplitString && ((SplitString) obj).value.equals(value);
+        return obj instanceof SplitString && ((SplitString) obj).getValue().equals(getValue());
     }
 
     @Override
@@ -20,6 +20,8 @@ package net.kodehawa.mantarobot.core.command.argument.split;
 import javax.annotation.CheckReturnValue;
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 import java.util.regex.Pattern;
 
@@ -77,18 +79,42 @@ public class StringSplitter {
     @Nonnull
     @CheckReturnValue
     public SplitString[] split(@Nonnull String string) {
-        String[] values = pattern.split(string);
-        int remove = values.length > 0 && values[0].isEmpty() ? 1 : 0; //1 if first string is empty
-        int effectiveLength = values.length - remove;
-        SplitString[] strings = new SplitString[effectiveLength];
-        String lookup = string;
-        for(int i = remove; i < values.length; i++) {
-            String value = values[i];
-            int startIdx = lookup.indexOf(value);
-            strings[i - remove] = new SplitString(value, lookup.substring(0, startIdx));
-            lookup = lookup.substring(startIdx + value.length());
+        if (pattern == DEFAULT_PATTERN) {
+            return ArgumentTokenizer.local().tokenize(string).toArray();
         }
-        return strings;
+
+        // Single pass over the matches, the previous approach did indexOf + substring on every part, which is quadratic.
+        // Like Pattern#split, empty values in the middle are kept and trailing empty values are dropped.
+        List<SplitString> strings = new ArrayList<>();
+        var matcher = pattern.matcher(string);
+        int whitespaceStart = 0;
+        int start = 0;
+        int nonEmpty = 0;
+        while (matcher.find()) {
+            if (matcher.end() == 0) {
+                continue;
+            }
+
+            // A leading delimiter doesn't produce an empty first value.
+            if (matcher.start() > 0) {
+                strings.add(new SplitString(string, whitespaceStart, start, matcher.start()));
+                if (matcher.start() > start) {
+                    nonEmpty = strings.size();
+                }
+
+                whitespaceStart = matcher.start();
+            }
+
+            start = matcher.end();
+        }
+
+        if (start < string.length()) {
+            strings.add(new SplitString(string, whitespaceStart, start, string.length()));
+            nonEmpty = strings.size();
+        }
+
+        strings = strings.subList(0, nonEmpty);
+        return strings.toArray(new SplitString[0]);
     }
 
     /**
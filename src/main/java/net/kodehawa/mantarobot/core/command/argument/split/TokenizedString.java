@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.core.command.argument.split;
+
+import javax.annotation.CheckReturnValue;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+import static net.kodehawa.mantarobot.core.command.argument.split.ArgumentTokenizer.*;
+
+/**
+ * The result of {@link ArgumentTokenizer#tokenize(CharSequence) tokenizing} a string.
+ * <br>Only offsets are stored, {@link SplitString split strings} are created the first time
+ * a token is requested and their values the first time they're read.
+ */
+public final class TokenizedString {
+    private static final SplitString[] EMPTY = new SplitString[0];
+
+    private final CharSequence source;
+    private final int[] spans;
+    private final int size;
+    private SplitString[] cache;
+
+    TokenizedString(CharSequence source, int[] spans, int size) {
+        this.source = source;
+        this.spans = spans;
+        this.size = size;
+    }
+
+    /**
+     * Tokenizes the given input with the {@link ArgumentTokenizer#local() thread local tokenizer}.
+     *
+     * @param input Input to tokenize.
+     *
+     * @return The tokens found on the input.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public static TokenizedString of(@Nonnull CharSequence input) {
+        return ArgumentTokenizer.local().tokenize(input);
+    }
+
+    /**
+     * The amount of tokens.
+     *
+     * @return The amount of tokens.
+     */
+    @Nonnegative
+    @CheckReturnValue
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The input this was created from.
+     *
+     * @return The input this was created from.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public CharSequence source() {
+        return source;
+    }
+
+    /**
+     * Start offset (inclusive) of the given token on the source.
+     *
+     * @param i Index of the token.
+     *
+     * @return Start offset of the token.
+     */
+    @CheckReturnValue
+    public int start(@Nonnegative int i) {
+        return span(i, VALUE_START);
+    }
+
+    /**
+     * End offset (exclusive) of the given token on the source.
+     *
+     * @param i Index of the token.
+     *
+     * @return End offset of the token.
+     */
+    @CheckReturnValue
+    public int end(@Nonnegative int i) {
+        return span(i, VALUE_END);
+    }
+
+    /**
+     * Kind bits of the given token, see {@link ArgumentTokenizer#FLAG}, {@link ArgumentTokenizer#QUOTED},
+     * {@link ArgumentTokenizer#ESCAPED} and {@link ArgumentTokenizer#CODE_BLOCK}.
+     *
+     * @param i Index of the token.
+     *
+     * @return Kind bits of the token.
+     */
+    @CheckReturnValue
+    public int kind(@Nonnegative int i) {
+        return span(i, KIND);
+    }
+
+    /**
+     * Returns the given token. The object is created on the first call and reused afterwards.
+     *
+     * @param i Index of the token.
+     *
+     * @return The token at the given index.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public SplitString get(@Nonnegative int i) {
+        checkIndex(i);
+        if (cache == null) {
+            cache = new SplitString[size];
+        }
+
+        var string = cache[i];
+        if (string == null) {
+            int base = i * SPAN_SIZE;
+            string = cache[i] = new SplitString(source, spans[base + WHITESPACE_START], spans[base + VALUE_START], spans[base + VALUE_END]);
+        }
+
+        return string;
+    }
+
+    /**
+     * Returns the raw content (including whitespace) between the given tokens, without creating intermediate strings.
+     *
+     * @param from Index of the first token, inclusive.
+     * @param to Index of the last token, exclusive.
+     *
+     * @return The raw content between the given tokens.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public String rawRange(@Nonnegative int from, @Nonnegative int to) {
+        if (from >= to) {
+            return "";
+        }
+
+        return source.subSequence(span(from, WHITESPACE_START), span(to - 1, VALUE_END)).toString();
+    }
+
+    /**
+     * Materializes every token, useful for code that still needs an array.
+     *
+     * @return An array with all tokens.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public SplitString[] toArray() {
+        if (size == 0) {
+            return EMPTY;
+        }
+
+        var array = new SplitString[size];
+        for (int i = 0; i < size; i++) {
+            array[i] = get(i);
+        }
+
+        return array;
+    }
+
+    private int span(int i, int field) {
+        checkIndex(i);
+        return spans[i * SPAN_SIZE + field];
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index " + i + " out of bounds for length " + size);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.core.command.pipeline;
+
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.Role;
+import net.kodehawa.mantarobot.core.command.processor.CommandPhase;
+import net.kodehawa.mantarobot.core.modules.commands.base.CommandPermission;
+import net.kodehawa.mantarobot.data.Config;
+import net.kodehawa.mantarobot.utils.commands.EmoteReference;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks whether the command can run here: guild settings, command permissions and premium status.
+ * <br>Blacklisted guilds and users never get here, see {@link BlacklistStage}.
+ */
+public class AuthorizeStage implements CommandStage {
+    private final Config config;
+
+    public AuthorizeStage(Config config) {
+        this.config = config;
+    }
+
+    @Override
+    public boolean process(CommandInvocation invocation) {
+        if (invocation.checksGuildSettings() && !checkGuildSettings(invocation)) {
+            return false;
+        }
+
+        if (!invocation.getPermission().test(invocation.getMember())) {
+            invocation.reply(EmoteReference.STOP + "You have no permissions to trigger this command :(");
+            return false;
+        }
+
+        // If we are in the patreon bot, deny all requests from unknown guilds.
+        if (config.isPremiumBot() && !config.isOwner(invocation.getAuthor()) && !invocation.getDBGuild().isPremium()) {
+            invocation.reply("""
+                            :x: Seems like you're trying to use the Patreon bot when this guild is **not** marked as premium.
+                            **If you think this is an error please contact Kodehawa#3457 or poke me on #donators in the support guild**
+                            If you didn't contact Kodehawa prior to adding this bot to this server, please do so so we can link it to your pledge.
+                            """
+            );
+            return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public CommandPhase phase() {
+        return CommandPhase.PERMISSIONS;
+    }
+
+    private boolean checkGuildSettings(CommandInvocation invocation) {
+        final var guildData = invocation.getDBGuild().getData();
+        final var name = invocation.getName();
+        final var category = invocation.getCategory();
+        final var member = invocation.getMember();
+        final var channelId = invocation.getChannel().getId();
+        final var bypass = invocation.bypassesChannelSettings();
+
+        if (guildData.getDisabledCommands().contains(name)) {
+            invocation.sendDisabledNotice(CommandDisableLevel.COMMAND);
+            return false;
+        }
+
+        final var channelDisabledCommands = guildData.getChannelSpecificDisabledCommands().get(channelId);
+        if (channelDisabledCommands != null && channelDisabledCommands.contains(name)) {
+            invocation.sendDisabledNotice(CommandDisableLevel.COMMAND_SPECIFIC);
+            return false;
+        }
+
+        if (guildData.getDisabledUsers().contains(invocation.getAuthor().getId()) && isNotAdmin(member)) {
+            invocation.sendDisabledNotice(CommandDisableLevel.USER);
+            return false;
+        }
+
+        if (guildData.getDisabledChannels().contains(channelId) && !bypass) {
+            invocation.sendDisabledNotice(CommandDisableLevel.CHANNEL);
+            return false;
+        }
+
+        if (category != null && !bypass) {
+            if (guildData.getDisabledCategories().contains(category)) {
+                invocation.sendDisabledNotice(CommandDisableLevel.CATEGORY);
+                return false;
+            }
+
+            if (guildData.getChannelSpecificDisabledCategories().getOrDefault(channelId, Collections.emptyList()).contains(category)) {
+                invocation.sendDisabledNotice(CommandDisableLevel.SPECIFIC_CATEGORY);
+                return false;
+            }
+        }
+
+        // Everything below needs the member roles, don't even look at them unless a role setting is in use.
+        final var whitelistedRoleId = guildData.getWhitelistedRole();
+        final var disabledRoles = guildData.getDisabledRoles();
+        final var roleSpecificDisabledCommands = guildData.getRoleSpecificDisabledCommands();
+        final var roleSpecificDisabledCategories = guildData.getRoleSpecificDisabledCategories();
+        if (whitelistedRoleId == null && disabledRoles.isEmpty() &&
+                roleSpecificDisabledCommands.isEmpty() && roleSpecificDisabledCategories.isEmpty()) {
+            return true;
+        }
+
+        // Admins are exempt from all role settings.
+        if (!isNotAdmin(member)) {
+            return true;
+        }
+
+        final var roles = member.getRoles();
+        if (whitelistedRoleId != null) {
+            var whitelistedRole = invocation.getGuild().getRoleById(whitelistedRoleId);
+            if (whitelistedRole != null && roles.stream().noneMatch(r -> whitelistedRole.getId().equals(r.getId()))) {
+                return false;
+            }
+            // else continue.
+        }
+
+        if (!disabledRoles.isEmpty() && roles.stream().anyMatch(r -> disabledRoles.contains(r.getId()))) {
+            invocation.sendDisabledNotice(CommandDisableLevel.ROLE);
+            return false;
+        }
+
+        if (anyRoleMatches(roles, roleSpecificDisabledCommands, name)) {
+            invocation.sendDisabledNotice(CommandDisableLevel.SPECIFIC_ROLE);
+            return false;
+        }
+
+        if (category != null && anyRoleMatches(roles, roleSpecificDisabledCategories, category)) {
+            invocation.sendDisabledNotice(CommandDisableLevel.SPECIFIC_ROLE_CATEGORY);
+            return false;
+        }
+
+        return true;
+    }
+
+    private static <T> boolean anyRoleMatches(List<Role> roles, Map<String, List<T>> settings, T value) {
+        if (settings.isEmpty()) {
+            return false;
+        }
+
+        for (var role : roles) {
+            var disabled = settings.get(role.getId());
+            if (disabled != null && disabled.contains(value)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean isNotAdmin(Member member) {
+        return !CommandPermission.ADMIN.test(member);
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.core.command.pipeline;
+
+import net.kodehawa.mantarobot.core.command.processor.CommandPhase;
+import net.kodehawa.mantarobot.utils.commands.ratelimit.RateLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Drops commands from blacklisted guilds, and from users that are blocked from the bot (for botting or hitting the spam filter).
+ * <br>Goes before every other check, so nothing else ever replies to them. Blocked users only get told about it once in a while,
+ * as telling them on every command would be spam on its own.
+ */
+public class BlacklistStage implements CommandStage {
+    private static final Logger log = LoggerFactory.getLogger(BlacklistStage.class);
+    private final RateLimiter blacklistNoticeLimiter;
+
+    public BlacklistStage(RateLimiter blacklistNoticeLimiter) {
+        this.blacklistNoticeLimiter = blacklistNoticeLimiter;
+    }
+
+    @Override
+    public boolean process(CommandInvocation invocation) {
+        final var mantaroData = invocation.getMantaroData();
+        final var guild = invocation.getGuild();
+        if (mantaroData.getBlackListedGuilds().contains(guild.getId())) {
+            log.debug("Got command from blacklisted guild {}, dropping", guild.getId());
+            invocation.onBlacklistedGuild();
+            return false;
+        }
+
+        final var author = invocation.getAuthor();
+        if (!mantaroData.getBlackListedUsers().contains(author.getId())) {
+            return true;
+        }
+
+        if (blacklistNoticeLimiter.process(author)) {
+            invocation.reply("""
+                    :x: You have been blocked from using all of Mantaro's functions, likely for botting or hitting the spam filter.
+                    If you wish to get more details on why or appeal the ban, send an email to `contact@mantaro.site`. Make sure to be sincere.
+                    """
+            );
+        }
+
+        return false;
+    }
+
+    @Override
+    public CommandPhase phase() {
+        return CommandPhase.PERMISSIONS;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.core.command.pipeline;
+
+public enum CommandDisableLevel {
+    NONE("None"),
+    CATEGORY("Disabled category on server"),
+    SPECIFIC_CATEGORY("Disabled category on specific channel"),
+    COMMAND("Disabled command"),
+    COMMAND_SPECIFIC("Disabled command on specific channel"),
+    GUILD("Disabled command on this server"),
+    ROLE("Disabled role on this server"),
+    ROLE_CATEGORY("Disabled role for this category in this server"),
+    SPECIFIC_ROLE("Disabled role for this command in this server"),
+    SPECIFIC_ROLE_CATEGORY("Disabled role for this category in this server"),
+    CHANNEL("Disabled channel"),
+    USER("Disabled user");
+
+    final String name;
+
+    CommandDisableLevel(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.core.command.pipeline;
+
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.User;
+import net.dv8tion.jda.api.entities.channel.middleman.MessageChannel;
+import net.kodehawa.mantarobot.core.modules.commands.base.CommandCategory;
+import net.kodehawa.mantarobot.core.modules.commands.base.CommandPermission;
+import net.kodehawa.mantarobot.core.modules.commands.i18n.I18nContext;
+import net.kodehawa.mantarobot.db.ManagedDatabase;
+import net.kodehawa.mantarobot.db.entities.DBGuild;
+import net.kodehawa.mantarobot.db.entities.DBUser;
+import net.kodehawa.mantarobot.db.entities.MantaroObj;
+import org.slf4j.Logger;
+
+import javax.annotation.Nullable;
+
+/**
+ * A single command call going through the {@link CommandPipeline}, regardless of how it was invoked (text, slash or context menu).
+ * <br>Database entities are fetched lazily and at most once per invocation, so stages can share them.
+ */
+public abstract class CommandInvocation {
+    private final ManagedDatabase managedDatabase;
+    private final long start = System.nanoTime();
+    private DBGuild dbGuild;
+    private DBUser dbUser;
+    private MantaroObj mantaroData;
+
+    protected CommandInvocation(ManagedDatabase managedDatabase, @Nullable DBGuild dbGuild) {
+        this.managedDatabase = managedDatabase;
+        this.dbGuild = dbGuild;
+    }
+
+    public abstract Guild getGuild();
+
+    @Nullable
+    public abstract Member getMember();
+
+    public abstract User getAuthor();
+
+    @Nullable
+    public abstract MessageChannel getChannel();
+
+    /**
+     * The name of the command, as used in the disabled command lists.
+     *
+     * @return The name of the command.
+     */
+    public abstract String getName();
+
+    /**
+     * The name this command is reported as on metrics.
+     *
+     * @return The metric name of the command.
+     */
+    public abstract String getMetricName();
+
+    /**
+     * The category of the command, if any. Commands without a category skip the category checks.
+     *
+     * @return The category of the command.
+     */
+    @Nullable
+    public abstract CommandCategory getCategory();
+
+    /**
+     * The category this command is reported as on metrics, or null if it shouldn't be counted by category.
+     *
+     * @return The metric category of the command.
+     */
+    @Nullable
+    public abstract String getMetricCategory();
+
+    public abstract CommandPermission getPermission();
+
+    /**
+     * Whether guild settings (disabled commands, channels, roles...) apply to this command.
+     *
+     * @return True if guild settings should be checked.
+     */
+    public boolean checksGuildSettings() {
+        return true;
+    }
+
+    /**
+     * Whether premium keys about to expire get renewed (and their owner warned) before running this command.
+     *
+     * @return True if premium keys should be renewed.
+     */
+    public boolean renewsPremiumKeys() {
+        return true;
+    }
+
+    /**
+     * Whether this command ignores disabled channels and categories (so they can be re-enabled).
+     *
+     * @return True if disabled channels and categories should be ignored.
+     */
+    public boolean bypassesChannelSettings() {
+        return false;
+    }
+
+    /**
+     * Replies to the invocation. Interactions reply ephemerally.
+     *
+     * @param message The message to send.
+     */
+    public abstract void reply(String message);
+
+    /**
+     * Called when the command was dropped because of a guild setting.
+     *
+     * @param level The setting that disabled this command.
+     */
+    public abstract void sendDisabledNotice(CommandDisableLevel level);
+
+    /**
+     * Called when the command was dropped because the guild is blacklisted.
+     */
+    public abstract void onBlacklistedGuild();
+
+    /**
+     * Runs the actual command.
+     *
+     * @param i18n The language context to run with.
+     */
+    protected abstract void execute(I18nContext i18n);
+
+    /**
+     * Logs this invocation to the command log.
+     *
+     * @param commandLog The command log.
+     */
+    protected abstract void log(Logger commandLog);
+
+    public long getStart() {
+        return start;
+    }
+
+    public ManagedDatabase getManagedDatabase() {
+        return managedDatabase;
+    }
+
+    public DBGuild getDBGuild() {
+        if (dbGuild == null) {
+            dbGuild = managedDatabase.getGuild(getGuild());
+        }
+
+        return dbGuild;
+    }
+
+    public DBUser getDBUser() {
+        if (dbUser == null) {
+            dbUser = managedDatabase.getUser(getAuthor());
+        }
+
+        return dbUser;
+    }
+
+    public MantaroObj getMantaroData() {
+        if (mantaroData == null) {
+            mantaroData = managedDatabase.getMantaroData();
+        }
+
+        return mantaroData;
+    }
+}
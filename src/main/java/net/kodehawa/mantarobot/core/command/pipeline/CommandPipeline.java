@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.core.command.pipeline;
+
+import net.kodehawa.mantarobot.core.command.processor.CommandTimer;
+import net.kodehawa.mantarobot.data.Config;
+import net.kodehawa.mantarobot.utils.commands.ratelimit.RateLimiter;
+
+import java.util.List;
+
+/**
+ * Runs every command invocation, regardless of type, through the same ordered list of stages.
+ * <br>The default stages are resolve, blacklist, authorize, execute and record. Each stage can stop the pipeline.
+ * The blacklist goes first so blacklisted guilds and users never get any other reply.
+ */
+public class CommandPipeline {
+    private final List<CommandStage> stages;
+
+    public CommandPipeline(List<CommandStage> stages) {
+        this.stages = List.copyOf(stages);
+    }
+
+    /**
+     * Creates the pipeline used for all commands.
+     *
+     * @param config The bot configuration.
+     * @param blacklistNoticeLimiter Limits how often blacklisted users get told they're blacklisted.
+     * @return The default pipeline.
+     */
+    public static CommandPipeline defaultPipeline(Config config, RateLimiter blacklistNoticeLimiter) {
+        return new CommandPipeline(List.of(
+                new ResolveStage(),
+                new BlacklistStage(blacklistNoticeLimiter),
+                new AuthorizeStage(config),
+                new ExecuteStage(),
+                new RecordStage()
+        ));
+    }
+
+    /**
+     * Runs the invocation through all stages, stopping on the first one that rejects it.
+     *
+     * @param invocation The invocation to run.
+     * @return True if every stage ran.
+     */
+    public boolean run(CommandInvocation invocation) {
+        for (var stage : stages) {
+            try (var ignored = CommandTimer.phase(stage.phase())) {
+                if (!stage.process(invocation)) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    public List<CommandStage> getStages() {
+        return stages;
+    }
+}
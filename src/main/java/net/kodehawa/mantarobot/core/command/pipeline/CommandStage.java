@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.core.command.pipeline;
+
+import net.kodehawa.mantarobot.core.command.processor.CommandPhase;
+
+/**
+ * A step of the {@link CommandPipeline}.
+ */
+@FunctionalInterface
+public interface CommandStage {
+    /**
+     * Processes the invocation.
+     *
+     * @param invocation The invocation to process.
+     * @return False to stop the pipeline here, true to continue with the next stage.
+     */
+    boolean process(CommandInvocation invocation);
+
+    /**
+     * The phase time spent on this stage is attributed to.
+     *
+     * @return The phase of this stage.
+     */
+    default CommandPhase phase() {
+        return CommandPhase.DISPATCH;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.core.command.pipeline;
+
+import net.dv8tion.jda.api.entities.User;
+import net.dv8tion.jda.api.entities.channel.middleman.MessageChannel;
+import net.dv8tion.jda.api.events.interaction.command.UserContextInteractionEvent;
+import net.kodehawa.mantarobot.core.command.slash.ContextCommand;
+import net.kodehawa.mantarobot.core.command.slash.InteractionContext;
+import net.kodehawa.mantarobot.core.modules.commands.base.CommandCategory;
+import net.kodehawa.mantarobot.core.modules.commands.base.CommandPermission;
+import net.kodehawa.mantarobot.core.modules.commands.i18n.I18nContext;
+import net.kodehawa.mantarobot.db.ManagedDatabase;
+import org.slf4j.Logger;
+
+/**
+ * A (user) context menu command. These have no category and aren't affected by guild settings or premium key renewal.
+ */
+public class ContextInvocation extends InteractionInvocation<UserContextInteractionEvent> {
+    private final ContextCommand<User> command;
+
+    public ContextInvocation(ManagedDatabase managedDatabase, UserContextInteractionEvent event, ContextCommand<User> command) {
+        super(managedDatabase, event);
+        this.command = command;
+    }
+
+    @Override
+    public MessageChannel getChannel() {
+        return null; // Not needed, as guild settings don't apply.
+    }
+
+    @Override
+    public String getName() {
+        return command.getName();
+    }
+
+    @Override
+    public String getMetricName() {
+        return command.getName() + "-context";
+    }
+
+    @Override
+    public CommandCategory getCategory() {
+        return null;
+    }
+
+    @Override
+    public String getMetricCategory() {
+        return null;
+    }
+
+    @Override
+    public CommandPermission getPermission() {
+        return command.getPermission();
+    }
+
+    @Override
+    public boolean checksGuildSettings() {
+        return false;
+    }
+
+    @Override
+    public boolean renewsPremiumKeys() {
+        return false;
+    }
+
+    @Override
+    protected void execute(I18nContext i18n) {
+        command.execute(new InteractionContext<>(event, i18n));
+    }
+
+    @Override
+    protected void log(Logger commandLog) {
+        final var author = event.getUser();
+        commandLog.debug("Context (user) command: {}, User: {} ({}), Guild: {}" ,
+                command.getName(), author.getAsTag(), author.getId(), event.getGuild().getId()
+        );
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.core.command.pipeline;
+
+import net.dv8tion.jda.api.entities.User;
+import net.kodehawa.mantarobot.core.command.processor.CommandPhase;
+import net.kodehawa.mantarobot.core.modules.commands.base.CommandCategory;
+import net.kodehawa.mantarobot.core.modules.commands.i18n.I18nContext;
+import net.kodehawa.mantarobot.db.ManagedDatabase;
+import net.kodehawa.mantarobot.db.entities.DBUser;
+import net.kodehawa.mantarobot.db.entities.helpers.GuildData;
+import net.kodehawa.mantarobot.utils.commands.EmoteReference;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Renews premium keys that are about to expire and runs the command.
+ * <br>Commands that change the author's player run in the author's player lane, one at a time.
+ */
+public class ExecuteStage implements CommandStage {
+    private static final Set<CommandCategory> LANED = EnumSet.of(CommandCategory.CURRENCY, CommandCategory.PETS);
+
+    @Override
+    public boolean process(CommandInvocation invocation) {
+        final var guildData = invocation.getDBGuild().getData();
+        final var dbUser = invocation.getDBUser();
+        if (invocation.renewsPremiumKeys()) {
+            renewPremiumKey(invocation.getManagedDatabase(), invocation.getAuthor(), dbUser, guildData);
+        }
+
+        final var i18n = new I18nContext(guildData, dbUser.getData());
+        final var playerLanes = invocation.getManagedDatabase().getPlayerLanes();
+        if (playerLanes != null && LANED.contains(invocation.getCategory())) {
+            if (!playerLanes.run(invocation.getAuthor().getId(), () -> invocation.execute(i18n))) {
+                invocation.reply(i18n.get("general.player_lane_busy").formatted(EmoteReference.STOPWATCH));
+            }
+        } else {
+            invocation.execute(i18n);
+        }
+
+        return true;
+    }
+
+    @Override
+    public CommandPhase phase() {
+        return CommandPhase.EXECUTION;
+    }
+
+    private void renewPremiumKey(ManagedDatabase managedDatabase, User author, DBUser dbUser, GuildData guildData) {
+        final var userData = dbUser.getData();
+        final var currentKey = managedDatabase.getPremiumKey(userData.getPremiumKey());
+        final var guildKey = managedDatabase.getPremiumKey(guildData.getPremiumKey());
+        if (currentKey != null) {
+            // 10 days before expiration or best fit.
+            if (currentKey.validFor() <= 10 && currentKey.validFor() > 1) {
+                // Handling is done inside the PremiumKey#renew method. This only gets fired if the key has less than 10 days left.
+                if (!currentKey.renew() && !userData.hasReceivedExpirationWarning()) {
+                    author.openPrivateChannel().queue(privateChannel ->
+                            privateChannel.sendMessage(
+                                    """
+                                    %1$sYour premium key is about to expire in **%2$,d** days**!
+                                    :heart: *If you're still pledging to Mantaro* you can ask Kodehawa#3457 for a key renewal in the #donators channel.*
+                                    In the case that you're not longer a patron, you cannot renew, but I sincerely hope you had a good time with the bot and its features!
+                                    **If you ever want to pledge again you can check the patreon link at <https://patreon.com/mantaro>**
+                                    
+                                    Thanks you so much for your support to keep Mantaro alive! It wouldn't be possible without the help of all of you.
+                                    With love, Kodehawa and the Mantaro team :heart:
+                                    
+                                    This will only be sent once (hopefully). Thanks again!
+                                    """.formatted(EmoteReference.WARNING, Math.max(1, currentKey.validFor()))
+                            ).queue()
+                    );
+                }
+
+                userData.setReceivedExpirationWarning(true);
+                dbUser.saveUpdating();
+            }
+        }
+
+        // Handling is done inside the PremiumKey#renew method. This only gets fired if the key has less than 10 days left.
+        if (guildKey != null && guildKey.validFor() <= 10 && guildKey.validFor() > 1) {
+            guildKey.renew();
+        }
+    }
+}
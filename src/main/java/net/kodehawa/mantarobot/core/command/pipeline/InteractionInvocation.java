@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.core.command.pipeline;
+
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.User;
+import net.dv8tion.jda.api.events.interaction.command.GenericCommandInteractionEvent;
+import net.kodehawa.mantarobot.db.ManagedDatabase;
+import net.kodehawa.mantarobot.utils.Utils;
+import net.kodehawa.mantarobot.utils.commands.EmoteReference;
+
+/**
+ * Base for commands invoked through interactions (slash and context menu commands).
+ * <br>Every reply is ephemeral, as the interaction has to be acknowledged either way.
+ *
+ * @param <E> The type of the interaction event.
+ */
+public abstract class InteractionInvocation<E extends GenericCommandInteractionEvent> extends CommandInvocation {
+    protected final E event;
+
+    protected InteractionInvocation(ManagedDatabase managedDatabase, E event) {
+        super(managedDatabase, null);
+        this.event = event;
+    }
+
+    @Override
+    public Guild getGuild() {
+        return event.getGuild();
+    }
+
+    @Override
+    public Member getMember() {
+        return event.getMember();
+    }
+
+    @Override
+    public User getAuthor() {
+        return event.getUser();
+    }
+
+    @Override
+    public void reply(String message) {
+        event.reply(message).setEphemeral(true).queue();
+    }
+
+    @Override
+    public void sendDisabledNotice(CommandDisableLevel level) {
+        reply("%sThis command is disabled on this server. Reason: %s"
+                .formatted(EmoteReference.ERROR, Utils.capitalize(level.getName()))
+        );
+    }
+
+    @Override
+    public void onBlacklistedGuild() {
+        reply("Not accepting commands from this server.");
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.core.command.pipeline;
+
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logs the command and updates the command metrics.
+ */
+public class RecordStage implements CommandStage {
+    private static final Logger commandLog = LoggerFactory.getLogger("command-log");
+
+    @Override
+    public boolean process(CommandInvocation invocation) {
+        invocation.log(commandLog);
+
+        final var end = System.nanoTime();
+        final var category = invocation.getMetricCategory();
+        if (category != null) {
+            Metrics.CATEGORY_COUNTER.labels(category).inc();
+        }
+
+        Metrics.COMMAND_COUNTER.labels(invocation.getMetricName()).inc();
+        Metrics.COMMAND_LATENCY.observe(TimeUnit.NANOSECONDS.toMillis(end - invocation.getStart()));
+        return true;
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.core.command.pipeline;
+
+import net.kodehawa.mantarobot.core.command.processor.CommandTimer;
+
+/**
+ * Labels the command timer and drops invocations that can't go any further (no member).
+ */
+public class ResolveStage implements CommandStage {
+    @Override
+    public boolean process(CommandInvocation invocation) {
+        var category = invocation.getMetricCategory();
+        CommandTimer.label(invocation.getMetricName(), category == null ? "none" : category);
+
+        // Shouldn't be possible at this stage?
+        return invocation.getMember() != null;
+    }
+}
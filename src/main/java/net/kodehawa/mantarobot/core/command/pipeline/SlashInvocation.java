@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.core.command.pipeline;
+
+import net.dv8tion.jda.api.entities.channel.middleman.MessageChannel;
+import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
+import net.kodehawa.mantarobot.core.command.slash.SlashCommand;
+import net.kodehawa.mantarobot.core.command.slash.SlashContext;
+import net.kodehawa.mantarobot.core.modules.commands.base.CommandCategory;
+import net.kodehawa.mantarobot.core.modules.commands.base.CommandPermission;
+import net.kodehawa.mantarobot.core.modules.commands.i18n.I18nContext;
+import net.kodehawa.mantarobot.db.ManagedDatabase;
+import org.slf4j.Logger;
+
+/**
+ * A slash command.
+ */
+public class SlashInvocation extends InteractionInvocation<SlashCommandInteractionEvent> {
+    private final SlashCommand command;
+
+    public SlashInvocation(ManagedDatabase managedDatabase, SlashCommandInteractionEvent event, SlashCommand command) {
+        super(managedDatabase, event);
+        this.command = command;
+    }
+
+    @Override
+    public MessageChannel getChannel() {
+        return event.getGuildChannel();
+    }
+
+    @Override
+    public String getName() {
+        return command.getName();
+    }
+
+    @Override
+    public String getMetricName() {
+        return command.getName() + "-slash";
+    }
+
+    @Override
+    public CommandCategory getCategory() {
+        return command.getCategory();
+    }
+
+    @Override
+    public String getMetricCategory() {
+        return command.getCategory().name().toLowerCase();
+    }
+
+    @Override
+    public CommandPermission getPermission() {
+        return command.getPermission();
+    }
+
+    @Override
+    protected void execute(I18nContext i18n) {
+        command.execute(new SlashContext(event, i18n));
+    }
+
+    @Override
+    protected void log(Logger commandLog) {
+        final var author = event.getUser();
+        commandLog.debug("Slash command: {}, User: {} ({}), Guild: {}, Channel: {}, Options: {}" ,
+                command.getName(), author.getAsTag(), author.getId(), event.getGuild().getId(), event.getChannel().getId(), event.getOptions()
+        );
+    }
+}
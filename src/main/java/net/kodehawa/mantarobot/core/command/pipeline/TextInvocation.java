@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.core.command.pipeline;
+
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.User;
+import net.dv8tion.jda.api.entities.channel.middleman.MessageChannel;
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import net.kodehawa.mantarobot.core.command.CommandManager;
+import net.kodehawa.mantarobot.core.command.NewContext;
+import net.kodehawa.mantarobot.core.command.argument.ArgumentParseError;
+import net.kodehawa.mantarobot.core.modules.commands.base.Command;
+import net.kodehawa.mantarobot.core.modules.commands.base.CommandCategory;
+import net.kodehawa.mantarobot.core.modules.commands.base.CommandPermission;
+import net.kodehawa.mantarobot.core.modules.commands.base.Context;
+import net.kodehawa.mantarobot.core.modules.commands.i18n.I18nContext;
+import net.kodehawa.mantarobot.db.ManagedDatabase;
+import net.kodehawa.mantarobot.db.entities.DBGuild;
+import net.kodehawa.mantarobot.utils.Utils;
+import net.kodehawa.mantarobot.utils.commands.EmoteReference;
+import org.slf4j.Logger;
+
+/**
+ * A prefixed (text) command.
+ */
+public class TextInvocation extends CommandInvocation {
+    private final MessageReceivedEvent event;
+    private final CommandManager newCommands;
+    private final Command command;
+    private final String name;
+    private final CommandCategory category;
+    private final String cmdName;
+    private final String content;
+    private final String prefix;
+    private final boolean isMention;
+
+    /**
+     * @param name The resolved name of the command (the original name for aliases).
+     * @param category The category of the root command (aliases have none on their own).
+     * @param cmdName The name the user typed.
+     */
+    public TextInvocation(ManagedDatabase managedDatabase, DBGuild dbGuild, MessageReceivedEvent event, CommandManager newCommands,
+                          Command command, String name, CommandCategory category, String cmdName, String content, String prefix, boolean isMention) {
+        super(managedDatabase, dbGuild);
+        this.event = event;
+        this.newCommands = newCommands;
+        this.command = command;
+        this.name = name;
+        this.category = category;
+        this.cmdName = cmdName;
+        this.content = content;
+        this.prefix = prefix;
+        this.isMention = isMention;
+    }
+
+    @Override
+    public Guild getGuild() {
+        return event.getGuild();
+    }
+
+    @Override
+    public Member getMember() {
+        return event.getMember();
+    }
+
+    @Override
+    public User getAuthor() {
+        return event.getAuthor();
+    }
+
+    @Override
+    public MessageChannel getChannel() {
+        return event.getChannel();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getMetricName() {
+        return name;
+    }
+
+    @Override
+    public CommandCategory getCategory() {
+        return category;
+    }
+
+    @Override
+    public String getMetricCategory() {
+        return category == null ? "custom" : category.name().toLowerCase();
+    }
+
+    @Override
+    public CommandPermission getPermission() {
+        return command.permission();
+    }
+
+    @Override
+    public boolean bypassesChannelSettings() {
+        // Otherwise there'd be no way to re-enable a channel or category.
+        return cmdName.equalsIgnoreCase("opts");
+    }
+
+    @Override
+    public void reply(String message) {
+        event.getChannel().sendMessage(message).queue();
+    }
+
+    @Override
+    public void sendDisabledNotice(CommandDisableLevel level) {
+        if (getDBGuild().getData().isCommandWarningDisplay() && level != CommandDisableLevel.NONE) {
+            event.getChannel().sendMessageFormat("%sThis command is disabled on this server. Reason: %s",
+                    EmoteReference.ERROR, Utils.capitalize(level.getName())
+            ).queue();
+        } // else don't
+    }
+
+    @Override
+    public void onBlacklistedGuild() {
+        // Drop silently, replying would defeat the purpose.
+    }
+
+    @Override
+    protected void execute(I18nContext i18n) {
+        final var channel = event.getChannel();
+        // Used a command on the new system?
+        // sort-of-fix: remove if statement when we port all commands
+        boolean executedNew;
+        try {
+            executedNew = newCommands.execute(new NewContext(event.getMessage(), i18n,
+                    event.getMessage().getContentRaw().substring(prefix.length()))
+            );
+        } catch (ArgumentParseError e) {
+            if (e.getMessage() != null) {
+                channel.sendMessage(EmoteReference.ERROR + e.getMessage()).queue();
+            } else {
+                e.printStackTrace();
+                channel.sendMessage(
+                        EmoteReference.ERROR + "There was an error parsing the arguments for this command. Please report this to the developers"
+                ).queue();
+            }
+
+            return;
+        }
+
+        if (!executedNew) {
+            command.run(new Context(event, i18n, cmdName, content, isMention), cmdName, content);
+        }
+    }
+
+    @Override
+    protected void log(Logger commandLog) {
+        final var author = event.getAuthor();
+        commandLog.debug("Command: {}, User: {} ({}), Guild: {}, Channel: {}, Message: {}" ,
+                cmdName, author.getAsTag(), author.getId(), event.getGuild().getId(), event.getChannel().getId(), event.getMessage().getId()
+        );
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.core.command.processor;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.kodehawa.mantarobot.data.Config;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
+import net.kodehawa.mantarobot.utils.exporters.ThreadPoolCollector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs commands with a global concurrency limit, queueing them per guild and taking one command per guild in turns,
+ * so a single huge guild can't starve everyone else.
+ * <br>Commands run on virtual threads when {@code commandExecutorMode} is "virtual" and the JVM supports them (21+),
+ * otherwise on a platform pool capped at the concurrency limit.
+ */
+public class CommandExecutor implements ThreadPoolCollector.Stats {
+    private static final Logger log = LoggerFactory.getLogger(CommandExecutor.class);
+
+    private final ExecutorService backend;
+    private final Semaphore permits;
+    private final int maxConcurrent;
+    private final int maxQueuedPerGuild;
+    private final Map<Long, GuildQueue> queues = new ConcurrentHashMap<>();
+    // Guilds with pending commands, in the order they get their next turn.
+    private final ConcurrentLinkedQueue<GuildQueue> ready = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public CommandExecutor(Config config) {
+        this.maxConcurrent = config.getMaxConcurrentCommands();
+        this.maxQueuedPerGuild = config.getMaxQueuedCommandsPerGuild();
+        this.permits = new Semaphore(maxConcurrent);
+        this.backend = createBackend(config.getCommandExecutorMode(), maxConcurrent);
+    }
+
+    /**
+     * Queues a command.
+     *
+     * @param guildId The guild it comes from (0 if none).
+     * @param command The command.
+     * @return False if it was rejected because the guild already has too many commands waiting.
+     */
+    public boolean execute(long guildId, Runnable command) {
+        while (true) {
+            var queue = queues.computeIfAbsent(guildId, GuildQueue::new);
+            synchronized (queue) {
+                if (queue.removed) {
+                    // It ran empty and got dropped after we looked it up: anything added here would skip the per-guild limit.
+                    continue;
+                }
+
+                if (queue.tasks.size() >= maxQueuedPerGuild) {
+                    rejected.increment();
+                    return false;
+                }
+
+                queue.tasks.add(new Task(command, System.nanoTime()));
+                queued.incrementAndGet();
+                if (!queue.scheduled) {
+                    queue.scheduled = true;
+                    ready.add(queue);
+                }
+            }
+
+            schedule();
+            return true;
+        }
+    }
+
+    private void schedule() {
+        while (permits.tryAcquire()) {
+            var queue = ready.poll();
+            if (queue == null) {
+                permits.release();
+                // Someone might have queued something (and failed to get a permit) before we released it.
+                if (ready.isEmpty()) {
+                    return;
+                }
+
+                continue;
+            }
+
+            Task task;
+            synchronized (queue) {
+                task = queue.tasks.poll();
+                if (queue.tasks.isEmpty()) {
+                    queue.scheduled = false;
+                    queue.removed = true;
+                    queues.remove(queue.guildId, queue);
+                } else {
+                    // Back of the line: every other guild with pending commands goes first.
+                    ready.add(queue);
+                }
+            }
+
+            if (task == null) {
+                permits.release();
+                continue;
+            }
+
+            queued.decrementAndGet();
+            backend.execute(() -> {
+                try {
+                    Metrics.COMMAND_QUEUE_WAIT.observe((System.nanoTime() - task.queuedAt()) / 1e9);
+                    task.command().run();
+                } catch (Throwable t) {
+                    log.error("Uncaught error while running a command", t);
+                } finally {
+                    completed.increment();
+                    permits.release();
+                    schedule();
+                }
+            });
+        }
+    }
+
+    @Override
+    public int getActiveCount() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    @Override
+    public int getMaximumPoolSize() {
+        return maxConcurrent;
+    }
+
+    @Override
+    public int getQueuedCount() {
+        return queued.get();
+    }
+
+    @Override
+    public long getCompletedTaskCount() {
+        return completed.sum();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    private static ExecutorService createBackend(String mode, int maxConcurrent) {
+        if ("virtual".equalsIgnoreCase(mode)) {
+            try {
+                // Looked up reflectively, as we still compile against 16.
+                var method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                log.info("Running commands on virtual threads (max {} at once)", maxConcurrent);
+                return (ExecutorService) method.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                log.warn("Virtual threads were requested for commands, but this JVM doesn't support them. Using platform threads");
+            }
+        }
+
+        // Never more than maxConcurrent tasks get here, so this never actually queues.
+        var executor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("Mantaro Command Thread-%d").build()
+        );
+
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static class GuildQueue {
+        private final long guildId;
+        private final ArrayDeque<Task> tasks = new ArrayDeque<>();
+        private boolean scheduled;
+        // Taken out of the queues map, so it must not get anything else. Only touched with the queue's lock held.
+        private boolean removed;
+
+        private GuildQueue(long guildId) {
+            this.guildId = guildId;
+        }
+    }
+
+    private record Task(Runnable command, long queuedAt) { }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.core.command.processor;
+
+/**
+ * The phases a command invocation is split into for timing purposes, see {@link CommandTimer}.
+ * <br>Time is attributed exclusively: a database call made while executing a command counts towards
+ * {@link #DATABASE} and not {@link #EXECUTION}.
+ */
+public enum CommandPhase {
+    /**
+     * Anything that isn't attributed to another phase (prefix handling, command lookup, context creation...)
+     */
+    DISPATCH("dispatch"),
+    /**
+     * Reads and writes to RethinkDB, done through {@link net.kodehawa.mantarobot.db.ManagedDatabase}.
+     */
+    DATABASE("database"),
+    /**
+     * Blacklist, disabled commands, premium and permission checks.
+     */
+    PERMISSIONS("permissions"),
+    /**
+     * Ratelimit checks, done through {@link net.kodehawa.mantarobot.utils.commands.ratelimit.IncreasingRateLimiter}.
+     */
+    RATELIMIT("ratelimit"),
+    /**
+     * The command itself.
+     */
+    EXECUTION("execution"),
+    /**
+     * Replies sent by the command pipeline itself (disabled notices, permission errors...)
+     */
+    REPLY("reply");
+
+    private final String label;
+
+    CommandPhase(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
@@ -24,6 +24,9 @@ import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 import net.kodehawa.mantarobot.core.CommandRegistry;
 import net.kodehawa.mantarobot.data.MantaroData;
 
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 import static net.kodehawa.mantarobot.utils.StringUtils.splitArgs;
 
 public class CommandProcessor {
@@ -33,37 +36,82 @@ public class CommandProcessor {
             .register();
 
     public boolean runContextUser(UserContextInteractionEvent event) {
-        final long start = System.currentTimeMillis();
-        // Run the actual command here.
-        REGISTRY.process(event);
-
-        // This could be done using a lock, but that would be a little too blocking. So just set a flag.
-        try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
-            jedis.set("commands-running-" + event.getUser().getId(), String.valueOf(1));
+        final var timer = CommandTimer.start();
+        try {
+            // Run the actual command here.
+            REGISTRY.process(event);
+
+            // This could be done using a lock, but that would be a little too blocking. So just set a flag.
+            try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
+                jedis.set("commands-running-" + event.getUser().getId(), String.valueOf(1));
+            }
+        } finally {
+            commandTime.observe(TimeUnit.NANOSECONDS.toMillis(timer.finish()));
         }
 
-        final long end = System.currentTimeMillis();
-        commandTime.observe(end - start);
         return true;
     }
 
     public boolean runSlash(SlashCommandInteractionEvent event) {
-        final long start = System.currentTimeMillis();
-        // Run the actual command here.
-        REGISTRY.process(event);
-
-        // This could be done using a lock, but that would be a little too blocking. So just set a flag.
-        try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
-            jedis.set("commands-running-" + event.getUser().getId(), String.valueOf(1));
+        final var timer = CommandTimer.start();
+        try {
+            // Run the actual command here.
+            REGISTRY.process(event);
+
+            // This could be done using a lock, but that would be a little too blocking. So just set a flag.
+            try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
+                jedis.set("commands-running-" + event.getUser().getId(), String.valueOf(1));
+            }
+        } finally {
+            commandTime.observe(TimeUnit.NANOSECONDS.toMillis(timer.finish()));
         }
 
-        final long end = System.currentTimeMillis();
-        commandTime.observe(end - start);
         return true;
     }
 
     public boolean run(MessageReceivedEvent event) {
-        final long start = System.currentTimeMillis();
+        final var timer = CommandTimer.start();
+        var ran = false;
+        try {
+            ran = run0(event);
+            return ran;
+        } finally {
+            // Messages that don't start with a prefix aren't labeled by the registry, so per-phase timings are dropped for them.
+            var elapsed = timer.finish();
+            if (ran) {
+                commandTime.observe(TimeUnit.NANOSECONDS.toMillis(elapsed));
+            }
+        }
+    }
+
+    /**
+     * Whether the message could be a command, without going to the database: it starts with one of our prefixes,
+     * a mention, or the guild's custom prefix if we have its settings in memory. If we don't, it might be.
+     * <br>Used to keep plain chat out of the command queues.
+     */
+    public boolean mightBeCommand(MessageReceivedEvent event) {
+        final var config = MantaroData.config().get();
+        final var lowerRawCmd = event.getMessage().getContentRaw().toLowerCase();
+        for (String s : config.prefix) {
+            if (lowerRawCmd.startsWith(s)) {
+                return true;
+            }
+        }
+
+        if (lowerRawCmd.startsWith("<@%s> ".formatted(config.getClientId())) || lowerRawCmd.startsWith("<@!%s> ".formatted(config.getClientId()))) {
+            return true;
+        }
+
+        var guild = MantaroData.db().peekGuild(event.getGuild().getId());
+        if (guild == null) {
+            return true;
+        }
+
+        var customPrefix = guild.get("data") instanceof Map<?, ?> data && data.get("guildCustomPrefix") instanceof String prefix ? prefix : null;
+        return customPrefix != null && lowerRawCmd.startsWith(customPrefix.toLowerCase());
+    }
+
+    private boolean run0(MessageReceivedEvent event) {
         final var config = MantaroData.config().get();
         // The command executed, in raw form.
         var rawCmd = event.getMessage().getContentRaw();
@@ -118,9 +166,6 @@ public class CommandProcessor {
 
         // Run the actual command here.
         REGISTRY.process(event, dbGuild, cmdName, content, usedPrefix, isMention);
-
-        final long end = System.currentTimeMillis();
-        commandTime.observe(end - start);
         return true;
     }
 }
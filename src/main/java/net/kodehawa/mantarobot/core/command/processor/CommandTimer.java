@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.core.command.processor;
+
+import io.prometheus.client.Histogram;
+import net.kodehawa.mantarobot.data.MantaroData;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-phase command timing, using {@link System#nanoTime()}.
+ * <br>Each command thread has its own (reused) timer, which is {@link #start() started} by the {@link CommandProcessor}.
+ * Code anywhere down the call chain can then attribute time to a phase without having access to the command:
+ * <pre><code>
+ * try (var ignored = CommandTimer.phase(CommandPhase.DATABASE)) {
+ *     // query
+ * }
+ * </code></pre>
+ * Phases can be nested, only one phase is counted at any time (the innermost one). When there's no timer running on
+ * the current thread (eg, on a JDA callback), {@link #phase(CommandPhase)} does nothing.
+ */
+public final class CommandTimer {
+    private static final CommandPhase[] PHASES = CommandPhase.values();
+    private static final int MAX_DEPTH = 16;
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final ThreadLocal<CommandTimer> CURRENT = ThreadLocal.withInitial(CommandTimer::new);
+    private static final Section NO_OP = () -> { };
+
+    private static final Histogram PHASE_TIME = Histogram.build()
+            .name("command_phase_seconds")
+            .help("Time spent on each phase of a command, in seconds.")
+            .labelNames("command", "category", "phase")
+            .buckets(MantaroData.config().get().getCommandLatencyBuckets())
+            .register();
+    private static final Histogram TOTAL_TIME = Histogram.build()
+            .name("command_total_seconds")
+            .help("Total time it takes for a command to be processed, in seconds.")
+            .labelNames("command", "category")
+            .buckets(MantaroData.config().get().getCommandLatencyBuckets())
+            .register();
+
+    private final long[] elapsed = new long[PHASES.length];
+    private final int[] stack = new int[MAX_DEPTH];
+    private final Section section = this::exit;
+    private int depth;
+    private int current;
+    private long mark;
+    private long start;
+    private boolean running;
+    private String command;
+    private String category;
+
+    /**
+     * Starts timing a command on the current thread, discarding anything left over from a previous command.
+     *
+     * @return The timer for the current thread.
+     */
+    public static CommandTimer start() {
+        var timer = CURRENT.get();
+        timer.reset();
+        timer.running = true;
+        timer.start = timer.mark = System.nanoTime();
+        return timer;
+    }
+
+    /**
+     * Attributes time to the given phase until the returned section is closed.
+     *
+     * @param phase The phase to attribute time to.
+     * @return A section, that must be closed once the phase ends.
+     */
+    public static Section phase(CommandPhase phase) {
+        var timer = CURRENT.get();
+        if (!timer.running || timer.depth == MAX_DEPTH) {
+            return NO_OP;
+        }
+
+        return timer.enter(phase);
+    }
+
+    /**
+     * Sets the labels of the command being timed on this thread. Timings of invocations that never
+     * get labeled (eg, messages that weren't commands) are discarded.
+     *
+     * @param command The name of the command.
+     * @param category The category of the command.
+     */
+    public static void label(String command, String category) {
+        var timer = CURRENT.get();
+        if (timer.running) {
+            timer.command = command;
+            timer.category = category;
+        }
+    }
+
+    /**
+     * Stops the timer and records the time spent in each phase.
+     *
+     * @return The total elapsed time, in nanoseconds.
+     */
+    public long finish() {
+        if (!running) {
+            return 0;
+        }
+
+        var now = System.nanoTime();
+        elapsed[current] += now - mark;
+        running = false;
+
+        var total = now - start;
+        if (command != null) {
+            for (int i = 0; i < elapsed.length; i++) {
+                if (elapsed[i] > 0) {
+                    PHASE_TIME.labels(command, category, PHASES[i].getLabel()).observe(elapsed[i] / NANOS_PER_SECOND);
+                }
+            }
+
+            TOTAL_TIME.labels(command, category).observe(total / NANOS_PER_SECOND);
+        }
+
+        return total;
+    }
+
+    /**
+     * Time spent in the given phase so far, in nanoseconds.
+     *
+     * @param phase The phase.
+     * @return Time spent in the given phase so far.
+     */
+    public long elapsed(CommandPhase phase) {
+        var time = elapsed[phase.ordinal()];
+        if (running && current == phase.ordinal()) {
+            time += System.nanoTime() - mark;
+        }
+
+        return time;
+    }
+
+    private Section enter(CommandPhase phase) {
+        var now = System.nanoTime();
+        elapsed[current] += now - mark;
+        mark = now;
+        stack[depth++] = current;
+        current = phase.ordinal();
+        return section;
+    }
+
+    private void exit() {
+        // Closed after finish() or reset() (eg, a section leaked into the next command), nothing to do.
+        if (!running || depth == 0) {
+            return;
+        }
+
+        var now = System.nanoTime();
+        elapsed[current] += now - mark;
+        mark = now;
+        current = stack[--depth];
+    }
+
+    private void reset() {
+        for (int i = 0; i < elapsed.length; i++) {
+            elapsed[i] = 0;
+        }
+
+        depth = 0;
+        current = CommandPhase.DISPATCH.ordinal();
+        command = null;
+        category = null;
+    }
+
+    /**
+     * A timed section. Closing it returns to the previous phase.
+     */
+    @FunctionalInterface
+    public interface Section extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+package net.kodehawa.mantarobot.core.command.slash;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.interactions.commands.Command;
+import net.dv8tion.jda.api.interactions.commands.build.CommandData;
+import net.kodehawa.mantarobot.data.MantaroData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Pushes our slash and context commands to Discord only when they changed since the last push.
+ * Every command gets a hash of its serialized data, and the whole set a hash of those. They're kept
+ * (see {@link State}) so the next boot can tell what changed without asking Discord.
+ * <br>In diff mode only the commands that changed are upserted (and the ones that went away deleted),
+ * unless there are so many changes that a bulk overwrite is cheaper.
+ */
+public class SlashCommandSync {
+    private static final Logger log = LoggerFactory.getLogger(SlashCommandSync.class);
+    // Key of the hash of the whole set on the state, command keys are "<type>:<name>".
+    static final String SET_HASH = "hash";
+    // Past this many individual requests, one bulk overwrite is cheaper.
+    public static final int MAX_DIFF_REQUESTS = 10;
+
+    private final Upstream upstream;
+    private final State state;
+    private final boolean diff;
+
+    public SlashCommandSync(Upstream upstream, State state, boolean diff) {
+        this.upstream = upstream;
+        this.state = state;
+        this.diff = diff;
+    }
+
+    public Result sync(Collection<? extends CommandData> commands) {
+        var byKey = new TreeMap<String, CommandData>();
+        var hashes = new TreeMap<String, String>();
+        for (var command : commands) {
+            var key = keyOf(command.getType(), command.getName());
+            byKey.put(key, command);
+            hashes.put(key, hash(canonical(command.toData().toMap())));
+        }
+
+        var setHash = hash(hashes.toString());
+        var previous = state.load();
+        if (setHash.equals(previous.get(SET_HASH))) {
+            log.info("Slash commands didn't change since the last push ({}), not updating them", setHash);
+            return new Result(false, 0, 0, true);
+        }
+
+        var changed = byKey.keySet().stream()
+                .filter(key -> !hashes.get(key).equals(previous.get(key)))
+                .map(byKey::get)
+                .collect(Collectors.toList());
+        var removed = previous.keySet().stream()
+                .filter(key -> !key.equals(SET_HASH) && !byKey.containsKey(key))
+                .collect(Collectors.toList());
+
+        var full = !diff || !previous.containsKey(SET_HASH) || changed.size() + removed.size() > MAX_DIFF_REQUESTS;
+        if (full) {
+            upstream.replaceAll(new ArrayList<>(byKey.values()));
+        } else {
+            for (var command : changed) {
+                upstream.upsert(command);
+            }
+
+            if (!removed.isEmpty()) {
+                var remote = upstream.list();
+                for (var key : removed) {
+                    var id = remote.get(key);
+                    if (id != null) {
+                        upstream.delete(id);
+                    }
+                }
+            }
+        }
+
+        var next = new HashMap<String, String>(hashes);
+        next.put(SET_HASH, setHash);
+        state.save(next);
+
+        log.info("Pushed slash commands ({}): {} changed, {} removed", full ? "full" : "diff", changed.size(), removed.size());
+        return new Result(full, full ? byKey.size() : changed.size(), removed.size(), false);
+    }
+
+    public static String keyOf(Command.Type type, String name) {
+        return type.name() + ":" + name;
+    }
+
+    // JSON-like, but with map keys sorted so the same command always comes out the same. List order is kept, as it matters.
+    static String canonical(Object value) {
+        if (value instanceof Map<?, ?> map) {
+            var sorted = new TreeMap<String, Object>();
+            map.forEach((k, v) -> sorted.put(String.valueOf(k), v));
+            return sorted.entrySet().stream()
+                    .map(e -> quote(e.getKey()) + ":" + canonical(e.getValue()))
+                    .collect(Collectors.joining(",", "{", "}"));
+        }
+
+        if (value instanceof Collection<?> list) {
+            return list.stream().map(SlashCommandSync::canonical).collect(Collectors.joining(",", "[", "]"));
+        }
+
+        if (value instanceof String string) {
+            return quote(string);
+        }
+
+        return String.valueOf(value);
+    }
+
+    private static String quote(String string) {
+        return "\"" + string.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private static String hash(String value) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            var builder = new StringBuilder(digest.length * 2);
+            for (var b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param full Whether the whole set was overwritten.
+     * @param pushed How many commands were sent to Discord.
+     * @param deleted How many commands were deleted from Discord.
+     * @param unchanged Whether nothing had to be done at all.
+     */
+    public record Result(boolean full, int pushed, int deleted, boolean unchanged) { }
+
+    /**
+     * Applies command changes to Discord. {@link #of(JDA)} talks to the real API, tests record the calls instead.
+     */
+    public interface Upstream {
+        void replaceAll(List<CommandData> commands);
+
+        void upsert(CommandData command);
+
+        /**
+         * @return The id of every command Discord has, by {@link #keyOf(Command.Type, String)}.
+         */
+        Map<String, Long> list();
+
+        void delete(long id);
+
+        static Upstream of(JDA jda) {
+            return new Upstream() {
+                @Override
+                public void replaceAll(List<CommandData> commands) {
+                    jda.updateCommands().addCommands(commands).complete();
+                }
+
+                @Override
+                public void upsert(CommandData command) {
+                    jda.upsertCommand(command).complete();
+                }
+
+                @Override
+                public Map<String, Long> list() {
+                    return jda.retrieveCommands().complete().stream()
+                            .collect(Collectors.toMap(c -> keyOf(c.getType(), c.getName()), Command::getIdLong));
+                }
+
+                @Override
+                public void delete(long id) {
+                    jda.deleteCommandById(id).complete();
+                }
+            };
+        }
+    }
+
+    /**
+     * What was pushed last time: the hash of every command and of the whole set.
+     */
+    public interface State {
+        Map<String, String> load();
+
+        void save(Map<String, String> hashes);
+
+        static State redis(String clientId) {
+            var key = "slash-commands-" + clientId;
+            return new State() {
+                @Override
+                public Map<String, String> load() {
+                    try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
+                        return jedis.hgetAll(key);
+                    }
+                }
+
+                @Override
+                public void save(Map<String, String> hashes) {
+                    try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
+                        var transaction = jedis.multi();
+                        transaction.del(key);
+                        transaction.hset(key, hashes);
+                        transaction.exec();
+                    }
+                }
+            };
+        }
+    }
+}
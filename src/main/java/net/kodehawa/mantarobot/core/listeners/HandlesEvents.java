@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.core.listeners;
+
+import net.dv8tion.jda.api.events.GenericEvent;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares which events an {@link net.dv8tion.jda.api.hooks.EventListener} actually does something with
+ * (subclasses included), so {@link net.kodehawa.mantarobot.core.MantaroEventManager} only dispatches those to it.
+ * <br>Listeners without it get every event. HandlesEventsTest checks every event class a listener's code uses is
+ * declared here, so add new listeners to it.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface HandlesEvents {
+    Class<? extends GenericEvent>[] value();
+}
@@ -17,7 +17,6 @@
 
 package net.kodehawa.mantarobot.core.listeners;
 
-import com.google.common.cache.Cache;
 import com.google.common.cache.CacheLoader;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.JDA;
@@ -41,6 +40,7 @@ import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 import net.dv8tion.jda.api.events.message.MessageUpdateEvent;
 import net.dv8tion.jda.api.events.session.ReadyEvent;
 import net.dv8tion.jda.api.events.session.SessionDisconnectEvent;
+import net.dv8tion.jda.api.events.session.SessionRecreateEvent;
 import net.dv8tion.jda.api.events.session.SessionResumeEvent;
 import net.dv8tion.jda.api.exceptions.ErrorResponseException;
 import net.dv8tion.jda.api.exceptions.InsufficientPermissionException;
@@ -52,8 +52,8 @@ import net.kodehawa.mantarobot.commands.BirthdayCmd;
 import net.kodehawa.mantarobot.commands.currency.TextChannelGround;
 import net.kodehawa.mantarobot.commands.custom.legacy.DynamicModifiers;
 import net.kodehawa.mantarobot.core.MantaroCore;
-import net.kodehawa.mantarobot.core.MantaroEventManager;
 import net.kodehawa.mantarobot.core.listeners.entities.CachedMessage;
+import net.kodehawa.mantarobot.core.listeners.entities.MessageCache;
 import net.kodehawa.mantarobot.core.listeners.helpers.WelcomeUtils;
 import net.kodehawa.mantarobot.data.Config;
 import net.kodehawa.mantarobot.data.MantaroData;
@@ -64,7 +64,6 @@ import net.kodehawa.mantarobot.utils.Utils;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
 import net.kodehawa.mantarobot.utils.exporters.Metrics;
 import org.jetbrains.annotations.NotNull;
-import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -72,9 +71,15 @@ import java.awt.*;
 import java.time.OffsetDateTime;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 
+@HandlesEvents({
+        ReadyEvent.class, MessageReceivedEvent.class,
+        GuildMemberJoinEvent.class, GuildMemberUpdatePendingEvent.class, GuildMemberRemoveEvent.class, GuildMemberRoleAddEvent.class,
+        MessageUpdateEvent.class, MessageDeleteEvent.class, GuildJoinEvent.class, GuildLeaveEvent.class,
+        StatusChangeEvent.class, SessionDisconnectEvent.class, SessionResumeEvent.class,
+        SessionRecreateEvent.class, HttpRequestEvent.class
+})
 public class MantaroListener implements EventListener {
     private static final Logger LOG = LoggerFactory.getLogger(MantaroListener.class);
     private static final Config CONFIG = MantaroData.config().get();
@@ -83,10 +88,10 @@ public class MantaroListener implements EventListener {
     private static final List<String> CHANNEL_NAMES = List.of("general", "general-chat", "chat", "lounge", "main-chat", "main");
 
     private final ExecutorService threadPool;
-    private final Cache<Long, Optional<CachedMessage>> messageCache;
+    private final MessageCache messageCache;
     private final MantaroBot bot;
 
-    public MantaroListener(ExecutorService threadPool, Cache<Long, Optional<CachedMessage>> messageCache) {
+    public MantaroListener(ExecutorService threadPool, MessageCache messageCache) {
         this.threadPool = threadPool;
         this.messageCache = messageCache;
         bot = MantaroBot.getInstance();
@@ -95,6 +100,7 @@ public class MantaroListener implements EventListener {
     @Override
     public void onEvent(@NotNull GenericEvent event) {
         if (event instanceof ReadyEvent) {
+            Metrics.SHARD_SESSIONS.labels("identified").inc();
             threadPool.execute(() -> this.updateStats(event.getJDA()));
             return;
         }
@@ -180,6 +186,15 @@ public class MantaroListener implements EventListener {
 
         if (event instanceof SessionResumeEvent) {
             Metrics.SHARD_EVENTS.labels("resume").inc();
+            Metrics.SHARD_SESSIONS.labels("resumed").inc();
+            return;
+        }
+
+        // Couldn't resume, so it identified again (ReadyEvent only fires for the first session).
+        if (event instanceof SessionRecreateEvent) {
+            Metrics.SHARD_EVENTS.labels("recreate").inc();
+            Metrics.SHARD_SESSIONS.labels("recreated").inc();
+            this.updateStats(event.getJDA());
             return;
         }
 
@@ -268,7 +283,9 @@ public class MantaroListener implements EventListener {
                     return;
                 }
 
-                final var deletedMessage = messageCache.get(event.getMessageIdLong(), Optional::empty).orElse(null);
+                final var deletedMessage = messageCache.get(event.getMessageIdLong(), "delete");
+                // It's gone, it won't be edited or deleted again.
+                messageCache.invalidate(event.getMessageIdLong());
                 if (deletedMessage == null) {
                     return;
                 }
@@ -276,8 +293,7 @@ public class MantaroListener implements EventListener {
                 final var selfUser = event.getJDA().getSelfUser();
                 final var textChannel = event.getChannel();
                 final var content = deletedMessage.getContent();
-                final var author = deletedMessage.getAuthor();
-                final var authorId = author.getId();
+                final var authorId = deletedMessage.getAuthorId();
                 if (content.isEmpty() || textChannel.getId().equals(logChannel) || authorId.equals(selfUser.getId())) {
                     return;
                 }
@@ -305,14 +321,14 @@ public class MantaroListener implements EventListener {
                             .set("content", content.replace("```", ""))
                             .mapEvent("event", event)
                             .mapChannel("event.channel", textChannel)
-                            .mapUser("event.user", author)
+                            .mapUser("event.user", deletedMessage)
                             .set("event.message.id", event.getMessageId())
                             .resolve(data.getDeleteMessageLog());
                 } else {
                     message = String.format(EmoteReference.WARNING +
                                     "`[%s]` Message (ID: %s) created by **%s#%s** (ID: %s) in channel **%s** was deleted.\n" +
                                     "```diff\n-%s```",
-                            hour, event.getMessageId(), author.getName(), author.getDiscriminator(),
+                            hour, event.getMessageId(), deletedMessage.getAuthorName(), deletedMessage.getAuthorDiscriminator(),
                             authorId, textChannel.getName(), content.replace("```", "")
                     );
                 }
@@ -340,7 +356,7 @@ public class MantaroListener implements EventListener {
                 }
 
                 final var originalMessage = event.getMessage();
-                final var editedMessage = messageCache.get(originalMessage.getIdLong(), Optional::empty).orElse(null);
+                final var editedMessage = messageCache.get(originalMessage.getIdLong(), "edit");
                 if (editedMessage == null) {
                     return;
                 }
@@ -348,21 +364,21 @@ public class MantaroListener implements EventListener {
                 final var selfUser = event.getJDA().getSelfUser();
                 final var channel = event.getChannel();
                 final var content = editedMessage.getContent();
-                final var author = editedMessage.getAuthor();
-                if (content.isEmpty() || channel.getId().equals(logChannel) || author.getId().equals(selfUser.getId())) {
+                final var authorId = editedMessage.getAuthorId();
+                if (content.isEmpty() || channel.getId().equals(logChannel) || authorId.equals(selfUser.getId())) {
                     return;
                 }
 
                 // Update message in cache in any case.
-                messageCache.put(originalMessage.getIdLong(), Optional.of(
-                        new CachedMessage(event.getGuild().getIdLong(), event.getAuthor().getIdLong(), originalMessage.getContentDisplay()))
+                messageCache.put(originalMessage.getIdLong(),
+                        new CachedMessage(event.getGuild().getIdLong(), event.getAuthor(), originalMessage.getContentDisplay())
                 );
 
                 if (guildData.getLogExcludedChannels().contains(channel.getId())) {
                     return;
                 }
 
-                if (guildData.getModlogBlacklistedPeople().contains(author.getId())) {
+                if (guildData.getModlogBlacklistedPeople().contains(authorId)) {
                     return;
                 }
 
@@ -387,14 +403,14 @@ public class MantaroListener implements EventListener {
                             .set("new", originalMessage.getContentDisplay().replace("```", ""))
                             .mapEvent("event", event)
                             .mapChannel("event.channel", channel)
-                            .mapUser("event.user", author)
+                            .mapUser("event.user", editedMessage)
                             .mapMessage("event.message", originalMessage, false)
                             .resolve(guildData.getEditMessageLog());
                 } else {
                     message = String.format(EmoteReference.WARNING +
                                     "`[%s]` Message (ID: %s) created by **%s#%s** in channel **%s** was modified." +
                                     "\n```diff\n-%s\n+%s```",
-                            hour, originalMessage.getId(), author.getName(), author.getDiscriminator(),
+                            hour, originalMessage.getId(), editedMessage.getAuthorName(), editedMessage.getAuthorDiscriminator(),
                             channel.getName(), content.replace("```", ""),
                             originalMessage.getContentDisplay().replace("```", "")
                     );
@@ -666,23 +682,6 @@ public class MantaroListener implements EventListener {
 
 
     private void updateStats(JDA jda) {
-        // This screws up with our shard stats, so we just need to ignore it.
-        if (jda.getStatus() == JDA.Status.INITIALIZED) {
-            return;
-        }
-
-        try(var jedis = MantaroData.getDefaultJedisPool().getResource()) {
-            var json = new JSONObject()
-                    .put("guild_count", jda.getGuildCache().size())
-                    .put("cached_users", jda.getUserCache().size())
-                    .put("gateway_ping", jda.getGatewayPing())
-                    .put("shard_status", jda.getStatus())
-                    .put("last_ping_diff", ((MantaroEventManager) jda.getEventManager()).lastJDAEventDiff())
-                    .put("node_number", bot.getNodeNumber())
-                    .toString();
-
-            jedis.hset("shardstats-" + CONFIG.getClientId(), String.valueOf(jda.getShardInfo().getShardId()), json);
-            LOG.debug("Sent process shard stats to redis -> {}", json);
-        }
+        bot.getShardStatsPublisher().markDirty(jda);
     }
 }
@@ -17,7 +17,6 @@
 
 package net.kodehawa.mantarobot.core.listeners.command;
 
-import com.google.common.cache.Cache;
 import com.rethinkdb.gen.exc.ReqlError;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.events.GenericEvent;
@@ -28,33 +27,37 @@ import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 import net.dv8tion.jda.api.exceptions.PermissionException;
 import net.dv8tion.jda.api.hooks.EventListener;
 import net.kodehawa.mantarobot.commands.currency.profile.Badge;
+import net.kodehawa.mantarobot.core.command.processor.CommandExecutor;
 import net.kodehawa.mantarobot.core.command.processor.CommandProcessor;
+import net.kodehawa.mantarobot.core.listeners.HandlesEvents;
 import net.kodehawa.mantarobot.core.listeners.entities.CachedMessage;
+import net.kodehawa.mantarobot.core.listeners.entities.LoggingGuilds;
+import net.kodehawa.mantarobot.core.listeners.entities.MessageCache;
 import net.kodehawa.mantarobot.data.I18n;
 import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.utils.LanguageKeyNotFoundException;
 import net.kodehawa.mantarobot.utils.Snow64;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.IllegalFormatException;
-import java.util.Optional;
 import java.util.concurrent.CompletionException;
-import java.util.concurrent.ExecutorService;
 
+@HandlesEvents({MessageReceivedEvent.class, SlashCommandInteractionEvent.class, UserContextInteractionEvent.class})
 public class CommandListener implements EventListener {
     private static final Logger log = LoggerFactory.getLogger(CommandListener.class);
     // Commands ran this session.
     private static int commandTotal = 0;
     private final CommandProcessor commandProcessor;
-    private final ExecutorService threadPool;
-    private final Cache<Long, Optional<CachedMessage>> messageCache;
+    private final CommandExecutor executor;
+    private final MessageCache messageCache;
 
-    public CommandListener(CommandProcessor processor, ExecutorService threadPool, Cache<Long, Optional<CachedMessage>> messageCache) {
+    public CommandListener(CommandProcessor processor, CommandExecutor executor, MessageCache messageCache) {
         this.commandProcessor = processor;
-        this.threadPool = threadPool;
+        this.executor = executor;
         this.messageCache = messageCache;
     }
 
@@ -77,9 +80,11 @@ public class CommandListener implements EventListener {
             }
 
             // Inserts a cached message into the cache. This only holds the id and the content, and is way lighter than saving the entire jda object.
-            messageCache.put(msg.getMessage().getIdLong(), Optional.of(
-                    new CachedMessage(msg.getGuild().getIdLong(), msg.getAuthor().getIdLong(), msg.getMessage().getContentDisplay()))
-            );
+            // Only done for guilds with a log channel, as nothing else ever reads it.
+            var guildId = msg.getGuild().getIdLong();
+            if (LoggingGuilds.contains(guildId)) {
+                messageCache.put(msg.getMessage().getIdLong(), new CachedMessage(guildId, msg.getAuthor(), msg.getMessage().getContentDisplay()));
+            }
 
             // We can't talk here, so we don't need to run anything.
             // Run this check before executing on the pool to avoid wasting a thread.
@@ -91,18 +96,45 @@ public class CommandListener implements EventListener {
                 return;
             } // TODO: remove when they add forums.
 
-            threadPool.execute(() -> onCommand(msg));
+            // Plain chat doesn't need a spot in the queue.
+            if (!commandProcessor.mightBeCommand(msg)) {
+                return;
+            }
+
+            if (!executor.execute(guildId, () -> onCommand(msg))) {
+                // Nothing to answer, the channel would just get flooded back.
+                Metrics.COMMANDS_REJECTED.labels("message").inc();
+                log.debug("Dropped a command on guild {}, too many commands waiting", guildId);
+            }
         }
 
-        if (event instanceof SlashCommandInteractionEvent) {
-            threadPool.execute(() -> onSlash(((SlashCommandInteractionEvent) event)));
+        if (event instanceof SlashCommandInteractionEvent evt) {
+            if (!executor.execute(guildIdOf(evt), () -> onSlash(evt))) {
+                Metrics.COMMANDS_REJECTED.labels("slash").inc();
+                rejectInteraction(evt);
+            }
         }
 
-        if (event instanceof UserContextInteractionEvent) {
-            threadPool.execute(() -> onUserContext(((UserContextInteractionEvent) event)));
+        if (event instanceof UserContextInteractionEvent evt) {
+            if (!executor.execute(guildIdOf(evt), () -> onUserContext(evt))) {
+                Metrics.COMMANDS_REJECTED.labels("user_context").inc();
+                rejectInteraction(evt);
+            }
         }
     }
 
+    // The guild's queue is full. An interaction has to be answered, or Discord shows "The application did not respond".
+    private void rejectInteraction(GenericCommandInteractionEvent event) {
+        log.debug("Rejected an interaction on guild {}, too many commands waiting", guildIdOf(event));
+        sendSlashError(event, "%sThis server is running too many commands right now, please try again in a few seconds.",
+                EmoteReference.STOPWATCH);
+    }
+
+    private static long guildIdOf(GenericCommandInteractionEvent event) {
+        var guild = event.getGuild();
+        return guild == null ? 0 : guild.getIdLong();
+    }
+
     private void onSlash(SlashCommandInteractionEvent event) {
         try {
             if (commandProcessor.runSlash(event)) {
@@ -18,31 +18,139 @@
 package net.kodehawa.mantarobot.core.listeners.entities;
 
 import net.dv8tion.jda.api.entities.User;
-import net.kodehawa.mantarobot.MantaroBot;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Immutable snapshot of a message, used for edit/delete logging.
+ * <br>Only holds what the logs need about the author, so logging never has to go to Discord to get it.
+ */
 public class CachedMessage {
     private final long guildId;
-    private final long author;
+    private final long authorId;
+    private final String authorName;
+    private final String authorDiscriminator;
+    private final String authorAvatarId;
+    private final boolean authorBot;
     private final String content;
 
-    public CachedMessage(long guildId, long author, String content) {
+    public CachedMessage(long guildId, long authorId, String authorName, String authorDiscriminator,
+                         String authorAvatarId, boolean authorBot, String content) {
         this.guildId = guildId;
-        this.author = author;
+        this.authorId = authorId;
+        this.authorName = authorName;
+        this.authorDiscriminator = authorDiscriminator;
+        this.authorAvatarId = authorAvatarId;
+        this.authorBot = authorBot;
         this.content = content;
     }
 
-    public User getAuthor() {
-        var guild = MantaroBot.getInstance().getShardManager().getGuildById(guildId);
-        User user = null;
+    public CachedMessage(long guildId, User author, String content) {
+        this(guildId, author.getIdLong(), author.getName(), author.getDiscriminator(), author.getAvatarId(), author.isBot(), content);
+    }
+
+    public long getGuildId() {
+        return guildId;
+    }
+
+    public long getAuthorIdLong() {
+        return authorId;
+    }
+
+    public String getAuthorId() {
+        return Long.toUnsignedString(authorId);
+    }
+
+    public String getAuthorName() {
+        return authorName;
+    }
+
+    public String getAuthorDiscriminator() {
+        return authorDiscriminator;
+    }
+
+    public String getAuthorTag() {
+        return authorName + "#" + authorDiscriminator;
+    }
+
+    public String getAuthorMention() {
+        return "<@" + getAuthorId() + ">";
+    }
+
+    public String getAuthorAvatarId() {
+        return authorAvatarId;
+    }
 
-        if (guild != null)  {
-            user = guild.retrieveMemberById(author).complete().getUser();
+    public String getAuthorAvatarUrl() {
+        if (authorAvatarId == null) {
+            return User.DEFAULT_AVATAR_URL.formatted(Integer.parseInt(authorDiscriminator) % 5);
         }
 
-        return user;
+        return User.AVATAR_URL.formatted(getAuthorId(), authorAvatarId, authorAvatarId.startsWith("a_") ? "gif" : "png");
+    }
+
+    public boolean isAuthorBot() {
+        return authorBot;
     }
 
     public String getContent() {
         return this.content;
     }
+
+    // Layout: guild id, author id, bot flag, then author name, discriminator, avatar id and content,
+    // each as a length-prefixed UTF-8 string (-1 for null).
+    byte[] toBytes() {
+        var name = encode(authorName);
+        var discriminator = encode(authorDiscriminator);
+        var avatar = encode(authorAvatarId);
+        var text = encode(content);
+        var size = Long.BYTES * 2 + 1 + Integer.BYTES * 4
+                + length(name) + length(discriminator) + length(avatar) + length(text);
+
+        var buffer = ByteBuffer.allocate(size)
+                .putLong(guildId)
+                .putLong(authorId)
+                .put((byte) (authorBot ? 1 : 0));
+        put(buffer, name);
+        put(buffer, discriminator);
+        put(buffer, avatar);
+        put(buffer, text);
+        return buffer.array();
+    }
+
+    static CachedMessage fromBytes(byte[] bytes) {
+        var buffer = ByteBuffer.wrap(bytes);
+        var guildId = buffer.getLong();
+        var authorId = buffer.getLong();
+        var bot = buffer.get() == 1;
+        return new CachedMessage(guildId, authorId, get(buffer), get(buffer), get(buffer), bot, get(buffer));
+    }
+
+    private static byte[] encode(String s) {
+        return s == null ? null : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+
+    private static void put(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    private static String get(ByteBuffer buffer) {
+        var length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+
+        var string = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return string;
+    }
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.core.listeners.entities;
+
+import net.kodehawa.mantarobot.data.MantaroData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ids of the guilds that have a log channel set, so we only cache messages that could ever be logged.
+ * <br>Filled once on startup and kept up to date every time a guild is loaded or saved.
+ */
+public class LoggingGuilds {
+    private static final Logger log = LoggerFactory.getLogger(LoggingGuilds.class);
+    private static final Set<Long> guilds = ConcurrentHashMap.newKeySet();
+
+    public static boolean contains(long guildId) {
+        return guilds.contains(guildId);
+    }
+
+    public static void update(String guildId, boolean logging) {
+        long id;
+        try {
+            id = Long.parseUnsignedLong(guildId);
+        } catch (NumberFormatException e) {
+            return;
+        }
+
+        if (logging) {
+            guilds.add(id);
+        } else {
+            guilds.remove(id);
+        }
+    }
+
+    public static int size() {
+        return guilds.size();
+    }
+
+    public static void load() {
+        try {
+            MantaroData.db().forEachLoggingGuildId(id -> update(id, true));
+            log.info("Loaded {} guilds with a log channel", guilds.size());
+        } catch (Exception e) {
+            log.error("Unable to load guilds with a log channel, they'll be added as they get loaded", e);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.core.listeners.entities;
+
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+
+import java.util.LinkedHashMap;
+
+/**
+ * Per-shard cache of the messages we might need for edit/delete logging.
+ * <br>Entries are stored encoded (see {@link CachedMessage#toBytes()}) and the cache is bounded by the amount of bytes
+ * it holds instead of the amount of messages, evicting the oldest messages first.
+ */
+public class MessageCache {
+    // Rough cost of the map entry and the boxed key on top of the encoded message.
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private static final Gauge CACHE_BYTES = Gauge.build()
+            .name("message_cache_bytes")
+            .help("Approximate size of the message cache, by shard")
+            .labelNames("shard")
+            .register();
+    private static final Gauge CACHE_ENTRIES = Gauge.build()
+            .name("message_cache_entries")
+            .help("Messages in the message cache, by shard")
+            .labelNames("shard")
+            .register();
+    private static final Counter CACHE_REQUESTS = Counter.build()
+            .name("message_cache_requests")
+            .help("Message cache lookups by type (edit/delete) and result (hit/miss)")
+            .labelNames("type", "result")
+            .register();
+
+    private final LinkedHashMap<Long, byte[]> messages = new LinkedHashMap<>();
+    private final Gauge.Child bytesGauge;
+    private final Gauge.Child entriesGauge;
+    private final long maxBytes;
+    private long bytes;
+
+    public MessageCache(int shardId, long maxBytes) {
+        var shard = String.valueOf(shardId);
+        this.bytesGauge = CACHE_BYTES.labels(shard);
+        this.entriesGauge = CACHE_ENTRIES.labels(shard);
+        this.maxBytes = maxBytes;
+    }
+
+    public void put(long messageId, CachedMessage message) {
+        var encoded = message.toBytes();
+        synchronized (this) {
+            var old = messages.remove(messageId);
+            if (old != null) {
+                bytes -= old.length + ENTRY_OVERHEAD;
+            }
+
+            messages.put(messageId, encoded);
+            bytes += encoded.length + ENTRY_OVERHEAD;
+
+            var iterator = messages.values().iterator();
+            while (bytes > maxBytes && iterator.hasNext()) {
+                bytes -= iterator.next().length + ENTRY_OVERHEAD;
+                iterator.remove();
+            }
+
+            updateGauges();
+        }
+    }
+
+    /**
+     * @param messageId The message to look up.
+     * @param type      What the lookup is for (edit/delete), only used for metrics.
+     * @return The cached message, or null if it isn't (or is no longer) cached.
+     */
+    public CachedMessage get(long messageId, String type) {
+        byte[] encoded;
+        synchronized (this) {
+            encoded = messages.get(messageId);
+        }
+
+        CACHE_REQUESTS.labels(type, encoded == null ? "miss" : "hit").inc();
+        return encoded == null ? null : CachedMessage.fromBytes(encoded);
+    }
+
+    public synchronized void invalidate(long messageId) {
+        var old = messages.remove(messageId);
+        if (old != null) {
+            bytes -= old.length + ENTRY_OVERHEAD;
+            updateGauges();
+        }
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int size() {
+        return messages.size();
+    }
+
+    private void updateGauges() {
+        bytesGauge.set(bytes);
+        entriesGauge.set(messages.size());
+    }
+}
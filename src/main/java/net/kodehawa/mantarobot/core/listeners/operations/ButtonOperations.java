@@ -23,6 +23,7 @@ import net.dv8tion.jda.api.events.interaction.component.ButtonInteractionEvent;
 import net.dv8tion.jda.api.hooks.EventListener;
 import net.dv8tion.jda.api.interactions.components.ActionRow;
 import net.dv8tion.jda.api.interactions.components.buttons.Button;
+import net.kodehawa.mantarobot.core.listeners.HandlesEvents;
 import net.kodehawa.mantarobot.core.listeners.operations.core.ButtonOperation;
 import net.kodehawa.mantarobot.core.listeners.operations.core.Operation;
 import net.kodehawa.mantarobot.utils.exporters.Metrics;
@@ -151,6 +152,7 @@ public class ButtonOperations {
         return o.future;
     }
 
+    @HandlesEvents({ButtonInteractionEvent.class})
     public static class ButtonListener implements EventListener {
         @Override
         public void onEvent(@Nonnull GenericEvent e) {
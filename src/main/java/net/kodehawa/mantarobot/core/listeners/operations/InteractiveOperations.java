@@ -21,6 +21,7 @@ import net.dv8tion.jda.api.entities.channel.middleman.MessageChannel;
 import net.dv8tion.jda.api.events.GenericEvent;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 import net.dv8tion.jda.api.hooks.EventListener;
+import net.kodehawa.mantarobot.core.listeners.HandlesEvents;
 import net.kodehawa.mantarobot.core.listeners.operations.core.InteractiveOperation;
 import net.kodehawa.mantarobot.core.listeners.operations.core.Operation;
 import net.kodehawa.mantarobot.utils.exporters.Metrics;
@@ -137,6 +138,7 @@ public class InteractiveOperations {
     /**
      * This class listens for all RunningOperation instances. Basically handles the operation run and termination procedures.
      */
+    @HandlesEvents({MessageReceivedEvent.class})
     public static class InteractiveListener implements EventListener {
         @Override
         public void onEvent(@Nonnull GenericEvent e) {
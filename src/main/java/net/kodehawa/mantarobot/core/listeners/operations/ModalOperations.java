@@ -20,6 +20,7 @@ package net.kodehawa.mantarobot.core.listeners.operations;
 import net.dv8tion.jda.api.events.GenericEvent;
 import net.dv8tion.jda.api.events.interaction.ModalInteractionEvent;
 import net.dv8tion.jda.api.hooks.EventListener;
+import net.kodehawa.mantarobot.core.listeners.HandlesEvents;
 import net.kodehawa.mantarobot.core.listeners.operations.core.ModalOperation;
 import net.kodehawa.mantarobot.core.listeners.operations.core.Operation;
 import net.kodehawa.mantarobot.utils.exporters.Metrics;
@@ -80,6 +81,7 @@ public class ModalOperations {
         OPERATIONS.put(modalId, o);
     }
 
+    @HandlesEvents({ModalInteractionEvent.class})
     public static class ModalListener implements EventListener {
         @Override
         public void onEvent(@Nonnull GenericEvent e) {
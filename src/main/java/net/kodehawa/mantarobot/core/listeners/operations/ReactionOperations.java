@@ -24,6 +24,7 @@ import net.dv8tion.jda.api.events.message.react.MessageReactionAddEvent;
 import net.dv8tion.jda.api.events.message.react.MessageReactionRemoveAllEvent;
 import net.dv8tion.jda.api.events.message.react.MessageReactionRemoveEvent;
 import net.dv8tion.jda.api.hooks.EventListener;
+import net.kodehawa.mantarobot.core.listeners.HandlesEvents;
 import net.kodehawa.mantarobot.core.listeners.operations.core.Operation;
 import net.kodehawa.mantarobot.core.listeners.operations.core.ReactionOperation;
 import net.kodehawa.mantarobot.utils.exporters.Metrics;
@@ -162,6 +163,7 @@ public final class ReactionOperations {
         return r;
     }
 
+    @HandlesEvents({MessageReactionAddEvent.class, MessageReactionRemoveEvent.class, MessageReactionRemoveAllEvent.class})
     public static class ReactionListener implements EventListener {
         @Override
         public void onEvent(@Nonnull GenericEvent e) {
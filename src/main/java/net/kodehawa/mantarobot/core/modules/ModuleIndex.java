@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+package net.kodehawa.mantarobot.core.modules;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Every class annotated with {@link Module} or {@link net.kodehawa.mantarobot.options.annotations.Option},
+ * written down at compile time by the module index processor (see src/processor) as {@value #GENERATED}.
+ * This way we don't need to scan the classpath on boot to find them.
+ */
+public interface ModuleIndex {
+    String GENERATED = "net.kodehawa.mantarobot.core.modules.GeneratedModuleIndex";
+
+    List<Entry> entries();
+
+    /**
+     * @param annotation The fully qualified name of the annotation the class was found by.
+     * @param type The annotated class.
+     * @param factory Creates a new instance of it, without going through reflection.
+     */
+    record Entry(String annotation, Class<?> type, Supplier<Object> factory) { }
+}
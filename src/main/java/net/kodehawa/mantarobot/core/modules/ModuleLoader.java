@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+package net.kodehawa.mantarobot.core.modules;
+
+import io.github.classgraph.ClassGraph;
+import io.github.classgraph.ClassInfo;
+import io.github.classgraph.ScanResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Finds and instantiates the annotated classes the bot registers on boot (modules and options).
+ * Uses the compile-time {@link ModuleIndex} if the build generated one, and scans the classpath otherwise.
+ */
+public class ModuleLoader {
+    private static final Logger log = LoggerFactory.getLogger(ModuleLoader.class);
+    private static final ModuleIndex INDEX = loadIndex();
+
+    public static List<Object> load(String packageName, Class<? extends Annotation> annotation) {
+        var instances = new ArrayList<>();
+        for (var entry : find(packageName, annotation)) {
+            try {
+                instances.add(entry.factory().get());
+            } catch (Exception e) {
+                log.error("Invalid module: unable to create " + entry.type(), e);
+            }
+        }
+
+        return instances;
+    }
+
+    public static List<ModuleIndex.Entry> find(String packageName, Class<? extends Annotation> annotation) {
+        if (INDEX != null) {
+            return fromIndex(INDEX, packageName, annotation);
+        }
+
+        log.warn("No module index found, scanning {} for @{}", packageName, annotation.getSimpleName());
+        return scan(packageName, annotation);
+    }
+
+    public static ModuleIndex index() {
+        return INDEX;
+    }
+
+    public static List<ModuleIndex.Entry> fromIndex(ModuleIndex index, String packageName, Class<? extends Annotation> annotation) {
+        var prefix = packageName + ".";
+        return index.entries().stream()
+                .filter(entry -> entry.annotation().equals(annotation.getName()))
+                .filter(entry -> entry.type().getName().startsWith(prefix))
+                .collect(Collectors.toList());
+    }
+
+    public static List<ModuleIndex.Entry> scan(String packageName, Class<? extends Annotation> annotation) {
+        var classGraph = new ClassGraph()
+                .acceptPackages(packageName)
+                .enableAnnotationInfo();
+
+        try (ScanResult result = classGraph.scan(2)) {
+            return result.getAllClasses()
+                    .stream()
+                    .filter(classInfo -> classInfo.hasAnnotation(annotation.getName())).map(ClassInfo::loadClass)
+                    .map(type -> new ModuleIndex.Entry(annotation.getName(), type, () -> newInstance(type)))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static Object newInstance(Class<?> type) {
+        try {
+            return type.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No zero arg public constructor found for " + type, e);
+        }
+    }
+
+    private static ModuleIndex loadIndex() {
+        try {
+            return (ModuleIndex) Class.forName(ModuleIndex.GENERATED).getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (Exception e) {
+            log.error("Unable to load the module index", e);
+            return null;
+        }
+    }
+}
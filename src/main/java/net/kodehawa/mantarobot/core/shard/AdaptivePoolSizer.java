@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.core.shard;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Grows the JDA gateway and rate limit pools past their configured size when the shards keep them busy.
+ * <br>Samples how many threads are busy four times a second, and once a minute sets each pool's size to the average
+ * it saw plus some headroom. A single busy sample doesn't move it, and a pool never goes below the size it was created
+ * with, so bursts that come and go between resizes still have those threads to run on.
+ */
+public class AdaptivePoolSizer {
+    private static final Logger log = LoggerFactory.getLogger(AdaptivePoolSizer.class);
+    private static final long SAMPLE_INTERVAL = 250;
+    private static final int SAMPLES_PER_RESIZE = 240;
+
+    private final List<SizedPool> pools = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService sampler;
+    private int samples;
+
+    /**
+     * @param max How many threads the pool can grow to. It never shrinks below its current core size.
+     */
+    public void add(String name, ScheduledThreadPoolExecutor pool, int max) {
+        var min = pool.getCorePoolSize();
+        pools.add(new SizedPool(name, pool, min, Math.max(min, max)));
+    }
+
+    public synchronized void start() {
+        if (sampler != null || pools.isEmpty()) {
+            return;
+        }
+
+        sampler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("Mantaro Pool Sizer").setDaemon(true).build()
+        );
+        sampler.scheduleAtFixedRate(this::sample, SAMPLE_INTERVAL, SAMPLE_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    private void sample() {
+        try {
+            for (var pool : pools) {
+                pool.busy += pool.pool.getActiveCount();
+            }
+
+            if (++samples < SAMPLES_PER_RESIZE) {
+                return;
+            }
+
+            for (var pool : pools) {
+                resize(pool, samples);
+            }
+
+            samples = 0;
+        } catch (Exception e) {
+            log.error("Error while sizing pools", e);
+        }
+    }
+
+    private void resize(SizedPool pool, int samples) {
+        // Average busy threads over the window, rounded up.
+        var average = (int) ((pool.busy + samples - 1) / samples);
+        pool.busy = 0;
+
+        var target = Math.max(pool.min, Math.min(pool.max, average + Math.max(1, average / 4)));
+        var current = pool.pool.getCorePoolSize();
+        if (target != current) {
+            log.debug("Resizing {} pool from {} to {} threads ({} busy on average)", pool.name, current, target, average);
+            pool.pool.setCorePoolSize(target);
+        }
+    }
+
+    private static class SizedPool {
+        private final String name;
+        private final ScheduledThreadPoolExecutor pool;
+        private final int min;
+        private final int max;
+        // Sum of the busy thread samples since the last resize. Only touched by the sampler thread.
+        private long busy;
+
+        private SizedPool(String name, ScheduledThreadPoolExecutor pool, int min, int max) {
+            this.name = name;
+            this.pool = pool;
+            this.min = min;
+            this.max = max;
+        }
+    }
+}
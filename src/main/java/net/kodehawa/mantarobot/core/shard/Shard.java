@@ -17,14 +17,13 @@
 
 package net.kodehawa.mantarobot.core.shard;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.entities.Activity;
 import net.dv8tion.jda.api.events.session.ReadyEvent;
 import net.dv8tion.jda.api.hooks.EventListener;
 import net.kodehawa.mantarobot.core.MantaroEventManager;
-import net.kodehawa.mantarobot.core.listeners.entities.CachedMessage;
+import net.kodehawa.mantarobot.core.listeners.entities.MessageCache;
+import net.kodehawa.mantarobot.data.MantaroData;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,11 +32,10 @@ import javax.annotation.Nonnull;
 import java.time.Month;
 import java.time.OffsetDateTime;
 import java.util.Objects;
-import java.util.Optional;
 
 public class Shard {
     private static final Logger log = LoggerFactory.getLogger(Shard.class);
-    private final Cache<Long, Optional<CachedMessage>> messageCache = CacheBuilder.newBuilder().concurrencyLevel(5).maximumSize(2500).build();
+    private final MessageCache messageCache;
     private final MantaroEventManager manager = new MantaroEventManager();
     private final int id;
     private final EventListener listener;
@@ -45,6 +43,7 @@ public class Shard {
 
     public Shard(int id) {
         this.id = id;
+        this.messageCache = new MessageCache(id, MantaroData.config().get().getMessageCacheBytes());
         this.listener = event -> {
             if(event instanceof ReadyEvent) {
                 synchronized(this) {
@@ -62,7 +61,7 @@ public class Shard {
 
     @Nonnull
     @CheckReturnValue
-    public Cache<Long, Optional<CachedMessage>> getMessageCache() {
+    public MessageCache getMessageCache() {
         return messageCache;
     }
 
@@ -21,24 +21,19 @@ import net.dv8tion.jda.api.utils.SessionController;
 import net.dv8tion.jda.api.utils.SessionControllerAdapter;
 
 import javax.annotation.CheckReturnValue;
-import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 
+// Shards in the same bucket (shard id % max_concurrency) share an identify rate limit, so each bucket of the plan gets its own controller.
 public class BucketedController extends SessionControllerAdapter {
+    private final StartupPlanner.Plan plan;
     private final SessionController[] shardControllers;
 
-    public BucketedController(@Nonnegative int bucketFactor, long homeGuildId) {
-        if (bucketFactor < 1) {
-            throw new IllegalArgumentException("Bucket factor must be at least 1");
+    public BucketedController(@Nonnull StartupPlanner.Plan plan) {
+        this.plan = plan;
+        this.shardControllers = new SessionController[plan.getBuckets().size()];
+        for (int i = 0; i < shardControllers.length; i++) {
+            this.shardControllers[i] = new PrioritizingSessionController(plan);
         }
-        this.shardControllers = new SessionController[bucketFactor];
-        for (int i = 0; i < bucketFactor; i++) {
-            this.shardControllers[i] = new PrioritizingSessionController(homeGuildId);
-        }
-    }
-
-    public BucketedController(long homeGuildId) {
-        this(16, homeGuildId);
     }
 
     @Override
@@ -54,6 +49,6 @@ public class BucketedController extends SessionControllerAdapter {
     @Nonnull
     @CheckReturnValue
     private SessionController controllerFor(@Nonnull SessionConnectNode node) {
-        return shardControllers[node.getShardInfo().getShardId() % shardControllers.length];
+        return shardControllers[plan.bucketOf(node.getShardInfo().getShardId())];
     }
 }
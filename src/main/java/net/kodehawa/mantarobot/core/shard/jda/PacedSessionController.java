@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.core.shard.jda;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.events.GenericEvent;
+import net.dv8tion.jda.api.events.StatusChangeEvent;
+import net.dv8tion.jda.api.hooks.EventListener;
+import net.dv8tion.jda.api.utils.SessionControllerAdapter;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Session controller for a single rate limit bucket that waits the identify interval counted from when the last
+ * shard <b>sent its IDENTIFY</b>, instead of sleeping the whole interval again after it finished logging in.
+ */
+public class PacedSessionController extends SessionControllerAdapter {
+    // Covers the difference between when we see the IDENTIFY go out and when Discord counts it.
+    public static final long SAFETY_MARGIN = 250;
+
+    protected final long identifyInterval;
+
+    public PacedSessionController(long identifyInterval) {
+        this.identifyInterval = identifyInterval;
+    }
+
+    @Override
+    protected void runWorker() {
+        synchronized (lock) {
+            if (workerHandle == null) {
+                workerHandle = new PacedWorker();
+                workerHandle.start();
+            }
+        }
+    }
+
+    protected class PacedWorker extends QueueWorker {
+        public PacedWorker() {
+            super(identifyInterval + SAFETY_MARGIN);
+        }
+
+        @Override
+        protected void processQueue() {
+            var isMultiple = connectQueue.size() > 1;
+            while (!connectQueue.isEmpty()) {
+                var node = connectQueue.poll();
+                var identify = new IdentifyWatch(node.getJDA());
+                try {
+                    node.run(isMultiple && connectQueue.isEmpty());
+                    isMultiple = true;
+                    // The last node returns as soon as it starts connecting, so it might not have identified yet.
+                    var identified = identify.await(delay);
+                    lastConnect = identified;
+                    if (connectQueue.isEmpty()) {
+                        break;
+                    }
+
+                    var wait = delay - (System.currentTimeMillis() - identified);
+                    if (wait > 0) {
+                        Thread.sleep(wait);
+                    }
+                } catch (IllegalStateException e) {
+                    // Something went wrong on this one, try it again later.
+                    log.error("Failed to run node", e);
+                    appendSession(node);
+                } catch (InterruptedException e) {
+                    log.error("Failed to run node", e);
+                    appendSession(node);
+                    break;
+                } finally {
+                    identify.close();
+                }
+            }
+        }
+    }
+
+    // JDA switches to AWAITING_LOGIN_CONFIRMATION right after it sends the IDENTIFY (or RESUME).
+    private static class IdentifyWatch implements EventListener {
+        private final JDA jda;
+        private final CountDownLatch identified = new CountDownLatch(1);
+        private volatile long identifiedAt;
+
+        private IdentifyWatch(JDA jda) {
+            this.jda = jda;
+            jda.addEventListener(this);
+        }
+
+        @Override
+        public void onEvent(@NotNull GenericEvent event) {
+            if (event instanceof StatusChangeEvent evt && evt.getNewStatus() == JDA.Status.AWAITING_LOGIN_CONFIRMATION) {
+                identifiedAt = System.currentTimeMillis();
+                identified.countDown();
+            }
+        }
+
+        // When the shard identified, or now if it didn't in time (it most likely failed to connect).
+        private long await(long timeout) throws InterruptedException {
+            if (!identified.await(timeout, TimeUnit.MILLISECONDS)) {
+                return System.currentTimeMillis();
+            }
+
+            return identifiedAt;
+        }
+
+        private void close() {
+            jda.removeEventListener(this);
+        }
+    }
+}
@@ -19,52 +19,49 @@ package net.kodehawa.mantarobot.core.shard.jda;
 
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.utils.SessionController;
-import net.dv8tion.jda.api.utils.SessionControllerAdapter;
 
 import javax.annotation.Nonnull;
 import java.util.Comparator;
 import java.util.concurrent.PriorityBlockingQueue;
 
 //created by napster (https://github.com/napstr)
-public class PrioritizingSessionController extends SessionControllerAdapter
+public class PrioritizingSessionController extends PacedSessionController
         implements Comparator<SessionController.SessionConnectNode> {
 
-    private final long homeGuildId;
+    private final StartupPlanner.Plan plan;
 
-    public PrioritizingSessionController(long homeGuildId) {
-        this.homeGuildId = homeGuildId;
+    public PrioritizingSessionController(StartupPlanner.Plan plan) {
+        super(plan.getIdentifyInterval());
+        this.plan = plan;
         this.connectQueue = new PriorityBlockingQueue<>(1, this);
     }
 
     @Override
     public int compare(SessionController.SessionConnectNode s1, SessionController.SessionConnectNode s2) {
+        var id1 = s1.getShardInfo().getShardId();
+        var id2 = s2.getShardInfo().getShardId();
         //if one of the shards is containing the home guild, do it first always
-        if (isHomeShard(s1)) {
+        if (id1 == plan.getHomeShard()) {
             return -1;
         }
 
-        if (isHomeShard(s2)) {
+        if (id2 == plan.getHomeShard()) {
             return 1;
         }
 
-        //if both or none are reconnecting, order by their shard ids
-        if ((s1.isReconnect() && s2.isReconnect())
-                || (!s1.isReconnect() && !s2.isReconnect())) {
-            return s1.getShardInfo().getShardId() - s2.getShardInfo().getShardId();
+        //prefer the one that is reconnecting
+        if (s1.isReconnect() != s2.isReconnect()) {
+            return s1.isReconnect() ? -1 : 1;
         }
 
-        //otherwise prefer the one that is reconnecting
-        return s1.isReconnect() ? -1 : 1;
+        //otherwise go in the order the plan has them, anything it doesn't know about last
+        var order = Integer.compare(positionOf(id1), positionOf(id2));
+        return order != 0 ? order : Integer.compare(id1, id2);
     }
 
-    private long getHomeShardId(int shardTotal) {
-        return (this.homeGuildId >> 22) % shardTotal;
-    }
-
-    private boolean isHomeShard(SessionController.SessionConnectNode node) {
-        return homeGuildId != -1 &&
-                getHomeShardId(node.getShardInfo().getShardTotal())
-                        == node.getShardInfo().getShardId();
+    private int positionOf(int shardId) {
+        var position = plan.positionOf(shardId);
+        return position == -1 ? Integer.MAX_VALUE : position;
     }
 
     @Nonnull
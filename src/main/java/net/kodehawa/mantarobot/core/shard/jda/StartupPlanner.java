@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.core.shard.jda;
+
+import javax.annotation.CheckReturnValue;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Works out in which order and when shards get to identify.
+ * <br>Discord lets every rate limit bucket ({@code shard_id % max_concurrency}) identify once per interval, and buckets
+ * don't wait on each other, so shards are split by bucket, the home guild's shard goes first in its bucket, and the rest
+ * go in shard id order. {@link BucketedController} takes the plan: one controller per bucket, identifying its shards in
+ * the order the plan has them.
+ */
+public class StartupPlanner {
+    // Discord allows one identify per bucket every 5 seconds.
+    public static final long IDENTIFY_INTERVAL = 5000;
+
+    @Nonnull
+    @CheckReturnValue
+    public static Plan plan(@Nonnull List<Integer> shardIds, @Nonnegative int shardTotal, @Nonnegative int maxConcurrency,
+                            long homeGuildId, long identifyInterval) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("Max concurrency must be at least 1");
+        }
+
+        var homeShard = homeGuildId == -1 ? -1 : (int) ((homeGuildId >> 22) % shardTotal);
+        var buckets = new ArrayList<List<Integer>>(maxConcurrency);
+        for (var i = 0; i < maxConcurrency; i++) {
+            buckets.add(new ArrayList<>());
+        }
+
+        var sorted = new ArrayList<>(shardIds);
+        Collections.sort(sorted);
+        for (var id : sorted) {
+            var bucket = buckets.get(id % maxConcurrency);
+            if (id == homeShard) {
+                bucket.add(0, id);
+            } else {
+                bucket.add(id);
+            }
+        }
+
+        return new Plan(buckets, shardIds.contains(homeShard) ? homeShard : -1, identifyInterval);
+    }
+
+    public static class Plan {
+        private final List<List<Integer>> buckets;
+        private final int homeShard;
+        private final long identifyInterval;
+
+        private Plan(List<List<Integer>> buckets, int homeShard, long identifyInterval) {
+            this.buckets = buckets;
+            this.homeShard = homeShard;
+            this.identifyInterval = identifyInterval;
+        }
+
+        /**
+         * @return Shard ids to identify per bucket, in order.
+         */
+        public List<List<Integer>> getBuckets() {
+            return Collections.unmodifiableList(buckets);
+        }
+
+        /**
+         * @return The bucket the shard identifies in, which is also the number of the controller that paces it.
+         */
+        public int bucketOf(int shardId) {
+            return shardId % buckets.size();
+        }
+
+        /**
+         * @return How many shards of its bucket identify before this one, or -1 if it's not in the plan.
+         */
+        public int positionOf(int shardId) {
+            return buckets.get(bucketOf(shardId)).indexOf(shardId);
+        }
+
+        /**
+         * @return The shard with the home guild, or -1 if it's not one of ours.
+         */
+        public int getHomeShard() {
+            return homeShard;
+        }
+
+        public long getIdentifyInterval() {
+            return identifyInterval;
+        }
+
+        /**
+         * @return When (in milliseconds since the first identify) the shard is meant to identify, or -1 if it's not in the plan.
+         */
+        public long offsetOf(int shardId) {
+            var position = positionOf(shardId);
+            return position == -1 ? -1 : position * identifyInterval;
+        }
+
+        /**
+         * @return Time between the first and the last identify.
+         */
+        public long duration() {
+            var longest = 0;
+            for (var bucket : buckets) {
+                longest = Math.max(longest, bucket.size());
+            }
+
+            return Math.max(0, longest - 1) * identifyInterval;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+package net.kodehawa.mantarobot.core.shard.stats;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, pre-aggregated picture of the whole cluster, built by {@link ClusterStatsService}.
+ *
+ * @param takenAt When the data this was built from was read, in epoch millis. 0 if it never was.
+ */
+public record ClusterStats(long takenAt, Map<Integer, ShardStats> shards, Map<Integer, NodeStats> nodes,
+                           List<ShardStats> unhealthyShards, long guilds, long users, long usedMemory,
+                           long queueSize, long threadCount, long commandsRan) {
+    public static final ClusterStats EMPTY = new ClusterStats(
+            0, Collections.emptyMap(), Collections.emptyMap(), Collections.emptyList(), 0, 0, 0, 0, 0, 0
+    );
+}
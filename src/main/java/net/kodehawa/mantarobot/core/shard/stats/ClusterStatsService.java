@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+package net.kodehawa.mantarobot.core.shard.stats;
+
+import net.kodehawa.mantarobot.data.MantaroData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Reads the shard and node stats every node publishes and keeps them aggregated into a {@link ClusterStats},
+ * refreshed on a timer. Commands should only ever call {@link #snapshot()}, which doesn't touch Redis.
+ */
+public class ClusterStatsService {
+    private static final Logger log = LoggerFactory.getLogger(ClusterStatsService.class);
+    // A shard that hasn't seen an event in this long is most likely not receiving any.
+    public static final long UNHEALTHY_EVENT_DIFF = TimeUnit.MINUTES.toMillis(2);
+
+    private final Source source;
+    private final LongSupplier clock;
+    private volatile ClusterStats snapshot = ClusterStats.EMPTY;
+
+    public ClusterStatsService(String clientId) {
+        this(Source.redis(clientId), System::currentTimeMillis);
+    }
+
+    public ClusterStatsService(Source source, LongSupplier clock) {
+        this.source = source;
+        this.clock = clock;
+    }
+
+    public void start(ScheduledExecutorService executor, long period, TimeUnit unit) {
+        executor.scheduleAtFixedRate(this::refresh, 0, period, unit);
+    }
+
+    public ClusterStats snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return How old the current snapshot is, in milliseconds.
+     */
+    public long staleness() {
+        return clock.getAsLong() - snapshot.takenAt();
+    }
+
+    /**
+     * Reads everything again and replaces the snapshot. If it can't, the previous one is kept
+     * (and keeps getting older, as told by {@link #staleness()}).
+     */
+    public ClusterStats refresh() {
+        try {
+            var takenAt = clock.getAsLong();
+            snapshot = aggregate(takenAt, source.shardStats(), source.nodeStats());
+        } catch (Exception e) {
+            log.error("Unable to refresh cluster stats", e);
+        }
+
+        return snapshot;
+    }
+
+    private static ClusterStats aggregate(long takenAt, Map<String, String> rawShards, Map<String, String> rawNodes) {
+        var shards = new TreeMap<Integer, ShardStats>();
+        var unhealthy = new ArrayList<ShardStats>();
+        var guilds = 0L;
+        var users = 0L;
+
+        for (var entry : rawShards.entrySet()) {
+            ShardStats stats;
+            try {
+                var shardId = Integer.parseInt(entry.getKey());
+                stats = ShardStats.decode(shardId, entry.getValue());
+            } catch (Exception e) {
+                log.warn("Skipping malformed shard stats {} -> {}", entry.getKey(), entry.getValue());
+                continue;
+            }
+
+            shards.put(stats.shardId(), stats);
+            guilds += stats.guildCount();
+            users += stats.cachedUsers();
+            if (!"CONNECTED".equals(stats.status()) || stats.lastEventDiff() > UNHEALTHY_EVENT_DIFF) {
+                unhealthy.add(stats);
+            }
+        }
+
+        var nodes = new TreeMap<Integer, NodeStats>();
+        var usedMemory = 0L;
+        var queueSize = 0L;
+        var threadCount = 0L;
+        var commandsRan = 0L;
+
+        for (var entry : rawNodes.entrySet()) {
+            NodeStats stats;
+            try {
+                stats = NodeStats.decode(entry.getKey(), entry.getValue());
+            } catch (Exception e) {
+                log.warn("Skipping malformed node stats {} -> {}", entry.getKey(), entry.getValue());
+                continue;
+            }
+
+            nodes.put(stats.nodeNumber(), stats);
+            usedMemory += stats.usedMemory();
+            queueSize += stats.queueSize();
+            threadCount += stats.threadCount();
+            commandsRan += stats.commandsRan();
+        }
+
+        unhealthy.sort((a, b) -> Integer.compare(a.shardId(), b.shardId()));
+        return new ClusterStats(takenAt,
+                Collections.unmodifiableMap(shards),
+                Collections.unmodifiableMap(nodes),
+                Collections.unmodifiableList(unhealthy),
+                guilds, users, usedMemory, queueSize, threadCount, commandsRan
+        );
+    }
+
+    /**
+     * Reads the raw shard and node stats hashes. {@link #redis(String)} is the real one, tests pass in fixed maps.
+     */
+    public interface Source {
+        Map<String, String> shardStats();
+
+        Map<String, String> nodeStats();
+
+        static Source redis(String clientId) {
+            var shardKey = "shardstats-" + clientId;
+            var nodeKey = "node-stats-" + clientId;
+
+            return new Source() {
+                @Override
+                public Map<String, String> shardStats() {
+                    try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
+                        return jedis.hgetAll(shardKey);
+                    }
+                }
+
+                @Override
+                public Map<String, String> nodeStats() {
+                    try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
+                        return jedis.hgetAll(nodeKey);
+                    }
+                }
+            };
+        }
+    }
+}
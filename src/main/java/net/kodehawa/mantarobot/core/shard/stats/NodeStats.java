@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+package net.kodehawa.mantarobot.core.shard.stats;
+
+import org.json.JSONObject;
+
+/**
+ * What a node publishes about itself into "node-stats-&lt;client id&gt;", see AsyncInfoMonitor.
+ */
+public record NodeStats(int nodeNumber, long uptime, long threadCount, long usedMemory,
+                        long queueSize, long commandsRan, long guildCount, long userCount) {
+    public static NodeStats decode(String key, String value) {
+        var json = new JSONObject(value);
+        return new NodeStats(
+                Integer.parseInt(key.substring(key.indexOf('-') + 1)),
+                json.getLong("uptime"),
+                json.getLong("thread_count"),
+                json.getLong("used_memory"),
+                json.getLong("queue_size"),
+                json.getLong("commands_ran"),
+                json.optLong("guild_count"),
+                json.optLong("user_count")
+        );
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+package net.kodehawa.mantarobot.core.shard.stats;
+
+import net.dv8tion.jda.api.JDA;
+import net.kodehawa.mantarobot.core.MantaroEventManager;
+import org.json.JSONObject;
+
+/**
+ * What a node publishes about each of its shards into "shardstats-&lt;client id&gt;".
+ * Encoded as a pipe-separated line instead of JSON, as it's written for every shard and read back by every node.
+ */
+public record ShardStats(int shardId, long guildCount, long cachedUsers, long gatewayPing,
+                         String status, long lastEventDiff, int nodeNumber) {
+    public static ShardStats of(JDA jda, int nodeNumber) {
+        return new ShardStats(
+                jda.getShardInfo().getShardId(),
+                jda.getGuildCache().size(),
+                jda.getUserCache().size(),
+                jda.getGatewayPing(),
+                jda.getStatus().name(),
+                ((MantaroEventManager) jda.getEventManager()).lastJDAEventDiff(),
+                nodeNumber
+        );
+    }
+
+    public String encode() {
+        return guildCount + "|" + cachedUsers + "|" + gatewayPing + "|" + status + "|" + lastEventDiff + "|" + nodeNumber;
+    }
+
+    public static ShardStats decode(int shardId, String value) {
+        // Nodes running an older build still write JSON, so keep reading it while a rollout is in progress.
+        if (value.startsWith("{")) {
+            var json = new JSONObject(value);
+            return new ShardStats(shardId,
+                    json.getLong("guild_count"),
+                    json.getLong("cached_users"),
+                    json.getLong("gateway_ping"),
+                    json.getString("shard_status"),
+                    json.getLong("last_ping_diff"),
+                    json.optInt("node_number")
+            );
+        }
+
+        var parts = value.split("\\|");
+        if (parts.length != 6) {
+            throw new IllegalArgumentException("Malformed shard stats for shard " + shardId + ": " + value);
+        }
+
+        return new ShardStats(shardId,
+                Long.parseLong(parts[0]),
+                Long.parseLong(parts[1]),
+                Long.parseLong(parts[2]),
+                parts[3],
+                Long.parseLong(parts[4]),
+                Integer.parseInt(parts[5])
+        );
+    }
+}
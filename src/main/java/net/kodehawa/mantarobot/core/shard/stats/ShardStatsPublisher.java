@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+package net.kodehawa.mantarobot.core.shard.stats;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.dv8tion.jda.api.JDA;
+import net.kodehawa.mantarobot.data.MantaroData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Writes the stats of every shard on this node in a single HSET, leaving out the shards whose
+ * stats didn't change since the last time they were sent.
+ * <br>The gateway ping and time since the last event change on almost every publish, so they don't count as a change
+ * by themselves: they go out along with the shard's next real change, or with the periodic full publish. A shard going
+ * past {@link ClusterStatsService#UNHEALTHY_EVENT_DIFF} without events does count, so it shows up as unhealthy right away.
+ * <br>Event listeners only {@link #markDirty(JDA) mark} their shard, the publish itself (and the Redis call) happens a bit
+ * later on the publisher's own thread, together with any other shard that changed in the meantime.
+ */
+public class ShardStatsPublisher {
+    private static final Logger log = LoggerFactory.getLogger(ShardStatsPublisher.class);
+    // Everything is sent again this often, in case the hash got lost on Redis' side.
+    private static final long FULL_PUBLISH_INTERVAL = TimeUnit.HOURS.toNanos(1);
+    // How long a dirty shard waits, so a burst of joins or leaves goes out in one publish.
+    private static final long DIRTY_DELAY_SECONDS = 5;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("Mantaro Shard Stats Publisher").setDaemon(true).build()
+    );
+    private final Map<Integer, JDA> dirty = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final String key;
+    private final int nodeNumber;
+    private final Map<Integer, String> published = new HashMap<>();
+    private long lastFullPublish;
+    private boolean fullPublished;
+
+    public ShardStatsPublisher(String clientId, int nodeNumber) {
+        this.key = "shardstats-" + clientId;
+        this.nodeNumber = nodeNumber;
+    }
+
+    /**
+     * Marks the stats of the given shard as changed. They're published within a few seconds, off the calling thread.
+     *
+     * @param jda The shard that changed.
+     */
+    public void markDirty(JDA jda) {
+        dirty.put(jda.getShardInfo().getShardId(), jda);
+        if (flushScheduled.compareAndSet(false, true)) {
+            executor.schedule(this::flushDirty, DIRTY_DELAY_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    public synchronized void publish(Iterable<JDA> shards) {
+        var now = System.nanoTime();
+        if (!fullPublished || now - lastFullPublish >= FULL_PUBLISH_INTERVAL) {
+            published.clear();
+            lastFullPublish = now;
+            fullPublished = true;
+        }
+
+        var changed = new HashMap<Integer, ShardStats>();
+        for (var jda : shards) {
+            // This screws up with our shard stats, so we just need to ignore it.
+            if (jda.getStatus() == JDA.Status.INITIALIZED || jda.getStatus() == JDA.Status.SHUTDOWN) {
+                continue;
+            }
+
+            var stats = ShardStats.of(jda, nodeNumber);
+            if (!stableFields(stats).equals(published.get(stats.shardId()))) {
+                changed.put(stats.shardId(), stats);
+            }
+        }
+
+        if (changed.isEmpty()) {
+            return;
+        }
+
+        var encoded = new HashMap<String, String>();
+        changed.forEach((shardId, stats) -> encoded.put(String.valueOf(shardId), stats.encode()));
+
+        try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
+            jedis.hset(key, encoded);
+        } catch (Exception e) {
+            // Forget what we have, so the next publish sends everything again.
+            published.clear();
+            log.error("Unable to publish shard stats", e);
+            return;
+        }
+
+        changed.forEach((shardId, stats) -> published.put(shardId, stableFields(stats)));
+        log.debug("Sent {} changed shard stats to Redis", changed.size());
+    }
+
+    private void flushDirty() {
+        // Cleared first, so a shard marked while this runs schedules another flush instead of being missed.
+        flushScheduled.set(false);
+        var shards = new ArrayList<JDA>(dirty.size());
+        for (var shardId : dirty.keySet()) {
+            var jda = dirty.remove(shardId);
+            if (jda != null) {
+                shards.add(jda);
+            }
+        }
+
+        try {
+            publish(shards);
+        } catch (Exception e) {
+            log.error("Unable to publish dirty shard stats", e);
+        }
+    }
+
+    private static String stableFields(ShardStats stats) {
+        var stalled = stats.lastEventDiff() > ClusterStatsService.UNHEALTHY_EVENT_DIFF;
+        return stats.guildCount() + "|" + stats.cachedUsers() + "|" + stats.status() + "|" + stalled + "|" + stats.nodeNumber();
+    }
+}
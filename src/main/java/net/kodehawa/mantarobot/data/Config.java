@@ -61,12 +61,42 @@ public class Config {
     public String excludeAddress = "";
     public String ytPapisId = "";
     public String ytPSId = "";
-    public int bucketFactor = 4;
+    // Shards starting in parallel (one per identify bucket). 0 uses max_concurrency from the gateway.
+    public int bucketFactor = 0;
     public long dailyMaxPeriodMilliseconds = TimeUnit.HOURS.toMillis(50);
     public boolean isSelfHost = false;
     public int memberCacheSize = 10_000;
     public boolean handleRatelimits = true;
     public boolean testing = false;
+    // Buckets (in seconds) for the per-command and per-phase latency histograms.
+    public double[] commandLatencyBuckets = {0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+    // Max size (in bytes) of the per-shard message cache used for edit/delete logging.
+    public long messageCacheBytes = 1024 * 1024;
+    // Listeners (by class name, e.g. "MantaroListener") whose events get handled on a separate, bounded executor.
+    public List<String> offloadedEventListeners = new ArrayList<>();
+    public int eventOffloadThreads = 1;
+    public int eventOffloadQueueSize = 1000;
+    // "platform" or "virtual" (needs Java 21, falls back to platform otherwise).
+    public String commandExecutorMode = "platform";
+    public int maxConcurrentCommands = 200;
+    public int maxQueuedCommandsPerGuild = 50;
+    // "diff" (upsert/delete only what changed) or "full" (overwrite all commands) when slash commands changed.
+    public String slashCommandSync = "diff";
+    // RethinkDB connections for quick queries (gets, saves) and for scans, and how many queries each one takes at once.
+    public int dbPoolSize = 4;
+    public int dbBulkPoolSize = 2;
+    public int dbMaxInFlight = 32;
+    // How long (in milliseconds) a query waits for a free connection before failing.
+    public long dbAcquireTimeout = 5_000;
+    // Keep guild settings in memory, kept up to date by a changefeed on the guilds table.
+    public boolean guildSettingsCache = false;
+    // How long (in milliseconds) a cached guild is served before it's read again, even if the feed is up.
+    public long guildSettingsMaxAge = 300_000;
+    // How long (in milliseconds) a user's player stays in memory after their last economy command.
+    // 0 still runs their economy commands one at a time, but reads and writes the player every time.
+    public long playerLaneIdle = 3_000;
+    // How long (in milliseconds) an economy command waits for the previous ones of the same user before giving up.
+    public long playerLaneMaxWait = 5_000;
 
     public Config() { }
 
@@ -246,6 +276,74 @@ public class Config {
         return testing;
     }
 
+    public double[] getCommandLatencyBuckets() {
+        return commandLatencyBuckets;
+    }
+
+    public long getMessageCacheBytes() {
+        return messageCacheBytes;
+    }
+
+    public List<String> getOffloadedEventListeners() {
+        return offloadedEventListeners;
+    }
+
+    public int getEventOffloadThreads() {
+        return eventOffloadThreads;
+    }
+
+    public int getEventOffloadQueueSize() {
+        return eventOffloadQueueSize;
+    }
+
+    public String getCommandExecutorMode() {
+        return commandExecutorMode;
+    }
+
+    public int getMaxConcurrentCommands() {
+        return maxConcurrentCommands;
+    }
+
+    public int getMaxQueuedCommandsPerGuild() {
+        return maxQueuedCommandsPerGuild;
+    }
+
+    public String getSlashCommandSync() {
+        return slashCommandSync;
+    }
+
+    public int getDbPoolSize() {
+        return dbPoolSize;
+    }
+
+    public int getDbBulkPoolSize() {
+        return dbBulkPoolSize;
+    }
+
+    public int getDbMaxInFlight() {
+        return dbMaxInFlight;
+    }
+
+    public long getDbAcquireTimeout() {
+        return dbAcquireTimeout;
+    }
+
+    public boolean isGuildSettingsCache() {
+        return guildSettingsCache;
+    }
+
+    public long getGuildSettingsMaxAge() {
+        return guildSettingsMaxAge;
+    }
+
+    public long getPlayerLaneIdle() {
+        return playerLaneIdle;
+    }
+
+    public long getPlayerLaneMaxWait() {
+        return playerLaneMaxWait;
+    }
+
     @JsonIgnore
     public boolean musicEnable() {
         return isPremiumBot() || isSelfHost() || isTesting();
@@ -19,6 +19,7 @@ package net.kodehawa.mantarobot.data;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.rethinkdb.net.Connection;
+import net.kodehawa.mantarobot.db.ConnectionPool;
 import net.kodehawa.mantarobot.db.ManagedDatabase;
 import net.kodehawa.mantarobot.utils.data.JsonDataManager;
 import net.kodehawa.mantarobot.utils.exporters.Metrics;
@@ -39,7 +40,7 @@ public class MantaroData {
     );
 
     private static JsonDataManager<Config> config;
-    private static Connection connection;
+    private static volatile ConnectionPool pool;
     private static ManagedDatabase db;
 
     private static final JedisPool defaultJedisPool = new JedisPool(config().get().jedisPoolAddress, config().get().jedisPoolPort);
@@ -56,33 +57,40 @@ public class MantaroData {
         return config;
     }
 
-    public static Connection conn() {
-        var config = config().get();
-        if (connection == null) {
+    public static ConnectionPool pool() {
+        if (pool == null) {
             synchronized (MantaroData.class) {
-                if (connection != null) {
-                    return connection;
+                if (pool != null) {
+                    return pool;
                 }
 
-                connection = r.connection()
-                        .hostname(config.getDbHost())
-                        .port(config.getDbPort())
-                        .db(config.getDbDb())
-                        .user(config.getDbUser(), config.getDbPassword())
-                        .connect();
+                var config = config().get();
+                pool = new ConnectionPool(MantaroData::connect,
+                        config.getDbPoolSize(), config.getDbBulkPoolSize(), config.getDbMaxInFlight(), config.getDbAcquireTimeout()
+                );
 
-                log.info("Established first database connection to {}:{} ({})",
+                log.info("Established database connections to {}:{} ({})",
                         config.getDbHost(), config.getDbPort(), config.getDbUser()
                 );
             }
         }
 
-        return connection;
+        return pool;
+    }
+
+    private static Connection connect() {
+        var config = config().get();
+        return r.connection()
+                .hostname(config.getDbHost())
+                .port(config.getDbPort())
+                .db(config.getDbDb())
+                .user(config.getDbUser(), config.getDbPassword())
+                .connect();
     }
 
     public static ManagedDatabase db() {
         if (db == null) {
-            db = new ManagedDatabase(conn());
+            db = new ManagedDatabase(pool());
         }
 
         return db;
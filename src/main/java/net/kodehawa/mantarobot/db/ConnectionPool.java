@@ -0,0 +1,344 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+package net.kodehawa.mantarobot.db;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.rethinkdb.gen.exc.ReqlDriverError;
+import com.rethinkdb.net.Connection;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static com.rethinkdb.RethinkDB.r;
+
+/**
+ * A fixed set of RethinkDB connections, split in two lanes: {@link Lane#POINT} for the small queries commands wait on,
+ * and {@link Lane#BULK} for scans, so a slow scan never holds a point get up behind it on the same socket.
+ * <br>The driver multiplexes queries over a connection, so each one takes up to maxInFlight queries at once. Queries go to
+ * the healthy connection of their lane with the least in flight, and wait up to acquireTimeout for one to free up.
+ * Connections get checked every few seconds, and the ones that fail (or don't answer in time) get reconnected with jittered
+ * exponential backoff, on a thread of their own so a slow reconnect doesn't hold up the health checks.
+ */
+public class ConnectionPool implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(ConnectionPool.class);
+    private static final long HEALTH_CHECK_SECONDS = 5;
+    // A connection that doesn't answer the health check in this long (in milliseconds) counts as failed.
+    private static final long HEALTH_CHECK_TIMEOUT = 2_000;
+    private static final long MIN_BACKOFF = 250;
+    private static final long MAX_BACKOFF = 30_000;
+
+    public enum Lane {
+        // Gets, inserts and anything else that's quick and has someone waiting on it.
+        POINT,
+        // Table scans, index creation, rebuilds. Anything that can take a while.
+        BULK
+    }
+
+    private final Map<Lane, List<Slot>> lanes = new EnumMap<>(Lane.class);
+    private final Supplier<Connection> factory;
+    private final int maxInFlight;
+    private final long acquireTimeoutNanos;
+    private final ScheduledExecutorService executor;
+    private final ScheduledExecutorService reconnector;
+
+    /**
+     * @param factory Opens a new connection. Called on startup and every time one has to be reconnected.
+     * @param pointSize Connections for {@link Lane#POINT}.
+     * @param bulkSize Connections for {@link Lane#BULK}.
+     * @param maxInFlight Queries a single connection takes at once.
+     * @param acquireTimeout How long (in milliseconds) a query waits for a connection before giving up.
+     */
+    public ConnectionPool(Supplier<Connection> factory, int pointSize, int bulkSize, int maxInFlight, long acquireTimeout) {
+        this.factory = factory;
+        this.maxInFlight = maxInFlight;
+        this.acquireTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(acquireTimeout);
+        this.executor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("Mantaro Database Pool").setDaemon(true).build()
+        );
+        this.reconnector = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("Mantaro Database Reconnect").setDaemon(true).build()
+        );
+
+        lanes.put(Lane.POINT, open(Lane.POINT, pointSize));
+        lanes.put(Lane.BULK, open(Lane.BULK, bulkSize));
+        executor.scheduleWithFixedDelay(this::checkHealth, HEALTH_CHECK_SECONDS, HEALTH_CHECK_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * A pool over a single connection, used by both lanes. Nothing gets reconnected: mostly for tests and one-off tools.
+     */
+    public static ConnectionPool of(Connection connection) {
+        return new ConnectionPool(connection);
+    }
+
+    private ConnectionPool(Connection connection) {
+        this.factory = null;
+        this.maxInFlight = Integer.MAX_VALUE;
+        this.acquireTimeoutNanos = 0;
+        this.executor = null;
+        this.reconnector = null;
+
+        var slot = new Slot(Lane.POINT, connection);
+        lanes.put(Lane.POINT, List.of(slot));
+        lanes.put(Lane.BULK, List.of(slot));
+    }
+
+    private List<Slot> open(Lane lane, int size) {
+        var slots = new ArrayList<Slot>(size);
+        for (var i = 0; i < Math.max(1, size); i++) {
+            slots.add(new Slot(lane, factory.get()));
+        }
+
+        log.info("Opened {} database connections for the {} lane", slots.size(), lane);
+        Metrics.DATABASE_POOL_HEALTHY.labels(lane.name()).set(slots.size());
+        return List.copyOf(slots);
+    }
+
+    /**
+     * Takes a connection from the given lane, waiting for one if they're all busy. Close the lease once the query is done.
+     *
+     * @throws ReqlDriverError If no connection freed up in time.
+     */
+    public Lease acquire(Lane lane) {
+        var slots = lanes.get(lane);
+        var start = System.nanoTime();
+        try {
+            var slot = take(slots);
+            if (slot == null) {
+                // Everything's busy (or reconnecting): wait for a release or a reconnect to wake us up.
+                // Checked again under the lock they notify on, so a release can't slip in between the check and the wait.
+                synchronized (slots) {
+                    while ((slot = take(slots)) == null) {
+                        var remaining = acquireTimeoutNanos - (System.nanoTime() - start);
+                        if (remaining <= 0) {
+                            throw new ReqlDriverError("Timed out waiting for a database connection (" + lane + " lane)");
+                        }
+
+                        TimeUnit.NANOSECONDS.timedWait(slots, remaining);
+                    }
+                }
+            }
+
+            updateUtilization(lane);
+            return new Lease(slot);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ReqlDriverError("Interrupted while waiting for a database connection");
+        } finally {
+            Metrics.DATABASE_POOL_WAIT.labels(lane.name()).observe((System.nanoTime() - start) / 1e9);
+        }
+    }
+
+    // Null if every connection of the lane is full or down.
+    private Slot take(List<Slot> slots) {
+        Slot slot;
+        while ((slot = leastBusy(slots)) != null) {
+            if (slot.tryTake(maxInFlight)) {
+                return slot;
+            }
+        }
+
+        return null;
+    }
+
+    private Slot leastBusy(List<Slot> slots) {
+        Slot best = null;
+        for (var slot : slots) {
+            if (slot.healthy && slot.inFlight.get() < maxInFlight && (best == null || slot.inFlight.get() < best.inFlight.get())) {
+                best = slot;
+            }
+        }
+
+        return best;
+    }
+
+    private void release(Slot slot, Connection connection) {
+        slot.inFlight.decrementAndGet();
+        // Don't bother waiting for the next health check if the query found it closed.
+        if (slot.connection == connection && !connection.isOpen()) {
+            failed(slot);
+        }
+
+        updateUtilization(slot.lane);
+        var slots = lanes.get(slot.lane);
+        synchronized (slots) {
+            slots.notify();
+        }
+    }
+
+    private void updateUtilization(Lane lane) {
+        var inFlight = 0;
+        var healthy = 0;
+        for (var slot : lanes.get(lane)) {
+            inFlight += slot.inFlight.get();
+            if (slot.healthy) {
+                healthy++;
+            }
+        }
+
+        Metrics.DATABASE_POOL_IN_FLIGHT.labels(lane.name()).set(inFlight);
+        if (maxInFlight != Integer.MAX_VALUE) {
+            Metrics.DATABASE_POOL_UTILIZATION.labels(lane.name()).set(healthy == 0 ? 1 : (double) inFlight / ((long) healthy * maxInFlight));
+        }
+    }
+
+    private void checkHealth() {
+        for (var entry : lanes.entrySet()) {
+            var healthy = 0;
+            for (var slot : entry.getValue()) {
+                if (!slot.healthy) {
+                    continue;
+                }
+
+                try {
+                    // With a timeout, or a half-open socket would leave this waiting forever.
+                    r.expr(1).runAsync(slot.connection).get(HEALTH_CHECK_TIMEOUT, TimeUnit.MILLISECONDS);
+                    healthy++;
+                } catch (InterruptedException e) {
+                    // Shutting down.
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    log.warn("Database connection on the {} lane failed its health check", entry.getKey(), e);
+                    failed(slot);
+                }
+            }
+
+            Metrics.DATABASE_POOL_HEALTHY.labels(entry.getKey().name()).set(healthy);
+        }
+    }
+
+    private void failed(Slot slot) {
+        // Only one reconnect per connection at a time.
+        if (factory == null || !slot.markUnhealthy()) {
+            return;
+        }
+
+        reconnect(slot, 0);
+    }
+
+    private void reconnect(Slot slot, int attempt) {
+        // Full range jitter over an exponential backoff, so every connection (and node) doesn't retry at once.
+        var backoff = Math.min(MAX_BACKOFF, MIN_BACKOFF << Math.min(attempt, 16));
+        var delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        reconnector.schedule(() -> {
+            try {
+                var old = slot.connection;
+                slot.connection = factory.get();
+                slot.healthy = true;
+                old.close();
+                log.info("Reconnected a database connection on the {} lane after {} attempts", slot.lane, attempt + 1);
+                updateUtilization(slot.lane);
+                // A whole connection's worth of room just came back.
+                var slots = lanes.get(slot.lane);
+                synchronized (slots) {
+                    slots.notifyAll();
+                }
+            } catch (Exception e) {
+                log.warn("Unable to reconnect to the database (attempt {}), trying again", attempt + 1, e);
+                reconnect(slot, attempt + 1);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+            reconnector.shutdownNow();
+        }
+
+        for (var slots : lanes.values()) {
+            for (var slot : slots) {
+                slot.connection.close();
+            }
+        }
+    }
+
+    private static class Slot {
+        private final Lane lane;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private volatile Connection connection;
+        private volatile boolean healthy = true;
+
+        private Slot(Lane lane, Connection connection) {
+            this.lane = lane;
+            this.connection = connection;
+        }
+
+        // Might lose a race against another thread taking the last spot, the caller just tries again.
+        private boolean tryTake(int max) {
+            while (true) {
+                var current = inFlight.get();
+                if (!healthy || current >= max) {
+                    return false;
+                }
+
+                if (inFlight.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        private synchronized boolean markUnhealthy() {
+            if (!healthy) {
+                return false;
+            }
+
+            healthy = false;
+            return true;
+        }
+    }
+
+    /**
+     * A connection taken from the pool, for a single query (or a single stream).
+     */
+    public class Lease implements AutoCloseable {
+        private final Slot slot;
+        private final Connection connection;
+        private boolean closed;
+
+        private Lease(Slot slot) {
+            this.slot = slot;
+            this.connection = slot.connection;
+        }
+
+        public Connection connection() {
+            return connection;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                release(slot, connection);
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+package net.kodehawa.mantarobot.db;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Works out what changed between two versions of a serialized document, so saving it only has to send that.
+ * <br>Objects are compared field by field, anything else (lists included) gets sent whole if it changed.
+ * Integral numbers on a counter path (see {@link ManagedObject#getCounterPaths()}) come out as the difference instead,
+ * and a counter missing on either side counts as 0: setting or removing it would throw away whatever was added to it
+ * on the database in the meantime. Zeroes left behind that way are for whoever reads the document to skip.
+ */
+public class DocumentDiff {
+    public interface Change {
+        List<String> path();
+    }
+
+    public record Put(List<String> path, Object value) implements Change { }
+
+    public record Remove(List<String> path) implements Change { }
+
+    public record Increment(List<String> path, long delta) implements Change { }
+
+    /**
+     * @param counters Dot separated paths, * matching any single key.
+     * @return What it takes to turn before into after, empty if they're the same.
+     */
+    public static List<Change> diff(Map<String, Object> before, Map<String, Object> after, Set<String> counters) {
+        var changes = new ArrayList<Change>();
+        var patterns = counters.stream().map(counter -> List.of(counter.split("\\."))).toList();
+        diff(List.of(), before, after, patterns, changes);
+        return changes;
+    }
+
+    private static void diff(List<String> path, Map<?, ?> before, Map<?, ?> after, List<List<String>> counters, List<Change> changes) {
+        for (var entry : after.entrySet()) {
+            var key = entry.getKey();
+            var field = append(path, String.valueOf(key));
+            var now = entry.getValue();
+            if (!before.containsKey(key)) {
+                if (now instanceof Map<?, ?> newMap && !newMap.isEmpty()) {
+                    // Goes key by key, so counters in it still come out as increments.
+                    diff(field, Map.of(), newMap, counters, changes);
+                } else if (isIntegral(now) && isCounter(field, counters)) {
+                    addIncrement(changes, field, ((Number) now).longValue());
+                } else {
+                    changes.add(new Put(field, now));
+                }
+
+                continue;
+            }
+
+            var old = before.get(key);
+            if (isIntegral(old) && isIntegral(now)) {
+                var delta = ((Number) now).longValue() - ((Number) old).longValue();
+                if (delta != 0) {
+                    changes.add(isCounter(field, counters) ? new Increment(field, delta) : new Put(field, now));
+                }
+            } else if (old instanceof Map<?, ?> oldMap && now instanceof Map<?, ?> newMap) {
+                diff(field, oldMap, newMap, counters, changes);
+            } else if (!Objects.equals(old, now)) {
+                changes.add(new Put(field, now));
+            }
+        }
+
+        for (var entry : before.entrySet()) {
+            if (after.containsKey(entry.getKey())) {
+                continue;
+            }
+
+            var field = append(path, String.valueOf(entry.getKey()));
+            if (isIntegral(entry.getValue()) && isCounter(field, counters)) {
+                addIncrement(changes, field, -((Number) entry.getValue()).longValue());
+            } else {
+                changes.add(new Remove(field));
+            }
+        }
+    }
+
+    private static void addIncrement(List<Change> changes, List<String> field, long delta) {
+        if (delta != 0) {
+            changes.add(new Increment(field, delta));
+        }
+    }
+
+    private static boolean isCounter(List<String> path, List<List<String>> counters) {
+        for (var counter : counters) {
+            if (counter.size() != path.size()) {
+                continue;
+            }
+
+            var matches = true;
+            for (var i = 0; i < path.size() && matches; i++) {
+                matches = counter.get(i).equals("*") || counter.get(i).equals(path.get(i));
+            }
+
+            if (matches) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // Depending on the value, the same long field can come out as an Integer or a Long.
+    private static boolean isIntegral(Object value) {
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+    }
+
+    private static List<String> append(List<String> path, String key) {
+        var field = new ArrayList<String>(path.size() + 1);
+        field.addAll(path);
+        field.add(key);
+        return List.copyOf(field);
+    }
+}
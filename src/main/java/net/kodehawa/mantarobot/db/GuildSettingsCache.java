@@ -0,0 +1,350 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+package net.kodehawa.mantarobot.db;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.rethinkdb.net.Result;
+import net.kodehawa.mantarobot.core.command.processor.CommandPhase;
+import net.kodehawa.mantarobot.core.command.processor.CommandTimer;
+import net.kodehawa.mantarobot.db.ConnectionPool.Lane;
+import net.kodehawa.mantarobot.db.entities.DBGuild;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.stream.IntStream;
+
+import static com.rethinkdb.RethinkDB.r;
+
+/**
+ * Keeps the guild documents of the guilds this node handles in memory, kept up to date by a RethinkDB changefeed
+ * on the guilds table, so reading guild settings on every message doesn't need a round trip.
+ * <br>Nothing gets served from memory while the feed is down: everything is read from the database until it's back,
+ * and everything cached gets dropped when it reconnects (as anything could've changed in between).
+ * Entries older than maxAge are read again even if the feed is up, which puts a bound on how stale anything can be
+ * if a change ever gets lost.
+ * <br>Guilds on other nodes' shards are never kept: the feed doesn't send their changes, so they're always read from the database.
+ * <br>Documents are kept as they come from the database, callers get their own copy out of them.
+ */
+public class GuildSettingsCache {
+    private static final Logger log = LoggerFactory.getLogger(GuildSettingsCache.class);
+    private static final long MIN_BACKOFF = 500;
+    private static final long MAX_BACKOFF = 60_000;
+
+    private final Source source;
+    private final long maxAge;
+    private final LongSupplier clock;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // Guild id -> when (System#nanoTime) this node saved it, to time how long it took for the save to come back on the feed.
+    private final Map<String, Long> pendingSaves = new ConcurrentHashMap<>();
+    // Goes up with every change, so a load that started before a change doesn't overwrite it with what it read.
+    private final AtomicLong generation = new AtomicLong();
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("Mantaro Guild Cache Sweeper").setDaemon(true).build()
+    );
+    private volatile long resyncedAt;
+    private volatile boolean ready;
+    private volatile boolean running;
+    private volatile Feed feed;
+    private Thread thread;
+
+    /**
+     * @param maxAge How long (in milliseconds) an entry is served before it's read again.
+     * @param clock Current time in milliseconds.
+     */
+    public GuildSettingsCache(Source source, long maxAge, LongSupplier clock) {
+        this.source = source;
+        this.maxAge = maxAge;
+        this.clock = clock;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+
+        running = true;
+        thread = new Thread(this::run, "Mantaro Guild Feed");
+        thread.setDaemon(true);
+        thread.start();
+        sweeper.scheduleWithFixedDelay(this::sweep, maxAge, maxAge, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        running = false;
+        ready = false;
+        sweeper.shutdownNow();
+        var current = feed;
+        if (current != null) {
+            current.close();
+        }
+
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Whether things are being served from memory, which is only when the feed is up.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * @return The guild document, or null if it isn't on the database.
+     */
+    public Map<String, Object> get(String guildId) {
+        if (!ready || !source.owns(guildId)) {
+            Metrics.GUILD_CACHE_REQUESTS.labels("bypass").inc();
+            return source.load(guildId);
+        }
+
+        var now = clock.getAsLong();
+        var entry = entries.get(guildId);
+        if (entry != null && now - entry.loadedAt() < maxAge) {
+            Metrics.GUILD_CACHE_REQUESTS.labels("hit").inc();
+            return entry.document();
+        }
+
+        Metrics.GUILD_CACHE_REQUESTS.labels("miss").inc();
+        var start = generation.get();
+        var document = source.load(guildId);
+        entries.compute(guildId, (id, current) -> {
+            // A change came in while loading, or the feed reconnected (and what we read might've missed something).
+            if ((current != null && current.generation() > start) || start < resyncedAt) {
+                return current;
+            }
+
+            return new Entry(document, now, start);
+        });
+
+        return document;
+    }
+
+    /**
+     * Like {@link #get(String)}, but never goes to the database.
+     *
+     * @return The guild document (empty if it isn't on the database), or null if it isn't in memory.
+     */
+    public Map<String, Object> peek(String guildId) {
+        if (!ready) {
+            return null;
+        }
+
+        var entry = entries.get(guildId);
+        if (entry == null || clock.getAsLong() - entry.loadedAt() >= maxAge) {
+            return null;
+        }
+
+        return entry.document() == null ? Map.of() : entry.document();
+    }
+
+    /**
+     * Called when this node saves a guild, so it reads its own write even before it comes back on the feed.
+     */
+    public void saved(String guildId, Map<String, Object> document) {
+        if (!source.owns(guildId)) {
+            return;
+        }
+
+        pendingSaves.put(guildId, System.nanoTime());
+        if (ready) {
+            entries.put(guildId, new Entry(document, clock.getAsLong(), generation.incrementAndGet()));
+        }
+    }
+
+    private void apply(Change change) {
+        entries.put(change.guildId(), new Entry(change.document(), clock.getAsLong(), generation.incrementAndGet()));
+        var savedAt = pendingSaves.remove(change.guildId());
+        if (savedAt != null) {
+            Metrics.GUILD_FEED_LAG.observe((System.nanoTime() - savedAt) / 1e9);
+        }
+    }
+
+    private void resync() {
+        resyncedAt = generation.incrementAndGet();
+        entries.clear();
+        Metrics.GUILD_FEED_RESYNCS.inc();
+    }
+
+    private void run() {
+        var attempt = 0;
+        while (running) {
+            try (var opened = source.open()) {
+                feed = opened;
+                // Only after the feed is open, so nothing that changes from here on gets missed.
+                resync();
+                ready = true;
+                attempt = 0;
+                Metrics.GUILD_FEED_CONNECTED.set(1);
+                log.info("Guild settings feed is up, serving guild settings from memory");
+
+                while (running) {
+                    apply(opened.next());
+                }
+            } catch (Exception e) {
+                if (running) {
+                    log.warn("Guild settings feed went down, reading guild settings from the database until it's back", e);
+                }
+            } finally {
+                ready = false;
+                feed = null;
+                Metrics.GUILD_FEED_CONNECTED.set(0);
+            }
+
+            if (!running) {
+                return;
+            }
+
+            // Jittered exponential backoff, so every node doesn't reconnect at the same time.
+            var backoff = Math.min(MAX_BACKOFF, MIN_BACKOFF << Math.min(attempt++, 16));
+            try {
+                Thread.sleep(backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1));
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void sweep() {
+        var now = clock.getAsLong();
+        entries.values().removeIf(entry -> now - entry.loadedAt() >= maxAge);
+        // Saves that never came back (feed down, or not ours to watch).
+        var oldest = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(maxAge);
+        pendingSaves.values().removeIf(savedAt -> savedAt < oldest);
+    }
+
+    private record Entry(Map<String, Object> document, long loadedAt, long generation) { }
+
+    /**
+     * @param document The new document, null if it got deleted.
+     */
+    public record Change(String guildId, Map<String, Object> document) { }
+
+    public interface Feed extends AutoCloseable {
+        /**
+         * Waits for the next change. Throws once the feed is broken or closed.
+         */
+        Change next() throws Exception;
+
+        @Override
+        void close();
+    }
+
+    /**
+     * Where documents and changes come from.
+     */
+    public interface Source {
+        Feed open() throws Exception;
+
+        Map<String, Object> load(String guildId);
+
+        /**
+         * Whether the feed sends the changes of the given guild.
+         */
+        boolean owns(String guildId);
+
+        /**
+         * Reads from the guilds table, with a changefeed that only sends the guilds on the given shards.
+         */
+        static Source rethink(ConnectionPool pool, int totalShards, int fromShard, int toShard) {
+            return new RethinkSource(pool, totalShards, fromShard, toShard);
+        }
+    }
+
+    private record RethinkSource(ConnectionPool pool, int totalShards, int fromShard, int toShard) implements Source {
+        // 2^22, guild id >> 22 is the part that decides the shard.
+        private static final long SHARD_DIVISOR = 1L << 22;
+
+        @Override
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        public Feed open() {
+            var owned = IntStream.rangeClosed(fromShard, toShard).boxed().toList();
+            var lease = pool.acquire(Lane.BULK);
+            try {
+                Result<Map> changes = r.table(DBGuild.DB_TABLE)
+                        .changes()
+                        .filter(change -> {
+                            // ReQL numbers are doubles, so a 64-bit id loses its lowest bits here, and the shard might be off by one.
+                            // The neighbours get sent too (a couple of extra shards per node), and the exact check happens on our side.
+                            var shard = change.g("new_val").g("id").default_(change.g("old_val").g("id"))
+                                    .coerceTo("number")
+                                    .div(SHARD_DIVISOR)
+                                    .floor();
+                            return r.expr(owned).contains(shard.sub(1).mod(totalShards))
+                                    .or(r.expr(owned).contains(shard.mod(totalShards)))
+                                    .or(r.expr(owned).contains(shard.add(1).mod(totalShards)));
+                        })
+                        .run(lease.connection(), Map.class);
+
+                return new Feed() {
+                    @Override
+                    public Change next() {
+                        while (true) {
+                            Map<String, Object> change = changes.next();
+                            var document = (Map<String, Object>) change.get("new_val");
+                            var old = (Map<String, Object>) change.get("old_val");
+                            var id = String.valueOf((document != null ? document : old).get("id"));
+                            if (owns(id)) {
+                                return new Change(id, document);
+                            }
+                        }
+                    }
+
+                    @Override
+                    public void close() {
+                        try {
+                            changes.close();
+                        } finally {
+                            lease.close();
+                        }
+                    }
+                };
+            } catch (RuntimeException e) {
+                lease.close();
+                throw e;
+            }
+        }
+
+        @Override
+        public boolean owns(String guildId) {
+            try {
+                var shard = (int) ((Long.parseUnsignedLong(guildId) >> 22) % totalShards);
+                return shard >= fromShard && shard <= toShard;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Map<String, Object> load(String guildId) {
+            try (var ignored = CommandTimer.phase(CommandPhase.DATABASE); var lease = pool.acquire(Lane.POINT)) {
+                return r.table(DBGuild.DB_TABLE).get(guildId).runAtom(lease.connection(), Map.class);
+            }
+        }
+    }
+}
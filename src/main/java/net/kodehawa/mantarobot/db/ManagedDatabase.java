@@ -17,13 +17,27 @@
 
 package net.kodehawa.mantarobot.db;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.collect.MapMaker;
+import com.rethinkdb.RethinkDB;
+import com.rethinkdb.gen.ast.ReqlExpr;
+import com.rethinkdb.gen.ast.ReqlFunction1;
+import com.rethinkdb.gen.ast.ReqlFunction3;
+import com.rethinkdb.gen.ast.Table;
+import com.rethinkdb.model.MapObject;
+import com.rethinkdb.model.OptArgs;
 import com.rethinkdb.net.Connection;
 import com.rethinkdb.net.Result;
+import net.kodehawa.mantarobot.db.ConnectionPool.Lane;
 import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.User;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 import net.kodehawa.mantarobot.ExtraRuntimeOptions;
+import net.kodehawa.mantarobot.commands.utils.leaderboards.Leaderboards;
+import net.kodehawa.mantarobot.core.command.processor.CommandPhase;
+import net.kodehawa.mantarobot.core.command.processor.CommandTimer;
+import net.kodehawa.mantarobot.core.listeners.entities.LoggingGuilds;
 import net.kodehawa.mantarobot.db.entities.CustomCommand;
 import net.kodehawa.mantarobot.db.entities.DBGuild;
 import net.kodehawa.mantarobot.db.entities.DBUser;
@@ -38,16 +52,281 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.CheckReturnValue;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import static com.rethinkdb.RethinkDB.r;
 
 public class ManagedDatabase {
     private static final Logger log = LoggerFactory.getLogger(ManagedDatabase.class);
-    private final Connection conn;
+    // Documents per batch when going through a whole table.
+    public static final int STREAM_BATCH_SIZE = 1000;
+    // Secondary index on the guilds table, over data.guildLogChannel.
+    private static final String LOG_CHANNEL_INDEX = "logChannel";
+    private static final TypeReference<Map<String, Object>> DOCUMENT = new TypeReference<>() { };
+    private final ConnectionPool pool;
+    // How every object we handed out looked when it was read or last saved, so saving it only sends what changed.
+    // Weak keys, compared by identity: it goes away along with the object.
+    private final Map<ManagedObject, Map<String, Object>> snapshots = new MapMaker().weakKeys().makeMap();
+    private final Transfers transfers;
+    private volatile GuildSettingsCache guildCache;
+    private volatile PlayerLanes playerLanes;
+    private volatile Consumer<ManagedObject> scoreUpdates = Leaderboards::update;
+
+    public ManagedDatabase(@Nonnull ConnectionPool pool) {
+        this.pool = pool;
+        this.transfers = new Transfers(pool, this::flushPlayer, this::playerTransferred);
+    }
 
     public ManagedDatabase(@Nonnull Connection conn) {
-        this.conn = conn;
+        this(ConnectionPool.of(conn));
+    }
+
+    /**
+     * Serves guilds from the given cache from now on, instead of reading them every time.
+     */
+    public void setGuildCache(@Nullable GuildSettingsCache guildCache) {
+        this.guildCache = guildCache;
+    }
+
+    /**
+     * Lets commands running in a player lane share the player in memory from now on, see {@link PlayerLanes}.
+     */
+    public void setPlayerLanes(@Nullable PlayerLanes playerLanes) {
+        this.playerLanes = playerLanes;
+    }
+
+    @Nullable
+    public PlayerLanes getPlayerLanes() {
+        return playerLanes;
+    }
+
+    /**
+     * Sends the scores of saved objects here instead of to {@link Leaderboards#update(ManagedObject)}. For tests.
+     */
+    public void setScoreUpdates(@Nonnull Consumer<ManagedObject> scoreUpdates) {
+        this.scoreUpdates = scoreUpdates;
+    }
+
+    // Someone changed the player on the database side, so whatever we have in memory is out of date.
+    private void playerChanged(String userId) {
+        var lanes = playerLanes;
+        if (lanes != null) {
+            lanes.invalidate(userId);
+        }
+    }
+
+    // A transfer moved something in or out of the player on the database side, so both what we have in memory
+    // and their leaderboard scores are out of date. The scores come from reading them again, it doesn't know them otherwise.
+    private void playerTransferred(String userId) {
+        playerChanged(userId);
+        scoreUpdates.accept(loadPlayer(userId));
+    }
+
+    // Something is about to work on the player on the database side, so whatever we have in memory has to be there first.
+    private void flushPlayer(String userId) {
+        var lanes = playerLanes;
+        if (lanes != null) {
+            lanes.flush(userId);
+        }
+    }
+
+    /**
+     * Moves money and items between players, see {@link Transfers}.
+     */
+    @Nonnull
+    public Transfers transfers() {
+        return transfers;
+    }
+
+    /**
+     * Creates the secondary indexes the queries in here use, and the tables that came after the rest, if they don't exist yet.
+     * RethinkDB builds indexes in the background, queries using one fail until it's ready.
+     */
+    public void createIndexes() {
+        createTable(Transfers.DB_TABLE);
+        createIndex(Player.DB_TABLE, "type",
+                // Whatever is after the last :, as in <user id>:g. Ids without one error out, so they don't get indexed.
+                row -> row.g("id").match(":([^:]*)$").g("groups").nth(0).g("str")
+        );
+        createIndex(CustomCommand.DB_TABLE, "name",
+                // Same as CustomCommand#getName: whatever is after the first :, as in <guild id>:<name>.
+                row -> row.g("id").split(":", 1).nth(1)
+        );
+        createIndex(DBGuild.DB_TABLE, LOG_CHANNEL_INDEX,
+                // Guilds without a log channel (missing or null) error out or give null, so they don't get indexed.
+                row -> row.g("data").g("guildLogChannel")
+        );
+    }
+
+    private void createTable(String table) {
+        try (var lease = pool.acquire(Lane.BULK)) {
+            List<String> tables = r.tableList().run(lease.connection(), String.class).toList();
+            if (!tables.contains(table)) {
+                log.info("Creating table {}", table);
+                r.tableCreate(table).run(lease.connection());
+            }
+        }
+    }
+
+    private void createIndex(String table, String name, ReqlFunction1 function) {
+        createTable(table);
+        try (var lease = pool.acquire(Lane.BULK)) {
+            List<String> indexes = r.table(table).indexList().run(lease.connection(), String.class).toList();
+            if (!indexes.contains(name)) {
+                log.info("Creating index {} on {}", name, table);
+                r.table(table).indexCreate(name, function).run(lease.connection());
+            }
+        }
+    }
+
+    /**
+     * Runs a query over a table and hands every document to the consumer as it's read, instead of loading all of them first.
+     * <br>Documents come in batches of batchSize, and the next batch is only asked for once half of the current one has been consumed,
+     * so there's never more than about a batch and a half in memory, and a slow consumer slows the query down instead of piling documents up.
+     * Reads are allowed to be slightly out of date, which is fine for anything that goes through a whole table.
+     * Runs on the {@link Lane#BULK} connections, which it holds until it's done.
+     *
+     * @param table The table to run the query on.
+     * @param query Builds the query from the table, {@code table -> table} to go through all of it.
+     */
+    public <T> void stream(@Nonnull String table, @Nonnull Function<Table, ? extends ReqlExpr> query, @Nonnull Class<T> type,
+                           int batchSize, @Nonnull Consumer<? super T> consumer) {
+        stream(table, query, type, batchSize, (cursor, document) -> consumer.accept(document));
+    }
+
+    /**
+     * Same as {@link #stream(String, Function, Class, int, Consumer)}, but the consumer also gets the cursor the documents
+     * come from, to see how much of it is buffered.
+     */
+    public <T> void stream(@Nonnull String table, @Nonnull Function<Table, ? extends ReqlExpr> query, @Nonnull Class<T> type,
+                           int batchSize, @Nonnull BiConsumer<? super Result<T>, ? super T> consumer) {
+        var optArgs = OptArgs.of("read_mode", "outdated").with("max_batch_rows", batchSize);
+        try (var ignored = CommandTimer.phase(CommandPhase.DATABASE);
+             var lease = pool.acquire(Lane.BULK);
+             Result<T> c = query.apply(r.table(table)).run(lease.connection(), optArgs, Result.FetchMode.PREEMPTIVE_HALF, type)) {
+            c.forEach(document -> consumer.accept(c, document));
+        }
+    }
+
+    private void cacheSaved(DBGuild guild, Map<String, Object> document) {
+        var cache = guildCache;
+        if (cache != null) {
+            cache.saved(guild.getId(), document);
+        }
+    }
+
+    private static Map<String, Object> serialize(ManagedObject object) {
+        return RethinkDB.getResultMapper().convertValue(object, DOCUMENT);
+    }
+
+    // Remembers how the object looks now, for the next save.
+    private <T extends ManagedObject> T tracked(T object) {
+        if (object != null) {
+            snapshots.put(object, serialize(object));
+        }
+
+        return object;
+    }
+
+    // For objects that weren't on the database when we looked. Someone else might create them before we save them
+    // (a transfer to someone that never played, for example), so the first save adds to what's there instead of replacing it.
+    private <T extends ManagedObject> T untracked(T object) {
+        snapshots.put(object, Map.of());
+        return object;
+    }
+
+    /**
+     * Writes an object. The first time it's the whole document, with the given conflict strategy (merged into what's
+     * there instead for objects that weren't on the database when we read them). If we read or wrote it before,
+     * it's an update with only the fields that changed since then, if any did, and counters
+     * (see {@link ManagedObject#getCounterPaths()}) get added to instead of overwritten.
+     * <br>The write is acknowledged, and only then does the document become what the next save compares against:
+     * if it fails, the next save sends these changes again.
+     *
+     * @return Whether the document is on the database now, false if the write failed.
+     */
+    private boolean write(ManagedObject object, Map<String, Object> document, String conflict) {
+        // Two saves of the same object at once would both add the same counter changes.
+        synchronized (object) {
+            var snapshot = snapshots.get(object);
+            List<DocumentDiff.Change> changes = null;
+            if (snapshot != null) {
+                changes = DocumentDiff.diff(snapshot, document, object.getCounterPaths());
+                if (changes.isEmpty()) {
+                    return true;
+                }
+            }
+
+            Map<?, ?> result;
+            try (var ignored = CommandTimer.phase(CommandPhase.DATABASE); var lease = pool.acquire(Lane.POINT)) {
+                if (changes == null) {
+                    result = r.table(object.getTableName())
+                            .insert(document)
+                            .optArg("conflict", conflict)
+                            .runAtom(lease.connection(), Map.class);
+                } else if (snapshot.isEmpty()) {
+                    // See untracked(): create it, or put the changes on top of the one someone else created.
+                    var patch = patch(changes);
+                    result = r.table(object.getTableName())
+                            .insert(document)
+                            .optArg("conflict", (ReqlFunction3) (id, existing, incoming) -> existing.merge(patch))
+                            .runAtom(lease.connection(), Map.class);
+                } else {
+                    result = r.table(object.getTableName())
+                            .get(object.getId())
+                            .update(patch(changes))
+                            .runAtom(lease.connection(), Map.class);
+                }
+            }
+
+            if (result != null && result.get("errors") instanceof Number errors && errors.longValue() > 0) {
+                log.error("Unable to save {} from {}: {}", object.getId(), object.getTableName(), result.get("first_error"));
+                return false;
+            }
+
+            snapshots.put(object, document);
+            return true;
+        }
+    }
+
+    private static ReqlFunction1 patch(List<DocumentDiff.Change> changes) {
+        return row -> {
+            MapObject<Object, Object> patch = r.hashMap();
+            for (var change : changes) {
+                var path = change.path();
+                var node = patch;
+                for (var key : path.subList(0, path.size() - 1)) {
+                    @SuppressWarnings("unchecked")
+                    var child = (MapObject<Object, Object>) node.computeIfAbsent(key, k -> r.hashMap());
+                    node = child;
+                }
+
+                Object value;
+                if (change instanceof DocumentDiff.Increment increment) {
+                    ReqlExpr field = row;
+                    for (var key : path) {
+                        field = field.g(key);
+                    }
+
+                    value = field.default_(0).add(increment.delta());
+                } else if (change instanceof DocumentDiff.Put put) {
+                    // Without literal, an object would get merged into what's there instead of replacing it.
+                    value = put.value() instanceof Map ? r.literal(put.value()) : put.value();
+                } else {
+                    // An empty literal removes the field.
+                    value = r.literal();
+                }
+
+                node.put(path.get(path.size() - 1), value);
+            }
+
+            return patch;
+        };
     }
 
     private static void log(String message, Object... fmtArgs) {
@@ -66,7 +345,9 @@ public class ManagedDatabase {
     @CheckReturnValue
     public CustomCommand getCustomCommand(@Nonnull String guildId, @Nonnull String name) {
         log("Requesting custom command {}:{} from rethink", guildId, name);
-        return r.table(CustomCommand.DB_TABLE).get(guildId + ":" + name).runAtom(conn, CustomCommand.class);
+        try (var ignored = CommandTimer.phase(CommandPhase.DATABASE); var lease = pool.acquire(Lane.POINT)) {
+            return tracked(r.table(CustomCommand.DB_TABLE).get(guildId + ":" + name).runAtom(lease.connection(), CustomCommand.class));
+        }
     }
 
     @Nullable
@@ -87,23 +368,22 @@ public class ManagedDatabase {
         return getCustomCommand(event.getGuild(), cmd);
     }
 
-    @Nonnull
-    @CheckReturnValue
-    public List<CustomCommand> getCustomCommands() {
+    public void forEachCustomCommand(@Nonnull Consumer<? super CustomCommand> consumer) {
         log("Requesting all custom commands from rethink");
-        Result<CustomCommand> c = r.table(CustomCommand.DB_TABLE).run(conn, CustomCommand.class);
-        return c.toList();
+        stream(CustomCommand.DB_TABLE, table -> table, CustomCommand.class, STREAM_BATCH_SIZE, consumer);
     }
 
     @Nonnull
     @CheckReturnValue
     public List<CustomCommand> getCustomCommands(@Nonnull String guildId) {
         log("Requesting all custom commands from guild {} from rethink", guildId);
-        Result<CustomCommand> c = r.table(CustomCommand.DB_TABLE)
-                .getAll(guildId)
-                .optArg("index", "guild")
-                .run(conn, CustomCommand.class);
-        return c.toList();
+        try (var ignored = CommandTimer.phase(CommandPhase.DATABASE); var lease = pool.acquire(Lane.POINT)) {
+            Result<CustomCommand> c = r.table(CustomCommand.DB_TABLE)
+                    .getAll(guildId)
+                    .optArg("index", "guild")
+                    .run(lease.connection(), CustomCommand.class);
+            return c.toList();
+        }
     }
 
     @Nonnull
@@ -112,27 +392,113 @@ public class ManagedDatabase {
         return getCustomCommands(guild.getId());
     }
 
+    /**
+     * Names of the custom commands of a guild, without reading their responses.
+     */
     @Nonnull
     @CheckReturnValue
-    public List<CustomCommand> getCustomCommands(@Nonnull DBGuild guild) {
-        return getCustomCommands(guild.getId());
+    public List<String> getCustomCommandNames(@Nonnull String guildId) {
+        log("Requesting custom command names from guild {} from rethink", guildId);
+        var names = new ArrayList<String>();
+        stream(CustomCommand.DB_TABLE, table -> table.getAll(guildId).optArg("index", "guild").getField("id"),
+                String.class, STREAM_BATCH_SIZE, id -> names.add(id.split(":", 2)[1])
+        );
+
+        return names;
+    }
+
+    @CheckReturnValue
+    public long countCustomCommands(@Nonnull String guildId) {
+        log("Counting custom commands from guild {} on rethink", guildId);
+        try (var ignored = CommandTimer.phase(CommandPhase.DATABASE); var lease = pool.acquire(Lane.POINT)) {
+            Long count = r.table(CustomCommand.DB_TABLE)
+                    .getAll(guildId)
+                    .optArg("index", "guild")
+                    .count()
+                    .runAtom(lease.connection(), Long.class);
+            return count == null ? 0 : count;
+        }
     }
 
     @Nonnull
     @CheckReturnValue
-    public List<CustomCommand> getCustomCommandsByName(@Nonnull String name) {
+    public List<CustomCommand> getCustomCommands(@Nonnull DBGuild guild) {
+        return getCustomCommands(guild.getId());
+    }
+
+    /**
+     * Goes through every custom command with the given name (on any guild), using the "name" index.
+     */
+    public void forEachCustomCommandNamed(@Nonnull String name, @Nonnull Consumer<? super CustomCommand> consumer) {
         log("Requesting all custom commands named {} from rethink", name);
-        String pattern = ':' + name + '$';
-        Result<CustomCommand> c = r.table(CustomCommand.DB_TABLE).filter(quote -> quote.g("id").match(pattern)).run(conn, CustomCommand.class);
-        return c.toList();
+        stream(CustomCommand.DB_TABLE, table -> table.getAll(name).optArg("index", "name"),
+                CustomCommand.class, STREAM_BATCH_SIZE, consumer
+        );
     }
 
     @Nonnull
     @CheckReturnValue
     public DBGuild getGuild(@Nonnull String guildId) {
-        log("Requesting guild {} from rethink", guildId);
-        DBGuild guild = r.table(DBGuild.DB_TABLE).get(guildId).runAtom(conn, DBGuild.class);
-        return guild == null ? DBGuild.of(guildId) : guild;
+        var cache = guildCache;
+        DBGuild guild;
+        if (cache != null) {
+            var document = cache.get(guildId);
+            // Every caller gets their own copy, as they'll modify it.
+            guild = document == null ? null : RethinkDB.getResultMapper().convertValue(document, DBGuild.class);
+        } else {
+            log("Requesting guild {} from rethink", guildId);
+            try (var ignored = CommandTimer.phase(CommandPhase.DATABASE); var lease = pool.acquire(Lane.POINT)) {
+                guild = r.table(DBGuild.DB_TABLE).get(guildId).runAtom(lease.connection(), DBGuild.class);
+            }
+        }
+
+        if (guild == null) {
+            return DBGuild.of(guildId);
+        }
+
+        LoggingGuilds.update(guildId, guild.getData().getGuildLogChannel() != null);
+        return tracked(guild);
+    }
+
+    /**
+     * The guild's settings as a raw document, only if they're in memory already. Never goes to the database,
+     * so it's fine to call from the gateway thread.
+     *
+     * @return The document (empty if the guild isn't on the database), or null if reading it would take a trip to the database.
+     */
+    @Nullable
+    public Map<String, Object> peekGuild(@Nonnull String guildId) {
+        var cache = guildCache;
+        return cache == null ? null : cache.peek(guildId);
+    }
+
+    public void forEachLoggingGuildId(@Nonnull Consumer<? super String> consumer) {
+        log("Requesting guilds with a log channel from rethink");
+        // The index gets created by the master node after startup, so the first boot with it has to go through the whole table.
+        if (!indexReady(DBGuild.DB_TABLE, LOG_CHANNEL_INDEX)) {
+            log.warn("Index {} on {} isn't ready, going through every guild instead", LOG_CHANNEL_INDEX, DBGuild.DB_TABLE);
+            stream(DBGuild.DB_TABLE, table -> table.hasFields(r.hashMap("data", "guildLogChannel")).getField("id"),
+                    String.class, STREAM_BATCH_SIZE, consumer
+            );
+            return;
+        }
+
+        stream(DBGuild.DB_TABLE, table -> table.between(r.minval(), r.maxval()).optArg("index", LOG_CHANNEL_INDEX).getField("id"),
+                String.class, STREAM_BATCH_SIZE, consumer
+        );
+    }
+
+    @SuppressWarnings("rawtypes")
+    private boolean indexReady(String table, String name) {
+        try (var lease = pool.acquire(Lane.BULK)) {
+            List<String> indexes = r.table(table).indexList().run(lease.connection(), String.class).toList();
+            if (!indexes.contains(name)) {
+                return false;
+            }
+
+            Map status = r.table(table).indexStatus(name).nth(0).runAtom(lease.connection(), Map.class);
+            return status != null && Boolean.TRUE.equals(status.get("ready"));
+        }
     }
 
     @Nonnull
@@ -157,16 +523,25 @@ public class ManagedDatabase {
     @CheckReturnValue
     public MantaroObj getMantaroData() {
         log("Requesting MantaroObj from rethink");
-        MantaroObj obj = r.table(MantaroObj.DB_TABLE).get("mantaro").runAtom(conn, MantaroObj.class);
-        return obj == null ? MantaroObj.create() : obj;
+        try (var ignored = CommandTimer.phase(CommandPhase.DATABASE); var lease = pool.acquire(Lane.POINT)) {
+            MantaroObj obj = r.table(MantaroObj.DB_TABLE).get("mantaro").runAtom(lease.connection(), MantaroObj.class);
+            return obj == null ? MantaroObj.create() : tracked(obj);
+        }
     }
 
     @Nonnull
     @CheckReturnValue
     public Player getPlayer(@Nonnull String userId) {
+        var lanes = playerLanes;
+        return lanes == null ? loadPlayer(userId) : lanes.get(userId, () -> loadPlayer(userId));
+    }
+
+    private Player loadPlayer(String userId) {
         log("Requesting player {} from rethink", userId);
-        Player player = r.table(Player.DB_TABLE).get(userId + ":g").runAtom(conn, Player.class);
-        return player == null ? Player.of(userId) : player;
+        try (var ignored = CommandTimer.phase(CommandPhase.DATABASE); var lease = pool.acquire(Lane.POINT)) {
+            Player player = r.table(Player.DB_TABLE).get(userId + ":g").runAtom(lease.connection(), Player.class);
+            return player == null ? untracked(Player.of(userId)) : tracked(player);
+        }
     }
 
     @Nonnull
@@ -185,8 +560,10 @@ public class ManagedDatabase {
     @CheckReturnValue
     public PlayerStats getPlayerStats(@Nonnull String userId) {
         log("Requesting player STATS {} from rethink", userId);
-        PlayerStats playerStats = r.table(PlayerStats.DB_TABLE).get(userId).runAtom(conn, PlayerStats.class);
-        return playerStats == null ? PlayerStats.of(userId) : playerStats;
+        try (var ignored = CommandTimer.phase(CommandPhase.DATABASE); var lease = pool.acquire(Lane.POINT)) {
+            PlayerStats playerStats = r.table(PlayerStats.DB_TABLE).get(userId).runAtom(lease.connection(), PlayerStats.class);
+            return playerStats == null ? PlayerStats.of(userId) : tracked(playerStats);
+        }
     }
 
     @Nonnull
@@ -201,13 +578,12 @@ public class ManagedDatabase {
         return getPlayerStats(member.getUser());
     }
 
-    @Nonnull
-    @CheckReturnValue
-    public List<Player> getPlayers() {
+    /**
+     * Goes through every global player (id ending in :g), using the "type" index.
+     */
+    public void forEachPlayer(@Nonnull Consumer<? super Player> consumer) {
         log("Requesting all players from rethink");
-        String pattern = ":g$";
-        Result<Player> c = r.table(Player.DB_TABLE).filter(quote -> quote.g("id").match(pattern)).run(conn, Player.class);
-        return c.toList();
+        stream(Player.DB_TABLE, table -> table.getAll("g").optArg("index", "type"), Player.class, STREAM_BATCH_SIZE, consumer);
     }
 
     //Can be null and it's perfectly valid.
@@ -217,23 +593,19 @@ public class ManagedDatabase {
         }
 
         log("Requesting marriage {} from rethink", marriageId);
-        return r.table(Marriage.DB_TABLE).get(marriageId).runAtom(conn, Marriage.class);
+        try (var ignored = CommandTimer.phase(CommandPhase.DATABASE); var lease = pool.acquire(Lane.POINT)) {
+            return tracked(r.table(Marriage.DB_TABLE).get(marriageId).runAtom(lease.connection(), Marriage.class));
+        }
     }
 
-    @Nonnull
-    @CheckReturnValue
-    public List<Marriage> getMarriages() {
+    public void forEachMarriage(@Nonnull Consumer<? super Marriage> consumer) {
         log("Requesting all marriages from rethink");
-        Result<Marriage> c = r.table(Marriage.DB_TABLE).run(conn, Marriage.class);
-        return c.toList();
+        stream(Marriage.DB_TABLE, table -> table, Marriage.class, STREAM_BATCH_SIZE, consumer);
     }
 
-    @Nonnull
-    @CheckReturnValue
-    public List<PremiumKey> getPremiumKeys() {
+    public void forEachPremiumKey(@Nonnull Consumer<? super PremiumKey> consumer) {
         log("Requesting all premium keys from rethink");
-        Result<PremiumKey> c = r.table(PremiumKey.DB_TABLE).run(conn, PremiumKey.class);
-        return c.toList();
+        stream(PremiumKey.DB_TABLE, table -> table, PremiumKey.class, STREAM_BATCH_SIZE, consumer);
     }
 
     //Also tests if the key is valid or not!
@@ -242,15 +614,19 @@ public class ManagedDatabase {
     public PremiumKey getPremiumKey(@Nullable String id) {
         log("Requesting premium key {} from rethink", id);
         if (id == null) return null;
-        return r.table(PremiumKey.DB_TABLE).get(id).runAtom(conn, PremiumKey.class);
+        try (var ignored = CommandTimer.phase(CommandPhase.DATABASE); var lease = pool.acquire(Lane.POINT)) {
+            return tracked(r.table(PremiumKey.DB_TABLE).get(id).runAtom(lease.connection(), PremiumKey.class));
+        }
     }
 
     @Nonnull
     @CheckReturnValue
     public DBUser getUser(@Nonnull String userId) {
         log("Requesting user {} from rethink", userId);
-        DBUser user = r.table(DBUser.DB_TABLE).get(userId).runAtom(conn, DBUser.class);
-        return user == null ? DBUser.of(userId) : user;
+        try (var ignored = CommandTimer.phase(CommandPhase.DATABASE); var lease = pool.acquire(Lane.POINT)) {
+            DBUser user = r.table(DBUser.DB_TABLE).get(userId).runAtom(lease.connection(), DBUser.class);
+            return user == null ? DBUser.of(userId) : tracked(user);
+        }
     }
 
     @Nonnull
@@ -267,28 +643,59 @@ public class ManagedDatabase {
 
     public void save(@Nonnull ManagedObject object) {
         log("Saving {} {}:{} to rethink (replacing)", object.getClass().getSimpleName(), object.getTableName(), object.getDatabaseId());
+        var lanes = playerLanes;
+        if (lanes != null && lanes.defer(object)) {
+            // Gets written when the lane goes idle.
+            return;
+        }
 
-        r.table(object.getTableName())
-                .insert(object)
-                .optArg("conflict", "replace")
-                .runNoReply(conn);
+        var document = serialize(object);
+        if (write(object, document, "replace")) {
+            saved(object, document);
+        }
     }
 
     public void saveUpdating(@Nonnull ManagedObject object) {
         log("Saving {} {}:{} to rethink (updating)", object.getClass().getSimpleName(), object.getTableName(), object.getDatabaseId());
+        var lanes = playerLanes;
+        if (lanes != null && lanes.defer(object)) {
+            // Gets written when the lane goes idle.
+            return;
+        }
 
-        r.table(object.getTableName())
-                .insert(object)
-                .optArg("conflict", "update")
-                .runNoReply(conn);
+        var document = serialize(object);
+        if (write(object, document, "update")) {
+            saved(object, document);
+        }
+    }
+
+    // Tells everything that keeps a copy of what's on the database about a save that went through.
+    private void saved(ManagedObject object, Map<String, Object> document) {
+        if (object instanceof DBGuild guild) {
+            LoggingGuilds.update(guild.getId(), guild.getData().getGuildLogChannel() != null);
+            cacheSaved(guild, document);
+        }
+
+        if (object instanceof Player player) {
+            // Saved outside of their lane (a button, a reward, someone else's command), so the lane has to read it again.
+            playerChanged(player.getUserId());
+        }
+
+        scoreUpdates.accept(object);
     }
 
     public void delete(@Nonnull ManagedObject object) {
         log("Deleting {} {}:{} from rethink", object.getClass().getSimpleName(), object.getTableName(), object.getDatabaseId());
 
-        r.table(object.getTableName())
-                .get(object.getId())
-                .delete()
-                .runNoReply(conn);
+        try (var ignored = CommandTimer.phase(CommandPhase.DATABASE); var lease = pool.acquire(Lane.POINT)) {
+            r.table(object.getTableName())
+                    .get(object.getId())
+                    .delete()
+                    .runNoReply(lease.connection());
+        }
+
+        snapshots.remove(object);
+
+        Leaderboards.remove(object);
     }
 }
@@ -21,6 +21,7 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import net.kodehawa.mantarobot.data.MantaroData;
 
 import javax.annotation.Nonnull;
+import java.util.Set;
 
 public interface ManagedObject {
     @Nonnull
@@ -36,6 +37,16 @@ public interface ManagedObject {
         return getId();
     }
 
+    /**
+     * Fields that only ever go up or down by some amount, like money. Dot separated, * matching any single key.
+     * When saving only what changed, these get sent as an increment, so saves of two copies of the object both count.
+     */
+    @JsonIgnore
+    @Nonnull
+    default Set<String> getCounterPaths() {
+        return Set.of();
+    }
+
     default void delete() {
         MantaroData.db().delete(this);
     }
@@ -44,6 +55,7 @@ public interface ManagedObject {
      * Saves an object to the database.
      * This will save the object by REPLACING it, instead of updating.
      * Useful sometimes.
+     * If the object was read from the database (or saved before), only the fields that changed since then get sent.
      */
     default void save() {
         MantaroData.db().save(this);
@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+package net.kodehawa.mantarobot.db;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.kodehawa.mantarobot.db.entities.Player;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Runs the economy commands of a user one at a time, so two of them can't both read the same player, change it and have
+ * the last save throw away what the other one did.
+ * <br>While a user keeps running commands their player stays in memory: commands in their lane all get the same instance from
+ * {@link ManagedDatabase#getPlayer(String)}, and saving it only marks it as changed. It's written once the user has been idle
+ * for a while, with only what changed since it was read.
+ * <br>Commands waiting for their turn wait on the thread they're on, in the order they came in, and give up after a while:
+ * they're holding one of the command executor's slots while they do.
+ */
+public class PlayerLanes {
+    private static final Logger log = LoggerFactory.getLogger(PlayerLanes.class);
+    // The lane the current thread is running a command in, if any.
+    private static final ThreadLocal<Lane> current = new ThreadLocal<>();
+
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+    private final Consumer<Player> writer;
+    private final long idle;
+    private final long maxWait;
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("Mantaro Player Lane Flusher").setDaemon(true).build()
+    );
+
+    /**
+     * @param writer  Writes a player when it leaves memory, {@link ManagedDatabase#save(ManagedObject)} outside of tests.
+     * @param idle    How long (in milliseconds) a player is kept in memory after its last command. 0 to only run commands one at a time.
+     * @param maxWait How long (in milliseconds) a command waits for the ones before it before giving up.
+     */
+    public PlayerLanes(Consumer<Player> writer, long idle, long maxWait) {
+        this.writer = writer;
+        this.idle = idle;
+        this.maxWait = maxWait;
+    }
+
+    /**
+     * Runs the action in the user's lane, once every action that got there first is done.
+     *
+     * @return False if it didn't run, because the ones before it took longer than the max wait.
+     */
+    public boolean run(@Nonnull String userId, @Nonnull Runnable action) {
+        var lane = enter(userId);
+        var start = System.nanoTime();
+        if (!tryLock(lane)) {
+            Metrics.PLAYER_LANE_REJECTED.inc();
+            leave(userId);
+            return false;
+        }
+
+        Metrics.PLAYER_LANE_WAIT.observe((System.nanoTime() - start) / 1e9);
+
+        var previous = current.get();
+        current.set(lane);
+        try {
+            action.run();
+        } finally {
+            current.set(previous);
+            lane.lastUsed = System.currentTimeMillis();
+            var keep = lane.player != null;
+            lane.lock.unlock();
+            leave(userId);
+            if (keep) {
+                flusher.schedule(() -> flushIfIdle(userId), idle, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        return true;
+    }
+
+    private boolean tryLock(Lane lane) {
+        try {
+            return lane.lock.tryLock(maxWait, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Marks the player as changed somewhere else, like a transfer on the database side.
+     * Their lane, if they have one, reads it again next time instead of using the one in memory.
+     */
+    public void invalidate(@Nonnull String userId) {
+        var lane = lanes.get(userId);
+        if (lane != null) {
+            lane.stale = true;
+        }
+    }
+
+    /**
+     * Writes the user's player if the lane has changes to it in memory, and forgets it so the next command reads it again.
+     * For things that work on the player on the database side, like transfers, so they see what commands did so far.
+     * <br>From inside the user's own lane this doesn't wait; from anywhere else it waits for the command running there, if any.
+     */
+    public void flush(@Nonnull String userId) {
+        var lane = current.get();
+        if (lane != null && lane.userId.equals(userId)) {
+            // Our lane, so the lock is held already.
+            flush(lane);
+            return;
+        }
+
+        flushIfIdle(userId, true);
+    }
+
+    /**
+     * Writes every player in memory. For shutting down.
+     */
+    public void flushAll() {
+        for (var userId : lanes.keySet()) {
+            flushIfIdle(userId, true);
+        }
+    }
+
+    /**
+     * The player the command running in this thread should use: the one in memory if it's running in the user's lane,
+     * whatever the loader gives otherwise.
+     */
+    @Nonnull
+    public Player get(@Nonnull String userId, @Nonnull Supplier<Player> loader) {
+        var lane = current.get();
+        if (lane == null || idle <= 0 || !lane.userId.equals(userId)) {
+            return loader.get();
+        }
+
+        if (lane.player != null && !lane.stale) {
+            Metrics.PLAYER_LANE_READS.labels("hit").inc();
+            return lane.player;
+        }
+
+        Metrics.PLAYER_LANE_READS.labels("load").inc();
+        flush(lane);
+        // Before loading, so anything changed while we read it marks it as stale again.
+        lane.stale = false;
+        lane.player = loader.get();
+        return lane.player;
+    }
+
+    /**
+     * Whether saving this object can wait until the lane goes idle, which is when it's the player of the lane the current
+     * thread is running in. Marks it as changed if so.
+     */
+    public boolean defer(@Nonnull ManagedObject object) {
+        var lane = current.get();
+        if (lane != null && lane.player == object) {
+            lane.dirty = true;
+            return true;
+        }
+
+        return false;
+    }
+
+    private void flushIfIdle(String userId) {
+        flushIfIdle(userId, false);
+    }
+
+    private void flushIfIdle(String userId, boolean force) {
+        var lane = lanes.computeIfPresent(userId, (k, l) -> {
+            l.users++;
+            return l;
+        });
+
+        if (lane == null) {
+            return;
+        }
+
+        lane.lock.lock();
+        try {
+            if (force || System.currentTimeMillis() - lane.lastUsed >= idle) {
+                flush(lane);
+            }
+        } catch (Exception e) {
+            log.error("Error saving player {}", userId, e);
+        } finally {
+            lane.lock.unlock();
+            leave(userId);
+        }
+    }
+
+    // Only with the lane's lock held.
+    private void flush(Lane lane) {
+        var player = lane.player;
+        var dirty = lane.dirty;
+        lane.player = null;
+        lane.dirty = false;
+        if (player != null && dirty) {
+            // It's not the lane's player anymore, so this one goes through.
+            writer.accept(player);
+        }
+    }
+
+    private Lane enter(String userId) {
+        return lanes.compute(userId, (k, l) -> {
+            var lane = l == null ? new Lane(userId) : l;
+            lane.users++;
+            return lane;
+        });
+    }
+
+    // Forgets the lane once nobody is using or waiting on it and it has nothing left to write.
+    private void leave(String userId) {
+        lanes.computeIfPresent(userId, (k, l) -> --l.users == 0 && l.player == null ? null : l);
+    }
+
+    private static class Lane {
+        private final String userId;
+        // Fair, so commands run in the order they came in.
+        private final ReentrantLock lock = new ReentrantLock(true);
+        // Threads running or waiting on this lane. Only changed inside compute on the lanes map.
+        private int users;
+        // The rest is only touched with the lock held.
+        private Player player;
+        private boolean dirty;
+        private volatile boolean stale;
+        private volatile long lastUsed;
+
+        private Lane(String userId) {
+            this.userId = userId;
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+package net.kodehawa.mantarobot.db;
+
+import com.rethinkdb.gen.ast.ReqlExpr;
+import com.rethinkdb.model.MapObject;
+import net.kodehawa.mantarobot.core.command.processor.CommandPhase;
+import net.kodehawa.mantarobot.core.command.processor.CommandTimer;
+import net.kodehawa.mantarobot.db.ConnectionPool.Lane;
+import net.kodehawa.mantarobot.db.entities.Player;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static com.rethinkdb.RethinkDB.r;
+
+/**
+ * Moves money or items from one player to another on the database side, so neither a crash nor another command running at
+ * the same time can create or destroy any.
+ * <br>RethinkDB only makes changes to a single document atomic, so transfers are journaled: written to the transfers table first,
+ * then the sender gets debited and the receiver credited, each in a single conditional update that also tags the player with the
+ * transfer id. The tags make every step safe to run twice, and tell {@link #recover()} how far a transfer got if whoever was
+ * running it died halfway.
+ * <br>The transfer id is also an idempotency key: running a transfer again with the same id gives back what happened the first time.
+ */
+public class Transfers {
+    private static final Logger log = LoggerFactory.getLogger(Transfers.class);
+    public static final String DB_TABLE = "transfers";
+    // Ids of the transfers a player is part of that aren't finished yet.
+    private static final String PENDING = "pendingTransfers";
+    // Unfinished transfers older than this are considered abandoned.
+    private static final long ABANDONED_AFTER = TimeUnit.MINUTES.toMillis(5);
+    // Finished ones are kept this long, which is how long their id works as an idempotency key.
+    private static final long KEEP_FOR = TimeUnit.DAYS.toMillis(1);
+
+    public enum Result {
+        SUCCESS,
+        // The sender doesn't have enough.
+        NOT_ENOUGH,
+        // The receiver would end up with more than the limit.
+        OVER_LIMIT,
+        // A transfer with this id is running right now.
+        IN_PROGRESS,
+        // Whoever was running it died before taking anything from the sender.
+        ABORTED
+    }
+
+    /**
+     * @param id     Unique to this transfer.
+     * @param from   The user id of the sender.
+     * @param to     The user id of the receiver.
+     * @param path   Where the amount is in a player document, like data.newMoney or inventory.(item id). See {@link Player#moneyPath()}.
+     * @param amount How much gets taken from the sender.
+     * @param credit How much the receiver gets, less than amount if there's tax.
+     * @param limit  The most the receiver can end up with.
+     */
+    public record Transfer(String id, String from, String to, List<String> path, long amount, long credit, long limit) { }
+
+    private final ConnectionPool pool;
+    // Told about the sender before anything is taken from them, so what they have in memory gets written first.
+    private final Consumer<String> flush;
+    // Told about both players once a transfer moved something between them, or gave it back.
+    private final Consumer<String> changed;
+
+    Transfers(ConnectionPool pool, Consumer<String> flush, Consumer<String> changed) {
+        this.pool = pool;
+        this.flush = flush;
+        this.changed = changed;
+    }
+
+    @Nonnull
+    public Result transfer(@Nonnull Transfer transfer) {
+        // Only the sender: the receiver only gets an increment, which nothing in memory can conflict with,
+        // and waiting on their lane from the sender's could deadlock if they're sending something back.
+        flush.accept(transfer.from());
+        var journaled = run(r.table(DB_TABLE).insert(
+                r.<Object, Object>hashMap("id", transfer.id())
+                        .with("from", transfer.from())
+                        .with("to", transfer.to())
+                        .with("path", transfer.path())
+                        .with("amount", transfer.amount())
+                        .with("credit", transfer.credit())
+                        .with("limit", transfer.limit())
+                        .with("credited", false)
+                        .with("createdAt", System.currentTimeMillis())
+        ));
+
+        if (count(journaled, "errors") > 0) {
+            // This id was used already.
+            var entry = run(r.table(DB_TABLE).get(transfer.id()));
+            var result = entry == null ? null : entry.get("result");
+            return result == null ? Result.IN_PROGRESS : Result.valueOf((String) result);
+        }
+
+        if (!debit(transfer)) {
+            return finish(transfer, Result.NOT_ENOUGH);
+        }
+
+        return credit(transfer);
+    }
+
+    /**
+     * Finishes what the transfers that were abandoned halfway started, and forgets about old finished ones.
+     * Anything that already took from the sender gets credited, anything else is aborted.
+     */
+    public void recover() {
+        var now = System.currentTimeMillis();
+        run(r.table(DB_TABLE).filter(entry -> entry.hasFields("result").and(entry.g("createdAt").lt(now - KEEP_FOR))).delete());
+
+        List<?> abandoned;
+        try (var lease = pool.acquire(Lane.BULK)) {
+            abandoned = r.table(DB_TABLE)
+                    .filter(entry -> entry.hasFields("result").not().and(entry.g("createdAt").lt(now - ABANDONED_AFTER)))
+                    .coerceTo("array")
+                    .runAtom(lease.connection(), List.class);
+        }
+
+        for (var entry : abandoned) {
+            var journal = (Map<?, ?>) entry;
+            var transfer = fromJournal(journal);
+            Result result;
+            if (Boolean.TRUE.equals(journal.get("credited"))) {
+                result = complete(transfer);
+            } else if (isTagged(transfer.from(), transfer.id())) {
+                result = credit(transfer);
+            } else {
+                result = finish(transfer, Result.ABORTED);
+            }
+
+            log.info("Recovered transfer {} ({} -> {}): {}", transfer.id(), transfer.from(), transfer.to(), result);
+        }
+    }
+
+    private boolean debit(Transfer transfer) {
+        var result = run(player(transfer.from()).update(row -> r.branch(
+                pending(row).contains(transfer.id()), r.hashMap(),
+                field(row, transfer.path()).ge(transfer.amount()),
+                set(transfer.path(), field(row, transfer.path()).sub(transfer.amount())).with(PENDING, pending(row).append(transfer.id())),
+                r.error("Not enough to transfer")
+        )));
+
+        // Unchanged means it was debited already. Skipped means there's no such player, so nothing to take either.
+        return count(result, "replaced") + count(result, "unchanged") > 0;
+    }
+
+    private Result credit(Transfer transfer) {
+        var result = run(creditQuery(transfer));
+        if (count(result, "skipped") > 0) {
+            // The receiver never played, there's nothing to add to yet. Fails if someone else created them in the meantime, that's fine.
+            run(r.table(Player.DB_TABLE).insert(Player.of(transfer.to())));
+            result = run(creditQuery(transfer));
+        }
+
+        if (count(result, "errors") > 0) {
+            refund(transfer);
+            return finish(transfer, Result.OVER_LIMIT);
+        }
+
+        run(r.table(DB_TABLE).get(transfer.id()).update(r.hashMap("credited", true)));
+        return complete(transfer);
+    }
+
+    private ReqlExpr creditQuery(Transfer transfer) {
+        return player(transfer.to()).update(row -> r.branch(
+                pending(row).contains(transfer.id()), r.hashMap(),
+                field(row, transfer.path()).add(transfer.credit()).gt(transfer.limit()), r.error("Over the limit"),
+                set(transfer.path(), field(row, transfer.path()).add(transfer.credit())).with(PENDING, pending(row).append(transfer.id()))
+        ));
+    }
+
+    private void refund(Transfer transfer) {
+        run(player(transfer.from()).update(row -> r.branch(
+                pending(row).contains(transfer.id()),
+                set(transfer.path(), field(row, transfer.path()).add(transfer.amount())).with(PENDING, pending(row).difference(r.array(transfer.id()))),
+                r.hashMap()
+        )));
+    }
+
+    private Result complete(Transfer transfer) {
+        for (var userId : List.of(transfer.from(), transfer.to())) {
+            run(player(userId).update(row -> r.hashMap(PENDING, pending(row).difference(r.array(transfer.id())))));
+        }
+
+        return finish(transfer, Result.SUCCESS);
+    }
+
+    private Result finish(Transfer transfer, Result result) {
+        run(r.table(DB_TABLE).get(transfer.id()).update(r.hashMap("result", result.name())));
+        // Over the limit took from the sender and gave it back, anything else that isn't a success never touched them.
+        if (result == Result.SUCCESS || result == Result.OVER_LIMIT) {
+            changed.accept(transfer.from());
+            changed.accept(transfer.to());
+        }
+
+        return result;
+    }
+
+    private boolean isTagged(String userId, String transferId) {
+        try (var lease = pool.acquire(Lane.POINT)) {
+            return player(userId).g(PENDING).default_(r.array()).contains(transferId).runAtom(lease.connection(), Boolean.class);
+        }
+    }
+
+    private Map<?, ?> run(ReqlExpr query) {
+        try (var ignored = CommandTimer.phase(CommandPhase.DATABASE); var lease = pool.acquire(Lane.POINT)) {
+            return query.runAtom(lease.connection(), Map.class);
+        }
+    }
+
+    private static ReqlExpr player(String userId) {
+        return r.table(Player.DB_TABLE).get(userId + ":g");
+    }
+
+    private static ReqlExpr pending(ReqlExpr row) {
+        return row.g(PENDING).default_(r.array());
+    }
+
+    private static ReqlExpr field(ReqlExpr row, List<String> path) {
+        var field = row;
+        for (var key : path) {
+            field = field.g(key);
+        }
+
+        return field.default_(0);
+    }
+
+    // {a: {b: value}} for a.b, which update merges into the document.
+    private static MapObject<Object, Object> set(List<String> path, Object value) {
+        Object object = value;
+        for (var i = path.size() - 1; i > 0; i--) {
+            object = r.hashMap(path.get(i), object);
+        }
+
+        return r.<Object, Object>hashMap(path.get(0), object);
+    }
+
+    private static long count(Map<?, ?> result, String key) {
+        return result == null || result.get(key) == null ? 0 : ((Number) result.get(key)).longValue();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Transfer fromJournal(Map<?, ?> entry) {
+        return new Transfer(
+                (String) entry.get("id"), (String) entry.get("from"), (String) entry.get("to"), (List<String>) entry.get("path"),
+                ((Number) entry.get("amount")).longValue(), ((Number) entry.get("credit")).longValue(), ((Number) entry.get("limit")).longValue()
+        );
+    }
+}
@@ -36,6 +36,7 @@ import javax.annotation.Nonnull;
 import java.beans.ConstructorProperties;
 import java.time.LocalDate;
 import java.time.ZoneId;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
@@ -202,6 +203,13 @@ public class DBUser implements ManagedObject {
         return DB_TABLE;
     }
 
+    @JsonIgnore
+    @Nonnull
+    @Override
+    public Set<String> getCounterPaths() {
+        return Set.of("data.timesClaimed");
+    }
+
     public long getPremiumUntil() {
         return this.premiumUntil;
     }
@@ -32,7 +32,9 @@ import net.kodehawa.mantarobot.db.entities.helpers.PlayerData;
 import javax.annotation.Nonnull;
 import java.beans.ConstructorProperties;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static net.kodehawa.mantarobot.db.entities.helpers.Inventory.Resolver.serialize;
 import static net.kodehawa.mantarobot.db.entities.helpers.Inventory.Resolver.unserialize;
@@ -41,6 +43,9 @@ import static net.kodehawa.mantarobot.db.entities.helpers.Inventory.Resolver.uns
 public class Player implements ManagedObject {
     private static final Config config = MantaroData.config().get();
     public static final String DB_TABLE = "players";
+    private static final Set<String> COUNTERS = Set.of(
+            "money", "reputation", "inventory.*", "data.newMoney", "data.experience", "data.gamesWon"
+    );
     @JsonProperty("data")
     private final PlayerData data;
     @JsonProperty("id")
@@ -207,6 +212,13 @@ public class Player implements ManagedObject {
         return DB_TABLE;
     }
 
+    @JsonIgnore
+    @Nonnull
+    @Override
+    public Set<String> getCounterPaths() {
+        return COUNTERS;
+    }
+
     @JsonIgnore
     @Nonnull
     @Override
@@ -223,6 +235,13 @@ public class Player implements ManagedObject {
     }
 
     @JsonIgnore
+    /**
+     * Where {@link #getCurrentMoney()} is in the document, for queries that change it on the database side.
+     */
+    public static List<String> moneyPath() {
+        return config.isPremiumBot() || config.isSelfHost() ? List.of("money") : List.of("data", "newMoney");
+    }
+
     public Long getCurrentMoney() {
         boolean useOld = config.isPremiumBot() || config.isSelfHost();
         if (useOld) {
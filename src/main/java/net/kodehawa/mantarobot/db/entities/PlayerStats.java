@@ -27,9 +27,14 @@ import net.kodehawa.mantarobot.db.entities.helpers.PlayerStatsData;
 
 import javax.annotation.Nonnull;
 import java.beans.ConstructorProperties;
+import java.util.Set;
 
 public class PlayerStats implements ManagedObject {
     public static final String DB_TABLE = "playerstats";
+    private static final Set<String> COUNTERS = Set.of(
+            "gambleWins", "slotsWins", "gambleWinAmount", "slotsWinAmount",
+            "craftedItems", "repairedItems", "salvagedItems", "toolsBroken"
+    );
 
     private final String id;
     private final PlayerStatsData data;
@@ -96,6 +101,13 @@ public class PlayerStats implements ManagedObject {
         return DB_TABLE;
     }
 
+    @JsonIgnore
+    @Nonnull
+    @Override
+    public Set<String> getCounterPaths() {
+        return COUNTERS;
+    }
+
     @JsonIgnore
     @Nonnull
     @Override
@@ -164,6 +164,11 @@ public class StringUtils {
      * @return a {@link String}[] with the size of expectedArgs
      */
     public static String[] splitArgs(String args, int expectedArgs) {
+        // Command name + rest is by far the most common call (every command goes through it), so skip the regex.
+        if (expectedArgs == 2) {
+            return splitFirst(args);
+        }
+
         var raw = SPLIT_PATTERN.split(args, expectedArgs);
 
         if (expectedArgs < 1) {
@@ -173,6 +178,27 @@ public class StringUtils {
         return normalizeArray(raw, expectedArgs);
     }
 
+    // Same result as splitArgs(args, 2), without going through SPLIT_PATTERN.
+    private static String[] splitFirst(String args) {
+        int length = args.length();
+        int end = 0;
+        while (end < length && !isSplitWhitespace(args.charAt(end))) {
+            end++;
+        }
+
+        int rest = end;
+        while (rest < length && isSplitWhitespace(args.charAt(rest))) {
+            rest++;
+        }
+
+        return new String[] { args.substring(0, end), args.substring(rest) };
+    }
+
+    // The characters matched by \s in SPLIT_PATTERN.
+    private static boolean isSplitWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
     // Basically removes escape characters.
     private static String advancedSplitArgsUnbox(String s) {
         return s.replace("\\n", "\n")
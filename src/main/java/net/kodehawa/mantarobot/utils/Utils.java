@@ -17,14 +17,11 @@
 
 package net.kodehawa.mantarobot.utils;
 
-import com.rethinkdb.net.Connection;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.entities.Role;
 import net.kodehawa.mantarobot.MantaroInfo;
 import net.kodehawa.mantarobot.commands.utils.RoundedMetricPrefixFormat;
 import net.kodehawa.mantarobot.core.modules.commands.i18n.I18nContext;
-import net.kodehawa.mantarobot.data.Config;
-import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.data.annotations.ConfigName;
 import net.kodehawa.mantarobot.data.annotations.HiddenConfig;
 import okhttp3.MediaType;
@@ -65,7 +62,6 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
-import static com.rethinkdb.RethinkDB.r;
 import static net.kodehawa.mantarobot.utils.commands.EmoteReference.BLUE_SMALL_MARKER;
 
 public class Utils {
@@ -92,7 +88,6 @@ public class Utils {
     private static final char LEFT_TO_RIGHT_ISOLATE = '\u2066';
     private static final char POP_DIRECTIONAL_ISOLATE = '\u2069';
     private static final Pattern pattern = Pattern.compile("\\d+?[a-zA-Z]");
-    private static final Config config = MantaroData.config().get();
 
     private static final RoundedMetricPrefixFormat prefixFormat = new RoundedMetricPrefixFormat();
 
@@ -333,15 +328,6 @@ public class Utils {
         };
     }
 
-    public static Connection newDbConnection() {
-        return r.connection()
-                .hostname(config.getDbHost())
-                .port(config.getDbPort())
-                .db(config.getDbDb())
-                .user(config.getDbUser(), config.getDbPassword())
-                .connect();
-    }
-
     public static String replaceArguments(Map<String, ?> args, String content, String... toReplace) {
         if (args == null || args.isEmpty()) {
             return content;
@@ -18,6 +18,8 @@
 package net.kodehawa.mantarobot.utils.commands.ratelimit;
 
 import net.dv8tion.jda.api.entities.User;
+import net.kodehawa.mantarobot.core.command.processor.CommandPhase;
+import net.kodehawa.mantarobot.core.command.processor.CommandTimer;
 import net.kodehawa.mantarobot.data.MantaroData;
 import org.apache.commons.io.IOUtils;
 import redis.clients.jedis.Jedis;
@@ -123,7 +125,9 @@ public class IncreasingRateLimiter {
     }
 
     public RateLimit limit(String key) {
-        return limit0(prefix + key);
+        try (var ignored = CommandTimer.phase(CommandPhase.RATELIMIT)) {
+            return limit0(prefix + key);
+        }
     }
 
     public long getRemaniningCooldown(User user) {
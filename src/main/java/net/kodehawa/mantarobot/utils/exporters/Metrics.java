@@ -81,9 +81,94 @@ public class Metrics {
             .name("patrons")
             .help("New patrons")
             .register();
+    public static final Counter SHARD_SESSIONS = Counter.build()
+            .name("shard_sessions")
+            .help("Gateway sessions shards got at runtime, by type (identified/resumed/recreated)")
+            .labelNames("type")
+            .register();
     public static final Counter DISCONNECT_COUNTER = Counter.build()
             .name("disconnect")
             .help("Session disconnects")
             .labelNames("code")
             .register();
+    public static final Histogram COMMAND_QUEUE_WAIT = Histogram.build()
+            .name("command_queue_wait_seconds")
+            .help("Time a command waits for a free slot before it starts running")
+            .buckets(0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 2.5, 5, 10, 30)
+            .register();
+    public static final Counter COMMANDS_REJECTED = Counter.build()
+            .name("commands_rejected")
+            .help("Commands dropped because their guild had too many waiting, by type (message/slash/user_context)")
+            .labelNames("type")
+            .register();
+    public static final Histogram EVENT_DISPATCH_TIME = Histogram.build()
+            .name("event_dispatch_seconds")
+            .help("Time a listener takes to handle an event, by listener and event type")
+            .labelNames("listener", "event")
+            .buckets(0.00001, 0.00005, 0.0001, 0.0005, 0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1)
+            .register();
+    public static final Histogram EVENT_OFFLOAD_WAIT = Histogram.build()
+            .name("event_offload_wait_seconds")
+            .help("Time an offloaded event waits in queue before its listener gets it")
+            .labelNames("listener")
+            .buckets(0.0001, 0.0005, 0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 5)
+            .register();
+    public static final Counter EVENT_OFFLOAD_REJECTED = Counter.build()
+            .name("event_offload_rejected")
+            .help("Offloaded events that ran on the gateway thread because the listener's queue was full")
+            .labelNames("listener")
+            .register();
+    public static final Histogram DATABASE_POOL_WAIT = Histogram.build()
+            .name("database_pool_wait_seconds")
+            .help("Time a query waits for a RethinkDB connection, by lane")
+            .labelNames("lane")
+            .buckets(0.00001, 0.0001, 0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 5)
+            .register();
+    public static final Gauge DATABASE_POOL_IN_FLIGHT = Gauge.build()
+            .name("database_pool_in_flight")
+            .help("Queries running on the RethinkDB connection pool, by lane")
+            .labelNames("lane")
+            .register();
+    public static final Gauge DATABASE_POOL_UTILIZATION = Gauge.build()
+            .name("database_pool_utilization")
+            .help("Queries in flight over what the healthy connections of a lane can take (0-1)")
+            .labelNames("lane")
+            .register();
+    public static final Gauge DATABASE_POOL_HEALTHY = Gauge.build()
+            .name("database_pool_healthy_connections")
+            .help("RethinkDB connections that passed their last health check, by lane")
+            .labelNames("lane")
+            .register();
+    public static final Histogram GUILD_FEED_LAG = Histogram.build()
+            .name("guild_feed_lag_seconds")
+            .help("Time between this node saving a guild and the change coming back on the guild settings feed")
+            .buckets(0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10)
+            .register();
+    public static final Gauge GUILD_FEED_CONNECTED = Gauge.build()
+            .name("guild_feed_connected")
+            .help("Whether the guild settings feed is up (1) or guild settings are being read from the database (0)")
+            .register();
+    public static final Counter GUILD_FEED_RESYNCS = Counter.build()
+            .name("guild_feed_resyncs")
+            .help("Times the guild settings cache was dropped because the feed (re)connected")
+            .register();
+    public static final Counter GUILD_CACHE_REQUESTS = Counter.build()
+            .name("guild_cache_requests")
+            .help("Guild settings reads, by result (hit/miss/bypass)")
+            .labelNames("result")
+            .register();
+    public static final Histogram PLAYER_LANE_WAIT = Histogram.build()
+            .name("player_lane_wait_seconds")
+            .help("Time economy commands waited for the previous command of the same user to finish")
+            .buckets(0.0001, 0.001, 0.01, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5)
+            .register();
+    public static final Counter PLAYER_LANE_READS = Counter.build()
+            .name("player_lane_reads")
+            .help("Players asked for inside a player lane, by result (hit/load)")
+            .labelNames("result")
+            .register();
+    public static final Counter PLAYER_LANE_REJECTED = Counter.build()
+            .name("player_lane_rejected")
+            .help("Economy commands that gave up waiting for the previous commands of the same user")
+            .register();
 }
@@ -32,6 +32,7 @@ import java.util.concurrent.TimeUnit;
 
 public class ThreadPoolCollector extends Collector {
     private final ConcurrentMap<String, ThreadPoolExecutor> executors = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Stats> stats = new ConcurrentHashMap<>();
 
     public ThreadPoolExecutor remove(String name) {
         return executors.remove(name);
@@ -62,6 +63,13 @@ public class ThreadPoolCollector extends Collector {
         return add(executor.toString(), executor);
     }
 
+    // For executors that aren't a ThreadPoolExecutor (or whose limits aren't the pool's).
+    public boolean add(String name, Stats executor) {
+        Objects.requireNonNull(name, "Name may not be null");
+        Objects.requireNonNull(executor, "Executor may not be null");
+        return stats.putIfAbsent(name, executor) == null;
+    }
+
     @Override
     public List<MetricFamilySamples> collect() {
         List<MetricFamilySamples> list = new ArrayList<>(8);
@@ -121,6 +129,20 @@ public class ThreadPoolCollector extends Collector {
         );
 
         list.add(taskCount);
+        GaugeMetricFamily queuedCount = new GaugeMetricFamily(
+                "executor_queued_count",
+                "Approximate number of tasks waiting to be executed.",
+                Collections.singletonList("executor")
+        );
+
+        list.add(queuedCount);
+        GaugeMetricFamily rejectedCount = new GaugeMetricFamily(
+                "executor_rejected_count",
+                "Total number of tasks that were rejected.",
+                Collections.singletonList("executor")
+        );
+
+        list.add(rejectedCount);
         for (var entry : executors.entrySet()) {
             var name = Collections.singletonList(entry.getKey());
             var executor = entry.getValue();
@@ -133,8 +155,32 @@ public class ThreadPoolCollector extends Collector {
             maximumPoolSize.addMetric(name, executor.getMaximumPoolSize());
             poolSize.addMetric(name, executor.getPoolSize());
             taskCount.addMetric(name, executor.getTaskCount());
+            queuedCount.addMetric(name, executor.getQueue().size());
+        }
+
+        for (var entry : stats.entrySet()) {
+            var name = Collections.singletonList(entry.getKey());
+            var executor = entry.getValue();
+
+            activeCount.addMetric(name, executor.getActiveCount());
+            completedTaskCount.addMetric(name, executor.getCompletedTaskCount());
+            maximumPoolSize.addMetric(name, executor.getMaximumPoolSize());
+            queuedCount.addMetric(name, executor.getQueuedCount());
+            rejectedCount.addMetric(name, executor.getRejectedCount());
         }
 
         return list;
     }
+
+    public interface Stats {
+        int getActiveCount();
+
+        int getMaximumPoolSize();
+
+        int getQueuedCount();
+
+        long getCompletedTaskCount();
+
+        long getRejectedCount();
+    }
 }
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+package net.kodehawa.mantarobot.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writes down every @Module and @Option class into net.kodehawa.mantarobot.core.modules.GeneratedModuleIndex,
+ * so MantaroCore doesn't have to scan the classpath for them on boot (see ModuleLoader).
+ * Annotations are matched by name, as this gets compiled before the bot itself.
+ */
+@SupportedAnnotationTypes({ModuleIndexProcessor.MODULE, ModuleIndexProcessor.OPTION})
+public class ModuleIndexProcessor extends AbstractProcessor {
+    static final String MODULE = "net.kodehawa.mantarobot.core.modules.Module";
+    static final String OPTION = "net.kodehawa.mantarobot.options.annotations.Option";
+    private static final String PACKAGE = "net.kodehawa.mantarobot.core.modules";
+    private static final String CLASS = "GeneratedModuleIndex";
+
+    private final List<Found> found = new ArrayList<>();
+    private boolean written;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (var annotation : annotations) {
+            for (var element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (isInstantiable(element)) {
+                    found.add(new Found(annotation.getQualifiedName().toString(), (TypeElement) element));
+                }
+            }
+        }
+
+        // Everything we index is hand-written, so it all shows up on the first round.
+        // Writing it then (instead of on the last one) lets javac compile the index along with the rest.
+        if (!written && !found.isEmpty()) {
+            write();
+            written = true;
+        } else if (written && !annotations.isEmpty() && !roundEnv.processingOver()) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    "Modules generated by other processors are not indexed: " + annotations);
+        }
+
+        return false;
+    }
+
+    // Same requirement ModuleLoader has when it scans: a public class with a public zero arg constructor.
+    private boolean isInstantiable(Element element) {
+        var messager = processingEnv.getMessager();
+        if (element.getKind() != ElementKind.CLASS || !element.getModifiers().contains(Modifier.PUBLIC)
+                || element.getModifiers().contains(Modifier.ABSTRACT)) {
+            messager.printMessage(Diagnostic.Kind.WARNING, "Not indexing module: not a public, concrete class", element);
+            return false;
+        }
+
+        var constructors = ElementFilter.constructorsIn(element.getEnclosedElements());
+        var noArgs = constructors.stream()
+                .filter(constructor -> constructor.getParameters().isEmpty())
+                .map(ExecutableElement::getModifiers)
+                .anyMatch(modifiers -> modifiers.contains(Modifier.PUBLIC));
+
+        if (!noArgs) {
+            messager.printMessage(Diagnostic.Kind.WARNING, "Not indexing module: no zero arg public constructor", element);
+        }
+
+        return noArgs;
+    }
+
+    private void write() {
+        found.sort(Comparator.comparing(f -> f.type().getQualifiedName().toString()));
+        var origins = found.stream().map(Found::type).toArray(Element[]::new);
+
+        try (var out = new PrintWriter(processingEnv.getFiler().createSourceFile(PACKAGE + "." + CLASS, origins).openWriter())) {
+            out.println("package " + PACKAGE + ";");
+            out.println();
+            out.println("import java.util.List;");
+            out.println();
+            out.println("// Generated by " + getClass().getName() + ", do not edit.");
+            out.println("public class " + CLASS + " implements ModuleIndex {");
+            out.println("    private static final List<Entry> ENTRIES = List.of(");
+
+            for (var i = 0; i < found.size(); i++) {
+                var entry = found.get(i);
+                var type = entry.type().getQualifiedName();
+                out.print("            new Entry(\"" + entry.annotation() + "\", " + type + ".class, " + type + "::new)");
+                out.println(i == found.size() - 1 ? "" : ",");
+            }
+
+            out.println("    );");
+            out.println();
+            out.println("    @Override");
+            out.println("    public List<Entry> entries() {");
+            out.println("        return ENTRIES;");
+            out.println("    }");
+            out.println("}");
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unable to write the module index: " + e);
+        }
+    }
+
+    private record Found(String annotation, TypeElement type) { }
+}
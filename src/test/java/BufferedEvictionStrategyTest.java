@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *  
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version. 
+ *  Mantaro is distributed in the hope that it will be useful, 
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+import net.kodehawa.mantarobot.core.cache.BufferedEvictionStrategy;
+import net.kodehawa.mantarobot.core.cache.EvictionStrategy;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Feeds ids into the buffer from more threads than it has stripes, and checks the strategy behind it sees every one of
+ * them exactly once, in the order each thread recorded them, and that nothing it evicts gets lost or handed out twice.
+ */
+public class BufferedEvictionStrategyTest {
+    // More threads than stripes, so threads share them and race on the same slots.
+    private static final int THREADS = Runtime.getRuntime().availableProcessors() * 4;
+    private static final int IDS_PER_THREAD = 20_000;
+    private static final int CACHE_SIZE = 1_000;
+    // Never recorded by the threads: sent once they're all done, which drains whatever they left behind.
+    private static final long LAST = Long.MAX_VALUE;
+
+    @Test
+    public void everyIdIsAppliedOnceInOrder() throws Exception {
+        var strategy = new RecordingStrategy(null);
+        var buffered = new BufferedEvictionStrategy(strategy);
+        var evicted = new ConcurrentHashMap<Long, Integer>();
+
+        run(buffered, evicted);
+        check(strategy, evicted, 0);
+    }
+
+    @Test
+    public void fullBuffersWaitInsteadOfDropping() throws Exception {
+        // The first id blocks the drain while every thread keeps recording, so the buffers fill and wrap around.
+        var release = new CountDownLatch(1);
+        var strategy = new RecordingStrategy(release);
+        var buffered = new BufferedEvictionStrategy(strategy);
+        var evicted = new ConcurrentHashMap<Long, Integer>();
+
+        var executor = Executors.newSingleThreadExecutor();
+        var blocker = executor.submit(() -> buffered.cache(id(THREADS, 1), evictedId -> evicted.merge(evictedId, 1, Integer::sum)));
+        Assertions.assertTrue(strategy.blocked.await(10, TimeUnit.SECONDS));
+
+        var producers = Executors.newSingleThreadScheduledExecutor();
+        producers.schedule(release::countDown, 200, TimeUnit.MILLISECONDS);
+        run(buffered, evicted);
+        blocker.get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+        producers.shutdown();
+
+        // The blocker's id goes first, it's the one that was being applied.
+        Assertions.assertEquals(id(THREADS, 1), (long) strategy.applied.get(0));
+        check(strategy, evicted, 1);
+    }
+
+    @Test
+    public void drainingAnEmptyBufferDoesNothing() {
+        var strategy = new RecordingStrategy(null);
+        var buffered = new BufferedEvictionStrategy(strategy);
+        buffered.cache(EvictionStrategy.NO_REMOVAL_NEEDED, id -> Assertions.fail("nothing to evict"));
+        Assertions.assertTrue(strategy.applied.isEmpty());
+
+        buffered.cache(1, id -> Assertions.fail("nothing to evict"));
+        buffered.cache(2, id -> Assertions.fail("nothing to evict"));
+        Assertions.assertEquals(List.of(1L, 2L), strategy.applied);
+    }
+
+    private static void run(BufferedEvictionStrategy buffered, Map<Long, Integer> evicted) throws Exception {
+        var executor = Executors.newFixedThreadPool(THREADS);
+        var start = new CountDownLatch(1);
+        var futures = new ArrayList<Future<?>>();
+        for (var thread = 0; thread < THREADS; thread++) {
+            var producer = thread;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (var i = 1; i <= IDS_PER_THREAD; i++) {
+                    buffered.cache(id(producer, i), id -> evicted.merge(id, 1, Integer::sum));
+                }
+
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (var future : futures) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+
+        executor.shutdown();
+        buffered.cache(LAST, id -> evicted.merge(id, 1, Integer::sum));
+    }
+
+    private static void check(RecordingStrategy strategy, Map<Long, Integer> evicted, int extraIds) {
+        Assertions.assertFalse(strategy.overlapped.get(), "the strategy was called from two threads at once");
+
+        var applied = strategy.applied;
+        Assertions.assertEquals(LAST, (long) applied.get(applied.size() - 1));
+        Assertions.assertEquals(THREADS * IDS_PER_THREAD + extraIds + 1, applied.size());
+
+        // Every thread's ids arrive once each, in the order it recorded them.
+        var last = new HashMap<Long, Long>();
+        for (var id : applied.subList(0, applied.size() - 1)) {
+            var thread = id >>> 32;
+            var sequence = id & 0xFFFFFFFFL;
+            Assertions.assertEquals(last.getOrDefault(thread, 0L) + 1, sequence, "thread " + thread + " out of order");
+            last.put(thread, sequence);
+        }
+
+        // Every id is unique, so everything but the last CACHE_SIZE gets evicted, once.
+        Assertions.assertEquals(applied.size() - CACHE_SIZE, evicted.size());
+        for (var entry : evicted.entrySet()) {
+            Assertions.assertEquals(1, (int) entry.getValue(), entry.getKey() + " was evicted more than once");
+        }
+    }
+
+    // Thread number in the high bits, its sequence (starting at 1, so no id is 0) in the low ones.
+    private static long id(int thread, int sequence) {
+        return ((long) thread << 32) | sequence;
+    }
+
+    // FIFO underneath, so what gets evicted is predictable. Remembers what it was given.
+    private static class RecordingStrategy implements EvictionStrategy {
+        private final EvictionStrategy fifo = EvictionStrategy.fifo(CACHE_SIZE);
+        private final List<Long> applied = new ArrayList<>();
+        private final AtomicInteger inside = new AtomicInteger();
+        private final AtomicBoolean overlapped = new AtomicBoolean();
+        private final CountDownLatch blocked = new CountDownLatch(1);
+        private final CountDownLatch release;
+
+        private RecordingStrategy(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public long cache(long id) {
+            if (inside.incrementAndGet() != 1) {
+                overlapped.set(true);
+            }
+
+            try {
+                if (release != null && blocked.getCount() > 0) {
+                    blocked.countDown();
+                    release.await();
+                }
+
+                applied.add(id);
+                return fifo.cache(id);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            } finally {
+                inside.decrementAndGet();
+            }
+        }
+    }
+}
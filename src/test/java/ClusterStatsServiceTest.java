@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *  
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version. 
+ *  Mantaro is distributed in the hope that it will be useful, 
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+
+import net.kodehawa.mantarobot.core.shard.stats.ClusterStatsService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the cluster stats service against an in-memory stand-in for the two Redis hashes.
+ */
+public class ClusterStatsServiceTest {
+    @Test
+    public void aggregatesShardsAndNodes() {
+        var redis = new FakeRedis();
+        for (var shard = 0; shard < 1000; shard++) {
+            redis.shards.put(String.valueOf(shard), "10|100|42|CONNECTED|5|" + (shard / 250));
+        }
+
+        for (var node = 0; node < 4; node++) {
+            redis.nodes.put("node-" + node, nodeJson(node));
+        }
+
+        var service = new ClusterStatsService(redis, new AtomicLong(1_000)::get);
+        var stats = service.refresh();
+
+        Assertions.assertEquals(1000, stats.shards().size());
+        Assertions.assertEquals(4, stats.nodes().size());
+        Assertions.assertEquals(10_000, stats.guilds());
+        Assertions.assertEquals(100_000, stats.users());
+        Assertions.assertEquals(4 * 512, stats.usedMemory());
+        Assertions.assertEquals(4 * 7, stats.commandsRan());
+        Assertions.assertTrue(stats.unhealthyShards().isEmpty());
+    }
+
+    @Test
+    public void reportsUnhealthyShards() {
+        var redis = new FakeRedis();
+        redis.shards.put("0", "10|100|42|CONNECTED|5|0");
+        redis.shards.put("1", "10|100|42|RECONNECT_QUEUED|5|0");
+        redis.shards.put("2", "10|100|42|CONNECTED|" + (ClusterStatsService.UNHEALTHY_EVENT_DIFF + 1) + "|0");
+        // Written by a node still running the JSON format.
+        redis.shards.put("3", "{\"guild_count\":1,\"cached_users\":2,\"gateway_ping\":3,\"shard_status\":\"CONNECTED\",\"last_ping_diff\":4,\"node_number\":0}");
+        redis.shards.put("4", "garbage");
+
+        var stats = new ClusterStatsService(redis, () -> 0).refresh();
+
+        Assertions.assertEquals(4, stats.shards().size());
+        Assertions.assertEquals(31, stats.guilds());
+        Assertions.assertEquals(2, stats.unhealthyShards().size());
+        Assertions.assertEquals(1, stats.unhealthyShards().get(0).shardId());
+        Assertions.assertEquals(2, stats.unhealthyShards().get(1).shardId());
+    }
+
+    @Test
+    public void keepsLastSnapshotWhenRedisFails() {
+        var redis = new FakeRedis();
+        redis.shards.put("0", "10|100|42|CONNECTED|5|0");
+        var clock = new AtomicLong(1_000);
+        var service = new ClusterStatsService(redis, clock::get);
+
+        Assertions.assertTrue(service.staleness() > 0);
+        var first = service.refresh();
+        Assertions.assertEquals(0, service.staleness());
+
+        redis.down = true;
+        clock.addAndGet(45_000);
+        var second = service.refresh();
+
+        Assertions.assertSame(first, second);
+        Assertions.assertSame(first, service.snapshot());
+        Assertions.assertEquals(45_000, service.staleness());
+        Assertions.assertEquals(10, service.snapshot().guilds());
+    }
+
+    private static String nodeJson(int node) {
+        return """
+                {"uptime":%d,"thread_count":20,"used_memory":512,"queue_size":3,"commands_ran":7,"guild_count":2500,"user_count":25000}"""
+                .formatted(node * 1000);
+    }
+
+    private static class FakeRedis implements ClusterStatsService.Source {
+        private final Map<String, String> shards = new HashMap<>();
+        private final Map<String, String> nodes = new HashMap<>();
+        private boolean down;
+
+        @Override
+        public Map<String, String> shardStats() {
+            check();
+            return new HashMap<>(shards);
+        }
+
+        @Override
+        public Map<String, String> nodeStats() {
+            check();
+            return new HashMap<>(nodes);
+        }
+
+        private void check() {
+            if (down) {
+                throw new IllegalStateException("Could not get a resource from the pool");
+            }
+        }
+    }
+}
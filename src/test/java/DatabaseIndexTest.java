@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *  
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version. 
+ *  Mantaro is distributed in the hope that it will be useful, 
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+
+import com.rethinkdb.net.Connection;
+import net.kodehawa.mantarobot.db.ManagedDatabase;
+import net.kodehawa.mantarobot.db.entities.CustomCommand;
+import net.kodehawa.mantarobot.db.entities.DBGuild;
+import net.kodehawa.mantarobot.db.entities.Player;
+import net.kodehawa.mantarobot.db.entities.helpers.PlayerData;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.rethinkdb.RethinkDB.r;
+
+/**
+ * Checks the indexed queries in {@link ManagedDatabase} give back the same as the filters they replaced.
+ */
+public class DatabaseIndexTest {
+    private static final String DB = "mantaro_index_test";
+    private static Connection conn;
+
+    @BeforeAll
+    public static void setup() {
+        conn = RethinkFixture.connect(DB);
+        r.tableCreate(Player.DB_TABLE).run(conn);
+        r.tableCreate(CustomCommand.DB_TABLE).run(conn);
+        r.tableCreate(DBGuild.DB_TABLE).run(conn);
+
+        var players = new ArrayList<Player>();
+        for (var i = 0; i < 500; i++) {
+            players.add(Player.of(String.valueOf(i)));
+            // Old per-guild players, these shouldn't come back.
+            players.add(new Player(i + ":" + (1000 + i), 0L, 0L, 0L, new HashMap<>(), new PlayerData()));
+        }
+
+        players.add(new Player("g", 0L, 0L, 0L, new HashMap<>(), new PlayerData()));
+        players.add(new Player("1:gg", 0L, 0L, 0L, new HashMap<>(), new PlayerData()));
+        r.table(Player.DB_TABLE).insert(players).run(conn);
+
+        var commands = new ArrayList<CustomCommand>();
+        for (var i = 0; i < 200; i++) {
+            commands.add(CustomCommand.of(String.valueOf(i), i % 2 == 0 ? "hello" : "bye", List.of("hi")));
+            commands.add(CustomCommand.of(String.valueOf(i), "hello_" + i, List.of("hi")));
+        }
+
+        r.table(CustomCommand.DB_TABLE).insert(commands).run(conn);
+
+        var guilds = new ArrayList<Map<String, Object>>();
+        for (var i = 0; i < 300; i++) {
+            var data = new HashMap<String, Object>();
+            // A third with a log channel, a third with it unset (null), a third without the field at all.
+            if (i % 3 == 0) {
+                data.put("guildLogChannel", String.valueOf(5000 + i));
+            } else if (i % 3 == 1) {
+                data.put("guildLogChannel", null);
+            }
+
+            guilds.add(Map.of("id", String.valueOf(i), "data", data));
+        }
+
+        r.table(DBGuild.DB_TABLE).insert(guilds).run(conn);
+
+        new ManagedDatabase(conn).createIndexes();
+        r.table(Player.DB_TABLE).indexWait().run(conn);
+        r.table(CustomCommand.DB_TABLE).indexWait().run(conn);
+        r.table(DBGuild.DB_TABLE).indexWait().run(conn);
+    }
+
+    @AfterAll
+    public static void teardown() {
+        RethinkFixture.drop(conn, DB);
+    }
+
+    @Test
+    public void playersMatchRegex() {
+        List<String> expected = r.table(Player.DB_TABLE)
+                .filter(player -> player.g("id").match(":g$"))
+                .getField("id")
+                .run(conn, String.class)
+                .toList();
+
+        var actual = new ArrayList<String>();
+        new ManagedDatabase(conn).forEachPlayer(player -> actual.add(player.getId()));
+
+        Assertions.assertEquals(500, expected.size());
+        Assertions.assertEquals(expected.stream().sorted().toList(), actual.stream().sorted().toList());
+    }
+
+    @Test
+    public void customCommandsMatchRegex() {
+        for (var name : List.of("hello", "bye", "hello_3", "missing")) {
+            List<String> expected = r.table(CustomCommand.DB_TABLE)
+                    .filter(command -> command.g("id").match(':' + name + '$'))
+                    .getField("id")
+                    .run(conn, String.class)
+                    .toList();
+
+            var actual = new ArrayList<String>();
+            new ManagedDatabase(conn).forEachCustomCommandNamed(name, command -> actual.add(command.getId()));
+
+            Assertions.assertEquals(expected.stream().sorted().toList(), actual.stream().sorted().toList(), name);
+        }
+    }
+
+    @Test
+    public void loggingGuildsMatchFilter() {
+        List<String> expected = r.table(DBGuild.DB_TABLE)
+                .hasFields(r.hashMap("data", "guildLogChannel"))
+                .getField("id")
+                .run(conn, String.class)
+                .toList();
+
+        var actual = new ArrayList<String>();
+        new ManagedDatabase(conn).forEachLoggingGuildId(actual::add);
+
+        Assertions.assertEquals(100, expected.size());
+        Assertions.assertEquals(expected.stream().sorted().toList(), actual.stream().sorted().toList());
+    }
+}
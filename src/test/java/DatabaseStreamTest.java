@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *  
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version. 
+ *  Mantaro is distributed in the hope that it will be useful, 
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+
+import com.rethinkdb.net.Connection;
+import net.kodehawa.mantarobot.db.ManagedDatabase;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Map;
+
+import static com.rethinkdb.RethinkDB.r;
+
+/**
+ * Goes through a table far bigger than a single batch with {@link ManagedDatabase#stream},
+ * checking it's fetched a batch at a time instead of all at once.
+ */
+public class DatabaseStreamTest {
+    private static final String DB = "mantaro_stream_test";
+    private static final String TABLE = "fixture";
+    private static final int DOCUMENTS = 50_000;
+    private static final String PAYLOAD = "x".repeat(256);
+    private static Connection conn;
+
+    @BeforeAll
+    public static void setup() {
+        conn = RethinkFixture.connect(DB);
+        r.tableCreate(TABLE).run(conn);
+
+        var batch = new ArrayList<Map<String, Object>>();
+        for (var i = 0; i < DOCUMENTS; i++) {
+            batch.add(Map.of("id", i, "payload", PAYLOAD));
+            if (batch.size() == 1000) {
+                r.table(TABLE).insert(batch).run(conn);
+                batch.clear();
+            }
+        }
+    }
+
+    @AfterAll
+    public static void teardown() {
+        RethinkFixture.drop(conn, DB);
+    }
+
+    @Test
+    public void streamsInBatches() {
+        var seen = new int[1];
+        var maxBuffered = new int[1];
+        var batches = new int[1];
+        var lastBuffered = new int[] { -1 };
+
+        new ManagedDatabase(conn).stream(TABLE, table -> table, Map.class, ManagedDatabase.STREAM_BATCH_SIZE, (cursor, document) -> {
+            Assertions.assertEquals(PAYLOAD.length(), document.get("payload").toString().length());
+            seen[0]++;
+
+            var buffered = cursor.bufferedCount();
+            // Taking a document only ever lowers it, so going up means another batch came in.
+            if (buffered > lastBuffered[0]) {
+                batches[0]++;
+            }
+
+            lastBuffered[0] = buffered;
+            maxBuffered[0] = Math.max(maxBuffered[0], buffered);
+        });
+
+        Assertions.assertEquals(DOCUMENTS, seen[0]);
+        // The batch being read, plus the one asked for once half of it was gone.
+        Assertions.assertTrue(maxBuffered[0] <= 2 * ManagedDatabase.STREAM_BATCH_SIZE, "Buffered " + maxBuffered[0] + " documents at once");
+        // Batches can land back to back between two documents, so this undercounts, but nowhere near a single fetch.
+        Assertions.assertTrue(batches[0] >= DOCUMENTS / (2 * ManagedDatabase.STREAM_BATCH_SIZE), "Only saw " + batches[0] + " batches");
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *  
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version. 
+ *  Mantaro is distributed in the hope that it will be useful, 
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+import net.kodehawa.mantarobot.db.DocumentDiff;
+import net.kodehawa.mantarobot.db.DocumentDiff.Increment;
+import net.kodehawa.mantarobot.db.DocumentDiff.Put;
+import net.kodehawa.mantarobot.db.DocumentDiff.Remove;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class DocumentDiffTest {
+    private static final Set<String> COUNTERS = Set.of("money", "inventory.*", "data.newMoney");
+
+    @Test
+    public void sameDocumentHasNoChanges() {
+        Assertions.assertEquals(List.of(), DocumentDiff.diff(player(), player(), COUNTERS));
+    }
+
+    @Test
+    public void countersBecomeIncrements() {
+        var after = player();
+        after.put("money", 150L);
+        data(after).put("newMoney", 90L);
+        inventory(after).put("3", 1);
+
+        var changes = DocumentDiff.diff(player(), after, COUNTERS);
+        Assertions.assertEquals(3, changes.size());
+        Assertions.assertTrue(changes.contains(new Increment(List.of("money"), 50)));
+        Assertions.assertTrue(changes.contains(new Increment(List.of("data", "newMoney"), -10)));
+        Assertions.assertTrue(changes.contains(new Increment(List.of("inventory", "3"), -4)));
+    }
+
+    @Test
+    public void missingCountersAreZero() {
+        var after = player();
+        // Sold all of them, and got a new one.
+        inventory(after).remove("3");
+        inventory(after).put("7", 2);
+        data(after).remove("newMoney");
+
+        // Setting or removing them would lose anything added to them on the database since the read.
+        var changes = DocumentDiff.diff(player(), after, COUNTERS);
+        Assertions.assertEquals(3, changes.size());
+        Assertions.assertTrue(changes.contains(new Increment(List.of("inventory", "3"), -5)));
+        Assertions.assertTrue(changes.contains(new Increment(List.of("inventory", "7"), 2)));
+        Assertions.assertTrue(changes.contains(new Increment(List.of("data", "newMoney"), -100)));
+    }
+
+    @Test
+    public void newDocumentAgainstNothing() {
+        var changes = DocumentDiff.diff(Map.of(), player(), COUNTERS);
+        Assertions.assertTrue(changes.contains(new Increment(List.of("money"), 100)));
+        Assertions.assertTrue(changes.contains(new Increment(List.of("inventory", "3"), 5)));
+        Assertions.assertTrue(changes.contains(new Increment(List.of("data", "newMoney"), 100)));
+        Assertions.assertTrue(changes.contains(new Put(List.of("level"), 3L)));
+        Assertions.assertTrue(changes.contains(new Put(List.of("data", "badges"), List.of("FIRST"))));
+        Assertions.assertTrue(changes.stream().noneMatch(change -> change.path().size() == 1 && change.path().get(0).equals("inventory")));
+    }
+
+    @Test
+    public void otherFieldsAreSetOrRemoved() {
+        var after = player();
+        after.put("level", 4L);
+        data(after).put("description", "hi");
+        data(after).put("badges", List.of("FIRST", "SECOND"));
+        data(after).put("marriedTo", "2");
+        data(after).remove("title");
+
+        var changes = DocumentDiff.diff(player(), after, COUNTERS);
+        Assertions.assertEquals(5, changes.size());
+        // Level isn't a counter, so it gets overwritten.
+        Assertions.assertTrue(changes.contains(new Put(List.of("level"), 4L)));
+        Assertions.assertTrue(changes.contains(new Put(List.of("data", "description"), "hi")));
+        // Lists go whole.
+        Assertions.assertTrue(changes.contains(new Put(List.of("data", "badges"), List.of("FIRST", "SECOND"))));
+        Assertions.assertTrue(changes.contains(new Put(List.of("data", "marriedTo"), "2")));
+        Assertions.assertTrue(changes.contains(new Remove(List.of("data", "title"))));
+    }
+
+    @Test
+    public void integerAndLongAreTheSame() {
+        var after = player();
+        after.put("money", 100);
+        after.put("level", 3);
+        Assertions.assertEquals(List.of(), DocumentDiff.diff(player(), after, COUNTERS));
+    }
+
+    private static Map<String, Object> player() {
+        var data = new HashMap<String, Object>();
+        data.put("newMoney", 100L);
+        data.put("description", null);
+        data.put("badges", List.of("FIRST"));
+        data.put("title", "Newbie");
+
+        var player = new HashMap<String, Object>();
+        player.put("id", "1:g");
+        player.put("level", 3L);
+        player.put("money", 100L);
+        player.put("inventory", new HashMap<>(Map.of("3", 5, "4", 1)));
+        player.put("data", data);
+        return player;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> data(Map<String, Object> player) {
+        return (Map<String, Object>) player.get("data");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> inventory(Map<String, Object> player) {
+        return (Map<String, Object>) player.get("inventory");
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *  
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version. 
+ *  Mantaro is distributed in the hope that it will be useful, 
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+
+import net.kodehawa.mantarobot.core.cache.EvictionStrategy;
+import net.kodehawa.mantarobot.core.cache.MemberGuildIndex;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Replays a synthetic shard trace (a steady set of active members chatting, plus floods of members joining or being
+ * chunked that are never seen again) against the member eviction strategies.
+ */
+public class EvictionStrategyTest {
+    private static final int GUILDS = 200;
+    private static final int ACTIVE_MEMBERS = 3_000;
+    private static final int CACHE_SIZE = 2_000;
+    private static final int EVENTS = 300_000;
+
+    @Test
+    public void segmentedLruBeatsFifo() {
+        var trace = trace(new Random(42));
+        var fifo = simulate(EvictionStrategy.fifo(CACHE_SIZE), trace);
+        var lru = simulate(EvictionStrategy.leastRecentlyUsed(CACHE_SIZE), trace);
+
+        Assertions.assertTrue(lru.hitRate() > fifo.hitRate(),
+                "segmented LRU should have a better hit rate than FIFO (%.3f vs %.3f)".formatted(lru.hitRate(), fifo.hitRate()));
+        Assertions.assertTrue(lru.evictions <= fifo.evictions,
+                "segmented LRU shouldn't evict more than FIFO (%d vs %d)".formatted(lru.evictions, fifo.evictions));
+        Assertions.assertTrue(lru.maxResident <= CACHE_SIZE, "segmented LRU should never hold more than its size");
+    }
+
+    @Test
+    public void repeatedIdsTakeOneSlot() {
+        var lru = EvictionStrategy.leastRecentlyUsed(2);
+        Assertions.assertEquals(EvictionStrategy.NO_REMOVAL_NEEDED, lru.cache(1));
+        Assertions.assertEquals(EvictionStrategy.NO_REMOVAL_NEEDED, lru.cache(2));
+        Assertions.assertEquals(EvictionStrategy.NO_REMOVAL_NEEDED, lru.cache(1));
+        Assertions.assertEquals(EvictionStrategy.NO_REMOVAL_NEEDED, lru.cache(1));
+        // 2 was only seen once, so it goes before 1.
+        Assertions.assertEquals(2, lru.cache(3));
+        Assertions.assertEquals(3, lru.cache(4));
+    }
+
+    // Each event is {member, guild}.
+    private static long[][] trace(Random random) {
+        var events = new long[EVENTS][];
+        var nextNewMember = 1_000_000L;
+
+        for (var i = 0; i < EVENTS; i++) {
+            if (random.nextInt(100) < 30) {
+                // Someone joining/being chunked, never seen again.
+                events[i] = new long[] { nextNewMember++, 1 + random.nextInt(GUILDS) };
+            } else {
+                // Skewed towards a smaller set of very active members, each in up to three guilds.
+                var member = 1 + (long) (ACTIVE_MEMBERS * Math.pow(random.nextDouble(), 2));
+                var guild = 1 + (member * 31 + random.nextInt(3)) % GUILDS;
+                events[i] = new long[] { member, guild };
+            }
+        }
+
+        return events;
+    }
+
+    private static Result simulate(EvictionStrategy strategy, long[][] trace) {
+        var result = new Result();
+        var resident = new HashSet<Long>();
+        var index = new MemberGuildIndex();
+        // What the index should say: the guilds each member was seen in since it was last evicted.
+        var seenIn = new HashMap<Long, Set<Long>>();
+
+        for (var event : trace) {
+            var member = event[0];
+            if (resident.contains(member)) {
+                result.hits++;
+            }
+
+            index.add(member, event[1]);
+            seenIn.computeIfAbsent(member, k -> new HashSet<>()).add(event[1]);
+            var evicted = strategy.cache(member);
+            if (evicted != EvictionStrategy.NO_REMOVAL_NEEDED) {
+                result.evictions++;
+                // Evicting only looks at the guilds the index gives back, so they have to be exactly the ones holding the member.
+                var guilds = new HashSet<Long>();
+                for (var guild : index.remove(evicted)) {
+                    Assertions.assertTrue(guilds.add(guild), "guild " + guild + " is in the index twice for " + evicted);
+                }
+
+                // FIFO can evict the same member twice, the second time there's nothing left.
+                var expected = seenIn.remove(evicted);
+                Assertions.assertEquals(expected == null ? Set.of() : expected, guilds, "wrong guilds for " + evicted);
+                resident.remove(evicted);
+            }
+
+            resident.add(member);
+            result.maxResident = Math.max(result.maxResident, resident.size());
+        }
+
+        result.requests = trace.length;
+        return result;
+    }
+
+    private static class Result {
+        long requests;
+        long hits;
+        long evictions;
+        int maxResident;
+
+        double hitRate() {
+            return (double) hits / requests;
+        }
+    }
+}
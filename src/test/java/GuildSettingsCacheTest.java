@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *  
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version. 
+ *  Mantaro is distributed in the hope that it will be useful, 
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+
+import net.kodehawa.mantarobot.db.GuildSettingsCache;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Drives the guild settings cache with an in-memory changefeed and database.
+ */
+public class GuildSettingsCacheTest {
+    private static final long MAX_AGE = 60_000;
+
+    @Test
+    public void servesChangesFromTheFeed() throws Exception {
+        var source = new FakeSource();
+        source.documents.put("1", document("1", "~>"));
+        var cache = new GuildSettingsCache(source, MAX_AGE, new AtomicLong()::get);
+        cache.start();
+        try {
+            await(cache::isReady);
+            Assertions.assertEquals("~>", cache.get("1").get("prefix"));
+            Assertions.assertEquals("~>", cache.get("1").get("prefix"));
+            Assertions.assertEquals(1, source.loads.get());
+
+            source.change("1", document("1", "!"));
+            await(() -> "!".equals(cache.get("1").get("prefix")));
+            // Straight from the feed, the database wasn't read again.
+            Assertions.assertEquals(1, source.loads.get());
+
+            source.change("1", null);
+            await(() -> cache.get("1") == null);
+            Assertions.assertEquals(1, source.loads.get());
+        } finally {
+            cache.stop();
+        }
+    }
+
+    @Test
+    public void readsTheDatabaseWhileTheFeedIsDown() {
+        var source = new FakeSource();
+        source.documents.put("1", document("1", "~>"));
+        var cache = new GuildSettingsCache(source, MAX_AGE, new AtomicLong()::get);
+
+        // Never started, so there's no feed.
+        Assertions.assertFalse(cache.isReady());
+        cache.get("1");
+        cache.get("1");
+        Assertions.assertEquals(2, source.loads.get());
+    }
+
+    @Test
+    public void resyncsWhenTheFeedReconnects() throws Exception {
+        var source = new FakeSource();
+        source.documents.put("1", document("1", "~>"));
+        var cache = new GuildSettingsCache(source, MAX_AGE, new AtomicLong()::get);
+        cache.start();
+        try {
+            await(cache::isReady);
+            cache.get("1");
+            Assertions.assertEquals(1, source.loads.get());
+
+            // Changed while the feed is down: the new feed never sends it.
+            source.disconnect();
+            source.documents.put("1", document("1", "!"));
+            await(() -> source.opened.get() == 2 && cache.isReady());
+
+            Assertions.assertEquals("!", cache.get("1").get("prefix"));
+            Assertions.assertEquals(2, source.loads.get());
+        } finally {
+            cache.stop();
+        }
+    }
+
+    @Test
+    public void readsAgainOnceTooOld() throws Exception {
+        var source = new FakeSource();
+        source.documents.put("1", document("1", "~>"));
+        var clock = new AtomicLong();
+        var cache = new GuildSettingsCache(source, MAX_AGE, clock::get);
+        cache.start();
+        try {
+            await(cache::isReady);
+            cache.get("1");
+            clock.addAndGet(MAX_AGE - 1);
+            cache.get("1");
+            Assertions.assertEquals(1, source.loads.get());
+
+            clock.addAndGet(1);
+            cache.get("1");
+            Assertions.assertEquals(2, source.loads.get());
+        } finally {
+            cache.stop();
+        }
+    }
+
+    @Test
+    public void readsItsOwnSaves() throws Exception {
+        var source = new FakeSource();
+        source.documents.put("1", document("1", "~>"));
+        var cache = new GuildSettingsCache(source, MAX_AGE, new AtomicLong()::get);
+        cache.start();
+        try {
+            await(cache::isReady);
+            cache.get("1");
+            cache.saved("1", document("1", "!"));
+            Assertions.assertEquals("!", cache.get("1").get("prefix"));
+            Assertions.assertEquals(1, source.loads.get());
+        } finally {
+            cache.stop();
+        }
+    }
+
+    @Test
+    public void doesntKeepGuildsItDoesntOwn() throws Exception {
+        var source = new FakeSource();
+        source.documents.put("2", document("2", "~>"));
+        source.foreign.add("2");
+        var cache = new GuildSettingsCache(source, MAX_AGE, new AtomicLong()::get);
+        cache.start();
+        try {
+            await(cache::isReady);
+            cache.get("2");
+            cache.get("2");
+            Assertions.assertEquals(2, source.loads.get());
+
+            // Its changes never come on the feed, so a save from here can't be trusted to stay current either.
+            cache.saved("2", document("2", "!"));
+            Assertions.assertEquals("~>", cache.get("2").get("prefix"));
+            Assertions.assertNull(cache.peek("2"));
+            Assertions.assertEquals(3, source.loads.get());
+        } finally {
+            cache.stop();
+        }
+    }
+
+    private static Map<String, Object> document(String id, String prefix) {
+        return Map.of("id", id, "prefix", prefix);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        var deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                Assertions.fail("Timed out");
+            }
+
+            Thread.sleep(5);
+        }
+    }
+
+    private static class FakeSource implements GuildSettingsCache.Source {
+        // Stands in for a changefeed closing on us.
+        private static final GuildSettingsCache.Change DISCONNECT = new GuildSettingsCache.Change(null, null);
+        private final Map<String, Map<String, Object>> documents = new ConcurrentHashMap<>();
+        private final AtomicInteger loads = new AtomicInteger();
+        private final AtomicInteger opened = new AtomicInteger();
+        // Guilds on shards this node doesn't own.
+        private final Set<String> foreign = ConcurrentHashMap.newKeySet();
+        private volatile BlockingQueue<GuildSettingsCache.Change> changes;
+
+        @Override
+        public GuildSettingsCache.Feed open() {
+            var queue = new LinkedBlockingQueue<GuildSettingsCache.Change>();
+            changes = queue;
+            opened.incrementAndGet();
+            return new GuildSettingsCache.Feed() {
+                @Override
+                public GuildSettingsCache.Change next() throws Exception {
+                    var change = queue.take();
+                    if (change == DISCONNECT) {
+                        throw new IOException("Feed closed");
+                    }
+
+                    return change;
+                }
+
+                @Override
+                public void close() {
+                    queue.offer(DISCONNECT);
+                }
+            };
+        }
+
+        @Override
+        public Map<String, Object> load(String guildId) {
+            loads.incrementAndGet();
+            return documents.get(guildId);
+        }
+
+        @Override
+        public boolean owns(String guildId) {
+            return !foreign.contains(guildId);
+        }
+
+        void change(String guildId, Map<String, Object> document) {
+            if (document == null) {
+                documents.remove(guildId);
+            } else {
+                documents.put(guildId, document);
+            }
+
+            changes.offer(new GuildSettingsCache.Change(guildId, document));
+        }
+
+        void disconnect() {
+            changes.offer(DISCONNECT);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *  
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version. 
+ *  Mantaro is distributed in the hope that it will be useful, 
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+
+import net.dv8tion.jda.api.events.GenericEvent;
+import net.dv8tion.jda.api.events.guild.GuildJoinEvent;
+import net.dv8tion.jda.api.events.session.ReadyEvent;
+import net.dv8tion.jda.api.hooks.EventListener;
+import net.kodehawa.mantarobot.commands.music.listener.VoiceChannelListener;
+import net.kodehawa.mantarobot.core.listeners.HandlesEvents;
+import net.kodehawa.mantarobot.core.listeners.MantaroListener;
+import net.kodehawa.mantarobot.core.listeners.command.CommandListener;
+import net.kodehawa.mantarobot.core.listeners.operations.ButtonOperations;
+import net.kodehawa.mantarobot.core.listeners.operations.InteractiveOperations;
+import net.kodehawa.mantarobot.core.listeners.operations.ModalOperations;
+import net.kodehawa.mantarobot.core.listeners.operations.ReactionOperations;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+// MantaroEventManager only dispatches the events a listener declares in @HandlesEvents, so an instanceof branch
+// for a type missing from it never runs. These read the event classes each listener's bytecode refers to
+// (instanceof, casts, calls on them) and check every one of them is declared.
+public class HandlesEventsTest {
+    @Test
+    public void mantaroListener() throws Exception {
+        assertDeclared(MantaroListener.class);
+    }
+
+    @Test
+    public void commandListener() throws Exception {
+        assertDeclared(CommandListener.class);
+    }
+
+    @Test
+    public void shardStartListener() throws Exception {
+        assertDeclared(Class.forName("net.kodehawa.mantarobot.core.MantaroCore$ShardStartListener", false,
+                HandlesEventsTest.class.getClassLoader()));
+    }
+
+    @Test
+    public void operationListeners() throws Exception {
+        assertDeclared(ButtonOperations.ButtonListener.class);
+        assertDeclared(ReactionOperations.ReactionListener.class);
+        assertDeclared(InteractiveOperations.InteractiveListener.class);
+        assertDeclared(ModalOperations.ModalListener.class);
+    }
+
+    @Test
+    public void voiceChannelListener() throws Exception {
+        assertDeclared(VoiceChannelListener.class);
+    }
+
+    @Test
+    public void missingTypesAreFound() throws Exception {
+        Assertions.assertEquals(List.of(GuildJoinEvent.class.getName()), undeclared(Undeclared.class));
+    }
+
+    private static void assertDeclared(Class<?> listener) throws Exception {
+        var missing = undeclared(listener);
+        Assertions.assertTrue(missing.isEmpty(),
+                listener.getSimpleName() + " uses " + missing + " but its @HandlesEvents doesn't declare them");
+    }
+
+    // Event classes the listener refers to that aren't a declared type, a subclass of one, or a superclass of one
+    // (like GenericEvent itself, which onEvent takes).
+    private static List<String> undeclared(Class<?> listener) throws Exception {
+        var handled = listener.getAnnotation(HandlesEvents.class);
+        Assertions.assertNotNull(handled, listener.getSimpleName() + " has no @HandlesEvents");
+
+        var missing = new TreeSet<String>();
+        for (var type : referencedEvents(listener)) {
+            var covered = false;
+            for (var declared : handled.value()) {
+                if (declared.isAssignableFrom(type) || type.isAssignableFrom(declared)) {
+                    covered = true;
+                    break;
+                }
+            }
+
+            if (!covered) {
+                missing.add(type.getName());
+            }
+        }
+
+        return new ArrayList<>(missing);
+    }
+
+    // Every class constant in the listener's constant pool that is a JDA event.
+    private static List<Class<?>> referencedEvents(Class<?> listener) throws IOException, ClassNotFoundException {
+        var file = listener.getName().substring(listener.getName().lastIndexOf('.') + 1) + ".class";
+        var utf8 = new HashMap<Integer, String>();
+        var classes = new ArrayList<Integer>();
+        try (var in = new DataInputStream(listener.getResourceAsStream(file))) {
+            in.readInt(); // Magic.
+            in.readInt(); // Minor and major version.
+            var count = in.readUnsignedShort();
+            for (var i = 1; i < count; i++) {
+                var tag = in.readUnsignedByte();
+                switch (tag) {
+                    case 1 -> utf8.put(i, in.readUTF());
+                    case 7 -> classes.add(in.readUnsignedShort());
+                    case 8, 16, 19, 20 -> in.skipBytes(2);
+                    case 15 -> in.skipBytes(3);
+                    case 3, 4, 9, 10, 11, 12, 17, 18 -> in.skipBytes(4);
+                    case 5, 6 -> {
+                        in.skipBytes(8);
+                        i++; // Longs and doubles take two entries.
+                    }
+                    default -> throw new IOException("Unknown constant pool tag " + tag + " in " + file);
+                }
+            }
+        }
+
+        var loader = listener.getClassLoader();
+        var events = new ArrayList<Class<?>>();
+        for (var index : classes) {
+            var name = utf8.get(index);
+            if (!name.startsWith("net/dv8tion/jda/api/events/")) {
+                continue;
+            }
+
+            var type = Class.forName(name.replace('/', '.'), false, loader);
+            if (GenericEvent.class.isAssignableFrom(type)) {
+                events.add(type);
+            }
+        }
+
+        return events;
+    }
+
+    @HandlesEvents({ReadyEvent.class})
+    private static class Undeclared implements EventListener {
+        @Override
+        public void onEvent(GenericEvent event) {
+            if (event instanceof ReadyEvent) {
+                System.out.println("ready");
+            } else if (event instanceof GuildJoinEvent) {
+                System.out.println(((GuildJoinEvent) event).getGuild());
+            }
+        }
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *  
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version. 
+ *  Mantaro is distributed in the hope that it will be useful, 
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+import net.kodehawa.mantarobot.db.PlayerLanes;
+import net.kodehawa.mantarobot.db.entities.Player;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+public class PlayerLanesTest {
+    private static final long WAIT = 10_000;
+
+    @Test
+    public void sameUserRunsOneAtATime() throws Exception {
+        // Nothing gets kept in memory with no idle time, so this never touches the database.
+        var lanes = new PlayerLanes(null, 0, WAIT);
+        var running = new AtomicInteger();
+        var maxRunning = new AtomicInteger();
+        var counter = new int[1];
+
+        var executor = Executors.newFixedThreadPool(8);
+        var futures = new ArrayList<Future<?>>();
+        for (var i = 0; i < 2_000; i++) {
+            futures.add(executor.submit(() -> lanes.run("1", () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                // A read-modify-write that would lose updates if two of these overlapped.
+                var value = counter[0];
+                Thread.yield();
+                counter[0] = value + 1;
+                running.decrementAndGet();
+            })));
+        }
+
+        for (var future : futures) {
+            future.get();
+        }
+
+        executor.shutdown();
+        Assertions.assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        Assertions.assertEquals(1, maxRunning.get());
+        Assertions.assertEquals(2_000, counter[0]);
+    }
+
+    @Test
+    public void differentUsersDontWait() throws Exception {
+        var lanes = new PlayerLanes(null, 0, WAIT);
+        var started = new CountDownLatch(1);
+        var executor = Executors.newSingleThreadExecutor();
+        var other = executor.submit(() -> lanes.run("2", () -> {
+            try {
+                Assertions.assertTrue(started.await(10, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }));
+
+        // If lanes shared a lock, 2 would be stuck waiting on this and this on 2.
+        lanes.run("1", started::countDown);
+        other.get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+    }
+
+    @Test
+    public void sameThreadCanReenter() {
+        var lanes = new PlayerLanes(null, 0, WAIT);
+        var ran = new AtomicInteger();
+        lanes.run("1", () -> lanes.run("1", ran::incrementAndGet));
+        Assertions.assertEquals(1, ran.get());
+    }
+
+    @Test
+    public void flushWaitsForTheRunningCommand() throws Exception {
+        var lanes = new PlayerLanes(null, 0, WAIT);
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var executor = Executors.newFixedThreadPool(2);
+        var command = executor.submit(() -> lanes.run("1", () -> {
+            started.countDown();
+            try {
+                Assertions.assertTrue(release.await(10, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }));
+
+        Assertions.assertTrue(started.await(10, TimeUnit.SECONDS));
+        // From outside the lane, so it has to wait for whatever the command has in memory.
+        var flush = executor.submit(() -> lanes.flush("1"));
+        Thread.sleep(100);
+        Assertions.assertFalse(flush.isDone());
+
+        release.countDown();
+        command.get(10, TimeUnit.SECONDS);
+        flush.get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+    }
+
+    @Test
+    public void flushFromTheOwnLaneDoesntWait() {
+        var lanes = new PlayerLanes(null, 0, WAIT);
+        var ran = new AtomicInteger();
+        lanes.run("1", () -> {
+            lanes.flush("1");
+            ran.incrementAndGet();
+        });
+        Assertions.assertEquals(1, ran.get());
+    }
+
+    @Test
+    public void givesUpAfterTheMaxWait() throws Exception {
+        var lanes = new PlayerLanes(null, 0, 50);
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var executor = Executors.newSingleThreadExecutor();
+        var command = executor.submit(() -> lanes.run("1", () -> {
+            started.countDown();
+            try {
+                Assertions.assertTrue(release.await(10, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }));
+
+        Assertions.assertTrue(started.await(10, TimeUnit.SECONDS));
+        var ran = new AtomicBoolean();
+        Assertions.assertFalse(lanes.run("1", () -> ran.set(true)));
+        Assertions.assertFalse(ran.get());
+
+        release.countDown();
+        Assertions.assertTrue(command.get(10, TimeUnit.SECONDS));
+        // Giving up didn't leave the lane in a bad state.
+        Assertions.assertTrue(lanes.run("1", () -> ran.set(true)));
+        Assertions.assertTrue(ran.get());
+        executor.shutdown();
+    }
+
+    @Test
+    public void sharesThePlayerUntilIdle() throws Exception {
+        var db = new FakeDatabase();
+        var lanes = new PlayerLanes(db::save, 100, WAIT);
+        var players = new ArrayList<Player>();
+        for (var i = 0; i < 2; i++) {
+            lanes.run("1", () -> {
+                var player = lanes.get("1", db.loader("1"));
+                Assertions.assertTrue(lanes.defer(player));
+                players.add(player);
+            });
+        }
+
+        Assertions.assertSame(players.get(0), players.get(1));
+        Assertions.assertEquals(List.of("load 1"), db.events);
+
+        // Written once, after it's been idle for long enough.
+        var deadline = System.currentTimeMillis() + 10_000;
+        while (db.saved.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        Assertions.assertEquals(List.of("load 1", "save 1"), db.events);
+        Assertions.assertSame(players.get(0), db.saved.get(0));
+        lanes.run("1", () -> Assertions.assertNotSame(players.get(0), lanes.get("1", db.loader("1"))));
+        Assertions.assertEquals(List.of("load 1", "save 1", "load 1"), db.events);
+    }
+
+    @Test
+    public void invalidateWritesThenReads() {
+        var db = new FakeDatabase();
+        var lanes = new PlayerLanes(db::save, 60_000, WAIT);
+        var first = new Player[1];
+        lanes.run("1", () -> {
+            first[0] = lanes.get("1", db.loader("1"));
+            lanes.defer(first[0]);
+        });
+
+        lanes.invalidate("1");
+        lanes.run("1", () -> {
+            var player = lanes.get("1", db.loader("1"));
+            Assertions.assertNotSame(first[0], player);
+            // A clean player doesn't get written.
+            Assertions.assertSame(player, lanes.get("1", db.loader("1")));
+        });
+
+        // What the lane changed gets written before reading it again, so the read sees it.
+        Assertions.assertEquals(List.of("load 1", "save 1", "load 1"), db.events);
+        Assertions.assertSame(first[0], db.saved.get(0));
+
+        lanes.flushAll();
+        Assertions.assertEquals(1, db.saved.size());
+    }
+
+    @Test
+    public void onlyTheLanePlayerIsDeferred() {
+        var db = new FakeDatabase();
+        var lanes = new PlayerLanes(db::save, 60_000, WAIT);
+        var outside = db.loader("1").get();
+        Assertions.assertFalse(lanes.defer(outside));
+
+        lanes.run("1", () -> {
+            // Someone else's player, or our own read outside of the lane.
+            Assertions.assertFalse(lanes.defer(lanes.get("2", db.loader("2"))));
+            Assertions.assertFalse(lanes.defer(outside));
+            Assertions.assertTrue(lanes.defer(lanes.get("1", db.loader("1"))));
+        });
+
+        Assertions.assertTrue(db.saved.isEmpty());
+    }
+
+    @Test
+    public void flushAllWritesEveryChangedPlayer() {
+        var db = new FakeDatabase();
+        var lanes = new PlayerLanes(db::save, 60_000, WAIT);
+        for (var userId : List.of("1", "2")) {
+            lanes.run(userId, () -> lanes.defer(lanes.get(userId, db.loader(userId))));
+        }
+
+        lanes.run("3", () -> lanes.get("3", db.loader("3")));
+        lanes.flushAll();
+
+        Assertions.assertEquals(2, db.saved.size());
+        Assertions.assertTrue(db.events.containsAll(List.of("save 1", "save 2")));
+        Assertions.assertFalse(db.events.contains("save 3"));
+    }
+
+    // Players straight from memory, with a log of what was read and written.
+    private static class FakeDatabase {
+        private final List<String> events = new CopyOnWriteArrayList<>();
+        private final List<Player> saved = new CopyOnWriteArrayList<>();
+
+        private Supplier<Player> loader(String userId) {
+            return () -> {
+                events.add("load " + userId);
+                return Player.of(userId);
+            };
+        }
+
+        private void save(Player player) {
+            events.add("save " + player.getUserId());
+            saved.add(player);
+        }
+    }
+}
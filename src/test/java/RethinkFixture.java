@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *  
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version. 
+ *  Mantaro is distributed in the hope that it will be useful, 
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+
+import com.rethinkdb.net.Connection;
+import org.junit.jupiter.api.Assumptions;
+
+import static com.rethinkdb.RethinkDB.r;
+
+/**
+ * Scratch database for the tests that need a real RethinkDB server (localhost:28015, or RETHINKDB_HOST and RETHINKDB_PORT).
+ * Tests using it get skipped when there's no server to connect to.
+ */
+public class RethinkFixture {
+    /**
+     * Connects and creates the database from scratch, dropping whatever a previous run left behind.
+     * Skips the calling test class if there's no server.
+     */
+    public static Connection connect(String db) {
+        Connection conn;
+        try {
+            conn = r.connection()
+                    .hostname(System.getenv().getOrDefault("RETHINKDB_HOST", "localhost"))
+                    .port(Integer.parseInt(System.getenv().getOrDefault("RETHINKDB_PORT", "28015")))
+                    .db(db)
+                    .connect();
+        } catch (Exception e) {
+            conn = null;
+        }
+
+        Assumptions.assumeTrue(conn != null, "No RethinkDB server to test against");
+        if (r.dbList().run(conn, String.class).toList().contains(db)) {
+            r.dbDrop(db).run(conn);
+        }
+
+        r.dbCreate(db).run(conn);
+        return conn;
+    }
+
+    /**
+     * Drops the database and closes the connection, if {@link #connect(String)} got one.
+     */
+    public static void drop(Connection conn, String db) {
+        if (conn != null) {
+            r.dbDrop(db).run(conn);
+            conn.close();
+        }
+    }
+}
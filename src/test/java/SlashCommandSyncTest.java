@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *  
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version. 
+ *  Mantaro is distributed in the hope that it will be useful, 
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+
+import net.dv8tion.jda.api.interactions.commands.build.CommandData;
+import net.dv8tion.jda.api.interactions.commands.build.Commands;
+import net.kodehawa.mantarobot.core.command.slash.SlashCommandSync;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Syncs commands against a fake Discord, checking only what changed gets sent.
+ */
+public class SlashCommandSyncTest {
+    @Test
+    public void unchangedCommandsAreNotPushed() {
+        var upstream = new FakeUpstream();
+        var state = new MemoryState();
+        var sync = new SlashCommandSync(upstream, state, true);
+
+        var first = sync.sync(commands(5));
+        Assertions.assertTrue(first.full());
+        Assertions.assertEquals(1, upstream.replaces);
+        Assertions.assertEquals(6, upstream.commands.size());
+
+        var second = sync.sync(commands(5));
+        Assertions.assertTrue(second.unchanged());
+        Assertions.assertEquals(1, upstream.replaces);
+        Assertions.assertEquals(0, upstream.upserts);
+    }
+
+    @Test
+    public void diffUpsertsAndDeletesOnlyWhatChanged() {
+        var upstream = new FakeUpstream();
+        var state = new MemoryState();
+        var sync = new SlashCommandSync(upstream, state, true);
+        sync.sync(commands(5));
+
+        var next = commands(5);
+        next.removeIf(command -> command.getName().equals("command-4"));
+        next.set(0, Commands.slash("command-0", "A new description"));
+        next.add(Commands.slash("command-new", "Brand new"));
+
+        var result = sync.sync(next);
+        Assertions.assertFalse(result.full());
+        Assertions.assertEquals(2, result.pushed());
+        Assertions.assertEquals(1, result.deleted());
+        Assertions.assertEquals(1, upstream.replaces);
+        Assertions.assertEquals(2, upstream.upserts);
+        Assertions.assertEquals(1, upstream.deletes);
+        Assertions.assertEquals(names(next), upstream.names());
+        Assertions.assertTrue(sync.sync(next).unchanged());
+    }
+
+    @Test
+    public void tooManyChangesOverwriteEverything() {
+        var upstream = new FakeUpstream();
+        var sync = new SlashCommandSync(upstream, new MemoryState(), true);
+        sync.sync(commands(5));
+
+        var next = commands(SlashCommandSync.MAX_DIFF_REQUESTS + 10);
+        var result = sync.sync(next);
+        Assertions.assertTrue(result.full());
+        Assertions.assertEquals(2, upstream.replaces);
+        Assertions.assertEquals(0, upstream.upserts);
+        Assertions.assertEquals(names(next), upstream.names());
+    }
+
+    @Test
+    public void fullModeNeverDiffs() {
+        var upstream = new FakeUpstream();
+        var sync = new SlashCommandSync(upstream, new MemoryState(), false);
+        sync.sync(commands(5));
+
+        var next = commands(5);
+        next.set(0, Commands.slash("command-0", "A new description"));
+        Assertions.assertTrue(sync.sync(next).full());
+        Assertions.assertEquals(2, upstream.replaces);
+        Assertions.assertEquals(0, upstream.upserts);
+    }
+
+    private static List<CommandData> commands(int amount) {
+        var commands = IntStream.range(0, amount)
+                .mapToObj(i -> (CommandData) Commands.slash("command-" + i, "Does thing number " + i))
+                .collect(Collectors.toCollection(ArrayList::new));
+        commands.add(Commands.user("Profile"));
+        return commands;
+    }
+
+    private static List<String> names(List<CommandData> commands) {
+        return commands.stream()
+                .map(command -> SlashCommandSync.keyOf(command.getType(), command.getName()))
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    private static class FakeUpstream implements SlashCommandSync.Upstream {
+        private final Map<String, CommandData> commands = new HashMap<>();
+        private final Map<String, Long> ids = new HashMap<>();
+        private long nextId = 1;
+        private int replaces;
+        private int upserts;
+        private int deletes;
+
+        @Override
+        public void replaceAll(List<CommandData> all) {
+            replaces++;
+            commands.clear();
+            ids.clear();
+            all.forEach(this::put);
+        }
+
+        @Override
+        public void upsert(CommandData command) {
+            upserts++;
+            put(command);
+        }
+
+        @Override
+        public Map<String, Long> list() {
+            return new HashMap<>(ids);
+        }
+
+        @Override
+        public void delete(long id) {
+            deletes++;
+            var key = ids.entrySet().stream().filter(e -> e.getValue() == id).findFirst().orElseThrow().getKey();
+            ids.remove(key);
+            commands.remove(key);
+        }
+
+        private void put(CommandData command) {
+            var key = SlashCommandSync.keyOf(command.getType(), command.getName());
+            commands.put(key, command);
+            ids.computeIfAbsent(key, k -> nextId++);
+        }
+
+        private List<String> names() {
+            return commands.keySet().stream().sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static class MemoryState implements SlashCommandSync.State {
+        private Map<String, String> hashes = new HashMap<>();
+
+        @Override
+        public Map<String, String> load() {
+            return new HashMap<>(hashes);
+        }
+
+        @Override
+        public void save(Map<String, String> hashes) {
+            this.hashes = new HashMap<>(hashes);
+        }
+    }
+}
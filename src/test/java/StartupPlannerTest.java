@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *  
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version. 
+ *  Mantaro is distributed in the hope that it will be useful, 
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.events.StatusChangeEvent;
+import net.dv8tion.jda.api.hooks.EventListener;
+import net.dv8tion.jda.api.utils.SessionController;
+import net.kodehawa.mantarobot.core.shard.jda.BucketedController;
+import net.kodehawa.mantarobot.core.shard.jda.PacedSessionController;
+import net.kodehawa.mantarobot.core.shard.jda.PrioritizingSessionController;
+import net.kodehawa.mantarobot.core.shard.jda.StartupPlanner;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Replays the identify schedule the planner comes up with and checks it against Discord's limits, then runs fake
+ * shards through the session controllers that follow it.
+ */
+public class StartupPlannerTest {
+    private static final long HOME_GUILD_ID = 213468583252983809L;
+    private static final long INTERVAL = StartupPlanner.IDENTIFY_INTERVAL;
+
+    @Test
+    public void respectsBucketLimits() {
+        var shards = IntStream.range(0, 128).boxed().collect(Collectors.toList());
+        var plan = StartupPlanner.plan(shards, 128, 16, HOME_GUILD_ID, INTERVAL);
+
+        // Every shard identifies exactly once, in its own bucket.
+        var seen = new ArrayList<Integer>();
+        for (var bucket : plan.getBuckets()) {
+            for (var shard : bucket) {
+                Assertions.assertEquals(bucket.get(0) % 16, shard % 16, "shard " + shard + " is in the wrong bucket");
+                seen.add(shard);
+            }
+        }
+
+        seen.sort(Integer::compare);
+        Assertions.assertEquals(shards, seen);
+
+        // Replay: no bucket identifies twice within the interval, and never more than max_concurrency at once.
+        var times = new long[128];
+        for (var shard : shards) {
+            times[shard] = plan.offsetOf(shard);
+        }
+
+        for (var a : shards) {
+            var sameTime = 0;
+            for (var b : shards) {
+                if (a.equals(b)) {
+                    continue;
+                }
+
+                if (a % 16 == b % 16) {
+                    Assertions.assertTrue(Math.abs(times[a] - times[b]) >= INTERVAL, "shards " + a + " and " + b + " identify too close");
+                }
+
+                if (times[a] == times[b]) {
+                    sameTime++;
+                }
+            }
+
+            Assertions.assertTrue(sameTime < 16);
+        }
+
+        // 8 shards per bucket, all buckets in parallel.
+        Assertions.assertEquals(7 * INTERVAL, plan.duration());
+    }
+
+    @Test
+    public void homeShardGoesFirst() {
+        var shards = IntStream.range(0, 64).boxed().collect(Collectors.toList());
+        var plan = StartupPlanner.plan(shards, 64, 4, HOME_GUILD_ID, INTERVAL);
+        var homeShard = (int) ((HOME_GUILD_ID >> 22) % 64);
+
+        Assertions.assertEquals(0, plan.offsetOf(homeShard));
+        Assertions.assertEquals(homeShard, (int) plan.getBuckets().get(homeShard % 4).get(0));
+    }
+
+    @Test
+    public void shardSubset() {
+        // Second node of a cluster: shards 32 to 63 of 64.
+        var shards = IntStream.range(32, 64).boxed().collect(Collectors.toList());
+        var plan = StartupPlanner.plan(shards, 64, 16, -1, INTERVAL);
+
+        Assertions.assertEquals(-1, plan.offsetOf(0));
+        Assertions.assertEquals(0, plan.offsetOf(32));
+        Assertions.assertEquals(INTERVAL, plan.offsetOf(48));
+        Assertions.assertEquals(INTERVAL, plan.duration());
+    }
+
+    @Test
+    public void controllerPacesFromIdentify() throws InterruptedException {
+        var interval = 300L;
+        var step = interval + PacedSessionController.SAFETY_MARGIN;
+        var plan = StartupPlanner.plan(IntStream.range(0, 8).boxed().collect(Collectors.toList()), 8, 2, -1, interval);
+        var controller = new BucketedController(plan);
+        var identifies = new ConcurrentHashMap<Integer, Long>();
+        var done = new CountDownLatch(8);
+
+        var start = System.currentTimeMillis();
+        for (var id = 0; id < 8; id++) {
+            // Every other shard in a bucket takes longer to connect than the safety margin.
+            var connectTime = (id / 2) % 2 == 0 ? 400 : 10;
+            controller.appendSession(new FakeNode(id, 8, connectTime, identifies, done));
+        }
+
+        Assertions.assertTrue(done.await(10, TimeUnit.SECONDS), "shards didn't finish connecting");
+        var elapsed = System.currentTimeMillis() - start;
+
+        Assertions.assertEquals(8, identifies.size());
+        for (var bucket : plan.getBuckets()) {
+            for (var a : bucket) {
+                for (var b : bucket) {
+                    if (a < b) {
+                        var gap = Math.abs(identifies.get(a) - identifies.get(b));
+                        Assertions.assertTrue(gap >= step, "shards " + a + " and " + b + " identified " + gap + "ms apart");
+                    }
+                }
+            }
+        }
+
+        // 4 shards per bucket, both buckets at once: less than what 8 shards in a row would need.
+        Assertions.assertTrue(elapsed < 7 * step, "buckets didn't start in parallel (took " + elapsed + "ms)");
+    }
+
+    @Test
+    public void controllerGoesInPlanOrder() {
+        var shards = IntStream.range(0, 16).boxed().collect(Collectors.toList());
+        var plan = StartupPlanner.plan(shards, 16, 1, HOME_GUILD_ID, INTERVAL);
+        var controller = new PrioritizingSessionController(plan);
+
+        var nodes = new ArrayList<FakeNode>();
+        for (var id : shards) {
+            nodes.add(new FakeNode(id, 16, 0, Map.of(), new CountDownLatch(0)));
+        }
+
+        Collections.shuffle(nodes, new Random(42));
+        nodes.sort(controller);
+        var order = nodes.stream().map(node -> node.getShardInfo().getShardId()).collect(Collectors.toList());
+        Assertions.assertEquals(plan.getBuckets().get(0), order);
+        Assertions.assertEquals(plan.getHomeShard(), (int) order.get(0));
+    }
+
+    // A shard that takes connectTime to send its IDENTIFY, then a bit more to get READY.
+    private static class FakeNode implements SessionController.SessionConnectNode {
+        private final int shardId;
+        private final int shardTotal;
+        private final long connectTime;
+        private final Map<Integer, Long> identifies;
+        private final CountDownLatch done;
+        private final List<EventListener> listeners = new CopyOnWriteArrayList<>();
+        private final JDA jda;
+
+        private FakeNode(int shardId, int shardTotal, long connectTime, Map<Integer, Long> identifies, CountDownLatch done) {
+            this.shardId = shardId;
+            this.shardTotal = shardTotal;
+            this.connectTime = connectTime;
+            this.identifies = identifies;
+            this.done = done;
+            this.jda = (JDA) Proxy.newProxyInstance(JDA.class.getClassLoader(), new Class<?>[] { JDA.class }, (proxy, method, args) ->
+                    switch (method.getName()) {
+                        case "addEventListener" -> {
+                            for (var listener : (Object[]) args[0]) {
+                                listeners.add((EventListener) listener);
+                            }
+
+                            yield null;
+                        }
+                        case "removeEventListener" -> {
+                            for (var listener : (Object[]) args[0]) {
+                                listeners.remove(listener);
+                            }
+
+                            yield null;
+                        }
+                        case "getResponseTotal" -> 0L;
+                        case "hashCode" -> System.identityHashCode(proxy);
+                        case "equals" -> proxy == args[0];
+                        case "toString" -> "FakeJDA(" + shardId + ")";
+                        default -> throw new UnsupportedOperationException(method.getName());
+                    }
+            );
+        }
+
+        @Override
+        public boolean isReconnect() {
+            return false;
+        }
+
+        @Override
+        public JDA getJDA() {
+            return jda;
+        }
+
+        @Override
+        public JDA.ShardInfo getShardInfo() {
+            return new JDA.ShardInfo(shardId, shardTotal);
+        }
+
+        @Override
+        public void run(boolean isLast) throws InterruptedException {
+            Thread.sleep(connectTime);
+            identifies.put(shardId, System.currentTimeMillis());
+            var event = new StatusChangeEvent(jda, JDA.Status.AWAITING_LOGIN_CONFIRMATION, JDA.Status.IDENTIFYING_SESSION);
+            for (var listener : listeners) {
+                listener.onEvent(event);
+            }
+
+            Thread.sleep(20);
+            done.countDown();
+        }
+    }
+}
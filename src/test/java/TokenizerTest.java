@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *  
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version. 
+ *  Mantaro is distributed in the hope that it will be useful, 
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+
+import net.kodehawa.mantarobot.core.command.argument.split.ArgumentTokenizer;
+import net.kodehawa.mantarobot.core.command.argument.split.SplitString;
+import net.kodehawa.mantarobot.core.command.argument.split.StringSplitter;
+import net.kodehawa.mantarobot.core.command.argument.split.TokenizedString;
+import net.kodehawa.mantarobot.utils.StringUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+// The tokenizer, StringSplitter and StringUtils#splitArgs(s, 2) must split exactly like the regex code they replaced,
+// which is kept here as the reference.
+public class TokenizerTest {
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final List<String> INPUTS = List.of(
+            "",
+            " ",
+            "   \t\n",
+            "ping",
+            "  leading",
+            "trailing  ",
+            " both ",
+            "multi   space\t\truns\n\nand lines",
+            "\u000B\f\r mixed whitespace\u000B",
+            "\"quoted value\" after",
+            "“smart quotes” after",
+            "\"unclosed quote  value",
+            "```java\nSystem.out.println(1);\n``` rest",
+            "eval ```\ncode   with   spaces\n```",
+            "-flag --other value -",
+            "escaped\\ space \\\"quote\\\"",
+            "no\u00A0break\u00A0space"
+    );
+
+    @Test
+    public void splitterMatchesRegex() {
+        var splitter = new StringSplitter();
+        for (var input : INPUTS) {
+            assertSame(input, legacySplit(WHITESPACE, input), splitter.split(input));
+        }
+    }
+
+    @Test
+    public void tokenizerMatchesRegex() {
+        for (var input : INPUTS) {
+            var tokens = TokenizedString.of(input);
+            assertSame(input, legacySplit(WHITESPACE, input), tokens.toArray());
+            for (var i = 0; i < tokens.size(); i++) {
+                Assertions.assertEquals(tokens.get(i).getValue(), input.substring(tokens.start(i), tokens.end(i)), input);
+            }
+        }
+    }
+
+    @Test
+    public void splitFirstMatchesRegex() {
+        for (var input : INPUTS) {
+            Assertions.assertEquals(List.of(legacySplitArgs(input)), List.of(StringUtils.splitArgs(input, 2)), input);
+        }
+    }
+
+    @Test
+    public void randomInputsMatchRegex() {
+        var random = new Random(42);
+        var alphabet = "ab\"“`-\\ \t\n\r\f\u000B ";
+        var splitter = new StringSplitter();
+        for (var i = 0; i < 20_000; i++) {
+            var builder = new StringBuilder();
+            var length = random.nextInt(24);
+            for (var j = 0; j < length; j++) {
+                builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+
+            var input = builder.toString();
+            var expected = legacySplit(WHITESPACE, input);
+            assertSame(input, expected, splitter.split(input));
+            assertSame(input, expected, TokenizedString.of(input).toArray());
+            Assertions.assertEquals(List.of(legacySplitArgs(input)), List.of(StringUtils.splitArgs(input, 2)), input);
+        }
+    }
+
+    @Test
+    public void customPatternMatchesRegex() {
+        var pattern = Pattern.compile(",\\s*");
+        var splitter = new StringSplitter(pattern);
+        for (var input : List.of("", "a", "a, b,c", ", a,  b", "a, b, ", "a,\tb c")) {
+            assertSame(input, legacySplit(pattern, input), splitter.split(input));
+        }
+    }
+
+    @Test
+    public void rawRangeKeepsWhitespace() {
+        var tokens = TokenizedString.of("  give  @user\t 500 ");
+        Assertions.assertEquals("  give  @user\t 500", tokens.rawRange(0, tokens.size()));
+        Assertions.assertEquals("  @user\t 500", tokens.rawRange(1, 3));
+        Assertions.assertEquals("", tokens.rawRange(2, 2));
+    }
+
+    @Test
+    public void kindsAreTagged() {
+        var tokens = ArgumentTokenizer.local().tokenize("-f \"a “b ```c `d e\\f");
+        Assertions.assertEquals(ArgumentTokenizer.FLAG, tokens.kind(0));
+        Assertions.assertEquals(ArgumentTokenizer.QUOTED, tokens.kind(1));
+        Assertions.assertEquals(ArgumentTokenizer.QUOTED, tokens.kind(2));
+        Assertions.assertEquals(ArgumentTokenizer.CODE_BLOCK, tokens.kind(3));
+        Assertions.assertEquals(0, tokens.kind(4));
+        Assertions.assertEquals(ArgumentTokenizer.ESCAPED, tokens.kind(5));
+    }
+
+    private static void assertSame(String input, List<String[]> expected, SplitString[] actual) {
+        var values = new ArrayList<String[]>();
+        for (var string : actual) {
+            Assertions.assertEquals(string.getPreviousWhitespace() + string.getValue(), string.getRawValue(), input);
+            values.add(new String[] { string.getPreviousWhitespace(), string.getValue() });
+        }
+
+        Assertions.assertEquals(describe(expected), describe(values), "Splitting '" + input + "'");
+    }
+
+    private static String describe(List<String[]> parts) {
+        var builder = new StringBuilder();
+        for (var part : parts) {
+            builder.append('[').append(part[0]).append('|').append(part[1]).append(']');
+        }
+
+        return builder.toString();
+    }
+
+    // What StringSplitter#split did before: (previous whitespace, value) pairs found by indexOf + substring.
+    private static List<String[]> legacySplit(Pattern pattern, String string) {
+        var values = pattern.split(string);
+        var remove = values.length > 0 && values[0].isEmpty() ? 1 : 0;
+        var result = new ArrayList<String[]>();
+        var lookup = string;
+        for (var i = remove; i < values.length; i++) {
+            var value = values[i];
+            var startIdx = lookup.indexOf(value);
+            result.add(new String[] { lookup.substring(0, startIdx), value });
+            lookup = lookup.substring(startIdx + value.length());
+        }
+
+        return result;
+    }
+
+    // What StringUtils#splitArgs(s, 2) did before.
+    private static String[] legacySplitArgs(String args) {
+        return StringUtils.normalizeArray(WHITESPACE.split(args, 2), 2);
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *  
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version. 
+ *  Mantaro is distributed in the hope that it will be useful, 
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+import com.rethinkdb.gen.ast.ReqlExpr;
+import com.rethinkdb.net.Connection;
+import net.kodehawa.mantarobot.commands.currency.item.ItemHelper;
+import net.kodehawa.mantarobot.commands.currency.item.ItemReference;
+import net.kodehawa.mantarobot.commands.currency.item.ItemStack;
+import net.kodehawa.mantarobot.commands.utils.leaderboards.LeaderboardType;
+import net.kodehawa.mantarobot.db.ManagedDatabase;
+import net.kodehawa.mantarobot.db.Transfers;
+import net.kodehawa.mantarobot.db.Transfers.Result;
+import net.kodehawa.mantarobot.db.Transfers.Transfer;
+import net.kodehawa.mantarobot.db.entities.Player;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.rethinkdb.RethinkDB.r;
+
+/**
+ * Fires a lot of transfers between a few players at the same time and checks no money gets created or destroyed.
+ */
+public class TransferTest {
+    private static final String DB = "mantaro_transfer_test";
+    private static final int PLAYERS = 20;
+    private static final long START_MONEY = 10_000;
+    private static final int TRANSFERS = 5_000;
+    private static Connection conn;
+    private static Transfers transfers;
+    // The last money score sent to the leaderboards for every user.
+    private static final Map<String, Long> scores = new ConcurrentHashMap<>();
+
+    @BeforeAll
+    public static void setup() {
+        conn = RethinkFixture.connect(DB);
+        r.tableCreate(Player.DB_TABLE).run(conn);
+        var db = new ManagedDatabase(conn);
+        db.createIndexes();
+        db.setScoreUpdates(object -> scores.put(object.getDatabaseId(), LeaderboardType.MONEY.scoreOf(object)));
+        transfers = db.transfers();
+    }
+
+    @AfterAll
+    public static void teardown() {
+        RethinkFixture.drop(conn, DB);
+    }
+
+    @Test
+    public void moneyIsConserved() throws Exception {
+        var players = new ArrayList<Player>();
+        for (var i = 0; i < PLAYERS; i++) {
+            var player = Player.of("conserved" + i);
+            player.addMoney(START_MONEY);
+            players.add(player);
+        }
+
+        r.table(Player.DB_TABLE).insert(players).run(conn);
+
+        var random = new Random(42);
+        var executor = Executors.newFixedThreadPool(32);
+        var results = new ArrayList<Future<Result>>();
+        for (var i = 0; i < TRANSFERS; i++) {
+            var from = random.nextInt(PLAYERS);
+            var to = (from + 1 + random.nextInt(PLAYERS - 1)) % PLAYERS;
+            // Big enough that senders regularly run out.
+            var amount = 1 + random.nextInt(3_000);
+            var transfer = new Transfer("conserved:" + i, "conserved" + from, "conserved" + to, Player.moneyPath(), amount, amount, Long.MAX_VALUE);
+            results.add(executor.submit(() -> transfers.transfer(transfer)));
+        }
+
+        var succeeded = 0;
+        for (var result : results) {
+            if (result.get() == Result.SUCCESS) {
+                succeeded++;
+            }
+        }
+
+        executor.shutdown();
+        Assertions.assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        Assertions.assertTrue(succeeded > TRANSFERS / 2, "most transfers should go through, " + succeeded + " did");
+
+        var total = 0L;
+        for (var i = 0; i < PLAYERS; i++) {
+            var money = money("conserved" + i);
+            Assertions.assertTrue(money >= 0, "conserved" + i + " ended up with " + money);
+            total += money;
+
+            List<?> pending = r.table(Player.DB_TABLE).get("conserved" + i + ":g").g("pendingTransfers").default_(r.array())
+                    .runAtom(conn, List.class);
+            Assertions.assertEquals(List.of(), pending);
+        }
+
+        Assertions.assertEquals(PLAYERS * START_MONEY, total);
+        long unfinished = r.table(Transfers.DB_TABLE).filter(entry -> entry.hasFields("result").not()).count().runAtom(conn, Long.class);
+        Assertions.assertEquals(0, unfinished);
+    }
+
+    @Test
+    public void sameIdOnlyMovesOnce() {
+        var sender = Player.of("once0");
+        sender.addMoney(1_000);
+        r.table(Player.DB_TABLE).insert(sender).run(conn);
+
+        // once1 never played.
+        var transfer = new Transfer("once", "once0", "once1", Player.moneyPath(), 400, 368, Long.MAX_VALUE);
+        Assertions.assertEquals(Result.SUCCESS, transfers.transfer(transfer));
+        Assertions.assertEquals(Result.SUCCESS, transfers.transfer(transfer));
+
+        Assertions.assertEquals(600, money("once0"));
+        Assertions.assertEquals(368, money("once1"));
+    }
+
+    @Test
+    public void overLimitRefunds() {
+        var sender = Player.of("limit0");
+        sender.getInventory().process(new ItemStack(ItemReference.HEADPHONES, 10));
+        r.table(Player.DB_TABLE).insert(sender).run(conn);
+
+        var path = List.of("inventory", String.valueOf(ItemHelper.idOf(ItemReference.HEADPHONES)));
+        Assertions.assertEquals(Result.OVER_LIMIT, transfers.transfer(new Transfer("limit", "limit0", "limit1", path, 10, 10, 5)));
+        Assertions.assertEquals(Result.NOT_ENOUGH, transfers.transfer(new Transfer("limit:more", "limit0", "limit1", path, 11, 11, 5000)));
+
+        long left = r.table(Player.DB_TABLE).get("limit0:g").g("inventory").g(path.get(1)).runAtom(conn, Long.class);
+        Assertions.assertEquals(10, left);
+    }
+
+    @Test
+    public void transferUpdatesBothScores() {
+        var sender = Player.of("scores0");
+        sender.addMoney(1_000);
+        var receiver = Player.of("scores1");
+        receiver.addMoney(50);
+        r.table(Player.DB_TABLE).insert(List.of(sender, receiver)).run(conn);
+
+        var transfer = new Transfer("scores", "scores0", "scores1", Player.moneyPath(), 400, 368, Long.MAX_VALUE);
+        Assertions.assertEquals(Result.SUCCESS, transfers.transfer(transfer));
+        Assertions.assertEquals(600, scores.get("scores0"));
+        Assertions.assertEquals(418, scores.get("scores1"));
+
+        // Nothing moved, so nothing gets sent.
+        scores.clear();
+        Assertions.assertEquals(Result.NOT_ENOUGH, transfers.transfer(new Transfer("scores:more", "scores0", "scores1", Player.moneyPath(), 601, 601, Long.MAX_VALUE)));
+        Assertions.assertFalse(scores.containsKey("scores0"));
+        Assertions.assertFalse(scores.containsKey("scores1"));
+    }
+
+    private static long money(String userId) {
+        ReqlExpr value = r.table(Player.DB_TABLE).get(userId + ":g");
+        for (var key : Player.moneyPath()) {
+            value = value.g(key);
+        }
+
+        return value.runAtom(conn, Long.class);
+    }
+}